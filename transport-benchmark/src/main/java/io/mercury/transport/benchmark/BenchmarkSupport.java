@@ -0,0 +1,63 @@
+package io.mercury.transport.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.mercury.common.thread.ThreadTool;
+
+final class BenchmarkSupport {
+
+	static final String HOST = "127.0.0.1";
+
+	private BenchmarkSupport() {
+	}
+
+	static int freePort() {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static void awaitPort(int port) {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (System.currentTimeMillis() < deadline) {
+			try (Socket socket = new Socket(HOST, port)) {
+				return;
+			} catch (IOException e) {
+				ThreadTool.sleep(10);
+			}
+		}
+		throw new IllegalStateException("Port " + port + " is not open");
+	}
+
+	/**
+	 * Blocking transport loops end with an exception when they are closed on
+	 * teardown, that is expected.
+	 * 
+	 * @param name
+	 * @param task
+	 * @return
+	 */
+	static Thread startDaemon(String name, Runnable task) {
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			} catch (Throwable ignored) {
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	static byte[] payload(int size) {
+		byte[] payload = new byte[size];
+		ThreadLocalRandom.current().nextBytes(payload);
+		return payload;
+	}
+
+}
@@ -0,0 +1,72 @@
+package io.mercury.transport.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.mercury.transport.http.HttpRequester;
+
+/**
+ * HttpRequester against the JDK embedded http server, size is the response
+ * body size.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HttpRequesterBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class HttpState {
+
+		@Param({ "64", "1024", "16384", "262144", "1048576" })
+		public int size;
+
+		HttpServer server;
+		String url;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			byte[] body = BenchmarkSupport.payload(size);
+			server = HttpServer.create(new InetSocketAddress(BenchmarkSupport.HOST, 0), 0);
+			server.createContext("/bench", exchange -> {
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			});
+			server.start();
+			url = "http://" + BenchmarkSupport.HOST + ":" + server.getAddress().getPort() + "/bench";
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			server.stop(0);
+		}
+
+	}
+
+	@Benchmark
+	public String get(HttpState state) {
+		return HttpRequester.sentGet(state.url);
+	}
+
+}
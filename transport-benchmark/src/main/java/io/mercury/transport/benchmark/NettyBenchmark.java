@@ -0,0 +1,194 @@
+package io.mercury.transport.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.mercury.transport.netty.NettyClient;
+import io.mercury.transport.netty.NettyServer;
+import io.mercury.transport.netty.configurator.NettyConfigurator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * NettyServer/NettyClient over tcp loopback, NIO compared with native epoll.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class NettyBenchmark {
+
+	// max bytes in flight of one-way benchmark
+	private static final long WINDOW_BYTES = 4 * 1024 * 1024;
+
+	public abstract static class NettyState {
+
+		@Param({ "nio", "epoll" })
+		public String transport;
+
+		@Param({ "64", "1024", "16384", "262144", "1048576" })
+		public int size;
+
+		NettyServer server;
+		NettyClient client;
+		ByteBuf payload;
+		volatile ChannelHandlerContext clientCtx;
+
+		// bytes received by client (echo) or server (sink)
+		final AtomicLong received = new AtomicLong();
+		long sent;
+
+		protected abstract ChannelHandler serverHandler();
+
+		protected abstract ChannelHandler clientHandler(CountDownLatch active);
+
+		@Setup(Level.Trial)
+		public void setup() throws InterruptedException {
+			int port = BenchmarkSupport.freePort();
+			NettyConfigurator configurator = NettyConfigurator.builder().host(BenchmarkSupport.HOST).port(port)
+					.useEpoll("epoll".equals(transport)).build();
+			server = new NettyServer("bench-server", configurator, serverHandler());
+			if (configurator.useEpoll() && !server.isEpoll()) {
+				server.destroy();
+				// do not report NIO numbers as epoll
+				throw new IllegalStateException("epoll transport is unavailable on this platform");
+			}
+			BenchmarkSupport.startDaemon("bench-netty-server", server::startup);
+			BenchmarkSupport.awaitPort(port);
+			CountDownLatch active = new CountDownLatch(1);
+			client = new NettyClient("bench-client", configurator, clientHandler(active));
+			BenchmarkSupport.startDaemon("bench-netty-client", client::connect);
+			active.await();
+			payload = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(BenchmarkSupport.payload(size)));
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			client.destroy();
+			server.destroy();
+		}
+
+	}
+
+	@State(Scope.Benchmark)
+	public static class EchoState extends NettyState {
+
+		@Override
+		protected ChannelHandler serverHandler() {
+			return new EchoHandler();
+		}
+
+		@Override
+		protected ChannelHandler clientHandler(CountDownLatch active) {
+			return new CountingHandler(this, active);
+		}
+
+	}
+
+	@State(Scope.Benchmark)
+	public static class SinkState extends NettyState {
+
+		@Override
+		protected ChannelHandler serverHandler() {
+			return new CountingHandler(this, null);
+		}
+
+		@Override
+		protected ChannelHandler clientHandler(CountDownLatch active) {
+			return new ChannelInboundHandlerAdapter() {
+				@Override
+				public void channelActive(ChannelHandlerContext ctx) {
+					clientCtx = ctx;
+					active.countDown();
+				}
+			};
+		}
+
+	}
+
+	@Sharable
+	static final class EchoHandler extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			ctx.write(msg);
+		}
+
+		@Override
+		public void channelReadComplete(ChannelHandlerContext ctx) {
+			ctx.flush();
+		}
+
+	}
+
+	@Sharable
+	static final class CountingHandler extends ChannelInboundHandlerAdapter {
+
+		private final NettyState state;
+		private final CountDownLatch active;
+
+		CountingHandler(NettyState state, CountDownLatch active) {
+			this.state = state;
+			this.active = active;
+		}
+
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) {
+			if (active != null) {
+				state.clientCtx = ctx;
+				active.countDown();
+			}
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) {
+			state.received.addAndGet(((ByteBuf) msg).readableBytes());
+			ReferenceCountUtil.release(msg);
+		}
+
+	}
+
+	/**
+	 * Client sends one message and waits for the whole echo.
+	 */
+	@Benchmark
+	public void roundTrip(EchoState state) {
+		state.sent += state.size;
+		state.clientCtx.writeAndFlush(state.payload.duplicate());
+		while (state.received.get() < state.sent)
+			Thread.yield();
+	}
+
+	/**
+	 * Client keeps at most WINDOW_BYTES in flight to the server.
+	 */
+	@Benchmark
+	public void oneWay(SinkState state) {
+		state.sent += state.size;
+		state.clientCtx.writeAndFlush(state.payload.duplicate());
+		while (state.sent - state.received.get() > WINDOW_BYTES)
+			Thread.yield();
+	}
+
+}
@@ -0,0 +1,111 @@
+package io.mercury.transport.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.mercury.transport.netty.NettySender;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * NettySender send path cost without network, run with the GC profiler
+ * (enabled by BenchmarkRunner) to compare gc.alloc.rate.norm per operation.
+ * <br>
+ * copySend reproduces the former copy-into-allocated-ByteBuf path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class NettySenderBenchmark {
+
+	@State(Scope.Thread)
+	public static class SenderState {
+
+		@Param({ "64", "1024", "16384" })
+		public int size;
+
+		EmbeddedChannel channel;
+		ChannelHandlerContext ctx;
+		NettySender sender;
+		byte[] bytes;
+		ByteBuffer byteBuffer;
+		ByteBuf byteBuf;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			channel = new EmbeddedChannel();
+			// releases every written message, keeps EmbeddedChannel outbound queue
+			// empty
+			channel.pipeline().addLast("sink", new ChannelOutboundHandlerAdapter() {
+				@Override
+				public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+					ReferenceCountUtil.release(msg);
+					promise.trySuccess();
+				}
+
+				@Override
+				public void flush(ChannelHandlerContext ctx) {
+				}
+			});
+			channel.pipeline().addLast("sender", new ChannelInboundHandlerAdapter());
+			ctx = channel.pipeline().context("sender");
+			sender = new NettySender(ctx);
+			bytes = BenchmarkSupport.payload(size);
+			byteBuffer = ByteBuffer.allocateDirect(size);
+			byteBuf = Unpooled.unreleasableBuffer(Unpooled.directBuffer(size).writeBytes(bytes));
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			channel.finishAndReleaseAll();
+		}
+
+	}
+
+	@Benchmark
+	public void copySend(SenderState state) {
+		ByteBuf buf = state.ctx.alloc().buffer(state.bytes.length);
+		buf.writeBytes(state.bytes);
+		state.ctx.writeAndFlush(buf);
+	}
+
+	@Benchmark
+	public void sendBytes(SenderState state) {
+		state.sender.send(state.bytes);
+	}
+
+	@Benchmark
+	public void sendByteBuffer(SenderState state) {
+		state.byteBuffer.clear();
+		state.sender.send(state.byteBuffer);
+	}
+
+	@Benchmark
+	public void sendByteBuf(SenderState state) {
+		// unreleasable and never read by the sink, can be sent repeatedly
+		state.sender.send(state.byteBuf);
+	}
+
+}
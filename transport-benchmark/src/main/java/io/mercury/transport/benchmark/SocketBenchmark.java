@@ -0,0 +1,117 @@
+package io.mercury.transport.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.mercury.transport.socket.SocketReceiver;
+import io.mercury.transport.socket.SocketSender;
+import io.mercury.transport.socket.configurator.SocketConfigurator;
+
+/**
+ * SocketSender -> relay server -> SocketReceiver over tcp loopback.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SocketBenchmark {
+
+	// max bytes in flight of one-way benchmark
+	private static final long WINDOW_BYTES = 4 * 1024 * 1024;
+
+	@State(Scope.Benchmark)
+	public static class SocketState {
+
+		@Param({ "64", "1024", "16384", "262144", "1048576" })
+		public int size;
+
+		ServerSocket server;
+		Socket receiverSide;
+		Socket senderSide;
+		SocketReceiver receiver;
+		SocketSender sender;
+		byte[] payload;
+
+		final AtomicLong received = new AtomicLong();
+		long sent;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			payload = BenchmarkSupport.payload(size);
+			server = new ServerSocket(0, 50, InetAddress.getByName(BenchmarkSupport.HOST));
+			SocketConfigurator configurator = SocketConfigurator.builder().host(BenchmarkSupport.HOST)
+					.port(server.getLocalPort()).build();
+			receiver = new SocketReceiver(configurator, bytes -> received.addAndGet(bytes.length));
+			receiverSide = server.accept();
+			sender = new SocketSender(configurator);
+			senderSide = server.accept();
+			BenchmarkSupport.startDaemon("bench-socket-relay", () -> relay(senderSide, receiverSide));
+			receiver.receive();
+		}
+
+		private static void relay(Socket from, Socket to) {
+			byte[] buffer = new byte[64 * 1024];
+			try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+				int read;
+				while ((read = in.read(buffer)) != -1)
+					out.write(buffer, 0, read);
+			} catch (IOException e) {
+				// closed on teardown
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			sender.destroy();
+			receiver.destroy();
+			senderSide.close();
+			receiverSide.close();
+			server.close();
+		}
+
+	}
+
+	/**
+	 * Sends one message and waits until the receiver callback got all of it.
+	 */
+	@Benchmark
+	public void roundTrip(SocketState state) {
+		state.sent += state.size;
+		state.sender.send(state.payload);
+		while (state.received.get() < state.sent)
+			Thread.yield();
+	}
+
+	/**
+	 * Keeps at most WINDOW_BYTES in flight to the receiver.
+	 */
+	@Benchmark
+	public void oneWay(SocketState state) {
+		state.sent += state.size;
+		state.sender.send(state.payload);
+		while (state.sent - state.received.get() > WINDOW_BYTES)
+			Thread.yield();
+	}
+
+}
@@ -0,0 +1,100 @@
+package io.mercury.transport.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeromq.ZContext;
+
+import io.mercury.common.thread.ThreadTool;
+import io.mercury.transport.zmq.ZmqPublisher;
+import io.mercury.transport.zmq.ZmqSubscriber;
+import io.mercury.transport.zmq.configurator.ZmqConfigurator;
+
+/**
+ * ZmqPublisher/ZmqSubscriber one-way throughput over tcp and inproc.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZmqPubSubBenchmark {
+
+	// PUB drops messages above the high water mark (default 1000), keep the
+	// number of messages in flight below it
+	private static final long WINDOW = 500;
+
+	@State(Scope.Benchmark)
+	public static class PubSubState {
+
+		@Param({ "tcp", "inproc" })
+		public String transport;
+
+		@Param({ "64", "1024", "16384", "262144", "1048576" })
+		public int size;
+
+		ZContext zCtx;
+		ZmqPublisher publisher;
+		ZmqSubscriber subscriber;
+		byte[] payload;
+
+		final AtomicLong received = new AtomicLong();
+		long sent;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			payload = BenchmarkSupport.payload(size);
+			boolean inproc = "inproc".equals(transport);
+			String host = inproc ? "inproc://bench-pubsub" : "tcp://" + BenchmarkSupport.HOST + ":" + BenchmarkSupport.freePort();
+			ZmqConfigurator configurator = ZmqConfigurator.builder().setHost(host).setTopic("bench").setIoThreads(1)
+					.build();
+			if (inproc) {
+				zCtx = new ZContext(1);
+				publisher = new ZmqPublisher(configurator, zCtx);
+				subscriber = new ZmqSubscriber(configurator, zCtx, msg -> received.incrementAndGet());
+			} else {
+				publisher = new ZmqPublisher(configurator);
+				subscriber = new ZmqSubscriber(configurator, msg -> received.incrementAndGet());
+			}
+			BenchmarkSupport.startDaemon("bench-zmq-subscriber", subscriber::subscribe);
+			// slow joiner, publish until the subscription is established
+			while (received.get() == 0) {
+				publisher.publish(payload);
+				ThreadTool.sleep(10);
+			}
+			ThreadTool.sleep(100);
+			received.set(0);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			subscriber.destroy();
+			publisher.destroy();
+			if (zCtx != null)
+				zCtx.close();
+		}
+
+	}
+
+	@Benchmark
+	public void oneWay(PubSubState state) {
+		state.publisher.publish(state.payload);
+		state.sent++;
+		while (state.sent - state.received.get() > WINDOW)
+			Thread.yield();
+	}
+
+}
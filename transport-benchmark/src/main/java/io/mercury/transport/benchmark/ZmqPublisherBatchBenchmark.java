@@ -0,0 +1,103 @@
+package io.mercury.transport.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.mercury.common.thread.ThreadTool;
+import io.mercury.transport.zmq.ZmqPublisher;
+import io.mercury.transport.zmq.ZmqSubscriber;
+import io.mercury.transport.zmq.configurator.ZmqConfigurator;
+
+/**
+ * ZmqPublisher per-message throughput over tcp with publish() versus
+ * publishBatch() of different batch sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZmqPublisherBatchBenchmark {
+
+	// messages published per invocation, a multiple of every batchSize
+	private static final int MESSAGES = 512;
+
+	// PUB drops messages above the high water mark (default 1000), wait until
+	// this many are in flight before the next invocation
+	private static final long WINDOW = 256;
+
+	@State(Scope.Benchmark)
+	public static class BatchState {
+
+		@Param({ "1", "8", "32", "128", "512" })
+		public int batchSize;
+
+		@Param({ "64" })
+		public int size;
+
+		ZmqPublisher publisher;
+		ZmqSubscriber subscriber;
+		byte[][] msgs;
+
+		final AtomicLong received = new AtomicLong();
+		long sent;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			msgs = new byte[MESSAGES][];
+			for (int i = 0; i < MESSAGES; i++)
+				msgs[i] = BenchmarkSupport.payload(size);
+			ZmqConfigurator configurator = ZmqConfigurator.builder()
+					.setHost("tcp://" + BenchmarkSupport.HOST + ":" + BenchmarkSupport.freePort()).setTopic("bench")
+					.setIoThreads(1).build();
+			publisher = new ZmqPublisher(configurator);
+			subscriber = new ZmqSubscriber(configurator, msg -> received.incrementAndGet());
+			BenchmarkSupport.startDaemon("bench-zmq-subscriber", subscriber::subscribe);
+			// slow joiner, publish until the subscription is established
+			while (received.get() == 0) {
+				publisher.publish(msgs[0]);
+				ThreadTool.sleep(10);
+			}
+			ThreadTool.sleep(100);
+			received.set(0);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			subscriber.destroy();
+			publisher.destroy();
+		}
+
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void publish(BatchState state) {
+		while (state.sent - state.received.get() > WINDOW)
+			Thread.yield();
+		if (state.batchSize == 1) {
+			for (byte[] msg : state.msgs)
+				state.publisher.publish(msg);
+		} else {
+			for (int offset = 0; offset < MESSAGES; offset += state.batchSize)
+				state.publisher.publishBatch(state.msgs, offset, state.batchSize);
+		}
+		state.sent += MESSAGES;
+	}
+
+}
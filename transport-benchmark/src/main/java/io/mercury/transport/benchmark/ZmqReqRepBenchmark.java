@@ -0,0 +1,68 @@
+package io.mercury.transport.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.mercury.transport.zmq.ZmqPipeline;
+import io.mercury.transport.zmq.ZmqSender;
+import io.mercury.transport.zmq.configurator.ZmqConfigurator;
+
+/**
+ * ZmqSender/ZmqPipeline request-reply round trip over tcp loopback.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ZmqReqRepBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class ReqRepState {
+
+		@Param({ "64", "1024", "16384", "262144", "1048576" })
+		public int size;
+
+		ZmqPipeline pipeline;
+		ZmqSender sender;
+		byte[] payload;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			payload = BenchmarkSupport.payload(size);
+			ZmqConfigurator configurator = ZmqConfigurator.builder()
+					.setHost("tcp://" + BenchmarkSupport.HOST + ":" + BenchmarkSupport.freePort()).setIoThreads(1)
+					.build();
+			// echo
+			pipeline = new ZmqPipeline(configurator, msg -> msg);
+			BenchmarkSupport.startDaemon("bench-zmq-pipeline", pipeline::receive);
+			sender = new ZmqSender(configurator);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			sender.destroy();
+			pipeline.destroy();
+		}
+
+	}
+
+	@Benchmark
+	public void roundTrip(ReqRepState state) {
+		state.sender.request(state.payload).join();
+	}
+
+}
@@ -1,5 +1,7 @@
 package io.mercury.transport.core.api;
 
+import java.util.List;
+
 import io.mercury.transport.core.TransportModule;
 import io.mercury.transport.core.exception.PublishFailedException;
 
@@ -11,4 +13,28 @@ public interface Publisher<T> extends TransportModule {
 	// Publish to target location
 	void publish(String target, T msg) throws PublishFailedException;
 
+	// Publish batch to default location
+	default void publishBatch(List<T> msgs) throws PublishFailedException {
+		for (T msg : msgs)
+			publish(msg);
+	}
+
+	// Publish array slice to default location
+	default void publishBatch(T[] msgs, int offset, int length) throws PublishFailedException {
+		for (int i = offset; i < offset + length; i++)
+			publish(msgs[i]);
+	}
+
+	// Publish batch to target location
+	default void publishBatch(String target, List<T> msgs) throws PublishFailedException {
+		for (T msg : msgs)
+			publish(target, msg);
+	}
+
+	// Publish array slice to target location
+	default void publishBatch(String target, T[] msgs, int offset, int length) throws PublishFailedException {
+		for (int i = offset; i < offset + length; i++)
+			publish(target, msgs[i]);
+	}
+
 }
@@ -1,9 +1,23 @@
 package io.mercury.transport.core.api;
 
+import java.util.List;
+
 import io.mercury.transport.core.TransportModule;
 
 public interface Sender<T> extends TransportModule {
 
 	void send(T msg);
 
+	// Send batch, transports may override with a native implementation
+	default void sendBatch(List<T> msgs) {
+		for (T msg : msgs)
+			send(msg);
+	}
+
+	// Send array slice, transports may override with a native implementation
+	default void sendBatch(T[] msgs, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			send(msgs[i]);
+	}
+
 }
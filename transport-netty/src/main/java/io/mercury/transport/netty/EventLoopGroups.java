@@ -0,0 +1,129 @@
+package io.mercury.transport.netty;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import net.openhft.affinity.AffinityStrategies;
+import net.openhft.affinity.AffinityThreadFactory;
+
+/**
+ * 按名称共享的EventLoopGroup<br>
+ *
+ * 同名的transport使用同一个EventLoopGroup, 线程数量与CPU核数相关而与连接数量无关.<br>
+ * 引用计数归零时关闭EventLoopGroup. NIO与epoll的EventLoop不能混用, 因此分别注册.
+ *
+ * @author yellow013
+ */
+public final class EventLoopGroups {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(EventLoopGroups.class);
+
+	// key为name与transport类型
+	private static final Map<String, SharedGroup> groups = new HashMap<>();
+
+	private EventLoopGroups() {
+	}
+
+	/**
+	 * 获取共享的EventLoopGroup, 不存在时创建, 已存在时nThreads与affinity以第一次创建时为准
+	 *
+	 * @param name     线程名称前缀
+	 * @param nThreads 0 for netty default
+	 * @param epoll
+	 * @param affinity 将线程绑定到不同的CPU核, 需要net.openhft:affinity
+	 * @return
+	 */
+	public static synchronized EventLoopGroup acquire(String name, int nThreads, boolean epoll, boolean affinity) {
+		String key = key(name, epoll);
+		SharedGroup shared = groups.get(key);
+		if (shared == null || shared.group.isShuttingDown()) {
+			shared = new SharedGroup(key, newGroup(key, nThreads, epoll, affinity), nThreads);
+			groups.put(key, shared);
+			log.info("EventLoopGroup [{}] created, nThreads==[{}], affinity==[{}]", key, nThreads, affinity);
+		} else if (shared.nThreads != nThreads) {
+			log.warn("EventLoopGroup [{}] already created with nThreads==[{}], requested nThreads==[{}] ignored", key,
+					shared.nThreads, nThreads);
+		}
+		shared.refCount++;
+		return shared.group;
+	}
+
+	/**
+	 * 释放一次引用, 引用计数归零时关闭EventLoopGroup
+	 *
+	 * @param group
+	 */
+	public static synchronized void release(EventLoopGroup group) {
+		if (group == null)
+			return;
+		for (SharedGroup shared : groups.values()) {
+			if (shared.group == group) {
+				if (--shared.refCount == 0) {
+					groups.remove(shared.key);
+					group.shutdownGracefully();
+					log.info("EventLoopGroup [{}] released, shutdown gracefully", shared.key);
+				}
+				return;
+			}
+		}
+		// 不由此处管理的group
+		group.shutdownGracefully();
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param epoll
+	 * @return current reference count
+	 */
+	public static synchronized int refCount(String name, boolean epoll) {
+		SharedGroup shared = groups.get(key(name, epoll));
+		return shared == null ? 0 : shared.refCount;
+	}
+
+	private static String key(String name, boolean epoll) {
+		return name + (epoll ? "-epoll" : "-nio");
+	}
+
+	private static EventLoopGroup newGroup(String name, int nThreads, boolean epoll, boolean affinity) {
+		ThreadFactory threadFactory = affinity ? AffinitySupport.newThreadFactory(name)
+				: new DefaultThreadFactory(name);
+		return epoll ? new EpollEventLoopGroup(nThreads, threadFactory)
+				: new NioEventLoopGroup(nThreads, threadFactory);
+	}
+
+	private static final class SharedGroup {
+
+		private final String key;
+		private final EventLoopGroup group;
+		private final int nThreads;
+		private int refCount;
+
+		private SharedGroup(String key, EventLoopGroup group, int nThreads) {
+			this.key = key;
+			this.group = group;
+			this.nThreads = nThreads;
+		}
+
+	}
+
+	/**
+	 * affinity为optional依赖, 仅在使用时加载
+	 */
+	private static final class AffinitySupport {
+
+		private static ThreadFactory newThreadFactory(String name) {
+			return new AffinityThreadFactory(name, AffinityStrategies.DIFFERENT_CORE);
+		}
+
+	}
+
+}
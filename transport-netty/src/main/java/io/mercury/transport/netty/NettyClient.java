@@ -3,16 +3,19 @@ package io.mercury.transport.netty;
 import io.mercury.transport.core.api.TransportClient;
 import io.mercury.transport.netty.configurator.NettyConfigurator;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 
 public class NettyClient extends NettyTransport implements TransportClient {
 
 	private Bootstrap bootstrap;
 
+	private volatile Channel channel;
+
 	/**
 	 * 
 	 * @param tag
@@ -26,15 +29,18 @@ public class NettyClient extends NettyTransport implements TransportClient {
 	@Override
 	protected void init() {
 		this.bootstrap = new Bootstrap();
-		this.bootstrap.group(workerGroup).channel(NioSocketChannel.class)
+		this.bootstrap.group(workerGroup).channel(socketChannelClass())
 				.handler(new ChannelInitializer<SocketChannel>() {
 					@Override
 					public void initChannel(SocketChannel ch) throws Exception {
-						ch.pipeline().addLast(channelHandlers);
+						initChannelPipeline(ch.pipeline());
 					}
 				}).option(ChannelOption.SO_KEEPALIVE, configurator.keepAlive())
 				.option(ChannelOption.TCP_NODELAY, configurator.tcpNoDelay());
-		log.info(tag + ": Init-BootStrap.connect -> " + configurator.port());
+		if (epoll)
+			this.bootstrap.option(EpollChannelOption.TCP_QUICKACK, configurator.tcpQuickAck())
+					.option(EpollChannelOption.EPOLL_MODE, epollMode());
+		log.info(tag + ": Init-BootStrap.connect -> " + configurator.port() + ", epoll==" + epoll);
 
 	}
 
@@ -42,9 +48,9 @@ public class NettyClient extends NettyTransport implements TransportClient {
 	public void connect() {
 		try {
 			// Start the client.
-			bootstrap.connect(configurator.host(), configurator.port()).sync()
-					// Wait until the connection is closed.
-					.channel().closeFuture().sync();
+			this.channel = bootstrap.connect(configurator.host(), configurator.port()).sync().channel();
+			// Wait until the connection is closed.
+			channel.closeFuture().sync();
 		} catch (InterruptedException e) {
 			log.error("NettyClient method connection() -> {}", e.getMessage(), e);
 			destroy();
@@ -53,13 +59,16 @@ public class NettyClient extends NettyTransport implements TransportClient {
 
 	@Override
 	public boolean isConnected() {
-		return workerGroup.isShutdown();
+		return channel != null && channel.isActive();
 	}
 
 	@Override
 	public boolean destroy() {
 		log.info("NettyClient call method destroy().");
-		workerGroup.shutdownGracefully();
+		// EventLoopGroup为共享的, 需要单独关闭channel
+		if (channel != null)
+			channel.close();
+		releaseEventLoopGroups();
 		return true;
 	}
 
@@ -1,13 +1,15 @@
 package io.mercury.transport.netty;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 import org.slf4j.Logger;
 
 import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.common.sequence.SysSequence;
 import io.mercury.transport.core.api.Sender;
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 
 public class NettySender implements Sender<byte[]> {
@@ -29,8 +31,7 @@ public class NettySender implements Sender<byte[]> {
 
 	@Override
 	public boolean isConnected() {
-		context.disconnect();
-		return true;
+		return context.channel().isActive();
 	}
 
 	@Override
@@ -46,21 +47,70 @@ public class NettySender implements Sender<byte[]> {
 		return "NettySender-ContextHashCode:" + context.hashCode() + "&";// + byteBuf.capacity();
 	}
 
+	/**
+	 * msg不会被复制, 每次发送只分配一个wrapper, 写出完成前调用者不能修改msg<br>
+	 * 使用voidPromise写出, 写出失败由pipeline末尾的exceptionCaught记录并关闭channel
+	 */
 	@Override
 	public void send(byte[] msg) {
-		log.debug(SysSequence.micro() + " call sender send -> data length : " + msg.length);
-		ByteBuf byteBuf = context.alloc().buffer(msg.length);
-		byteBuf.writeBytes(msg);
-		ChannelFuture writeAndFlush = context.writeAndFlush(byteBuf.retain());
-		writeAndFlush.addListener(new ChannelFutureListener() {
-			@Override
-			public void operationComplete(ChannelFuture future) throws Exception {
-				log.debug(SysSequence.micro() + " call sender send operation complete -> data length : "
-						+ byteBuf.writerIndex());
-				byteBuf.clear();
-				byteBuf.release();
-			}
-		});
+		if (log.isDebugEnabled())
+			log.debug("{} call sender send -> data length : {}", SysSequence.micro(), msg.length);
+		context.writeAndFlush(Unpooled.wrappedBuffer(msg), context.voidPromise());
+	}
+
+	/**
+	 * msg的所有权转移给netty, 写出后由netty release, 调用者需要继续使用时应先retain
+	 * 
+	 * @param msg
+	 */
+	public void send(ByteBuf msg) {
+		if (log.isDebugEnabled())
+			log.debug("{} call sender send -> data length : {}", SysSequence.micro(), msg.readableBytes());
+		context.writeAndFlush(msg, context.voidPromise());
+	}
+
+	/**
+	 * msg不会被复制, 每次发送只分配一个wrapper, 写出完成前调用者不能修改msg的内容, position与limit
+	 * 
+	 * @param msg
+	 */
+	public void send(ByteBuffer msg) {
+		if (log.isDebugEnabled())
+			log.debug("{} call sender send -> data length : {}", SysSequence.micro(), msg.remaining());
+		context.writeAndFlush(Unpooled.wrappedBuffer(msg), context.voidPromise());
+	}
+
+	/**
+	 * 将多个ByteBuf组合为一条消息发送, 不复制数据但分配一个CompositeByteBuf, 所有components的所有权转移给netty
+	 * 
+	 * @param components
+	 */
+	public void send(ByteBuf... components) {
+		send(Unpooled.wrappedBuffer(components));
+	}
+
+	/**
+	 * Write all messages and flush once
+	 */
+	@Override
+	public void sendBatch(List<byte[]> msgs) {
+		for (byte[] msg : msgs)
+			write(msg);
+		context.flush();
+	}
+
+	/**
+	 * Write all messages and flush once
+	 */
+	@Override
+	public void sendBatch(byte[][] msgs, int offset, int length) {
+		for (int i = offset; i < offset + length; i++)
+			write(msgs[i]);
+		context.flush();
+	}
+
+	private void write(byte[] msg) {
+		context.write(Unpooled.wrappedBuffer(msg), context.voidPromise());
 	}
 
-}
\ No newline at end of file
+}
@@ -5,20 +5,28 @@ import io.mercury.transport.netty.configurator.NettyConfigurator;
 import io.mercury.transport.netty.handler.GeneralNettyHandler;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
 
 public class NettyServer extends NettyTransport implements TransportServer {
 
 	private EventLoopGroup bossGroup;
 	private ServerBootstrap serverBootstrap;
 
+	private volatile Channel serverChannel;
+
+	// 已接受的连接, destroy时关闭
+	private final ChannelGroup childChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
 	/**
 	 * 
 	 * @param tag
@@ -31,27 +39,33 @@ public class NettyServer extends NettyTransport implements TransportServer {
 
 	@Override
 	protected void init() {
-		this.bossGroup = new NioEventLoopGroup();
+		this.bossGroup = acquireEventLoopGroup(configurator.bossGroupName(), configurator.bossThreads());
 		this.serverBootstrap = new ServerBootstrap();
-		this.serverBootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+		this.serverBootstrap.group(bossGroup, workerGroup).channel(serverChannelClass())
 				.childHandler(new ChannelInitializer<SocketChannel>() {
 					@Override
 					public void initChannel(SocketChannel socketChannel) throws Exception {
-						socketChannel.pipeline().addLast(channelHandlers);
+						childChannels.add(socketChannel);
+						initChannelPipeline(socketChannel.pipeline());
 					}
 				}).option(ChannelOption.SO_BACKLOG, configurator.backlog())
 				.childOption(ChannelOption.SO_KEEPALIVE, configurator.keepAlive())
 				.childOption(ChannelOption.TCP_NODELAY, configurator.tcpNoDelay());
-		log.info(tag + " : Init-ServerBootStrap.bind -> " + configurator.port());
+		if (epoll)
+			this.serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, configurator.reusePort())
+					.option(EpollChannelOption.EPOLL_MODE, epollMode())
+					.childOption(EpollChannelOption.TCP_QUICKACK, configurator.tcpQuickAck())
+					.childOption(EpollChannelOption.EPOLL_MODE, epollMode());
+		log.info(tag + " : Init-ServerBootStrap.bind -> " + configurator.port() + ", epoll==" + epoll);
 	}
 
 	@Override
 	public void startup() {
 		try {
 			// Start server.
-			serverBootstrap.bind(configurator.host(), configurator.port()).sync()
-					// Wait close.
-					.channel().closeFuture().sync();
+			this.serverChannel = serverBootstrap.bind(configurator.host(), configurator.port()).sync().channel();
+			// Wait close.
+			serverChannel.closeFuture().sync();
 		} catch (InterruptedException e) {
 			log.error("NettyServer method startup() -> {}", e.getMessage(), e);
 			destroy();
@@ -61,14 +75,18 @@ public class NettyServer extends NettyTransport implements TransportServer {
 	@Override
 	public boolean destroy() {
 		log.info("NettyServer call method destroy().");
-		workerGroup.shutdownGracefully();
-		bossGroup.shutdownGracefully();
+		// EventLoopGroup为共享的, 需要单独关闭channel
+		if (serverChannel != null)
+			serverChannel.close();
+		childChannels.close();
+		if (releaseEventLoopGroups())
+			EventLoopGroups.release(bossGroup);
 		return true;
 	}
 
 	@Override
 	public boolean isConnected() {
-		return bossGroup.isShutdown() && workerGroup.isShutdown();
+		return serverChannel != null && serverChannel.isActive();
 	}
 
 	public static void main(String[] args) throws Exception {
@@ -1,39 +1,163 @@
 package io.mercury.transport.netty;
 
-import static io.mercury.common.sys.CurrentRuntime.availableProcessors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 
 import io.mercury.common.annotation.lang.ProtectedAbstractMethod;
+import io.mercury.common.character.Charsets;
 import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.common.util.Assertor;
+import io.mercury.transport.netty.codec.DelimiterAppender;
+import io.mercury.transport.netty.codec.FramingMode;
+import io.mercury.transport.netty.codec.TypedMessageDecoder;
 import io.mercury.transport.netty.configurator.NettyConfigurator;
+import io.mercury.transport.netty.handler.ExceptionClosingHandler;
+import io.mercury.transport.netty.handler.WriteBatchMetrics;
+import io.mercury.transport.netty.handler.WriteBatchingHandler;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 
 public abstract class NettyTransport {
 
 	protected String tag;
 	protected NettyConfigurator configurator;
 
+	// 是否使用native epoll transport
+	protected final boolean epoll;
+
 	protected final EventLoopGroup workerGroup;
 
+	private final AtomicBoolean isReleased = new AtomicBoolean(false);
+
 	protected final ChannelHandler[] channelHandlers;
 
+	// 所有channel共享的批量写出统计
+	protected final WriteBatchMetrics writeBatchMetrics = new WriteBatchMetrics();
+
+	// 可共享的codec, 所有channel使用同一个实例
+	private final byte[] separatorBytes;
+	private final DelimiterAppender delimiterAppender;
+	private final LengthFieldPrepender lengthFieldPrepender;
+	private final TypedMessageDecoder<?> messageDecoder;
+	private final ExceptionClosingHandler exceptionHandler;
+
 	protected final Logger log = CommonLoggerFactory.getLogger(getClass());
 
 	public NettyTransport(String tag, NettyConfigurator configurator, ChannelHandler... channelHandlers) {
 		this.tag = tag;
 		this.configurator = Assertor.nonNull(configurator, "configurator");
 		this.channelHandlers = Assertor.requiredLength(channelHandlers, 1, "channelHandlers");
-		this.workerGroup = new NioEventLoopGroup(availableProcessors() * 2 - availableProcessors() / 2);
+		this.epoll = configurator.useEpoll() && Epoll.isAvailable();
+		if (configurator.useEpoll() && !epoll)
+			log.warn("{} : epoll unavailable, fallback to NIO -> {}", tag, Epoll.unavailabilityCause().getMessage());
+		this.separatorBytes = String.valueOf(configurator.separator()).getBytes(Charsets.UTF8);
+		this.delimiterAppender = configurator.framingMode() == FramingMode.DELIMITER
+				? new DelimiterAppender(separatorBytes)
+				: null;
+		this.lengthFieldPrepender = configurator.framingMode() == FramingMode.LENGTH_FIELD
+				? new LengthFieldPrepender(configurator.lengthFieldLength())
+				: null;
+		this.messageDecoder = configurator.messageDecoder() == null ? null
+				: new TypedMessageDecoder<Object>(configurator.messageDecoder());
+		this.exceptionHandler = new ExceptionClosingHandler(tag);
+		this.workerGroup = acquireEventLoopGroup(configurator.workerGroupName(), configurator.workerThreads());
 		init();
 	}
 
 	@ProtectedAbstractMethod
 	protected abstract void init();
 
+	/**
+	 * 获取按名称共享的EventLoopGroup, 使用完毕后调用 {@link #releaseEventLoopGroups()}
+	 * 
+	 * @param name
+	 * @param nThreads 0 for netty default
+	 * @return
+	 */
+	protected EventLoopGroup acquireEventLoopGroup(String name, int nThreads) {
+		return EventLoopGroups.acquire(name, nThreads, epoll, configurator.threadAffinity());
+	}
+
+	/**
+	 * 释放workerGroup, 只有第一次调用生效
+	 * 
+	 * @return false if already released
+	 */
+	protected boolean releaseEventLoopGroups() {
+		if (!isReleased.compareAndSet(false, true))
+			return false;
+		EventLoopGroups.release(workerGroup);
+		return true;
+	}
+
+	protected Class<? extends ServerChannel> serverChannelClass() {
+		return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+	}
+
+	protected Class<? extends Channel> socketChannelClass() {
+		return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+	}
+
+	/**
+	 * 按配置在用户handler之前加入内置handler:<br>
+	 * 配置了sendInterval时加入 {@link WriteBatchingHandler}, 合并flush;<br>
+	 * 按framingMode加入分帧codec, 用户handler收到的是完整帧的retained slice;<br>
+	 * 配置了messageDecoder时加入 {@link TypedMessageDecoder};<br>
+	 * 在用户handler之后加入 {@link ExceptionClosingHandler}, 记录voidPromise写出失败并关闭channel.
+	 * 
+	 * @param pipeline
+	 */
+	protected void initChannelPipeline(ChannelPipeline pipeline) {
+		if (configurator.sendInterval() > 0 && configurator.sendIntervalTimeUnit() != null)
+			pipeline.addLast("writeBatching", new WriteBatchingHandler(configurator.writeByteBufSize(),
+					configurator.sendInterval(), configurator.sendIntervalTimeUnit(), writeBatchMetrics));
+		switch (configurator.framingMode()) {
+		case DELIMITER:
+			pipeline.addLast("frameDecoder", new DelimiterBasedFrameDecoder(configurator.maxFrameLength(),
+					Unpooled.wrappedBuffer(separatorBytes)));
+			pipeline.addLast("frameEncoder", delimiterAppender);
+			break;
+		case LENGTH_FIELD:
+			pipeline.addLast("frameDecoder",
+					new LengthFieldBasedFrameDecoder(configurator.maxFrameLength(), 0,
+							configurator.lengthFieldLength(), 0, configurator.lengthFieldLength()));
+			pipeline.addLast("frameEncoder", lengthFieldPrepender);
+			break;
+		default:
+			break;
+		}
+		if (messageDecoder != null)
+			pipeline.addLast("messageDecoder", messageDecoder);
+		pipeline.addLast(channelHandlers);
+		pipeline.addLast("exceptionHandler", exceptionHandler);
+	}
+
+	protected EpollMode epollMode() {
+		return configurator.edgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+	}
+
+	public WriteBatchMetrics writeBatchMetrics() {
+		return writeBatchMetrics;
+	}
+
+	public boolean isEpoll() {
+		return epoll;
+	}
+
 	public String name() {
 		return tag;
 	}
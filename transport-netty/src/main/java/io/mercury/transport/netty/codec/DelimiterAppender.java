@@ -0,0 +1,30 @@
+package io.mercury.transport.netty.codec;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+/**
+ * 在每条消息后追加分隔符, 与 {@link io.netty.handler.codec.DelimiterBasedFrameDecoder}
+ * 对应, 不复制消息内容
+ */
+@Sharable
+public final class DelimiterAppender extends MessageToMessageEncoder<ByteBuf> {
+
+	private final ByteBuf delimiter;
+
+	public DelimiterAppender(byte[] delimiter) {
+		this.delimiter = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(delimiter));
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		// MessageToMessageEncoder会release msg, 组合时需要retain
+		out.add(Unpooled.wrappedBuffer(msg.retain(), delimiter.duplicate()));
+	}
+
+}
@@ -0,0 +1,23 @@
+package io.mercury.transport.netty.codec;
+
+/**
+ * NettyServer/NettyClient自动安装的分帧codec
+ */
+public enum FramingMode {
+
+	/**
+	 * 不分帧, handler收到的ByteBuf为每次读取的数据
+	 */
+	NONE,
+
+	/**
+	 * 以NettyConfigurator.separator()分隔消息
+	 */
+	DELIMITER,
+
+	/**
+	 * 消息前加长度字段, 长度不包含长度字段本身
+	 */
+	LENGTH_FIELD,
+
+}
@@ -0,0 +1,34 @@
+package io.mercury.transport.netty.codec;
+
+import java.util.List;
+import java.util.function.Function;
+
+import io.mercury.common.util.Assertor;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+/**
+ * 将完整的帧解码为类型T交给之后的handler, decoder返回null时丢弃该帧<br>
+ * 帧在decoder返回后被release, decoder不能保留对帧的引用.
+ *
+ * @param <T>
+ */
+@Sharable
+public final class TypedMessageDecoder<T> extends MessageToMessageDecoder<ByteBuf> {
+
+	private final Function<ByteBuf, ? extends T> decoder;
+
+	public TypedMessageDecoder(Function<ByteBuf, ? extends T> decoder) {
+		this.decoder = Assertor.nonNull(decoder, "decoder");
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		T decoded = decoder.apply(msg);
+		if (decoded != null)
+			out.add(decoded);
+	}
+
+}
@@ -1,9 +1,14 @@
 package io.mercury.transport.netty.configurator;
 
+import static io.mercury.common.sys.CurrentRuntime.availableProcessors;
+
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import io.mercury.common.functional.ShutdownEvent;
 import io.mercury.transport.core.configurator.TransportConfigurator;
+import io.mercury.transport.netty.codec.FramingMode;
+import io.netty.buffer.ByteBuf;
 
 public class NettyConfigurator implements TransportConfigurator {
 
@@ -16,6 +21,19 @@ public class NettyConfigurator implements TransportConfigurator {
 	private TimeUnit sendIntervalTimeUnit;
 	private int writeByteBufSize;
 	private char separator;
+	private boolean useEpoll;
+	private boolean reusePort;
+	private boolean tcpQuickAck;
+	private boolean edgeTriggered;
+	private String workerGroupName;
+	private int workerThreads;
+	private String bossGroupName;
+	private int bossThreads;
+	private boolean threadAffinity;
+	private FramingMode framingMode;
+	private int lengthFieldLength;
+	private int maxFrameLength;
+	private Function<ByteBuf, ?> messageDecoder;
 
 	private ShutdownEvent<Exception> shutdownEvent;
 
@@ -32,6 +50,19 @@ public class NettyConfigurator implements TransportConfigurator {
 		this.sendIntervalTimeUnit = builder.sendIntervalTimeUnit;
 		this.writeByteBufSize = builder.writeByteBufSize;
 		this.separator = builder.separator;
+		this.useEpoll = builder.useEpoll;
+		this.reusePort = builder.reusePort;
+		this.tcpQuickAck = builder.tcpQuickAck;
+		this.edgeTriggered = builder.edgeTriggered;
+		this.workerGroupName = builder.workerGroupName;
+		this.workerThreads = builder.workerThreads;
+		this.bossGroupName = builder.bossGroupName;
+		this.bossThreads = builder.bossThreads;
+		this.threadAffinity = builder.threadAffinity;
+		this.framingMode = builder.framingMode;
+		this.lengthFieldLength = builder.lengthFieldLength;
+		this.maxFrameLength = builder.maxFrameLength;
+		this.messageDecoder = builder.messageDecoder;
 		this.shutdownEvent = builder.shutdownEvent;
 	}
 
@@ -61,6 +92,11 @@ public class NettyConfigurator implements TransportConfigurator {
 		return tcpNoDelay;
 	}
 
+	/**
+	 * 大于0时合并flush, 延迟不超过sendInterval
+	 * 
+	 * @return the sendInterval
+	 */
 	public long sendInterval() {
 		return sendInterval;
 	}
@@ -69,14 +105,137 @@ public class NettyConfigurator implements TransportConfigurator {
 		return sendIntervalTimeUnit;
 	}
 
+	/**
+	 * 合并flush时, 未flush的数据达到此大小立即flush
+	 * 
+	 * @return the writeByteBufSize
+	 */
 	public int writeByteBufSize() {
 		return writeByteBufSize;
 	}
 
+	/**
+	 * FramingMode.DELIMITER使用的分隔符
+	 * 
+	 * @return the separator
+	 */
 	public char separator() {
 		return separator;
 	}
 
+	/**
+	 * 使用native epoll transport, 不可用时使用NIO
+	 * 
+	 * @return the useEpoll
+	 */
+	public boolean useEpoll() {
+		return useEpoll;
+	}
+
+	/**
+	 * SO_REUSEPORT, 仅epoll有效
+	 * 
+	 * @return the reusePort
+	 */
+	public boolean reusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * TCP_QUICKACK, 仅epoll有效
+	 * 
+	 * @return the tcpQuickAck
+	 */
+	public boolean tcpQuickAck() {
+		return tcpQuickAck;
+	}
+
+	/**
+	 * true为边缘触发, false为水平触发, 仅epoll有效
+	 * 
+	 * @return the edgeTriggered
+	 */
+	public boolean edgeTriggered() {
+		return edgeTriggered;
+	}
+
+	/**
+	 * 同名的transport共享worker EventLoopGroup
+	 * 
+	 * @return the workerGroupName
+	 */
+	public String workerGroupName() {
+		return workerGroupName;
+	}
+
+	/**
+	 * 
+	 * @return the workerThreads
+	 */
+	public int workerThreads() {
+		return workerThreads;
+	}
+
+	/**
+	 * 同名的server共享boss EventLoopGroup
+	 * 
+	 * @return the bossGroupName
+	 */
+	public String bossGroupName() {
+		return bossGroupName;
+	}
+
+	/**
+	 * 
+	 * @return the bossThreads
+	 */
+	public int bossThreads() {
+		return bossThreads;
+	}
+
+	/**
+	 * EventLoop线程绑定到不同的CPU核, 需要net.openhft:affinity
+	 * 
+	 * @return the threadAffinity
+	 */
+	public boolean threadAffinity() {
+		return threadAffinity;
+	}
+
+	/**
+	 * 
+	 * @return the framingMode
+	 */
+	public FramingMode framingMode() {
+		return framingMode;
+	}
+
+	/**
+	 * FramingMode.LENGTH_FIELD长度字段字节数, 1/2/3/4/8
+	 * 
+	 * @return the lengthFieldLength
+	 */
+	public int lengthFieldLength() {
+		return lengthFieldLength;
+	}
+
+	/**
+	 * 
+	 * @return the maxFrameLength
+	 */
+	public int maxFrameLength() {
+		return maxFrameLength;
+	}
+
+	/**
+	 * 不为null时将每一帧解码后交给handler
+	 * 
+	 * @return the messageDecoder
+	 */
+	public Function<ByteBuf, ?> messageDecoder() {
+		return messageDecoder;
+	}
+
 	public ShutdownEvent<Exception> shutdownEvent() {
 		return shutdownEvent;
 	}
@@ -102,6 +261,20 @@ public class NettyConfigurator implements TransportConfigurator {
 		private TimeUnit sendIntervalTimeUnit;
 		private int writeByteBufSize = 1024 * 8;
 		private char separator = ';';
+		private boolean useEpoll = false;
+		private boolean reusePort = false;
+		private boolean tcpQuickAck = false;
+		// 与netty epoll默认模式一致
+		private boolean edgeTriggered = true;
+		private String workerGroupName = "netty-worker";
+		private int workerThreads = availableProcessors();
+		private String bossGroupName = "netty-boss";
+		private int bossThreads = 1;
+		private boolean threadAffinity = false;
+		private FramingMode framingMode = FramingMode.NONE;
+		private int lengthFieldLength = 4;
+		private int maxFrameLength = 16 * 1024 * 1024;
+		private Function<ByteBuf, ?> messageDecoder;
 		private ShutdownEvent<Exception> shutdownEvent;
 
 		private Builder() {
@@ -148,6 +321,63 @@ public class NettyConfigurator implements TransportConfigurator {
 			return this;
 		}
 
+		public Builder useEpoll(boolean useEpoll) {
+			this.useEpoll = useEpoll;
+			return this;
+		}
+
+		public Builder reusePort(boolean reusePort) {
+			this.reusePort = reusePort;
+			return this;
+		}
+
+		public Builder tcpQuickAck(boolean tcpQuickAck) {
+			this.tcpQuickAck = tcpQuickAck;
+			return this;
+		}
+
+		public Builder edgeTriggered(boolean edgeTriggered) {
+			this.edgeTriggered = edgeTriggered;
+			return this;
+		}
+
+		public Builder workerGroup(String workerGroupName, int workerThreads) {
+			this.workerGroupName = workerGroupName;
+			this.workerThreads = workerThreads;
+			return this;
+		}
+
+		public Builder bossGroup(String bossGroupName, int bossThreads) {
+			this.bossGroupName = bossGroupName;
+			this.bossThreads = bossThreads;
+			return this;
+		}
+
+		public Builder threadAffinity(boolean threadAffinity) {
+			this.threadAffinity = threadAffinity;
+			return this;
+		}
+
+		public Builder framingMode(FramingMode framingMode) {
+			this.framingMode = framingMode;
+			return this;
+		}
+
+		public Builder lengthFieldLength(int lengthFieldLength) {
+			this.lengthFieldLength = lengthFieldLength;
+			return this;
+		}
+
+		public Builder maxFrameLength(int maxFrameLength) {
+			this.maxFrameLength = maxFrameLength;
+			return this;
+		}
+
+		public Builder messageDecoder(Function<ByteBuf, ?> messageDecoder) {
+			this.messageDecoder = messageDecoder;
+			return this;
+		}
+
 		public Builder shutdownEvent(ShutdownEvent<Exception> shutdownEvent) {
 			this.shutdownEvent = shutdownEvent;
 			return this;
@@ -0,0 +1,32 @@
+package io.mercury.transport.netty.handler;
+
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * 位于pipeline末尾, 处理未被用户handler处理的异常.<br>
+ * 使用voidPromise写出时, 写出失败以exceptionCaught事件传递到这里, 记录日志并关闭channel.
+ */
+@Sharable
+public final class ExceptionClosingHandler extends ChannelInboundHandlerAdapter {
+
+	private final String tag;
+
+	private final Logger log = CommonLoggerFactory.getLogger(getClass());
+
+	public ExceptionClosingHandler(String tag) {
+		this.tag = tag;
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+		log.error("{} : channel {} exception caught, close channel -> {}", tag, ctx.channel().remoteAddress(),
+				cause.getMessage(), cause);
+		ctx.close();
+	}
+
+}
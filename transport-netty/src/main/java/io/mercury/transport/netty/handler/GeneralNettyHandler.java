@@ -5,8 +5,7 @@ import org.slf4j.Logger;
 
 import io.mercury.common.log.CommonLoggerFactory;
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelFutureListener;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 
@@ -51,15 +50,8 @@ public abstract class GeneralNettyHandler extends ChannelInboundHandlerAdapter {
 	}
 
 	protected void sendBytes(ChannelHandlerContext ctx, byte[] bytes) {
-		ByteBuf byteBuf = ctx.alloc().buffer(bytes.length);
-		byteBuf.writeBytes(bytes);
-		ctx.writeAndFlush(byteBuf.retain()).addListener(new ChannelFutureListener() {
-			@Override
-			public void operationComplete(ChannelFuture future) throws Exception {
-				byteBuf.clear();
-				byteBuf.release();
-			}
-		});
+		// bytes不会被复制, wrapper写出后由netty release
+		ctx.writeAndFlush(Unpooled.wrappedBuffer(bytes), ctx.voidPromise());
 	}
 
 }
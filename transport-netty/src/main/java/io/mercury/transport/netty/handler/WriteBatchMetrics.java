@@ -0,0 +1,74 @@
+package io.mercury.transport.netty.handler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link WriteBatchingHandler} 的批量写出统计, 可以在多个channel之间共享
+ */
+public final class WriteBatchMetrics {
+
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder messages = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+
+	void record(int batchMessages, long batchBytes) {
+		flushes.increment();
+		messages.add(batchMessages);
+		bytes.add(batchBytes);
+	}
+
+	/**
+	 * 
+	 * @return flush count
+	 */
+	public long flushes() {
+		return flushes.sum();
+	}
+
+	/**
+	 * 
+	 * @return written message count
+	 */
+	public long messages() {
+		return messages.sum();
+	}
+
+	/**
+	 * 
+	 * @return written bytes
+	 */
+	public long bytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * 
+	 * @return average messages per flush
+	 */
+	public double averageBatchSize() {
+		long flushes = this.flushes.sum();
+		return flushes == 0 ? 0D : (double) messages.sum() / flushes;
+	}
+
+	/**
+	 * 
+	 * @return average bytes per flush
+	 */
+	public double averageBatchBytes() {
+		long flushes = this.flushes.sum();
+		return flushes == 0 ? 0D : (double) bytes.sum() / flushes;
+	}
+
+	public void reset() {
+		flushes.reset();
+		messages.reset();
+		bytes.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "WriteBatchMetrics [flushes=" + flushes() + ", messages=" + messages() + ", bytes=" + bytes()
+				+ ", averageBatchSize=" + averageBatchSize() + "]";
+	}
+
+}
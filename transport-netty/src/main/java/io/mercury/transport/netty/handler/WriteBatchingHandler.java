@@ -0,0 +1,116 @@
+package io.mercury.transport.netty.handler;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 合并flush<br>
+ *
+ * flush请求被延迟, 直到未flush的数据达到maxBatchBytes或者距第一次flush请求超过flushInterval, 再执行一次flush.
+ * 以有上限的延迟换取更少的系统调用. 每个channel使用一个实例.
+ */
+public final class WriteBatchingHandler extends ChannelDuplexHandler {
+
+	private final long maxBatchBytes;
+	private final long flushIntervalNanos;
+	private final WriteBatchMetrics metrics;
+
+	// 以下字段只在EventLoop线程中访问
+	private int pendingMessages;
+	private long pendingBytes;
+	private ScheduledFuture<?> scheduledFlush;
+	private ChannelHandlerContext ctx;
+
+	private final Runnable flushTask = () -> flushNow(ctx);
+
+	/**
+	 * 
+	 * @param maxBatchBytes
+	 * @param flushInterval
+	 * @param timeUnit
+	 * @param metrics       可以为null
+	 */
+	public WriteBatchingHandler(long maxBatchBytes, long flushInterval, TimeUnit timeUnit, WriteBatchMetrics metrics) {
+		this.maxBatchBytes = maxBatchBytes;
+		this.flushIntervalNanos = timeUnit.toNanos(flushInterval);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		pendingMessages++;
+		pendingBytes += sizeOf(msg);
+		ctx.write(msg, promise);
+		if (pendingBytes >= maxBatchBytes)
+			flushNow(ctx);
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		if (pendingMessages == 0)
+			return;
+		if (pendingBytes >= maxBatchBytes || flushIntervalNanos <= 0)
+			flushNow(ctx);
+		else if (scheduledFlush == null)
+			scheduledFlush = ctx.executor().schedule(flushTask, flushIntervalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		// 不可写时尽快写出已有数据
+		if (!ctx.channel().isWritable())
+			flushNow(ctx);
+		ctx.fireChannelWritabilityChanged();
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		flushNow(ctx);
+		ctx.close(promise);
+	}
+
+	@Override
+	public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+		flushNow(ctx);
+		ctx.disconnect(promise);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) {
+		flushNow(ctx);
+	}
+
+	private void flushNow(ChannelHandlerContext ctx) {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		if (pendingMessages == 0)
+			return;
+		if (metrics != null)
+			metrics.record(pendingMessages, pendingBytes);
+		pendingMessages = 0;
+		pendingBytes = 0;
+		ctx.flush();
+	}
+
+	private static long sizeOf(Object msg) {
+		if (msg instanceof ByteBuf)
+			return ((ByteBuf) msg).readableBytes();
+		if (msg instanceof ByteBufHolder)
+			return ((ByteBufHolder) msg).content().readableBytes();
+		return 0;
+	}
+
+}
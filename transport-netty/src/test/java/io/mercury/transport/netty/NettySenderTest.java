@@ -0,0 +1,60 @@
+package io.mercury.transport.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import io.mercury.common.character.Charsets;
+import io.mercury.transport.netty.handler.ExceptionClosingHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+public class NettySenderTest {
+
+	private static NettySender newSender(EmbeddedChannel channel) {
+		channel.pipeline().addLast("sender", new ChannelInboundHandlerAdapter());
+		channel.pipeline().addLast("exceptionHandler", new ExceptionClosingHandler("test"));
+		return new NettySender(channel.pipeline().context("sender"));
+	}
+
+	@Test
+	public void testSend() {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		NettySender sender = newSender(channel);
+		sender.send("abc".getBytes());
+		ByteBuf written = channel.readOutbound();
+		assertEquals("abc", written.toString(Charsets.UTF8));
+		written.release();
+		assertTrue(channel.isOpen());
+		channel.finishAndReleaseAll();
+	}
+
+	@Test
+	public void testWriteFailureClosesChannel() {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		channel.pipeline().addLast("broken", new ChannelOutboundHandlerAdapter() {
+			@Override
+			public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+				ReferenceCountUtil.release(msg);
+				promise.setFailure(new IOException("broken pipe"));
+			}
+		});
+		NettySender sender = newSender(channel);
+		// voidPromise的写出失败以exceptionCaught传递到pipeline末尾
+		sender.send("abc".getBytes());
+		channel.runPendingTasks();
+		assertFalse(channel.isOpen());
+		// 异常已经被处理, 不会由EmbeddedChannel重新抛出
+		channel.checkException();
+	}
+
+}
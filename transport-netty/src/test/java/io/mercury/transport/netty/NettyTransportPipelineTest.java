@@ -0,0 +1,187 @@
+package io.mercury.transport.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.mercury.common.character.Charsets;
+import io.mercury.transport.netty.codec.FramingMode;
+import io.mercury.transport.netty.configurator.NettyConfigurator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class NettyTransportPipelineTest {
+
+	private PipelineTransport transport;
+
+	private EmbeddedChannel channel;
+
+	@After
+	public void tearDown() {
+		if (channel != null)
+			channel.finishAndReleaseAll();
+		if (transport != null)
+			transport.releaseEventLoopGroups();
+	}
+
+	/**
+	 * 只使用initChannelPipeline, 不连接
+	 */
+	private static final class PipelineTransport extends NettyTransport {
+
+		private PipelineTransport(NettyConfigurator configurator) {
+			// 用户handler转发所有事件, 帧最终进入EmbeddedChannel的inboundMessages
+			super("pipeline-test", configurator, new ChannelInboundHandlerAdapter());
+		}
+
+		@Override
+		protected void init() {
+		}
+
+	}
+
+	private void newChannel(NettyConfigurator.Builder builder) {
+		transport = new PipelineTransport(builder.workerGroup("pipeline-test", 1).build());
+		channel = new EmbeddedChannel();
+		transport.initChannelPipeline(channel.pipeline());
+	}
+
+	private static ByteBuf buf(String str) {
+		return Unpooled.copiedBuffer(str, Charsets.UTF8);
+	}
+
+	private static String text(ByteBuf buf) {
+		return buf.toString(Charsets.UTF8);
+	}
+
+	/**
+	 * 读取一个入站帧并release
+	 */
+	private String readFrame() {
+		ByteBuf frame = channel.readInbound();
+		String text = text(frame);
+		frame.release();
+		assertEquals(0, frame.refCnt());
+		return text;
+	}
+
+	/**
+	 * 将全部出站消息合并为一个ByteBuf
+	 */
+	private ByteBuf readAllOutbound() {
+		ByteBuf all = Unpooled.buffer();
+		ByteBuf out;
+		while ((out = channel.readOutbound()) != null) {
+			all.writeBytes(out);
+			out.release();
+		}
+		return all;
+	}
+
+	@Test
+	public void testDelimiterRoundTrip() {
+		newChannel(NettyConfigurator.builder().framingMode(FramingMode.DELIMITER).separator(';'));
+		ByteBuf payload = buf("abc");
+		channel.writeOutbound(payload);
+		ByteBuf encoded = readAllOutbound();
+		assertEquals("abc;", text(encoded));
+		// 追加分隔符不复制payload, 写出后payload被release
+		assertEquals(0, payload.refCnt());
+
+		// 出站的结果可以被对端解码
+		channel.writeInbound(encoded);
+		assertEquals("abc", readFrame());
+		assertNull(channel.readInbound());
+	}
+
+	@Test
+	public void testDelimiterSplitAndCoalesced() {
+		newChannel(NettyConfigurator.builder().framingMode(FramingMode.DELIMITER).separator(';'));
+		// 一帧分多次到达
+		channel.writeInbound(buf("ab"));
+		assertNull(channel.readInbound());
+		channel.writeInbound(buf("c;de"));
+		assertEquals("abc", readFrame());
+		assertNull(channel.readInbound());
+		channel.writeInbound(buf("f;"));
+		assertEquals("def", readFrame());
+
+		// 多帧一次到达
+		ByteBuf coalesced = buf("x;y;z;");
+		channel.writeInbound(coalesced);
+		assertEquals("x", readFrame());
+		assertEquals("y", readFrame());
+		assertEquals("z", readFrame());
+		assertNull(channel.readInbound());
+		// 帧是输入的retained slice, 全部release后输入也被释放
+		assertEquals(0, coalesced.refCnt());
+	}
+
+	@Test
+	public void testLengthFieldRoundTrip() {
+		newChannel(NettyConfigurator.builder().framingMode(FramingMode.LENGTH_FIELD).lengthFieldLength(4));
+		ByteBuf payload = buf("abc");
+		channel.writeOutbound(payload);
+		channel.writeOutbound(buf("de"));
+		ByteBuf encoded = readAllOutbound();
+		assertEquals(4 + 3 + 4 + 2, encoded.readableBytes());
+		assertEquals(3, encoded.getInt(0));
+		assertEquals(0, payload.refCnt());
+
+		// 长度字段和帧内容分开到达
+		channel.writeInbound(encoded.readRetainedSlice(2));
+		assertNull(channel.readInbound());
+		channel.writeInbound(encoded.readRetainedSlice(6));
+		assertEquals("abc", readFrame());
+		assertNull(channel.readInbound());
+		channel.writeInbound(encoded.readRetainedSlice(encoded.readableBytes()));
+		assertEquals("de", readFrame());
+		encoded.release();
+		assertEquals(0, encoded.refCnt());
+	}
+
+	@Test
+	public void testLengthFieldCoalesced() {
+		newChannel(NettyConfigurator.builder().framingMode(FramingMode.LENGTH_FIELD).lengthFieldLength(2));
+		ByteBuf coalesced = Unpooled.buffer();
+		coalesced.writeShort(1).writeBytes(buf("a")).writeShort(2).writeBytes(buf("bc"));
+		channel.writeInbound(coalesced);
+		assertEquals("a", readFrame());
+		assertEquals("bc", readFrame());
+		assertNull(channel.readInbound());
+		assertEquals(0, coalesced.refCnt());
+	}
+
+	@Test
+	public void testTypedMessageDecoder() {
+		List<ByteBuf> frames = new ArrayList<>();
+		newChannel(NettyConfigurator.builder().framingMode(FramingMode.DELIMITER).separator(';')
+				.messageDecoder(frame -> {
+					frames.add(frame);
+					String text = text(frame);
+					// 返回null时丢弃该帧
+					return text.equals("skip") ? null : text;
+				}));
+		ByteBuf input = buf("a;skip;b;");
+		channel.writeInbound(input);
+		assertEquals("a", channel.readInbound());
+		assertEquals("b", channel.readInbound());
+		assertNull(channel.readInbound());
+		// decoder返回后帧被release
+		assertEquals(3, frames.size());
+		for (ByteBuf frame : frames)
+			assertEquals(0, frame.refCnt());
+		assertEquals(0, input.refCnt());
+		assertFalse(channel.finish());
+		channel = null;
+	}
+
+}
@@ -0,0 +1,106 @@
+package io.mercury.transport.netty.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class WriteBatchingHandlerTest {
+
+	private final WriteBatchMetrics metrics = new WriteBatchMetrics();
+
+	private EmbeddedChannel channel;
+
+	@After
+	public void tearDown() {
+		channel.finishAndReleaseAll();
+	}
+
+	private void newChannel(long maxBatchBytes, long flushIntervalMillis) {
+		channel = new EmbeddedChannel(
+				new WriteBatchingHandler(maxBatchBytes, flushIntervalMillis, TimeUnit.MILLISECONDS, metrics));
+	}
+
+	private void writeAndFlush(int bytes) {
+		channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[bytes]));
+	}
+
+	// EmbeddedChannel只在flush时将消息移入outboundMessages
+	private int flushed() {
+		return channel.outboundMessages().size();
+	}
+
+	@Test
+	public void testFlushAtSizeThreshold() {
+		newChannel(8, TimeUnit.HOURS.toMillis(1));
+		writeAndFlush(4);
+		assertEquals(0, flushed());
+		assertEquals(0, metrics.flushes());
+		writeAndFlush(4);
+		assertEquals(2, flushed());
+		assertEquals(1, metrics.flushes());
+		assertEquals(2, metrics.messages());
+		assertEquals(8, metrics.bytes());
+		// 超过阈值的单条消息立即flush
+		writeAndFlush(16);
+		assertEquals(3, flushed());
+		assertEquals(2, metrics.flushes());
+	}
+
+	@Test
+	public void testFlushOnInterval() throws InterruptedException {
+		newChannel(1024, 50);
+		writeAndFlush(4);
+		writeAndFlush(4);
+		channel.runScheduledPendingTasks();
+		assertEquals(0, flushed());
+		Thread.sleep(100);
+		channel.runScheduledPendingTasks();
+		// 同一个间隔内的flush请求合并为一次
+		assertEquals(2, flushed());
+		assertEquals(1, metrics.flushes());
+		assertEquals(2, metrics.messages());
+
+		// flush之后的写出重新开始计时
+		writeAndFlush(4);
+		assertEquals(2, flushed());
+		Thread.sleep(100);
+		channel.runScheduledPendingTasks();
+		assertEquals(3, flushed());
+		assertEquals(2, metrics.flushes());
+	}
+
+	@Test
+	public void testFlushOnClose() {
+		newChannel(1024, TimeUnit.HOURS.toMillis(1));
+		writeAndFlush(4);
+		assertEquals(0, flushed());
+		channel.close();
+		assertFalse(channel.isOpen());
+		assertEquals(1, flushed());
+		assertEquals(1, metrics.flushes());
+	}
+
+	@Test
+	public void testFlushOnUnwritable() {
+		newChannel(1024, TimeUnit.HOURS.toMillis(1));
+		channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+		writeAndFlush(4);
+		assertEquals(0, flushed());
+		assertTrue(channel.isWritable());
+		// 未flush的数据超过高水位, channel不可写时立即flush
+		writeAndFlush(32);
+		assertEquals(2, flushed());
+		assertEquals(1, metrics.flushes());
+		assertTrue(channel.isWritable());
+	}
+
+}
@@ -12,18 +12,17 @@ import javax.annotation.Nonnull;
 
 import org.slf4j.Logger;
 
-import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.Method;
 import com.rabbitmq.client.ShutdownSignalException;
 
 import io.mercury.common.functional.ShutdownEvent;
 import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.common.util.Assertor;
-import io.mercury.common.util.StringUtil;
 import io.mercury.transport.core.TransportModule;
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.ConnectionPurpose;
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.SharedConnection;
 import io.mercury.transport.rabbitmq.configurator.RmqConnection;
 
 public abstract class AbstractRabbitMqTransport implements TransportModule, Closeable {
@@ -32,6 +31,8 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 	protected ConnectionFactory connectionFactory;
 	protected volatile Connection connection;
 	protected volatile Channel channel;
+	// rmqConnection.sharedConnection()为true时租用的共享连接
+	private volatile SharedConnection sharedConnection;
 
 	// 存储配置信息对象
 	protected RmqConnection rmqConnection;
@@ -60,7 +61,20 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 		this.shutdownEvent = rmqConnection.shutdownEvent();
 	}
 
+	/**
+	 * 共享连接时的连接用途, 消费者覆盖此方法以使用与发布者不同的连接
+	 * 
+	 * @return
+	 */
+	protected ConnectionPurpose connectionPurpose() {
+		return ConnectionPurpose.PUBLISH;
+	}
+
 	protected void createConnection() {
+		if (rmqConnection.sharedConnection()) {
+			createSharedChannel();
+			return;
+		}
 		log.info("Create connection started");
 		if (connectionFactory == null) {
 			connectionFactory = rmqConnection.createConnectionFactory();
@@ -73,7 +87,7 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 			connection.addShutdownListener(signal -> {
 				// 输出信号到控制台
 				log.info("Shutdown listener message -> {}", signal.getMessage());
-				if (isNormalShutdown(signal))
+				if (RabbitMqConnectionManager.isNormalShutdown(signal))
 					log.info("connection id -> {}, is normal shutdown", connection.getId());
 				else {
 					log.error("connection id -> {}, not normal shutdown", connection.getId());
@@ -93,6 +107,25 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 		}
 	}
 
+	private void createSharedChannel() {
+		log.info("Create channel on shared connection started, tag -> {}", tag);
+		try {
+			SharedConnection shared = RabbitMqConnectionManager.acquire(rmqConnection, connectionPurpose());
+			this.sharedConnection = shared;
+			this.connection = shared.connection();
+			channel = shared.createChannel();
+			log.info("Call method connection.createChannel() finished, connection id -> {}, channel number -> {}",
+					connection.getId(), channel.getChannelNumber());
+		} catch (IOException e) {
+			log.error("Method createSharedChannel() throw IOException -> {}", e.getMessage(), e);
+		} catch (TimeoutException e) {
+			log.error("Method createSharedChannel() throw TimeoutException -> {}", e.getMessage(), e);
+		} catch (ShutdownSignalException e) {
+			// 共享连接正在恢复
+			log.error("Method createSharedChannel() throw ShutdownSignalException -> {}", e.getMessage(), e);
+		}
+	}
+
 	@Override
 	public boolean isConnected() {
 		return connection != null && connection.isOpen() && channel != null && channel.isOpen();
@@ -107,20 +140,6 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 		return isConnected();
 	}
 
-	private boolean isNormalShutdown(ShutdownSignalException sig) {
-		Method reason = sig.getReason();
-		if (reason instanceof AMQP.Channel.Close) {
-			AMQP.Channel.Close channelClose = (AMQP.Channel.Close) reason;
-			return channelClose.getReplyCode() == AMQP.REPLY_SUCCESS
-					&& StringUtil.isEquals(channelClose.getReplyText(), "OK");
-		} else if (reason instanceof AMQP.Connection.Close) {
-			AMQP.Connection.Close connectionClose = (AMQP.Connection.Close) reason;
-			return connectionClose.getReplyCode() == AMQP.REPLY_SUCCESS
-					&& StringUtil.isEquals(connectionClose.getReplyText(), "OK");
-		} else
-			return false;
-	}
-
 	protected void closeConnection() {
 		log.info("Call method closeConnection()");
 		try {
@@ -128,7 +147,7 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 				channel.close();
 				log.info("Channel is closeed!");
 			}
-			if (connection != null && connection.isOpen()) {
+			if (sharedConnection == null && connection != null && connection.isOpen()) {
 				connection.close();
 				log.info("Connection is closeed!");
 			}
@@ -136,6 +155,15 @@ public abstract class AbstractRabbitMqTransport implements TransportModule, Clos
 			log.error("Method closeConnection() throw IOException -> {}", e.getMessage(), e);
 		} catch (TimeoutException e) {
 			log.error("Method closeConnection() throw TimeoutException -> {}", e.getMessage(), e);
+		} catch (ShutdownSignalException e) {
+			log.error("Method closeConnection() throw ShutdownSignalException -> {}", e.getMessage(), e);
+		} finally {
+			SharedConnection shared = this.sharedConnection;
+			if (shared != null) {
+				// 共享连接由RabbitMqConnectionManager在引用计数归零时关闭
+				this.sharedConnection = null;
+				RabbitMqConnectionManager.release(shared);
+			}
 		}
 	}
 
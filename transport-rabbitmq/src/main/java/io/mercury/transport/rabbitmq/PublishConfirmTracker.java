@@ -0,0 +1,257 @@
+package io.mercury.transport.rabbitmq;
+
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.ConfirmListener;
+
+import io.mercury.transport.core.exception.PublishFailedException;
+import io.mercury.transport.rabbitmq.exception.AmqpNoConfirmException;
+
+/**
+ * 异步发布确认跟踪器<br>
+ *
+ * 使用有序结构记录一个channel上尚未确认的publish sequence number, 处理
+ * {@link ConfirmListener} 的ack/nack回调(包括multiple==true的范围确认), 并使用窗口限制未确认消息的数量.<br>
+ * 被nack或确认超时的消息放入重发队列, 由发布者负责重新发布.
+ *
+ * @author yellow013
+ */
+final class PublishConfirmTracker implements ConfirmListener {
+
+	// 尚未确认的消息, key为publish sequence number
+	private final ConcurrentSkipListMap<Long, PendingPublish> outstanding = new ConcurrentSkipListMap<>();
+
+	// 等待重发的消息
+	private final Queue<PendingPublish> resendQueue = new ConcurrentLinkedQueue<>();
+
+	// 未确认消息窗口
+	private final Semaphore window;
+
+	private final int maxInFlight;
+	private final long confirmTimeoutNanos;
+	private final long confirmTimeout;
+	private final int confirmRetry;
+
+	private final String exchangeName;
+
+	private final Consumer<Long> ackCallback;
+	private final Consumer<Long> noAckCallback;
+
+	/**
+	 *
+	 * @param exchangeName
+	 * @param maxInFlight
+	 * @param confirmTimeout
+	 * @param confirmRetry
+	 * @param ackCallback
+	 * @param noAckCallback
+	 */
+	PublishConfirmTracker(String exchangeName, int maxInFlight, long confirmTimeout, int confirmRetry,
+			Consumer<Long> ackCallback, Consumer<Long> noAckCallback) {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be greater than 0");
+		this.exchangeName = exchangeName;
+		this.maxInFlight = maxInFlight;
+		this.window = new Semaphore(maxInFlight);
+		this.confirmTimeout = confirmTimeout;
+		this.confirmTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(confirmTimeout);
+		this.confirmRetry = confirmRetry;
+		this.ackCallback = ackCallback;
+		this.noAckCallback = noAckCallback;
+	}
+
+	/**
+	 * 获取一个窗口位置, 窗口已满时最多等待timeout毫秒
+	 *
+	 * @param timeout
+	 * @return
+	 * @throws InterruptedException
+	 */
+	boolean acquire(long timeout) throws InterruptedException {
+		return window.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 不等待获取一个窗口位置
+	 *
+	 * @return
+	 */
+	boolean tryAcquire() {
+		return window.tryAcquire();
+	}
+
+	/**
+	 * 归还未能发布的消息占用的窗口位置
+	 */
+	void release() {
+		window.release();
+	}
+
+	/**
+	 * 在调用basicPublish之前记录消息, 保证确认回调不会早于记录
+	 *
+	 * @param seqNo
+	 * @param pending
+	 */
+	void track(long seqNo, PendingPublish pending) {
+		pending.seqNo = seqNo;
+		pending.publishTime = System.nanoTime();
+		outstanding.put(seqNo, pending);
+	}
+
+	/**
+	 * basicPublish失败或放弃等待确认时移除记录
+	 *
+	 * @param seqNo
+	 * @return true if the record was removed
+	 */
+	boolean untrack(long seqNo) {
+		return outstanding.remove(seqNo) != null;
+	}
+
+	@Override
+	public void handleAck(long deliveryTag, boolean multiple) {
+		if (multiple) {
+			for (Entry<Long, PendingPublish> entry : outstanding.headMap(deliveryTag, true).entrySet())
+				if (outstanding.remove(entry.getKey(), entry.getValue()))
+					confirmed(entry.getValue());
+		} else {
+			PendingPublish pending = outstanding.remove(deliveryTag);
+			if (pending != null)
+				confirmed(pending);
+		}
+	}
+
+	@Override
+	public void handleNack(long deliveryTag, boolean multiple) {
+		if (multiple) {
+			for (Entry<Long, PendingPublish> entry : outstanding.headMap(deliveryTag, true).entrySet())
+				if (outstanding.remove(entry.getKey(), entry.getValue()))
+					rejected(entry.getValue());
+		} else {
+			PendingPublish pending = outstanding.remove(deliveryTag);
+			if (pending != null)
+				rejected(pending);
+		}
+	}
+
+	/**
+	 * 将超过确认时间的消息视为nack.<br>
+	 * 同一channel上sequence number越大发布时间越晚, 遇到第一个未超时的消息即可停止.
+	 *
+	 * @param nowNanos
+	 */
+	void expire(long nowNanos) {
+		for (Entry<Long, PendingPublish> entry : outstanding.entrySet()) {
+			PendingPublish pending = entry.getValue();
+			if (nowNanos - pending.publishTime < confirmTimeoutNanos)
+				return;
+			if (outstanding.remove(entry.getKey(), pending))
+				rejected(pending);
+		}
+	}
+
+	/**
+	 * 新的channel的sequence number从1重新开始, 旧channel上所有未确认的消息需要重发
+	 */
+	void requeueOutstanding() {
+		Entry<Long, PendingPublish> entry;
+		while ((entry = outstanding.pollFirstEntry()) != null)
+			resendQueue.offer(entry.getValue());
+	}
+
+	/**
+	 *
+	 * @return next message to resend or null
+	 */
+	PendingPublish pollResend() {
+		return resendQueue.poll();
+	}
+
+	/**
+	 * 重发失败, 放回重发队列等待下次重发
+	 *
+	 * @param pending
+	 */
+	void resendLater(PendingPublish pending) {
+		resendQueue.offer(pending);
+	}
+
+	/**
+	 * 关闭时将所有未确认的消息置为失败
+	 *
+	 * @param cause
+	 */
+	void failAll(Throwable cause) {
+		requeueOutstanding();
+		PendingPublish pending;
+		while ((pending = resendQueue.poll()) != null)
+			failed(pending, cause);
+	}
+
+	/**
+	 *
+	 * @return current unconfirmed message count
+	 */
+	int inFlight() {
+		return maxInFlight - window.availablePermits();
+	}
+
+	private void confirmed(PendingPublish pending) {
+		window.release();
+		pending.future.complete(pending.seqNo);
+		if (ackCallback != null)
+			ackCallback.accept(pending.seqNo);
+	}
+
+	private void rejected(PendingPublish pending) {
+		// 重发的消息继续占用窗口位置
+		if (++pending.attempts < confirmRetry)
+			resendQueue.offer(pending);
+		else
+			failed(pending, new AmqpNoConfirmException(exchangeName, pending.routingKey, pending.attempts,
+					confirmTimeout));
+	}
+
+	private void failed(PendingPublish pending, Throwable cause) {
+		window.release();
+		pending.future.completeExceptionally(new PublishFailedException(cause));
+		if (noAckCallback != null)
+			noAckCallback.accept(pending.seqNo);
+	}
+
+	/**
+	 * 等待确认的消息
+	 */
+	static final class PendingPublish {
+
+		final String routingKey;
+		final byte[] msg;
+		final BasicProperties props;
+		final CompletableFuture<Long> future;
+
+		// 最近一次发布使用的sequence number
+		volatile long seqNo;
+		// 最近一次发布的时间
+		volatile long publishTime;
+		// 已经被nack或超时的次数
+		int attempts;
+
+		PendingPublish(String routingKey, byte[] msg, BasicProperties props, CompletableFuture<Long> future) {
+			this.routingKey = routingKey;
+			this.msg = msg;
+			this.props = props;
+			this.future = future;
+		}
+
+	}
+
+}
@@ -0,0 +1,628 @@
+package io.mercury.transport.rabbitmq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.collections.api.list.MutableList;
+import org.slf4j.Logger;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.LongString;
+import com.rabbitmq.client.impl.LongStringHelper;
+
+import io.mercury.common.character.Charsets;
+import io.mercury.common.collections.MutableLists;
+import io.mercury.common.log.CommonLoggerFactory;
+
+/**
+ * 连接断开时保存待发布消息的本地spool<br>
+ *
+ * 消息顺序追加到内存映射的segment文件, segment写满后创建新文件. 每个segment的前8字节记录已确认的位置,
+ * 进程重启后从已确认的位置继续重放, 因此重放是至少一次的. segment中的消息全部确认后删除文件.<br>
+ *
+ * 记录格式为[int length][routingKey][properties][int bodyLength][body], length为0表示之后没有数据,
+ * length为-1表示segment在此处结束. properties保存全部字段, headers按AMQP field table的值类型保存.
+ *
+ * @author yellow013
+ */
+final class PublishSpool implements Closeable {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(PublishSpool.class);
+
+	// 已确认位置
+	private static final int HEADER = 8;
+
+	private static final int END_OF_DATA = 0;
+
+	private static final int END_OF_SEGMENT = -1;
+
+	private static final String SUFFIX = ".spool";
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final int maxSegments;
+
+	// 第一个为读取的segment, 最后一个为写入的segment
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+	private long nextSegmentSeq;
+
+	// 复用的记录头缓冲区
+	private final ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream(256);
+	private final DataOutputStream headerOutput = new DataOutputStream(headerBuffer);
+
+	// 是否有未确认的消息, 供发布线程无锁读取
+	private volatile boolean pending;
+
+	/**
+	 *
+	 * @param directory
+	 * @param segmentSize
+	 * @param maxSize
+	 * @throws IOException
+	 */
+	PublishSpool(File directory, int segmentSize, long maxSize) throws IOException {
+		if (segmentSize <= HEADER + 4)
+			throw new IllegalArgumentException("segmentSize too small");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxSize / segmentSize));
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create spool directory " + directory);
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files != null && files.length > 0) {
+			// 文件名为补零的序号, 字典序即为写入顺序
+			Arrays.sort(files);
+			for (File file : files) {
+				long seq = parseSeq(file);
+				nextSegmentSeq = seq + 1;
+				if (file.length() < HEADER + 4) {
+					// 创建时中断的文件
+					Files.delete(file.toPath());
+					continue;
+				}
+				segments.addLast(new Segment(file, seq, (int) file.length()));
+			}
+			log.info("Recovered spool directory -> {}, segments==[{}]", directory, segments.size());
+		}
+		updatePending();
+	}
+
+	private static long parseSeq(File file) {
+		String name = file.getName();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	/**
+	 *
+	 * @return true if there are unconfirmed messages
+	 */
+	boolean hasPending() {
+		return pending;
+	}
+
+	/**
+	 * 追加一条消息
+	 *
+	 * @param routingKey
+	 * @param msg
+	 * @param props
+	 * @return false if spool is full
+	 * @throws IOException
+	 */
+	synchronized boolean append(String routingKey, byte[] msg, BasicProperties props) throws IOException {
+		headerBuffer.reset();
+		headerOutput.writeUTF(routingKey == null ? "" : routingKey);
+		writeProps(headerOutput, props);
+		headerOutput.writeInt(msg.length);
+		int length = headerBuffer.size() + msg.length;
+		// 记录和之后的结束标记
+		if (HEADER + 4 + length > segmentSize)
+			return false;
+		Segment segment = segments.peekLast();
+		if (segment == null || !segment.fits(length)) {
+			if (segments.size() >= maxSegments && (segment == null || !segment.reusable()))
+				return false;
+			if (segment != null && segment.reusable())
+				segment.rewind();
+			else
+				segment = roll(segment);
+		}
+		segment.write(headerBuffer, msg, length);
+		pending = true;
+		return true;
+	}
+
+	private Segment roll(Segment last) throws IOException {
+		if (last != null)
+			last.seal();
+		File file = new File(directory, String.format("%019d", nextSegmentSeq) + SUFFIX);
+		Segment segment = new Segment(file, nextSegmentSeq++, segmentSize);
+		segments.addLast(segment);
+		return segment;
+	}
+
+	/**
+	 * 从第一个segment的已确认位置读取至多max条消息
+	 *
+	 * @param max
+	 * @return null if no pending message
+	 * @throws IOException
+	 */
+	synchronized Batch next(int max) throws IOException {
+		Segment segment;
+		while ((segment = segments.peekFirst()) != null) {
+			Batch batch = segment.read(max);
+			if (batch != null)
+				return batch;
+			if (!segment.sealed)
+				return null;
+			// 已经全部确认的旧segment
+			remove(segment);
+		}
+		return null;
+	}
+
+	/**
+	 * 批次中的消息已经确认
+	 *
+	 * @param batch
+	 */
+	synchronized void commit(Batch batch) {
+		Segment segment = batch.segment;
+		segment.acked(batch.endOffset);
+		if (segment.sealed && segment.drained())
+			remove(segment);
+		updatePending();
+	}
+
+	private void remove(Segment segment) {
+		segments.remove(segment);
+		try {
+			Files.deleteIfExists(segment.file.toPath());
+		} catch (IOException e) {
+			log.error("Delete spool segment {} throw IOException -> {}", segment.file, e.getMessage(), e);
+		}
+	}
+
+	private void updatePending() {
+		boolean hasPending = false;
+		for (Segment segment : segments)
+			if (!segment.drained()) {
+				hasPending = true;
+				break;
+			}
+		this.pending = hasPending;
+	}
+
+	@Override
+	public synchronized void close() {
+		for (Segment segment : segments)
+			segment.close();
+		segments.clear();
+	}
+
+	/**
+	 * 从spool读取的一批消息
+	 */
+	static final class Batch {
+
+		final List<SpooledMessage> messages;
+
+		private final Segment segment;
+
+		private final int endOffset;
+
+		private Batch(List<SpooledMessage> messages, Segment segment, int endOffset) {
+			this.messages = messages;
+			this.segment = segment;
+			this.endOffset = endOffset;
+		}
+
+	}
+
+	static final class SpooledMessage {
+
+		final String routingKey;
+		final BasicProperties props;
+		final byte[] msg;
+
+		private SpooledMessage(String routingKey, BasicProperties props, byte[] msg) {
+			this.routingKey = routingKey;
+			this.props = props;
+			this.msg = msg;
+		}
+
+	}
+
+	private static final class Segment {
+
+		private final File file;
+		private final long seq;
+		private final MappedByteBuffer buffer;
+		private final int size;
+
+		private int writeOffset;
+		// 不会再写入
+		private boolean sealed;
+
+		private Segment(File file, long seq, int size) throws IOException {
+			this.file = file;
+			this.seq = seq;
+			this.size = size;
+			boolean exists = file.exists();
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel fileChannel = raf.getChannel()) {
+				// 关闭文件后映射仍然有效
+				this.buffer = fileChannel.map(MapMode.READ_WRITE, 0, size);
+			}
+			if (exists)
+				recover();
+			else {
+				buffer.putLong(0, HEADER);
+				buffer.putInt(HEADER, END_OF_DATA);
+				this.writeOffset = HEADER;
+			}
+		}
+
+		/**
+		 * 从已确认位置扫描到数据结尾
+		 */
+		private void recover() {
+			int offset = ackedOffset();
+			for (;;) {
+				if (offset + 4 > size) {
+					this.sealed = true;
+					break;
+				}
+				int length = buffer.getInt(offset);
+				if (length == END_OF_DATA)
+					break;
+				if (length == END_OF_SEGMENT || offset + 4 + length > size) {
+					this.sealed = true;
+					break;
+				}
+				offset += 4 + length;
+			}
+			this.writeOffset = offset;
+		}
+
+		private int ackedOffset() {
+			return (int) buffer.getLong(0);
+		}
+
+		private void acked(int offset) {
+			buffer.putLong(0, offset);
+		}
+
+		private boolean drained() {
+			return ackedOffset() >= writeOffset;
+		}
+
+		// 写入中的segment全部确认后可以从头复用
+		private boolean reusable() {
+			return !sealed && drained();
+		}
+
+		private boolean fits(int length) {
+			return !sealed && writeOffset + 4 + length <= size;
+		}
+
+		private void rewind() {
+			buffer.putInt(HEADER, END_OF_DATA);
+			buffer.putLong(0, HEADER);
+			this.writeOffset = HEADER;
+		}
+
+		private void seal() {
+			if (writeOffset + 4 <= size)
+				buffer.putInt(writeOffset, END_OF_SEGMENT);
+			this.sealed = true;
+			buffer.force();
+		}
+
+		private void write(ByteArrayOutputStream header, byte[] msg, int length) {
+			int next = writeOffset + 4 + length;
+			// 先写结束标记和数据, 最后写长度, 进程中断时不会读到不完整的记录
+			if (next + 4 <= size)
+				buffer.putInt(next, END_OF_DATA);
+			buffer.position(writeOffset + 4);
+			buffer.put(header.toByteArray());
+			buffer.put(msg);
+			buffer.putInt(writeOffset, length);
+			this.writeOffset = next;
+		}
+
+		private Batch read(int max) throws IOException {
+			int offset = ackedOffset();
+			if (offset >= writeOffset)
+				return null;
+			MutableList<SpooledMessage> messages = MutableLists.newFastList();
+			while (offset < writeOffset && messages.size() < max) {
+				int length = buffer.getInt(offset);
+				byte[] record = new byte[length];
+				buffer.position(offset + 4);
+				buffer.get(record);
+				DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+				String routingKey = input.readUTF();
+				BasicProperties props = readProps(input);
+				byte[] msg = new byte[input.readInt()];
+				input.readFully(msg);
+				messages.add(new SpooledMessage(routingKey, props, msg));
+				offset += 4 + length;
+			}
+			return new Batch(messages, this, offset);
+		}
+
+		// 映射在buffer被回收时释放
+		private void close() {
+			buffer.force();
+		}
+
+	}
+
+	private static final int CONTENT_TYPE = 1;
+	private static final int CONTENT_ENCODING = 1 << 1;
+	private static final int DELIVERY_MODE = 1 << 2;
+	private static final int PRIORITY = 1 << 3;
+	private static final int CORRELATION_ID = 1 << 4;
+	private static final int REPLY_TO = 1 << 5;
+	private static final int EXPIRATION = 1 << 6;
+	private static final int MESSAGE_ID = 1 << 7;
+	private static final int TIMESTAMP = 1 << 8;
+	private static final int TYPE = 1 << 9;
+	private static final int USER_ID = 1 << 10;
+	private static final int APP_ID = 1 << 11;
+	private static final int HEADERS = 1 << 12;
+
+	private static void writeProps(DataOutputStream out, BasicProperties props) throws IOException {
+		if (props == null) {
+			out.writeShort(0);
+			return;
+		}
+		int flags = 0;
+		flags |= props.getContentType() != null ? CONTENT_TYPE : 0;
+		flags |= props.getContentEncoding() != null ? CONTENT_ENCODING : 0;
+		flags |= props.getDeliveryMode() != null ? DELIVERY_MODE : 0;
+		flags |= props.getPriority() != null ? PRIORITY : 0;
+		flags |= props.getCorrelationId() != null ? CORRELATION_ID : 0;
+		flags |= props.getReplyTo() != null ? REPLY_TO : 0;
+		flags |= props.getExpiration() != null ? EXPIRATION : 0;
+		flags |= props.getMessageId() != null ? MESSAGE_ID : 0;
+		flags |= props.getTimestamp() != null ? TIMESTAMP : 0;
+		flags |= props.getType() != null ? TYPE : 0;
+		flags |= props.getUserId() != null ? USER_ID : 0;
+		flags |= props.getAppId() != null ? APP_ID : 0;
+		flags |= props.getHeaders() != null ? HEADERS : 0;
+		out.writeShort(flags);
+		if ((flags & CONTENT_TYPE) != 0)
+			out.writeUTF(props.getContentType());
+		if ((flags & CONTENT_ENCODING) != 0)
+			out.writeUTF(props.getContentEncoding());
+		if ((flags & DELIVERY_MODE) != 0)
+			out.writeInt(props.getDeliveryMode());
+		if ((flags & PRIORITY) != 0)
+			out.writeInt(props.getPriority());
+		if ((flags & CORRELATION_ID) != 0)
+			out.writeUTF(props.getCorrelationId());
+		if ((flags & REPLY_TO) != 0)
+			out.writeUTF(props.getReplyTo());
+		if ((flags & EXPIRATION) != 0)
+			out.writeUTF(props.getExpiration());
+		if ((flags & MESSAGE_ID) != 0)
+			out.writeUTF(props.getMessageId());
+		if ((flags & TIMESTAMP) != 0)
+			out.writeLong(props.getTimestamp().getTime());
+		if ((flags & TYPE) != 0)
+			out.writeUTF(props.getType());
+		if ((flags & USER_ID) != 0)
+			out.writeUTF(props.getUserId());
+		if ((flags & APP_ID) != 0)
+			out.writeUTF(props.getAppId());
+		if ((flags & HEADERS) != 0)
+			writeTable(out, props.getHeaders());
+	}
+
+	private static BasicProperties readProps(DataInputStream in) throws IOException {
+		int flags = in.readShort();
+		BasicProperties.Builder builder = new BasicProperties.Builder();
+		if ((flags & CONTENT_TYPE) != 0)
+			builder.contentType(in.readUTF());
+		if ((flags & CONTENT_ENCODING) != 0)
+			builder.contentEncoding(in.readUTF());
+		if ((flags & DELIVERY_MODE) != 0)
+			builder.deliveryMode(in.readInt());
+		if ((flags & PRIORITY) != 0)
+			builder.priority(in.readInt());
+		if ((flags & CORRELATION_ID) != 0)
+			builder.correlationId(in.readUTF());
+		if ((flags & REPLY_TO) != 0)
+			builder.replyTo(in.readUTF());
+		if ((flags & EXPIRATION) != 0)
+			builder.expiration(in.readUTF());
+		if ((flags & MESSAGE_ID) != 0)
+			builder.messageId(in.readUTF());
+		if ((flags & TIMESTAMP) != 0)
+			builder.timestamp(new Date(in.readLong()));
+		if ((flags & TYPE) != 0)
+			builder.type(in.readUTF());
+		if ((flags & USER_ID) != 0)
+			builder.userId(in.readUTF());
+		if ((flags & APP_ID) != 0)
+			builder.appId(in.readUTF());
+		if ((flags & HEADERS) != 0)
+			builder.headers(readTable(in));
+		return builder.build();
+	}
+
+	// headers中的值类型, 与AMQP field table支持的类型一致
+	private static final byte VOID = 'V';
+	private static final byte STRING = 's';
+	private static final byte LONG_STRING = 'S';
+	private static final byte BYTES = 'x';
+	private static final byte BOOLEAN = 't';
+	private static final byte BYTE = 'b';
+	private static final byte SHORT = 'u';
+	private static final byte INT = 'I';
+	private static final byte LONG = 'l';
+	private static final byte FLOAT = 'f';
+	private static final byte DOUBLE = 'd';
+	private static final byte DECIMAL = 'D';
+	private static final byte DATE = 'T';
+	private static final byte TABLE = 'F';
+	private static final byte ARRAY = 'A';
+
+	private static void writeTable(DataOutputStream out, Map<String, Object> table) throws IOException {
+		out.writeInt(table.size());
+		for (Entry<String, Object> entry : table.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+	}
+
+	private static Map<String, Object> readTable(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, Object> table = new LinkedHashMap<>(Math.max(16, size * 2));
+		for (int i = 0; i < size; i++) {
+			String key = in.readUTF();
+			table.put(key, readValue(in));
+		}
+		return table;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(VOID);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			// writeUTF限制为64K
+			writeBytes(out, ((String) value).getBytes(Charsets.UTF8));
+		} else if (value instanceof LongString) {
+			out.writeByte(LONG_STRING);
+			writeBytes(out, ((LongString) value).getBytes());
+		} else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[]) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(DECIMAL);
+			BigDecimal decimal = (BigDecimal) value;
+			out.writeInt(decimal.scale());
+			writeBytes(out, decimal.unscaledValue().toByteArray());
+		} else if (value instanceof Date) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof Map) {
+			out.writeByte(TABLE);
+			writeTable(out, (Map<String, Object>) value);
+		} else if (value instanceof List) {
+			out.writeByte(ARRAY);
+			List<?> list = (List<?>) value;
+			out.writeInt(list.size());
+			for (Object element : list)
+				writeValue(out, element);
+		} else if (value instanceof Object[]) {
+			writeValue(out, Arrays.asList((Object[]) value));
+		} else {
+			// basicPublish同样不能发送此类型
+			throw new IOException("Unsupported header value type " + value.getClass().getName());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case VOID:
+			return null;
+		case STRING:
+			return new String(readBytes(in), Charsets.UTF8);
+		case LONG_STRING:
+			return LongStringHelper.asLongString(readBytes(in));
+		case BYTES:
+			return readBytes(in);
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case INT:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case DECIMAL:
+			int scale = in.readInt();
+			return new BigDecimal(new BigInteger(readBytes(in)), scale);
+		case DATE:
+			return new Date(in.readLong());
+		case TABLE:
+			return readTable(in);
+		case ARRAY:
+			int size = in.readInt();
+			List<Object> list = new ArrayList<>(size);
+			for (int i = 0; i < size; i++)
+				list.add(readValue(in));
+			return list;
+		default:
+			throw new IOException("Unknown header value type " + (char) type);
+		}
+	}
+
+}
@@ -1,25 +1,50 @@
 package io.mercury.transport.rabbitmq;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.eclipse.collections.api.list.MutableList;
 import org.slf4j.Logger;
 
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Delivery;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
 
 import io.mercury.common.character.Charsets;
 import io.mercury.common.collections.MutableLists;
 import io.mercury.common.collections.queue.api.Queue;
 import io.mercury.common.log.CommonLoggerFactory;
+import io.mercury.common.util.Assertor;
 import io.mercury.serialization.json.JsonUtil;
+import io.mercury.transport.core.exception.ReceiverStartException;
+import io.mercury.transport.rabbitmq.PublishConfirmTracker.PendingPublish;
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.ConnectionPurpose;
 import io.mercury.transport.rabbitmq.configurator.RmqConnection;
+import io.mercury.transport.rabbitmq.consumer.AckCoalescer;
 import io.mercury.transport.rabbitmq.declare.AmqpExchange;
 import io.mercury.transport.rabbitmq.declare.QueueRelation;
 import io.mercury.transport.rabbitmq.exception.AmqpDeclareException;
+import io.mercury.transport.rabbitmq.exception.AmqpNoConfirmException;
 
 public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 
@@ -32,6 +57,33 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 	private Function<E, byte[]> serializer;
 	private Function<byte[], E> deserializer;
 
+	// 不为null时代替serializer, 写入复用的serializeBuffer
+	private volatile StreamSerializer<E> streamSerializer;
+	private final ByteArrayOutputStream serializeBuffer = new ByteArrayOutputStream(1024);
+
+	// 同一channel不能被多个线程同时用于发布, 同时保护serializeBuffer
+	private final Object publishLock = new Object();
+
+	// 开启发布确认后不为null
+	private volatile PublishConfirmTracker confirmTracker;
+	private long confirmTimeout;
+	// 最后一次发布的sequence number, 在publishLock内访问
+	private long lastSeqNo;
+
+	// 大于0时使用basicConsume预取, 0为每次poll调用basicGet
+	private final int prefetchCount;
+	// 预取模式下消费使用的channel
+	private RabbitMqChannel consumeChannel;
+	// 预取到本地的消息, 未确认消息的总数由QOS限制
+	private BlockingDeque<Delivery> prefetched;
+	// 预取模式下合并确认
+	private AckCoalescer ackCoalescer;
+	// 消费channel关闭前收到的最大deliveryTag, 不大于此值的消息由broker重新投递
+	private volatile long staleUpTo;
+
+	// 为null时使用RmqConnection创建
+	private final ConnectionFactory connectionFactory;
+
 	private String name;
 
 	private Logger log = CommonLoggerFactory.getLogger(getClass());
@@ -39,27 +91,63 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 	public static final <E> RabbitMqBuffer<E> newQueue(RmqConnection connection, String queueName,
 			Function<E, byte[]> serializer, Function<byte[], E> deserializer) throws AmqpDeclareException {
 		return new RabbitMqBuffer<>(connection, queueName, MutableLists.emptyFastList(), MutableLists.emptyFastList(),
-				serializer, deserializer);
+				serializer, deserializer, 0);
 	}
 
 	public static final <E> RabbitMqBuffer<E> newQueue(RmqConnection connection, String queueName,
 			List<String> exchangeNames, List<String> routingKeys, Function<E, byte[]> serializer,
 			Function<byte[], E> deserializer) throws AmqpDeclareException {
-		return new RabbitMqBuffer<>(connection, queueName, exchangeNames, routingKeys, serializer, deserializer);
+		return new RabbitMqBuffer<>(connection, queueName, exchangeNames, routingKeys, serializer, deserializer, 0);
 	}
 
-	private RabbitMqBuffer(RmqConnection connection, String queueName, List<String> exchangeNames,
-			List<String> routingKeys, Function<E, byte[]> serializer, Function<byte[], E> deserializer)
+	/**
+	 * 使用basicConsume预取prefetchCount条消息到本地, poll不再访问broker, 确认合并为multiple=true
+	 * 
+	 * @param <E>
+	 * @param connection
+	 * @param queueName
+	 * @param prefetchCount
+	 * @param serializer
+	 * @param deserializer
+	 * @return
+	 * @throws AmqpDeclareException
+	 */
+	public static final <E> RabbitMqBuffer<E> newPrefetchQueue(RmqConnection connection, String queueName,
+			int prefetchCount, Function<E, byte[]> serializer, Function<byte[], E> deserializer)
 			throws AmqpDeclareException {
+		return new RabbitMqBuffer<>(connection, queueName, MutableLists.emptyFastList(), MutableLists.emptyFastList(),
+				serializer, deserializer, Assertor.withinRange(prefetchCount, 1, 65535, "prefetchCount"));
+	}
+
+	public static final <E> RabbitMqBuffer<E> newPrefetchQueue(RmqConnection connection, String queueName,
+			List<String> exchangeNames, List<String> routingKeys, int prefetchCount, Function<E, byte[]> serializer,
+			Function<byte[], E> deserializer) throws AmqpDeclareException {
+		return new RabbitMqBuffer<>(connection, queueName, exchangeNames, routingKeys, serializer, deserializer,
+				Assertor.withinRange(prefetchCount, 1, 65535, "prefetchCount"));
+	}
+
+	private RabbitMqBuffer(RmqConnection connection, String queueName, List<String> exchangeNames,
+			List<String> routingKeys, Function<E, byte[]> serializer, Function<byte[], E> deserializer,
+			int prefetchCount) throws AmqpDeclareException {
+		this(connection, queueName, exchangeNames, routingKeys, serializer, deserializer, prefetchCount, null);
+	}
+
+	RabbitMqBuffer(RmqConnection connection, String queueName, List<String> exchangeNames, List<String> routingKeys,
+			Function<E, byte[]> serializer, Function<byte[], E> deserializer, int prefetchCount,
+			ConnectionFactory connectionFactory) throws AmqpDeclareException {
 		this.connection = connection;
 		this.queueName = queueName;
 		this.exchangeNames = exchangeNames;
 		this.routingKeys = routingKeys;
 		this.serializer = serializer;
 		this.deserializer = deserializer;
-		this.rabbitMqChannel = RabbitMqChannel.create(connection);
+		this.prefetchCount = prefetchCount;
+		this.connectionFactory = connectionFactory;
+		this.rabbitMqChannel = RabbitMqChannel.create(connection, ConnectionPurpose.PUBLISH, connectionFactory);
 		declareQueue();
 		buildName();
+		if (prefetchCount > 0)
+			startPrefetch();
 	}
 
 	private void declareQueue() throws AmqpDeclareException {
@@ -75,11 +163,213 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 		this.name = "rabbit-queue::" + connection.fullInfo() + "/" + queueName;
 	}
 
+	private void startPrefetch() {
+		this.prefetched = new LinkedBlockingDeque<>();
+		this.consumeChannel = RabbitMqChannel.create(connection, ConnectionPurpose.CONSUME, connectionFactory);
+		Channel channel = consumeChannel.internalChannel();
+		// 本地消费半个预取窗口后确认, broker可以继续投递
+		this.ackCoalescer = new AckCoalescer(name, Math.max(1, prefetchCount / 2), 100, prefetchCount,
+				deliveryTag -> channel.basicAck(deliveryTag, true));
+		try {
+			channel.basicQos(prefetchCount);
+			channel.basicConsume(queueName, false, new DefaultConsumer(channel) {
+
+				// 只在消费线程中访问
+				private long lastDeliveryTag;
+
+				@Override
+				public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties,
+						byte[] body) {
+					lastDeliveryTag = envelope.getDeliveryTag();
+					prefetched.offer(new Delivery(envelope, properties, body));
+				}
+
+				@Override
+				public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+					// 在已经分派的消息之后调用, 本地预取的消息不能再确认, 由broker重新投递
+					staleUpTo = lastDeliveryTag;
+					int cleared = prefetched.size();
+					prefetched.clear();
+					ackCoalescer.reset(lastDeliveryTag);
+					log.info("{} consume channel shutdown, clear prefetched size==[{}], lastDeliveryTag==[{}]", name,
+							cleared, lastDeliveryTag);
+				}
+			});
+		} catch (IOException ioe) {
+			log.error("prefetch basicConsume throw -> {}", ioe.getMessage(), ioe);
+			throw new ReceiverStartException(ioe, ioe.getMessage());
+		}
+	}
+
+	/**
+	 * 开启发布确认, 之后enqueue和enqueueAll等待broker确认后返回结果
+	 * 
+	 * @param confirmTimeout 等待一批消息确认的最长时间(毫秒)
+	 * @return
+	 * @throws IOException
+	 */
+	public RabbitMqBuffer<E> enableConfirm(long confirmTimeout) throws IOException {
+		synchronized (publishLock) {
+			if (confirmTracker == null) {
+				Channel channel = rabbitMqChannel.internalChannel();
+				channel.confirmSelect();
+				// 不重发, 被nack或超时的元素在结果中返回失败
+				PublishConfirmTracker tracker = new PublishConfirmTracker(queueName, Integer.MAX_VALUE,
+						confirmTimeout, 0, null, null);
+				channel.addConfirmListener(tracker);
+				if (channel instanceof Recoverable) {
+					((Recoverable) channel).addRecoveryListener(new RecoveryListener() {
+						@Override
+						public void handleRecovery(Recoverable recoverable) {
+							// 恢复后可能已经有发布线程在新的sequence number上发布, 由failIfRecovered判断
+							synchronized (publishLock) {
+								if (failIfRecovered(tracker, channel.getNextPublishSeqNo()))
+									log.info("{} channel recovered, unconfirmed elements failed", name);
+							}
+						}
+
+						@Override
+						public void handleRecoveryStarted(Recoverable recoverable) {
+						}
+					});
+				}
+				this.confirmTracker = tracker;
+			}
+			this.confirmTimeout = confirmTimeout;
+		}
+		return this;
+	}
+
+	/**
+	 * 使用写入OutputStream的序列化器, 所有元素复用同一个缓冲区
+	 * 
+	 * @param streamSerializer
+	 * @return
+	 */
+	public RabbitMqBuffer<E> withStreamSerializer(StreamSerializer<E> streamSerializer) {
+		this.streamSerializer = streamSerializer;
+		return this;
+	}
+
 	@Override
 	public boolean enqueue(E e) {
-		byte[] msg = serializer.apply(e);
+		if (confirmTracker != null)
+			return enqueueAll(Collections.singletonList(e))[0];
+		synchronized (publishLock) {
+			byte[] msg;
+			try {
+				msg = serialize(e);
+			} catch (IOException ioe) {
+				log.error("enqueue serialize throw -> {}", ioe.getMessage(), ioe);
+				return false;
+			}
+			return basicPublish(rabbitMqChannel.internalChannel(), msg);
+		}
+	}
+
+	/**
+	 * 发布全部元素, 开启发布确认时只等待一次整批的确认
+	 * 
+	 * @param elements
+	 * @return 与elements迭代顺序对应的每个元素是否成功
+	 */
+	public boolean[] enqueueAll(Collection<? extends E> elements) {
+		boolean[] results = new boolean[elements.size()];
+		PublishConfirmTracker tracker = this.confirmTracker;
+		PendingPublish[] pendings = tracker == null ? null : new PendingPublish[results.length];
+		Channel channel = rabbitMqChannel.internalChannel();
+		synchronized (publishLock) {
+			int i = 0;
+			for (E e : elements) {
+				int index = i++;
+				byte[] msg;
+				try {
+					msg = serialize(e);
+				} catch (Exception ex) {
+					log.error("enqueueAll serialize index==[{}] throw -> {}", index, ex.getMessage(), ex);
+					continue;
+				}
+				if (tracker == null) {
+					results[index] = basicPublish(channel, msg);
+					continue;
+				}
+				try {
+					// 窗口为Integer.MAX_VALUE, 不会等待
+					if (!tracker.acquire(0))
+						continue;
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				PendingPublish pending = new PendingPublish(queueName, msg, null, new CompletableFuture<>());
+				long seqNo = channel.getNextPublishSeqNo();
+				failIfRecovered(tracker, seqNo);
+				tracker.track(seqNo, pending);
+				if (basicPublish(channel, msg)) {
+					pendings[index] = pending;
+					lastSeqNo = seqNo;
+				} else if (tracker.untrack(seqNo))
+					tracker.release();
+			}
+		}
+		if (tracker != null)
+			awaitConfirms(tracker, pendings, results);
+		return results;
+	}
+
+	/**
+	 * 自动恢复后sequence number从1重新开始, 旧channel上未确认的元素不会再收到确认, 置为失败.<br>
+	 * 在publishLock内调用.
+	 * 
+	 * @param tracker
+	 * @param nextSeqNo
+	 * @return true if the channel has been recovered
+	 */
+	private boolean failIfRecovered(PublishConfirmTracker tracker, long nextSeqNo) {
+		if (nextSeqNo > lastSeqNo)
+			return false;
+		tracker.failAll(new AmqpNoConfirmException("", queueName, 0, confirmTimeout));
+		lastSeqNo = 0;
+		return true;
+	}
+
+	private void awaitConfirms(PublishConfirmTracker tracker, PendingPublish[] pendings, boolean[] results) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeout);
+		for (int i = 0; i < pendings.length; i++) {
+			PendingPublish pending = pendings[i];
+			if (pending == null)
+				continue;
+			try {
+				pending.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				results[i] = true;
+			} catch (ExecutionException e) {
+				log.error("enqueueAll index==[{}] is not confirmed -> {}", i, e.getCause().getMessage());
+			} catch (TimeoutException e) {
+				// 放弃等待, 之后到达的确认将被忽略
+				if (tracker.untrack(pending.seqNo))
+					tracker.release();
+				log.error("enqueueAll index==[{}] wait confirm timeout", i);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (tracker.untrack(pending.seqNo))
+					tracker.release();
+			}
+		}
+	}
+
+	private byte[] serialize(E e) throws IOException {
+		StreamSerializer<E> streamSerializer = this.streamSerializer;
+		if (streamSerializer == null)
+			return serializer.apply(e);
+		serializeBuffer.reset();
+		streamSerializer.serialize(e, serializeBuffer);
+		// basicPublish需要长度准确的body
+		return serializeBuffer.toByteArray();
+	}
+
+	private boolean basicPublish(Channel channel, byte[] msg) {
 		try {
-			rabbitMqChannel.internalChannel().basicPublish("", queueName, null, msg);
+			channel.basicPublish("", queueName, null, msg);
 			return true;
 		} catch (IOException ioe) {
 			log.error("enqueue basicPublish throw -> {}", ioe.getMessage(), ioe);
@@ -89,6 +379,14 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 
 	@Override
 	public E poll() {
+		if (prefetchCount > 0) {
+			Delivery delivery = prefetched.poll();
+			if (delivery == null)
+				return null;
+			// 与basicGet模式相同, 先确认再反序列化
+			ackCoalescer.completed(delivery.getEnvelope().getDeliveryTag());
+			return deserializer.apply(delivery.getBody());
+		}
 		GetResponse response = basicGet();
 		if (response == null)
 			return null;
@@ -101,6 +399,21 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 
 	@Override
 	public boolean pollAndApply(PollFunction<E> function) {
+		if (prefetchCount > 0) {
+			Delivery delivery = prefetched.poll();
+			if (delivery == null)
+				return false;
+			if (!function.apply(deserializer.apply(delivery.getBody()))) {
+				// 与本地队列相同, 处理失败的元素留在队列头部
+				log.error("PollFunction failure, no ack");
+				// 处理期间消费channel已经关闭的消息由broker重新投递, 不再放回
+				if (delivery.getEnvelope().getDeliveryTag() > staleUpTo)
+					prefetched.offerFirst(delivery);
+				return false;
+			}
+			ackCoalescer.completed(delivery.getEnvelope().getDeliveryTag());
+			return true;
+		}
 		GetResponse response = basicGet();
 		if (response == null)
 			return false;
@@ -114,6 +427,48 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 		return basicAck(response.getEnvelope());
 	}
 
+	/**
+	 * 一次取出最多maxElements个元素, 使用一次multiple=true确认
+	 * 
+	 * @param maxElements
+	 * @return 没有元素时返回空集合
+	 */
+	public List<E> pollBatch(int maxElements) {
+		MutableList<E> elements = MutableLists.newFastList();
+		if (prefetchCount > 0) {
+			Delivery delivery;
+			while (elements.size() < maxElements && (delivery = prefetched.poll()) != null) {
+				ackCoalescer.completed(delivery.getEnvelope().getDeliveryTag());
+				elements.add(deserializer.apply(delivery.getBody()));
+			}
+			ackCoalescer.flush();
+		} else {
+			long lastDeliveryTag = -1;
+			GetResponse response;
+			while (elements.size() < maxElements && (response = basicGet()) != null) {
+				lastDeliveryTag = response.getEnvelope().getDeliveryTag();
+				if (response.getBody() != null)
+					elements.add(deserializer.apply(response.getBody()));
+			}
+			if (lastDeliveryTag > 0) {
+				try {
+					rabbitMqChannel.internalChannel().basicAck(lastDeliveryTag, true);
+				} catch (IOException ioe) {
+					log.error("pollBatch basicAck throw -> {}", ioe.getMessage(), ioe);
+				}
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * 
+	 * @return 预取到本地尚未取出的消息数量, basicGet模式为0
+	 */
+	public int prefetchedSize() {
+		return prefetched == null ? 0 : prefetched.size();
+	}
+
 	private GetResponse basicGet() {
 		try {
 			return rabbitMqChannel.internalChannel().basicGet(queueName, false);
@@ -140,9 +495,23 @@ public class RabbitMqBuffer<E> implements Queue<E>, Closeable {
 
 	@Override
 	public void close() throws IOException {
+		if (ackCoalescer != null)
+			ackCoalescer.close();
+		if (consumeChannel != null)
+			consumeChannel.close();
 		rabbitMqChannel.close();
 	}
 
+	/**
+	 * 将元素写入OutputStream的序列化器
+	 */
+	@FunctionalInterface
+	public static interface StreamSerializer<E> {
+
+		void serialize(E e, OutputStream out) throws IOException;
+
+	}
+
 	public static void main(String[] args) {
 
 		RmqConnection connection = RmqConnection.configuration("203.60.1.26", 5672, "global", "global2018", "report")
@@ -4,11 +4,16 @@ import java.io.IOException;
 import java.util.concurrent.TimeoutException;
 
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConnectionFactory;
 
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.ConnectionPurpose;
 import io.mercury.transport.rabbitmq.configurator.RmqConnection;
 
 public final class RabbitMqChannel extends AbstractRabbitMqTransport {
 
+	// 共享连接时的连接用途
+	private final ConnectionPurpose purpose;
+
 	/**
 	 * Create GeneralChannel of host, port, username and password
 	 * 
@@ -53,6 +58,19 @@ public final class RabbitMqChannel extends AbstractRabbitMqTransport {
 		return new RabbitMqChannel("", connection);
 	}
 
+	/**
+	 * Create GeneralChannel of RmqConnection, 共享连接时按purpose选择连接, 不共享时使用指定的ConnectionFactory
+	 * 
+	 * @param connection
+	 * @param purpose
+	 * @param connectionFactory
+	 * @return
+	 */
+	static RabbitMqChannel create(RmqConnection connection, ConnectionPurpose purpose,
+			ConnectionFactory connectionFactory) {
+		return new RabbitMqChannel("", connection, purpose, connectionFactory);
+	}
+
 	/**
 	 * Create GeneralChannel of Channel
 	 * 
@@ -64,12 +82,29 @@ public final class RabbitMqChannel extends AbstractRabbitMqTransport {
 	}
 
 	private RabbitMqChannel(String tag, RmqConnection connection) {
+		this(tag, connection, ConnectionPurpose.PUBLISH);
+	}
+
+	private RabbitMqChannel(String tag, RmqConnection connection, ConnectionPurpose purpose) {
+		this(tag, connection, purpose, null);
+	}
+
+	private RabbitMqChannel(String tag, RmqConnection connection, ConnectionPurpose purpose,
+			ConnectionFactory connectionFactory) {
 		super(tag, "GeneralChannel", connection);
+		this.purpose = purpose;
+		this.connectionFactory = connectionFactory;
 		createConnection();
 	}
 
 	private RabbitMqChannel(Channel channel) {
 		this.channel = channel;
+		this.purpose = ConnectionPurpose.PUBLISH;
+	}
+
+	@Override
+	protected ConnectionPurpose connectionPurpose() {
+		return purpose;
 	}
 
 	public Channel internalChannel() {
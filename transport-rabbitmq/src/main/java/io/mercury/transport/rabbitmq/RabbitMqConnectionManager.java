@@ -0,0 +1,234 @@
+package io.mercury.transport.rabbitmq;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Method;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import io.mercury.common.log.CommonLoggerFactory;
+import io.mercury.common.util.StringUtil;
+import io.mercury.transport.rabbitmq.configurator.RmqConnection;
+
+/**
+ * 按RmqConnection共享的RabbitMQ连接<br>
+ *
+ * 相同配置的transport共用一个TCP连接和心跳, 各自在连接上租用channel, 引用计数归零时关闭连接.<br>
+ * 发布与消费使用不同的连接, 避免发布端的TCP背压(connection.blocked)阻塞消费端.<br>
+ * 开启automaticRecovery时, 连接恢复后由客户端恢复连接上的全部channel.
+ *
+ * @author yellow013
+ */
+public final class RabbitMqConnectionManager {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(RabbitMqConnectionManager.class);
+
+	/**
+	 * 连接用途
+	 */
+	public static enum ConnectionPurpose {
+		PUBLISH, CONSUME
+	}
+
+	private static final Map<ConnectionKey, SharedConnection> connections = new HashMap<>();
+
+	private RabbitMqConnectionManager() {
+	}
+
+	/**
+	 * 获取共享连接, 不存在或已经关闭且无法恢复时创建新连接
+	 *
+	 * @param rmqConnection
+	 * @param purpose
+	 * @return
+	 * @throws IOException
+	 * @throws TimeoutException
+	 */
+	public static synchronized SharedConnection acquire(RmqConnection rmqConnection, ConnectionPurpose purpose)
+			throws IOException, TimeoutException {
+		ConnectionKey key = new ConnectionKey(rmqConnection, purpose);
+		SharedConnection shared = connections.get(key);
+		if (shared == null || !shared.isUsable()) {
+			shared = new SharedConnection(key, newConnection(rmqConnection, purpose));
+			connections.put(key, shared);
+		}
+		shared.refCount.incrementAndGet();
+		log.info("Acquire shared connection id -> {}, refCount -> {}", shared.connection.getId(),
+				shared.refCount.get());
+		return shared;
+	}
+
+	/**
+	 * 释放一次引用, 引用计数归零时关闭连接
+	 *
+	 * @param shared
+	 */
+	public static synchronized void release(SharedConnection shared) {
+		if (shared == null)
+			return;
+		int refCount = shared.refCount.decrementAndGet();
+		log.info("Release shared connection id -> {}, refCount -> {}", shared.connection.getId(), refCount);
+		if (refCount > 0)
+			return;
+		// 已被新连接替换时不能从map中移除新连接
+		if (connections.get(shared.key) == shared)
+			connections.remove(shared.key);
+		try {
+			if (shared.connection.isOpen())
+				shared.connection.close();
+			log.info("Shared connection id -> {} is closed", shared.connection.getId());
+		} catch (IOException e) {
+			log.error("Close shared connection throw IOException -> {}", e.getMessage(), e);
+		}
+	}
+
+	/**
+	 *
+	 * @param rmqConnection
+	 * @param purpose
+	 * @return current reference count
+	 */
+	public static synchronized int refCount(RmqConnection rmqConnection, ConnectionPurpose purpose) {
+		SharedConnection shared = connections.get(new ConnectionKey(rmqConnection, purpose));
+		return shared == null ? 0 : shared.refCount.get();
+	}
+
+	private static Connection newConnection(RmqConnection rmqConnection, ConnectionPurpose purpose)
+			throws IOException, TimeoutException {
+		Connection connection = rmqConnection.createConnectionFactory().newConnection();
+		connection.setId("shared-" + purpose.name().toLowerCase() + "-" + rmqConnection.connectionInfo() + "-"
+				+ System.nanoTime());
+		log.info("Create shared connection finished, connection id -> {}", connection.getId());
+		connection.addShutdownListener(signal -> {
+			log.info("Shutdown listener message -> {}", signal.getMessage());
+			if (isNormalShutdown(signal))
+				log.info("connection id -> {}, is normal shutdown", connection.getId());
+			else {
+				log.error("connection id -> {}, not normal shutdown", connection.getId());
+				if (rmqConnection.shutdownEvent() != null)
+					rmqConnection.shutdownEvent().accept(signal);
+			}
+		});
+		if (connection instanceof Recoverable) {
+			((Recoverable) connection).addRecoveryListener(new RecoveryListener() {
+				@Override
+				public void handleRecovery(Recoverable recoverable) {
+					log.info("Shared connection id -> {} recovered with its channels", connection.getId());
+				}
+
+				@Override
+				public void handleRecoveryStarted(Recoverable recoverable) {
+					log.warn("Shared connection id -> {} recovery started", connection.getId());
+				}
+			});
+		}
+		return connection;
+	}
+
+	static boolean isNormalShutdown(ShutdownSignalException sig) {
+		Method reason = sig.getReason();
+		if (reason instanceof AMQP.Channel.Close) {
+			AMQP.Channel.Close channelClose = (AMQP.Channel.Close) reason;
+			return channelClose.getReplyCode() == AMQP.REPLY_SUCCESS
+					&& StringUtil.isEquals(channelClose.getReplyText(), "OK");
+		} else if (reason instanceof AMQP.Connection.Close) {
+			AMQP.Connection.Close connectionClose = (AMQP.Connection.Close) reason;
+			return connectionClose.getReplyCode() == AMQP.REPLY_SUCCESS
+					&& StringUtil.isEquals(connectionClose.getReplyText(), "OK");
+		} else
+			return false;
+	}
+
+	/**
+	 * 被多个transport共享的连接
+	 */
+	public static final class SharedConnection {
+
+		private final ConnectionKey key;
+		private final Connection connection;
+		private final AtomicInteger refCount = new AtomicInteger();
+
+		private SharedConnection(ConnectionKey key, Connection connection) {
+			this.key = key;
+			this.connection = connection;
+		}
+
+		/**
+		 * 在共享连接上创建channel, 使用者负责关闭
+		 *
+		 * @return
+		 * @throws IOException
+		 */
+		public Channel createChannel() throws IOException {
+			Channel channel = connection.createChannel();
+			if (channel == null)
+				throw new IOException("No channel available, connection id -> " + connection.getId());
+			return channel;
+		}
+
+		/**
+		 * @return the connection
+		 */
+		public Connection connection() {
+			return connection;
+		}
+
+		public ConnectionPurpose purpose() {
+			return key.purpose;
+		}
+
+		/**
+		 * @return current reference count
+		 */
+		public int refCount() {
+			return refCount.get();
+		}
+
+		// 非主动关闭的可恢复连接仍可使用, 恢复后channel随之恢复
+		private boolean isUsable() {
+			if (connection.isOpen())
+				return true;
+			ShutdownSignalException reason = connection.getCloseReason();
+			return connection instanceof Recoverable && reason != null && !reason.isInitiatedByApplication();
+		}
+
+	}
+
+	private static final class ConnectionKey {
+
+		private final RmqConnection rmqConnection;
+		private final ConnectionPurpose purpose;
+
+		private ConnectionKey(RmqConnection rmqConnection, ConnectionPurpose purpose) {
+			this.rmqConnection = rmqConnection;
+			this.purpose = purpose;
+		}
+
+		@Override
+		public int hashCode() {
+			return rmqConnection.hashCode() * 31 + purpose.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ConnectionKey))
+				return false;
+			ConnectionKey other = (ConnectionKey) obj;
+			return purpose == other.purpose && rmqConnection.equals(other.rmqConnection);
+		}
+
+	}
+
+}
@@ -1,5 +1,419 @@
 package io.mercury.transport.rabbitmq;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+
+import io.mercury.common.util.Assertor;
+import io.mercury.transport.core.api.Receiver;
+import io.mercury.transport.core.exception.ReceiverStartException;
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.ConnectionPurpose;
+import io.mercury.transport.rabbitmq.configurator.RmqConnection;
+import io.mercury.transport.rabbitmq.consumer.AckCoalescer;
+import io.mercury.transport.rabbitmq.consumer.TimerWheel;
+import io.mercury.transport.rabbitmq.consumer.TimerWheel.Timeout;
+import io.mercury.transport.rabbitmq.declare.QueueRelation;
+import io.mercury.transport.rabbitmq.exception.AmqpDeclareException;
+
+/**
+ * 基于direct reply-to(amq.rabbitmq.reply-to)的请求/响应<br>
+ *
+ * 请求方在自己的channel上以autoAck消费伪队列amq.rabbitmq.reply-to,
+ * 响应通过correlationId与等待中的请求匹配, 不需要为每次调用声明临时队列.
+ * 同一channel上可以有任意数量的并发请求, 超时由共享时间轮驱动.<br>
+ *
+ * 响应方消费请求队列, 在工作线程池中执行处理函数并将结果发送到请求的replyTo.
+ *
+ * @author yellow013
+ */
 public final class RabbitMqPipeline {
 
+	// RabbitMQ提供的direct reply-to伪队列
+	public static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+	private RabbitMqPipeline() {
+	}
+
+	/**
+	 *
+	 * @param connection
+	 * @param requestQueue 响应方消费的队列
+	 * @return
+	 * @throws ReceiverStartException
+	 */
+	public static RpcRequester newRequester(@Nonnull RmqConnection connection, @Nonnull String requestQueue)
+			throws ReceiverStartException {
+		return newRequester(null, connection, requestQueue);
+	}
+
+	/**
+	 *
+	 * @param tag
+	 * @param connection
+	 * @param requestQueue 响应方消费的队列
+	 * @return
+	 * @throws ReceiverStartException
+	 */
+	public static RpcRequester newRequester(String tag, @Nonnull RmqConnection connection,
+			@Nonnull String requestQueue) throws ReceiverStartException {
+		return new RpcRequester(tag, connection, requestQueue);
+	}
+
+	/**
+	 *
+	 * @param connection
+	 * @param requestQueue 请求队列, 在receive()时声明
+	 * @param workers      处理请求的线程数量
+	 * @param handler      请求处理函数, 返回null时不发送响应
+	 * @return
+	 */
+	public static RpcResponder newResponder(@Nonnull RmqConnection connection, @Nonnull QueueRelation requestQueue,
+			int workers, @Nonnull Function<byte[], byte[]> handler) {
+		return newResponder(null, connection, requestQueue, workers, handler);
+	}
+
+	/**
+	 *
+	 * @param tag
+	 * @param connection
+	 * @param requestQueue 请求队列, 在receive()时声明
+	 * @param workers      处理请求的线程数量
+	 * @param handler      请求处理函数, 返回null时不发送响应
+	 * @return
+	 */
+	public static RpcResponder newResponder(String tag, @Nonnull RmqConnection connection,
+			@Nonnull QueueRelation requestQueue, int workers, @Nonnull Function<byte[], byte[]> handler) {
+		return new RpcResponder(tag, connection, requestQueue, workers, handler);
+	}
+
+	/**
+	 * 请求方
+	 */
+	public static final class RpcRequester extends AbstractRabbitMqTransport {
+
+		private final String requestQueue;
+
+		// correlationId -> 等待响应的请求
+		private final Map<String, PendingCall> pendingCalls = new ConcurrentHashMap<>();
+
+		private final AtomicLong sequence = new AtomicLong();
+
+		// correlationId前缀, 区分同一broker上的不同请求方
+		private final String idPrefix;
+
+		private final TimerWheel timerWheel = TimerWheel.shared();
+
+		// 超时的请求在此线程池中结束, 调用方的后续处理不会占用共享时间轮线程
+		private static final ExecutorService TIMEOUT_EXECUTOR = Executors.newCachedThreadPool(
+				new BasicThreadFactory.Builder().namingPattern("RpcRequester-timeout-%d").daemon(true).build());
+
+		// 同一channel不能被多个线程同时用于发布
+		private final Object publishLock = new Object();
+
+		private volatile boolean destroyed;
+
+		private RpcRequester(String tag, RmqConnection connection, String requestQueue)
+				throws ReceiverStartException {
+			this(tag, connection, requestQueue, null);
+		}
+
+		/**
+		 * 
+		 * @param tag
+		 * @param connection
+		 * @param requestQueue
+		 * @param connectionFactory 不为null时代替connection创建的ConnectionFactory, 不使用共享连接时有效
+		 * @throws ReceiverStartException
+		 */
+		RpcRequester(String tag, RmqConnection connection, String requestQueue, ConnectionFactory connectionFactory)
+				throws ReceiverStartException {
+			super(tag, "RpcRequester", connection);
+			this.connectionFactory = connectionFactory;
+			this.requestQueue = Assertor.nonNull(requestQueue, "requestQueue");
+			this.idPrefix = Long.toHexString(System.nanoTime()) + "-";
+			createConnection();
+			consumeReplies();
+		}
+
+		/**
+		 * 必须在发布第一个请求之前, 在同一channel上以autoAck消费amq.rabbitmq.reply-to
+		 *
+		 * @throws ReceiverStartException
+		 */
+		private void consumeReplies() throws ReceiverStartException {
+			try {
+				channel.basicConsume(DIRECT_REPLY_TO, true, tag + "-reply", new DefaultConsumer(channel) {
+					@Override
+					public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties,
+							byte[] body) {
+						handleReply(properties.getCorrelationId(), body);
+					}
+				});
+			} catch (IOException e) {
+				throw new ReceiverStartException(e, "Consume " + DIRECT_REPLY_TO + " throw IOException");
+			}
+		}
+
+		private void handleReply(String correlationId, byte[] body) {
+			PendingCall call = correlationId == null ? null : pendingCalls.remove(correlationId);
+			if (call == null) {
+				// 已经超时或不属于此请求方
+				log.warn("Discard reply, correlationId==[{}]", correlationId);
+				return;
+			}
+			call.timeout.cancel();
+			call.future.complete(body);
+		}
+
+		/**
+		 * 异步发送请求
+		 *
+		 * @param request
+		 * @param timeoutMillis 超过此时间未收到响应时future以TimeoutException结束
+		 * @return
+		 */
+		public CompletableFuture<byte[]> request(byte[] request, long timeoutMillis) {
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			if (destroyed) {
+				future.completeExceptionally(new IllegalStateException(tag + " is destroyed"));
+				return future;
+			}
+			String correlationId = idPrefix + sequence.incrementAndGet();
+			PendingCall call = new PendingCall(future);
+			// 在发布之前登记, 保证响应不会早于登记到达
+			pendingCalls.put(correlationId, call);
+			call.timeout = timerWheel.schedule(() -> {
+				// 时间轮线程只移除请求
+				if (pendingCalls.remove(correlationId, call))
+					TIMEOUT_EXECUTOR.execute(() -> future.completeExceptionally(new TimeoutException(
+							"Request correlationId==[" + correlationId + "] timeout " + timeoutMillis + "ms")));
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+			BasicProperties props = new BasicProperties.Builder().correlationId(correlationId)
+					.replyTo(DIRECT_REPLY_TO).expiration(Long.toString(timeoutMillis)).build();
+			try {
+				synchronized (publishLock) {
+					channel.basicPublish("", requestQueue, props, request);
+				}
+			} catch (IOException e) {
+				if (pendingCalls.remove(correlationId, call)) {
+					call.timeout.cancel();
+					future.completeExceptionally(e);
+				}
+			}
+			return future;
+		}
+
+		/**
+		 * 同步发送请求
+		 *
+		 * @param request
+		 * @param timeoutMillis
+		 * @return
+		 * @throws TimeoutException
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		public byte[] call(byte[] request, long timeoutMillis)
+				throws TimeoutException, IOException, InterruptedException {
+			try {
+				return request(request, timeoutMillis).get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof TimeoutException)
+					throw (TimeoutException) cause;
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				throw new IOException(cause);
+			}
+		}
+
+		/**
+		 *
+		 * @return current waiting request count
+		 */
+		public int pendingCount() {
+			return pendingCalls.size();
+		}
+
+		@Override
+		public boolean destroy() {
+			destroyed = true;
+			super.destroy();
+			// channel关闭后不会再收到响应
+			for (String correlationId : pendingCalls.keySet()) {
+				PendingCall call = pendingCalls.remove(correlationId);
+				if (call != null) {
+					call.timeout.cancel();
+					call.future.completeExceptionally(new IOException(tag + " is destroyed"));
+				}
+			}
+			return true;
+		}
+
+		private static final class PendingCall {
+
+			private final CompletableFuture<byte[]> future;
+			private volatile Timeout timeout;
+
+			private PendingCall(CompletableFuture<byte[]> future) {
+				this.future = future;
+			}
+
+		}
+
+	}
+
+	/**
+	 * 响应方
+	 */
+	public static final class RpcResponder extends AbstractRabbitMqTransport implements Receiver {
+
+		private final QueueRelation requestQueue;
+
+		private final Function<byte[], byte[]> handler;
+
+		private final int workers;
+
+		private final ExecutorService workerPool;
+
+		// 工作线程乱序完成, 只确认连续完成的deliveryTag
+		private volatile AckCoalescer ackCoalescer;
+
+		// 同一channel不能被多个线程同时用于发布
+		private final Object publishLock = new Object();
+
+		private RpcResponder(String tag, RmqConnection connection, QueueRelation requestQueue, int workers,
+				Function<byte[], byte[]> handler) {
+			this(tag, connection, requestQueue, workers, handler, null);
+		}
+
+		/**
+		 * 
+		 * @param tag
+		 * @param connection
+		 * @param requestQueue
+		 * @param workers
+		 * @param handler
+		 * @param connectionFactory 不为null时代替connection创建的ConnectionFactory, 不使用共享连接时有效
+		 */
+		RpcResponder(String tag, RmqConnection connection, QueueRelation requestQueue, int workers,
+				Function<byte[], byte[]> handler, ConnectionFactory connectionFactory) {
+			super(tag, "RpcResponder", connection);
+			this.connectionFactory = connectionFactory;
+			this.requestQueue = Assertor.nonNull(requestQueue, "requestQueue");
+			this.handler = Assertor.nonNull(handler, "handler");
+			this.workers = Assertor.withinRange(workers, 1, 65535, "workers");
+			this.workerPool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(),
+					new BasicThreadFactory.Builder().namingPattern(this.tag + "-worker-%d").daemon(true).build());
+			createConnection();
+		}
+
+		@Override
+		protected ConnectionPurpose connectionPurpose() {
+			return ConnectionPurpose.CONSUME;
+		}
+
+		@Override
+		public void receive() throws ReceiverStartException {
+			try {
+				requestQueue.declare(RabbitMqDeclarant.withChannel(channel));
+			} catch (AmqpDeclareException e) {
+				throw new ReceiverStartException(e, "Declare request queue failure");
+			}
+			// 未确认的请求数量限制为工作线程数量的两倍
+			int prefetch = workers * 2;
+			// deliveryTag只在所属channel上有效, 重连后使用新的AckCoalescer
+			AckCoalescer coalescer = new AckCoalescer(tag, 1, 0, prefetch, deliveryTag -> {
+				synchronized (publishLock) {
+					channel.basicAck(deliveryTag, true);
+				}
+			});
+			this.ackCoalescer = coalescer;
+			try {
+				channel.basicQos(prefetch);
+				channel.basicConsume(requestQueue.queueName(), false, tag, new DefaultConsumer(channel) {
+					@Override
+					public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties,
+							byte[] body) {
+						try {
+							workerPool.execute(
+									() -> handleRequest(coalescer, envelope.getDeliveryTag(), properties, body));
+						} catch (RejectedExecutionException e) {
+							// 已经关闭, 未确认的请求由broker重新投递
+							log.warn("Worker pool rejected deliveryTag==[{}]", envelope.getDeliveryTag());
+						}
+					}
+				});
+			} catch (IOException e) {
+				throw new ReceiverStartException(e, "Consume " + requestQueue.queueName() + " throw IOException");
+			}
+		}
+
+		private void handleRequest(AckCoalescer coalescer, long deliveryTag, BasicProperties properties, byte[] body) {
+			byte[] reply = null;
+			try {
+				reply = handler.apply(body);
+			} catch (Exception e) {
+				log.error("Handle request deliveryTag==[{}] throw exception -> {}", deliveryTag, e.getMessage(), e);
+			}
+			String replyTo = properties.getReplyTo();
+			if (reply != null && replyTo != null) {
+				BasicProperties props = new BasicProperties.Builder().correlationId(properties.getCorrelationId())
+						.build();
+				try {
+					synchronized (publishLock) {
+						channel.basicPublish("", replyTo, props, reply);
+					}
+				} catch (IOException e) {
+					log.error("Reply to [{}] throw IOException -> {}", replyTo, e.getMessage(), e);
+				}
+			}
+			// 处理失败的请求同样确认, 请求方以超时结束
+			if (!coalescer.isClosed())
+				coalescer.completed(deliveryTag);
+		}
+
+		@Override
+		public void reconnect() throws ReceiverStartException {
+			closeAndReconnection();
+			receive();
+		}
+
+		@Override
+		public boolean destroy() {
+			workerPool.shutdown();
+			try {
+				workerPool.awaitTermination(rmqConnection.recoveryInterval(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			AckCoalescer coalescer = this.ackCoalescer;
+			if (coalescer != null)
+				coalescer.close();
+			return super.destroy();
+		}
+
+	}
+
 }
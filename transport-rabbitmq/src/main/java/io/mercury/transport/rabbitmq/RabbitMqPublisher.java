@@ -2,14 +2,34 @@ package io.mercury.transport.rabbitmq;
 
 import static io.mercury.common.util.StringUtil.bytesToStr;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import javax.annotation.Nonnull;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
 import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownSignalException;
 
 import io.mercury.common.character.Charsets;
 import io.mercury.common.thread.ThreadTool;
@@ -17,8 +37,12 @@ import io.mercury.common.util.Assertor;
 import io.mercury.transport.core.api.Publisher;
 import io.mercury.transport.core.api.Sender;
 import io.mercury.transport.core.exception.PublishFailedException;
+import io.mercury.transport.rabbitmq.PublishConfirmTracker.PendingPublish;
+import io.mercury.transport.rabbitmq.PublishSpool.SpooledMessage;
+import io.mercury.transport.rabbitmq.configurator.ChannelPoolMode;
 import io.mercury.transport.rabbitmq.configurator.RmqConnection;
 import io.mercury.transport.rabbitmq.configurator.RmqPublisherConfigurator;
+import io.mercury.transport.rabbitmq.configurator.SpoolOverflowPolicy;
 import io.mercury.transport.rabbitmq.declare.ExchangeRelation;
 import io.mercury.transport.rabbitmq.exception.AmqpDeclareException;
 import io.mercury.transport.rabbitmq.exception.AmqpDeclareRuntimeException;
@@ -44,14 +68,42 @@ public class RabbitMqPublisher extends AbstractRabbitMqTransport implements Publ
 	private final long confirmTimeout;
 	private final int confirmRetry;
 
+	// 是否使用异步发布确认
+	private final boolean asyncConfirm;
+	// 处理确认超时和重发的线程
+	private final ScheduledExecutorService confirmScheduler;
+
+	// 发布使用的channel池, 第一个为AbstractRabbitMqTransport.channel
+	private final PooledChannel[] pooledChannels;
+	// channel池使用方式
+	private final ChannelPoolMode channelPoolMode;
+	// LEASE模式下空闲的channel
+	private final BlockingQueue<PooledChannel> idleChannels;
+	// PIN_PER_THREAD模式下线程绑定的channel
+	private final ThreadLocal<PooledChannel> pinnedChannel;
+	private final AtomicInteger pinCounter = new AtomicInteger();
+
 	private final String publisherName;
 
-	@SuppressWarnings("unused")
 	private Consumer<Long> ackCallback;
 
-	@SuppressWarnings("unused")
 	private Consumer<Long> noAckCallback;
 
+	// 连接断开时保存消息的本地spool, 未配置时为null
+	private final PublishSpool spool;
+	// spool达到上限时的处理方式
+	private final SpoolOverflowPolicy spoolOverflowPolicy;
+	// 重连并重放spool的线程
+	private final ScheduledExecutorService spoolDrainer;
+	// 下次尝试重连的时间, 只比较与System.nanoTime()的差值
+	private long nextReconnectNanos = System.nanoTime();
+
+	// 每次重放并等待确认的消息数量
+	private static final int SPOOL_REPLAY_BATCH = 256;
+
+	// spool重放线程的执行间隔(毫秒)
+	private static final long SPOOL_DRAIN_INTERVAL = 10;
+
 	/**
 	 * 
 	 * @param configurator
@@ -78,7 +130,21 @@ public class RabbitMqPublisher extends AbstractRabbitMqTransport implements Publ
 	 */
 	public RabbitMqPublisher(String tag, @Nonnull RmqPublisherConfigurator configurator, Consumer<Long> ackCallback,
 			Consumer<Long> noAckCallback) {
+		this(tag, configurator, ackCallback, noAckCallback, null);
+	}
+
+	/**
+	 * 
+	 * @param tag
+	 * @param configurator
+	 * @param ackCallback
+	 * @param noAckCallback
+	 * @param connectionFactory 不为null时代替configurator创建的ConnectionFactory, 不使用共享连接时有效
+	 */
+	RabbitMqPublisher(String tag, @Nonnull RmqPublisherConfigurator configurator, Consumer<Long> ackCallback,
+			Consumer<Long> noAckCallback, ConnectionFactory connectionFactory) {
 		super(tag, "publisher", configurator.connection());
+		this.connectionFactory = connectionFactory;
 		this.publishExchange = Assertor.nonNull(configurator.publishExchange(), "exchangeRelation");
 		this.exchangeName = publishExchange.exchangeName();
 		this.defaultRoutingKey = configurator.defaultRoutingKey();
@@ -87,12 +153,99 @@ public class RabbitMqPublisher extends AbstractRabbitMqTransport implements Publ
 		this.confirm = configurator.confirm();
 		this.confirmTimeout = configurator.confirmTimeout();
 		this.confirmRetry = configurator.confirmRetry();
+		this.asyncConfirm = confirm && configurator.asyncConfirm();
 		this.ackCallback = ackCallback;
 		this.noAckCallback = noAckCallback;
 		this.hasPropsSupplier = msgPropsSupplier != null;
 		this.publisherName = "publisher::" + rmqConnection.fullInfo() + "$" + exchangeName;
+		int poolSize = Math.max(1, configurator.channelPoolSize());
+		this.pooledChannels = new PooledChannel[poolSize];
+		for (int i = 0; i < poolSize; i++)
+			// 每个channel的sequence number独立, 分别跟踪确认
+			pooledChannels[i] = newPooledChannel(i, configurator);
+		this.channelPoolMode = configurator.channelPoolMode();
+		if (channelPoolMode == ChannelPoolMode.PIN_PER_THREAD) {
+			this.idleChannels = null;
+			this.pinnedChannel = ThreadLocal
+					.withInitial(() -> pooledChannels[Math.floorMod(pinCounter.getAndIncrement(), poolSize)]);
+		} else {
+			this.idleChannels = new ArrayBlockingQueue<>(poolSize, false, Arrays.asList(pooledChannels));
+			this.pinnedChannel = null;
+		}
+		this.confirmScheduler = asyncConfirm
+				? new ScheduledThreadPoolExecutor(1,
+						new BasicThreadFactory.Builder().namingPattern("RabbitMqPublisher-confirm-%d").daemon(true)
+								.build())
+				: null;
+		this.spoolOverflowPolicy = configurator.spoolOverflowPolicy();
+		this.spool = openSpool(configurator);
+		this.spoolDrainer = spool != null
+				? new ScheduledThreadPoolExecutor(1,
+						new BasicThreadFactory.Builder().namingPattern("RabbitMqPublisher-spool-%d").daemon(true)
+								.build())
+				: null;
 		createConnection();
 		declare();
+		if (spool != null)
+			spoolDrainer.scheduleWithFixedDelay(this::drainSpool, 0, SPOOL_DRAIN_INTERVAL, TimeUnit.MILLISECONDS);
+		if (asyncConfirm) {
+			long checkInterval = Math.max(confirmTimeout / 10, 10);
+			confirmScheduler.scheduleWithFixedDelay(this::resendUnconfirmed, checkInterval, checkInterval,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 异步确认时由tracker负责重发; 同步确认和spool重放时由发布线程等待和重发,
+	 * 共享channel的线程只等待各自消息的确认
+	 * 
+	 * @param configurator
+	 * @return
+	 */
+	private PublishConfirmTracker newConfirmTracker(RmqPublisherConfigurator configurator) {
+		if (asyncConfirm)
+			return new PublishConfirmTracker(exchangeName, configurator.maxInFlight(), confirmTimeout, confirmRetry,
+					ackCallback, noAckCallback);
+		if (confirm || configurator.spoolDirectory() != null)
+			return newSyncConfirmTracker();
+		return null;
+	}
+
+	/**
+	 * 由发布线程等待确认, 不重发, 不回调
+	 * 
+	 * @return
+	 */
+	private PublishConfirmTracker newSyncConfirmTracker() {
+		return new PublishConfirmTracker(exchangeName, Integer.MAX_VALUE, confirmTimeout, 0, null, null);
+	}
+
+	/**
+	 * 异步确认时spool重放使用单独的同步跟踪器, 不占用maxInFlight窗口, 由drainer整批重发
+	 * 
+	 * @param index
+	 * @param configurator
+	 * @return
+	 */
+	private PooledChannel newPooledChannel(int index, RmqPublisherConfigurator configurator) {
+		PublishConfirmTracker confirmTracker = newConfirmTracker(configurator);
+		PublishConfirmTracker replayTracker = null;
+		if (configurator.spoolDirectory() != null)
+			replayTracker = asyncConfirm ? newSyncConfirmTracker() : confirmTracker;
+		return new PooledChannel(index, confirmTracker, replayTracker);
+	}
+
+	private PublishSpool openSpool(RmqPublisherConfigurator configurator) {
+		if (configurator.spoolDirectory() == null)
+			return null;
+		try {
+			return new PublishSpool(new File(configurator.spoolDirectory()), configurator.spoolSegmentSize(),
+					configurator.spoolMaxSize());
+		} catch (IOException e) {
+			log.error("Open spool directory -> {} throw IOException -> {}", configurator.spoolDirectory(),
+					e.getMessage(), e);
+			throw new IllegalStateException(e);
+		}
 	}
 
 	private void declare() throws AmqpDeclareRuntimeException {
@@ -128,79 +281,710 @@ public class RabbitMqPublisher extends AbstractRabbitMqTransport implements Publ
 	}
 
 	public void publish(String target, byte[] msg, BasicProperties props) throws PublishFailedException {
-		// 记录重试次数
-		int retry = 0;
-		// 调用isConnected(), 检查channel和connection是否打开, 如果没有打开, 先销毁连接, 再重新创建连接.
-		while (!isConnected()) {
-			log.error("Detect connection isConnected() == false, retry {}", (++retry));
-			destroy();
-			ThreadTool.sleep(rmqConnection.recoveryInterval());
-			createConnection();
-		}
-		if (confirm) {
+		if (spooled(target, msg, props))
+			return;
+		if (asyncConfirm) {
 			try {
-				confirmPublish(target, msg, props);
+				// 确认结果通过ackCallback和noAckCallback通知
+				asyncPublish(target, msg, props, new CompletableFuture<>());
 			} catch (IOException e) {
-				log.error("Method publish isConfirm==[true] throw IOException -> {}, msg==[{}]", e.getMessage(),
+				log.error("Method publish asyncConfirm==[true] throw IOException -> {}, msg==[{}]", e.getMessage(),
 						bytesToStr(msg), e);
 				destroy();
+				spoolOrThrow(target, Collections.singletonList(msg), props, e);
+			}
+			return;
+		}
+		ensureConnected();
+		PooledChannel pooled = leaseChannel();
+		IOException failure;
+		try {
+			if (confirm) {
+				try {
+					confirmPublish(pooled, target, msg, props);
+				} catch (AmqpNoConfirmException e) {
+					log.error("Method publish isConfirm==[true] throw NoConfirmException -> {}, msg==[{}]",
+							e.getMessage(), bytesToStr(msg), e);
+					throw new PublishFailedException(e);
+				}
+			} else {
+				synchronized (pooled) {
+					basicPublish(pooled.channel, target, msg, props);
+				}
+			}
+			return;
+		} catch (IOException e) {
+			log.error("Method publish isConfirm==[{}] throw IOException -> {}, msg==[{}]", confirm, e.getMessage(),
+					bytesToStr(msg), e);
+			destroy();
+			failure = e;
+		} finally {
+			releaseChannel(pooled);
+		}
+		// 归还channel之后再写入spool, BLOCK策略等待时不占用spool重放需要的channel
+		spoolOrThrow(target, Collections.singletonList(msg), props, failure);
+	}
+
+	@Override
+	public void sendBatch(List<byte[]> msgs) throws PublishFailedException {
+		publishBatch(msgs);
+	}
+
+	@Override
+	public void sendBatch(byte[][] msgs, int offset, int length) throws PublishFailedException {
+		publishBatch(msgs, offset, length);
+	}
+
+	@Override
+	public void publishBatch(List<byte[]> msgs) throws PublishFailedException {
+		publishBatch(defaultRoutingKey, msgs, defaultMsgProps);
+	}
+
+	@Override
+	public void publishBatch(byte[][] msgs, int offset, int length) throws PublishFailedException {
+		publishBatch(defaultRoutingKey, Arrays.asList(msgs).subList(offset, offset + length), defaultMsgProps);
+	}
+
+	@Override
+	public void publishBatch(String target, List<byte[]> msgs) throws PublishFailedException {
+		publishBatch(target, msgs, hasPropsSupplier ? msgPropsSupplier.get() : defaultMsgProps);
+	}
+
+	@Override
+	public void publishBatch(String target, byte[][] msgs, int offset, int length) throws PublishFailedException {
+		publishBatch(target, Arrays.asList(msgs).subList(offset, offset + length),
+				hasPropsSupplier ? msgPropsSupplier.get() : defaultMsgProps);
+	}
+
+	/**
+	 * 确认模式下整批消息发布后使用同一个deadline等待确认, 只重发被nack或超时的消息.
+	 * 
+	 * @param target
+	 * @param msgs
+	 * @param props
+	 * @throws PublishFailedException
+	 */
+	public void publishBatch(String target, List<byte[]> msgs, BasicProperties props) throws PublishFailedException {
+		if (msgs.isEmpty())
+			return;
+		if (spoolActive()) {
+			for (byte[] msg : msgs)
+				publish(target, msg, props);
+			return;
+		}
+		if (asyncConfirm) {
+			// 连接断开时publish将剩余的消息写入spool
+			for (byte[] msg : msgs)
+				publish(target, msg, props);
+			return;
+		}
+		ensureConnected();
+		PooledChannel pooled = leaseChannel();
+		List<byte[]> unpublished = confirm ? new ArrayList<>() : null;
+		int published = 0;
+		IOException failure;
+		try {
+			if (confirm)
+				confirmPublishBatch(pooled, target, msgs, props, unpublished);
+			else {
+				synchronized (pooled) {
+					for (byte[] msg : msgs) {
+						basicPublish(pooled.channel, target, msg, props);
+						published++;
+					}
+				}
+			}
+			return;
+		} catch (IOException e) {
+			log.error("Method publishBatch isConfirm==[{}] throw IOException -> {}, batch size==[{}]", confirm,
+					e.getMessage(), msgs.size(), e);
+			destroy();
+			failure = e;
+		} catch (AmqpNoConfirmException e) {
+			log.error("Method publishBatch isConfirm==[true] throw NoConfirmException -> {}, batch size==[{}]",
+					e.getMessage(), msgs.size(), e);
+			throw new PublishFailedException(e);
+		} finally {
+			releaseChannel(pooled);
+		}
+		spoolOrThrow(target, confirm ? unpublished : msgs.subList(published, msgs.size()), props, failure);
+	}
+
+	/**
+	 * 
+	 * @param pooled
+	 * @param routingKey
+	 * @param msgs
+	 * @param props
+	 * @param unconfirmed 不为null时, 抛出IOException前在其中写入尚未确认的消息
+	 * @throws IOException
+	 * @throws AmqpNoConfirmException
+	 */
+	private void confirmPublishBatch(PooledChannel pooled, String routingKey, List<byte[]> msgs,
+			BasicProperties props, List<byte[]> unconfirmed) throws IOException, AmqpNoConfirmException {
+		PublishConfirmTracker tracker = pooled.confirmTracker;
+		List<PendingPublish> pendings = new ArrayList<>(msgs.size());
+		for (byte[] msg : msgs)
+			pendings.add(new PendingPublish(routingKey, msg, props, new CompletableFuture<>()));
+		int retry = 0;
+		for (;;) {
+			try {
+				trackedPublish(pooled, tracker, pendings.toArray(new PendingPublish[pendings.size()]));
+			} catch (IOException e) {
+				// 已经发布但未确认的消息可能没有到达broker, 与未发布的消息一起返回
+				for (PendingPublish pending : pendings) {
+					if (tracker.untrack(pending.seqNo))
+						tracker.release();
+					boolean acked = pending.future.isDone() && !pending.future.isCompletedExceptionally();
+					if (unconfirmed != null && !acked)
+						unconfirmed.add(pending.msg);
+				}
+				throw e;
+			}
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeout);
+			List<PendingPublish> rejected = new ArrayList<>();
+			try {
+				for (PendingPublish pending : pendings) {
+					if (awaitConfirm(tracker, pending, deadline)) {
+						if (ackCallback != null)
+							ackCallback.accept(pending.seqNo);
+					} else
+						rejected.add(pending);
+				}
+			} catch (InterruptedException e) {
+				// 放弃等待, 之后到达的确认将被忽略
+				for (PendingPublish pending : pendings)
+					if (tracker.untrack(pending.seqNo))
+						tracker.release();
+				Thread.currentThread().interrupt();
 				throw new PublishFailedException(e);
-			} catch (AmqpNoConfirmException e) {
-				log.error("Method publish isConfirm==[true] throw NoConfirmException -> {}, msg==[{}]", e.getMessage(),
-						bytesToStr(msg), e);
+			}
+			if (rejected.isEmpty())
+				return;
+			log.error("Batch wait confirms(confirmTimeout==[{}]) failure, unconfirmed==[{}], batch size==[{}], "
+					+ "retry==[{}]", confirmTimeout, rejected.size(), msgs.size(), retry);
+			if (++retry >= confirmRetry) {
+				if (noAckCallback != null)
+					for (PendingPublish pending : rejected)
+						noAckCallback.accept(pending.seqNo);
+				throw new AmqpNoConfirmException(exchangeName, routingKey, retry, confirmTimeout);
+			}
+			// 只重发被nack或超时的消息, 已经确认的消息不重复发布
+			pendings.clear();
+			for (PendingPublish pending : rejected)
+				pendings.add(new PendingPublish(pending.routingKey, pending.msg, pending.props,
+						new CompletableFuture<>()));
+		}
+	}
+
+	/**
+	 * 
+	 * @param msg
+	 * @return
+	 * @throws PublishFailedException
+	 */
+	public CompletableFuture<Long> publishAsync(byte[] msg) throws PublishFailedException {
+		return publishAsync(defaultRoutingKey, msg, defaultMsgProps);
+	}
+
+	/**
+	 * 
+	 * @param target
+	 * @param msg
+	 * @return
+	 * @throws PublishFailedException
+	 */
+	public CompletableFuture<Long> publishAsync(String target, byte[] msg) throws PublishFailedException {
+		return publishAsync(target, msg, hasPropsSupplier ? msgPropsSupplier.get() : defaultMsgProps);
+	}
+
+	/**
+	 * 异步确认模式下, 返回的future在收到broker确认时完成, 值为最后一次发布使用的sequence number;
+	 * 在重试confirmRetry次后仍未确认则以PublishFailedException完成.<br>
+	 * 未开启异步确认时同步发布, 返回已经完成的future.
+	 * 
+	 * @param target
+	 * @param msg
+	 * @param props
+	 * @return
+	 * @throws PublishFailedException
+	 */
+	public CompletableFuture<Long> publishAsync(String target, byte[] msg, BasicProperties props)
+			throws PublishFailedException {
+		CompletableFuture<Long> future = new CompletableFuture<>();
+		if (!asyncConfirm) {
+			try {
+				publish(target, msg, props);
+				future.complete(0L);
+			} catch (PublishFailedException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		try {
+			asyncPublish(target, msg, props, future);
+		} catch (IOException e) {
+			log.error("Method publishAsync throw IOException -> {}, msg==[{}]", e.getMessage(), bytesToStr(msg), e);
+			destroy();
+			throw new PublishFailedException(e);
+		}
+		return future;
+	}
+
+	private void asyncPublish(String target, byte[] msg, BasicProperties props, CompletableFuture<Long> future)
+			throws IOException, PublishFailedException {
+		ensureConnected();
+		PooledChannel pooled = leaseChannel();
+		try {
+			PublishConfirmTracker tracker = pooled.confirmTracker;
+			try {
+				// 窗口已满时最多等待confirmTimeout
+				if (!tracker.acquire(confirmTimeout))
+					throw new PublishFailedException("Unconfirmed message window is full, inFlight==["
+							+ tracker.inFlight() + "], channel index==[" + pooled.index + "], publisherName==["
+							+ publisherName + "]");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 				throw new PublishFailedException(e);
 			}
-		} else {
 			try {
-				basicPublish(target, msg, props);
+				asyncPublish0(pooled, new PendingPublish(target, msg, props, future));
 			} catch (IOException e) {
-				log.error("Method publish isConfirm==[false] throw IOException -> {}, msg==[{}]", e.getMessage(),
-						bytesToStr(msg), e);
-				destroy();
-				throw new PublishFailedException(e);
+				tracker.release();
+				throw e;
 			}
+		} finally {
+			releaseChannel(pooled);
 		}
 	}
 
 	/**
+	 * 连接断开或spool中还有未重放的消息时, 为保持顺序新消息也写入spool
 	 * 
-	 * @param routingKey
+	 * @return
+	 */
+	private boolean spoolActive() {
+		return spool != null && (spool.hasPending() || !isConnected());
+	}
+
+	/**
+	 * 
+	 * @param target
 	 * @param msg
 	 * @param props
-	 * @throws IOException
-	 * @throws AmqpNoConfirmException
+	 * @return true if the message has been spooled or discarded
+	 * @throws PublishFailedException
 	 */
-	private void confirmPublish(String routingKey, byte[] msg, BasicProperties props)
-			throws IOException, AmqpNoConfirmException {
-		confirmPublish0(routingKey, msg, props, 0);
+	private boolean spooled(String target, byte[] msg, BasicProperties props) throws PublishFailedException {
+		if (!spoolActive())
+			return false;
+		try {
+			if (spool.append(target, msg, props))
+				return true;
+		} catch (IOException e) {
+			log.error("Spool append throw IOException -> {}, msg==[{}]", e.getMessage(), bytesToStr(msg), e);
+		}
+		switch (spoolOverflowPolicy) {
+		case DISCARD:
+			log.warn("Spool is full, discard msg==[{}]", bytesToStr(msg));
+			return true;
+		case BLOCK:
+			return awaitSpool(target, msg, props);
+		default:
+			throw new PublishFailedException("Spool is full, publisherName==[" + publisherName + "]");
+		}
 	}
 
-	// TODO 优化异常处理逻辑
-	private void confirmPublish0(String routingKey, byte[] msg, BasicProperties props, int retry)
-			throws IOException, AmqpNoConfirmException {
+	/**
+	 * 发布时连接断开, 配置了spool时将未发布的消息写入spool, spool已满时按spoolOverflowPolicy处理
+	 * 
+	 * @param target
+	 * @param msgs
+	 * @param props
+	 * @param cause
+	 * @throws PublishFailedException
+	 */
+	private void spoolOrThrow(String target, List<byte[]> msgs, BasicProperties props, IOException cause)
+			throws PublishFailedException {
+		if (spool == null)
+			throw new PublishFailedException(cause);
+		for (byte[] msg : msgs)
+			// 其他线程已经重建连接且spool为空时直接发布
+			if (!spooled(target, msg, props))
+				publish(target, msg, props);
+	}
+
+	/**
+	 * spool已满时等待drainer重放, spool有空间时写入spool, spool清空且连接可用时才直接发布,
+	 * 保证新消息不会先于spool中的消息发布
+	 * 
+	 * @return true if the message has been spooled, false if it can be published
+	 *         directly
+	 * @throws PublishFailedException
+	 */
+	private boolean awaitSpool(String target, byte[] msg, BasicProperties props) throws PublishFailedException {
+		for (;;) {
+			if (spoolDrainer.isShutdown())
+				throw new PublishFailedException("Publisher is closed, publisherName==[" + publisherName + "]");
+			if (!spool.hasPending() && isConnected())
+				return false;
+			try {
+				if (spool.append(target, msg, props))
+					return true;
+			} catch (IOException e) {
+				log.error("Spool append throw IOException -> {}, msg==[{}]", e.getMessage(), bytesToStr(msg), e);
+			}
+			ThreadTool.sleep(SPOOL_DRAIN_INTERVAL);
+		}
+	}
+
+	/**
+	 * 在spool线程中重建连接, 并按顺序重放spool中的消息, 每批消息确认后才从spool中移除
+	 */
+	private void drainSpool() {
 		try {
-			channel.confirmSelect();
-			basicPublish(routingKey, msg, props);
-			if (channel.waitForConfirms(confirmTimeout))
+			if (!spool.hasPending())
 				return;
-			log.error("Call method channel.waitForConfirms(confirmTimeout==[{}]) retry==[{}]", confirmTimeout, retry);
-			if (++retry == confirmRetry)
-				throw new AmqpNoConfirmException(exchangeName, routingKey, retry, confirmTimeout);
-			confirmPublish0(routingKey, msg, props, retry);
+			if (!isConnected()) {
+				long now = System.nanoTime();
+				if (now - nextReconnectNanos < 0)
+					return;
+				nextReconnectNanos = now + TimeUnit.MILLISECONDS.toNanos(rmqConnection.recoveryInterval());
+				synchronized (pooledChannels) {
+					if (!isConnected()) {
+						log.error("Detect connection isConnected() == false, spool drainer reconnect");
+						destroy();
+						createConnection();
+					}
+				}
+				if (!isConnected())
+					return;
+			}
+			PublishSpool.Batch batch;
+			while ((batch = spool.next(SPOOL_REPLAY_BATCH)) != null) {
+				if (!replay(batch.messages))
+					return;
+				spool.commit(batch);
+			}
+		} catch (Exception e) {
+			log.error("Method drainSpool() throw Exception -> {}", e.getMessage(), e);
+		}
+	}
+
+	private boolean replay(List<SpooledMessage> messages) throws PublishFailedException {
+		PooledChannel pooled = leaseChannel();
+		try {
+			PendingPublish[] pendings = new PendingPublish[messages.size()];
+			for (int i = 0; i < pendings.length; i++) {
+				SpooledMessage spooled = messages.get(i);
+				pendings[i] = new PendingPublish(spooled.routingKey, spooled.msg, spooled.props,
+						new CompletableFuture<>());
+			}
+			trackedPublish(pooled, pooled.replayTracker, pendings);
+			if (awaitConfirms(pooled.replayTracker, pendings))
+				return true;
+			log.error("Spool replay wait confirms(confirmTimeout==[{}]) failure, batch size==[{}]", confirmTimeout,
+					messages.size());
 		} catch (IOException e) {
-			log.error("Method channel.confirmSelect() throw IOException from publisherName -> {}, routingKey -> {}",
-					publisherName, routingKey, e);
-			throw e;
+			log.error("Spool replay throw IOException -> {}", e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			releaseChannel(pooled);
+		}
+		return false;
+	}
+
+	private void ensureConnected() {
+		if (isConnected())
+			return;
+		// 只由一个线程重建连接, 其他发布线程等待
+		synchronized (pooledChannels) {
+			// 记录重试次数
+			int retry = 0;
+			// 调用isConnected(), 检查channel和connection是否打开, 如果没有打开, 先销毁连接, 再重新创建连接.
+			while (!isConnected()) {
+				log.error("Detect connection isConnected() == false, retry {}", (++retry));
+				destroy();
+				ThreadTool.sleep(rmqConnection.recoveryInterval());
+				createConnection();
+			}
+		}
+	}
+
+	/**
+	 * 创建连接后在同一connection上打开池中其余的channel
+	 */
+	@Override
+	protected void createConnection() {
+		super.createConnection();
+		if (channel == null)
+			return;
+		pooledChannels[0].channel = channel;
+		for (int i = 1; i < pooledChannels.length; i++) {
+			try {
+				pooledChannels[i].channel = connection.createChannel();
+			} catch (IOException e) {
+				log.error("Create pooled channel index==[{}] throw IOException -> {}", i, e.getMessage(), e);
+			}
+		}
+		log.info("Publisher -> {} opened {} channels, channelPoolMode==[{}]", tag, pooledChannels.length,
+				channelPoolMode);
+	}
+
+	/**
+	 * 共享连接不随publisher关闭, 需要先关闭池中其余的channel
+	 */
+	@Override
+	protected void closeConnection() {
+		for (int i = 1; i < pooledChannels.length; i++) {
+			Channel current = pooledChannels[i].channel;
+			if (current == null || !current.isOpen())
+				continue;
+			try {
+				current.close();
+			} catch (IOException | TimeoutException | ShutdownSignalException e) {
+				log.error("Close pooled channel index==[{}] throw exception -> {}", i, e.getMessage(), e);
+			}
+		}
+		super.closeConnection();
+	}
+
+	@Override
+	public boolean isConnected() {
+		if (!super.isConnected())
+			return false;
+		for (PooledChannel pooled : pooledChannels) {
+			Channel current = pooled.channel;
+			if (current == null || !current.isOpen())
+				return false;
+		}
+		return true;
+	}
+
+	private PooledChannel leaseChannel() throws PublishFailedException {
+		if (channelPoolMode == ChannelPoolMode.PIN_PER_THREAD)
+			return pinnedChannel.get();
+		try {
+			// channel未被归还时不会一直等待
+			PooledChannel pooled = idleChannels.poll(confirmTimeout, TimeUnit.MILLISECONDS);
+			if (pooled == null)
+				throw new PublishFailedException("No idle channel in " + confirmTimeout + " millis, pool size==["
+						+ pooledChannels.length + "], publisherName==[" + publisherName + "]");
+			return pooled;
 		} catch (InterruptedException e) {
-			log.error("Method channel.waitForConfirms() throw InterruptedException from publisherName -> {}, "
-					+ "routingKey -> {}", publisherName, routingKey, e);
+			Thread.currentThread().interrupt();
+			throw new PublishFailedException(e);
+		}
+	}
+
+	private void releaseChannel(PooledChannel pooled) {
+		if (channelPoolMode != ChannelPoolMode.PIN_PER_THREAD)
+			idleChannels.offer(pooled);
+	}
+
+	/**
+	 * 每个channel只调用一次confirmSelect(), 调用时需持有pooled的锁
+	 * 
+	 * @param pooled
+	 * @return current channel of pooled
+	 * @throws IOException
+	 */
+	private Channel selectConfirm(PooledChannel pooled) throws IOException {
+		Channel current = pooled.channel;
+		if (pooled.confirmSelectedChannel == current)
+			return current;
+		current.confirmSelect();
+		// 新的channel的sequence number从1重新开始, 旧channel上未确认的消息需要重发
+		resetOutstanding(pooled);
+		current.addConfirmListener(pooled.confirmTracker);
+		if (pooled.hasSeparateReplayTracker())
+			current.addConfirmListener(pooled.replayTracker);
+		if (current instanceof Recoverable) {
+			((Recoverable) current).addRecoveryListener(new RecoveryListener() {
+				@Override
+				public void handleRecovery(Recoverable recoverable) {
+					// 恢复后可能已经有发布线程在新的sequence number上发布, 由requeueIfRecovered判断
+					synchronized (pooled) {
+						if (requeueIfRecovered(pooled, current.getNextPublishSeqNo()))
+							log.info("Channel recovered, requeue unconfirmed messages, channel index==[{}], "
+									+ "publisherName -> {}", pooled.index, publisherName);
+					}
+				}
+
+				@Override
+				public void handleRecoveryStarted(Recoverable recoverable) {
+				}
+			});
+		}
+		pooled.confirmSelectedChannel = current;
+		return current;
+	}
+
+	/**
+	 * channel自动恢复后sequence number从1重新开始, 在恢复后的第一次发布或RecoveryListener中
+	 * 将恢复前未确认的消息放入重发队列, 调用时需持有pooled的锁
+	 * 
+	 * @param pooled
+	 * @param nextSeqNo
+	 * @return true if outstanding messages have been requeued
+	 */
+	private boolean requeueIfRecovered(PooledChannel pooled, long nextSeqNo) {
+		if (nextSeqNo > pooled.lastSeqNo)
+			return false;
+		resetOutstanding(pooled);
+		return true;
+	}
+
+	/**
+	 * 异步确认时放入重发队列; 同步确认时置为失败, 由等待确认的发布线程重发
+	 * 
+	 * @param pooled
+	 */
+	private void resetOutstanding(PooledChannel pooled) {
+		if (asyncConfirm)
+			pooled.confirmTracker.requeueOutstanding();
+		else
+			pooled.confirmTracker.failAll(new AmqpNoConfirmException(exchangeName, defaultRoutingKey, 0,
+					confirmTimeout));
+		// spool重放的消息由drainer整批重发
+		if (pooled.hasSeparateReplayTracker())
+			pooled.replayTracker.failAll(new AmqpNoConfirmException(exchangeName, defaultRoutingKey, 0,
+					confirmTimeout));
+		pooled.lastSeqNo = 0;
+	}
+
+	private void asyncPublish0(PooledChannel pooled, PendingPublish pending) throws IOException {
+		synchronized (pooled) {
+			Channel current = selectConfirm(pooled);
+			long seqNo = current.getNextPublishSeqNo();
+			requeueIfRecovered(pooled, seqNo);
+			// 先记录再发布, 保证确认回调不会早于记录
+			pooled.confirmTracker.track(seqNo, pending);
+			try {
+				basicPublish(current, pending.routingKey, pending.msg, pending.props);
+			} catch (IOException e) {
+				pooled.confirmTracker.untrack(seqNo);
+				throw e;
+			}
+			pooled.lastSeqNo = seqNo;
+		}
+	}
+
+	/**
+	 * 同步确认时按顺序发布并记录每条消息的sequence number
+	 * 
+	 * @param pooled
+	 * @param tracker  同步确认跟踪器或spool重放跟踪器
+	 * @param pendings
+	 * @throws IOException
+	 */
+	private void trackedPublish(PooledChannel pooled, PublishConfirmTracker tracker, PendingPublish[] pendings)
+			throws IOException {
+		synchronized (pooled) {
+			Channel current = selectConfirm(pooled);
+			for (PendingPublish pending : pendings) {
+				long seqNo = current.getNextPublishSeqNo();
+				requeueIfRecovered(pooled, seqNo);
+				// 同步确认和spool重放的跟踪器窗口为Integer.MAX_VALUE, 不会失败
+				tracker.tryAcquire();
+				tracker.track(seqNo, pending);
+				try {
+					basicPublish(current, pending.routingKey, pending.msg, pending.props);
+				} catch (IOException e) {
+					if (tracker.untrack(seqNo))
+						tracker.release();
+					throw e;
+				}
+				pooled.lastSeqNo = seqNo;
+			}
+		}
+	}
+
+	/**
+	 * 使用同一个deadline等待全部消息的确认, 超时的消息不再跟踪, 之后到达的确认将被忽略
+	 * 
+	 * @param tracker
+	 * @param pendings
+	 * @return true if all messages have been acked
+	 * @throws InterruptedException
+	 */
+	private boolean awaitConfirms(PublishConfirmTracker tracker, PendingPublish[] pendings)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeout);
+		boolean confirmed = true;
+		for (PendingPublish pending : pendings)
+			confirmed &= awaitConfirm(tracker, pending, deadline);
+		return confirmed;
+	}
+
+	private boolean awaitConfirm(PublishConfirmTracker tracker, PendingPublish pending, long deadline)
+			throws InterruptedException {
+		try {
+			pending.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			return true;
+		} catch (ExecutionException e) {
+			return false;
 		} catch (TimeoutException e) {
-			log.error("Method channel.waitForConfirms() throw TimeoutException from publisherName -> {}, "
-					+ "routingKey -> {}", publisherName, routingKey, e);
+			if (tracker.untrack(pending.seqNo)) {
+				tracker.release();
+				return false;
+			}
+		}
+		// 超时的同时收到了ack或nack, future即将完成
+		try {
+			pending.future.get();
+			return true;
+		} catch (ExecutionException e) {
+			return false;
 		}
 	}
 
-	private void basicPublish(String routingKey, byte[] msg, BasicProperties props) throws IOException {
+	/**
+	 * 检查每个channel上确认超时的消息, 并在原channel上重发被nack或超时的消息
+	 */
+	private void resendUnconfirmed() {
+		try {
+			long now = System.nanoTime();
+			for (PooledChannel pooled : pooledChannels)
+				pooled.confirmTracker.expire(now);
+			if (!isConnected())
+				return;
+			for (PooledChannel pooled : pooledChannels) {
+				PublishConfirmTracker tracker = pooled.confirmTracker;
+				PendingPublish pending;
+				while ((pending = tracker.pollResend()) != null) {
+					try {
+						log.warn("Resend unconfirmed message, channel index==[{}], routingKey==[{}], attempts==[{}]",
+								pooled.index, pending.routingKey, pending.attempts);
+						asyncPublish0(pooled, pending);
+					} catch (IOException e) {
+						log.error("Resend message throw IOException -> {}", e.getMessage(), e);
+						tracker.resendLater(pending);
+						return;
+					}
+				}
+			}
+		} catch (Exception e) {
+			log.error("Method resendUnconfirmed() throw Exception -> {}", e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param routingKey
+	 * @param msg
+	 * @param props
+	 * @throws IOException
+	 * @throws AmqpNoConfirmException
+	 */
+	private void confirmPublish(PooledChannel pooled, String routingKey, byte[] msg, BasicProperties props)
+			throws IOException, AmqpNoConfirmException {
+		confirmPublishBatch(pooled, routingKey, Collections.singletonList(msg), props, null);
+	}
+
+	private void basicPublish(Channel channel, String routingKey, byte[] msg, BasicProperties props)
+			throws IOException {
 		try {
 			channel.basicPublish(
 					// param1: the exchange to publish the message to
@@ -226,6 +1010,34 @@ public class RabbitMqPublisher extends AbstractRabbitMqTransport implements Publ
 		return super.destroy();
 	}
 
+	/**
+	 * 关闭连接, 停止重发线程, 并将所有未确认的消息置为失败
+	 */
+	@Override
+	public void close() throws IOException {
+		if (spool != null) {
+			spoolDrainer.shutdown();
+			try {
+				spoolDrainer.awaitTermination(confirmTimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			// 未重放的消息保留在spool文件中, 下次启动时重放
+			spool.close();
+		}
+		destroy();
+		if (asyncConfirm)
+			confirmScheduler.shutdown();
+		for (PooledChannel pooled : pooledChannels) {
+			if (pooled.confirmTracker != null)
+				pooled.confirmTracker
+						.failAll(new AmqpNoConfirmException(exchangeName, defaultRoutingKey, 0, confirmTimeout));
+			if (pooled.hasSeparateReplayTracker())
+				pooled.replayTracker
+						.failAll(new AmqpNoConfirmException(exchangeName, defaultRoutingKey, 0, confirmTimeout));
+		}
+	}
+
 	@Override
 	public String name() {
 		return publisherName;
@@ -235,6 +1047,35 @@ public class RabbitMqPublisher extends AbstractRabbitMqTransport implements Publ
 
 	}
 
+	/**
+	 * 池中的一个发布channel, 在此对象上同步以保证同一时刻只有一个线程使用channel发布
+	 */
+	private static final class PooledChannel {
+
+		private final int index;
+		// 确认模式或使用spool时此channel的确认跟踪器
+		private final PublishConfirmTracker confirmTracker;
+		// spool重放的确认跟踪器, 窗口为Integer.MAX_VALUE, 未配置spool时为null
+		private final PublishConfirmTracker replayTracker;
+
+		private volatile Channel channel;
+		// 已经调用过confirmSelect()的channel
+		private volatile Channel confirmSelectedChannel;
+		// 此channel上最近一次发布使用的sequence number, 只在持有锁时访问
+		private long lastSeqNo;
+
+		private PooledChannel(int index, PublishConfirmTracker confirmTracker, PublishConfirmTracker replayTracker) {
+			this.index = index;
+			this.confirmTracker = confirmTracker;
+			this.replayTracker = replayTracker;
+		}
+
+		private boolean hasSeparateReplayTracker() {
+			return replayTracker != null && replayTracker != confirmTracker;
+		}
+
+	}
+
 	public static void main(String[] args) {
 
 		RmqConnection connectionConfigurator0 = RmqConnection.configuration("", 5672, "", "").build();
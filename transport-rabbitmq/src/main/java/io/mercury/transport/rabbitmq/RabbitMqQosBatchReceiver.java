@@ -6,6 +6,7 @@ import java.util.function.Predicate;
 import javax.annotation.Nonnull;
 
 import io.mercury.transport.core.api.Receiver;
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.ConnectionPurpose;
 import io.mercury.transport.rabbitmq.configurator.RmqReceiverConfigurator;
 import io.mercury.transport.rabbitmq.consumer.QosBatchHandler;
 import io.mercury.transport.rabbitmq.consumer.QosBatchProcessConsumer;
@@ -68,6 +69,14 @@ public class RabbitMqQosBatchReceiver<T> extends AbstractRabbitMqTransport imple
 		}
 	}
 
+	/**
+	 * 消费者使用与发布者不同的共享连接
+	 */
+	@Override
+	protected ConnectionPurpose connectionPurpose() {
+		return ConnectionPurpose.CONSUME;
+	}
+
 	@Override
 	public void run() {
 		receive();
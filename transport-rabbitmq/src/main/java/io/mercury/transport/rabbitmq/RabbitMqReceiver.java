@@ -3,12 +3,14 @@ package io.mercury.transport.rabbitmq;
 import static io.mercury.common.util.StringUtil.bytesToStr;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
 
@@ -18,8 +20,13 @@ import io.mercury.common.util.Assertor;
 import io.mercury.transport.core.api.Receiver;
 import io.mercury.transport.core.api.Subscriber;
 import io.mercury.transport.core.exception.ReceiverStartException;
+import io.mercury.transport.rabbitmq.RabbitMqConnectionManager.ConnectionPurpose;
 import io.mercury.transport.rabbitmq.configurator.RmqConnection;
 import io.mercury.transport.rabbitmq.configurator.RmqReceiverConfigurator;
+import io.mercury.transport.rabbitmq.consumer.AckCoalescer;
+import io.mercury.transport.rabbitmq.consumer.OrderedLaneDispatcher;
+import io.mercury.transport.rabbitmq.consumer.OrderingKeyExtractor;
+import io.mercury.transport.rabbitmq.consumer.StagedDecodePipeline;
 import io.mercury.transport.rabbitmq.declare.ExchangeRelation;
 import io.mercury.transport.rabbitmq.declare.QueueRelation;
 import io.mercury.transport.rabbitmq.exception.AmqpDeclareException;
@@ -83,6 +90,39 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 	// QOS预取
 	private int qos;
 
+	// 并行处理消息的lane数量, 0为在投递线程中处理
+	private final int dispatchThreads;
+
+	// 并行处理时提取顺序键
+	private final OrderingKeyExtractor orderingKeyExtractor;
+
+	// 并行处理消息的lane
+	private volatile OrderedLaneDispatcher dispatcher;
+
+	// 反序列化线程数量, 0为在投递线程中反序列化
+	private final int decodeThreads;
+
+	// 投递线程与反序列化线程之间环形缓冲区的大小
+	private final int decodeBufferSize;
+
+	// 是否按投递顺序处理反序列化后的消息
+	private final boolean decodeOrdered;
+
+	// 分阶段处理消息的pipeline
+	private volatile StagedDecodePipeline<T> pipeline;
+
+	// 合并确认的消息数量阈值
+	private final int ackBatchSize;
+
+	// 合并确认的时间阈值(毫秒)
+	private final long ackBatchInterval;
+
+	// 当前channel使用的合并确认
+	private volatile AckCoalescer ackCoalescer;
+
+	// 多个线程共用channel时, 确认和错误处理需要互斥
+	private final Object channelLock = new Object();
+
 	private final String receiverName;
 
 	/**
@@ -157,6 +197,16 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 		this.maxAckTotal = configurator.maxAckTotal();
 		this.maxAckReconnection = configurator.maxAckReconnection();
 		this.qos = configurator.qos();
+		this.ackBatchSize = configurator.ackBatchSize();
+		this.ackBatchInterval = configurator.ackBatchInterval();
+		this.dispatchThreads = configurator.dispatchThreads();
+		this.decodeThreads = configurator.decodeThreads();
+		// 默认容纳两倍QOS, 正常情况下投递线程不会等待
+		this.decodeBufferSize = configurator.decodeBufferSize() > 0 ? configurator.decodeBufferSize()
+				: Math.max(64, qos * 2);
+		this.decodeOrdered = configurator.decodeOrdered();
+		this.orderingKeyExtractor = configurator.orderingKeyExtractor() == null ? OrderingKeyExtractor.byRoutingKey()
+				: configurator.orderingKeyExtractor();
 		this.receiverName = "receiver::" + rmqConnection.fullInfo() + "$" + queueName;
 		createConnection();
 		declare();
@@ -212,6 +262,14 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 		this.hasErrMsgQueue = true;
 	}
 
+	/**
+	 * 消费者使用与发布者不同的共享连接
+	 */
+	@Override
+	protected ConnectionPurpose connectionPurpose() {
+		return ConnectionPurpose.CONSUME;
+	}
+
 	@Override
 	public void run() {
 		receive();
@@ -289,6 +347,17 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 			// });
 			if (!autoAck)
 				channel.basicQos(qos);
+			final Channel consumeChannel = channel;
+			// 分阶段处理优先于按顺序键并行处理
+			final boolean pipelining = decodeThreads > 0;
+			final boolean dispatching = !pipelining && dispatchThreads > 0;
+			if (dispatching)
+				startDispatcher();
+			// 并行处理或合并确认时, 每次开始消费使用新的AckCoalescer, 新channel的deliveryTag从1开始
+			final AckCoalescer ackCoalescer = !autoAck && (pipelining || dispatching || ackBatchSize > 1)
+					? startAckCoalescer(consumeChannel)
+					: null;
+			final StagedDecodePipeline<T> pipeline = pipelining ? startPipeline(ackCoalescer) : null;
 			channel.basicConsume(
 					// param1: the name of the queue
 					queueName,
@@ -302,6 +371,17 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 						@Override
 						public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties,
 								byte[] body) throws IOException {
+							if (pipelining) {
+								// 投递线程只放入环形缓冲区
+								if (!pipeline.publish(consumerTag, envelope, properties, body))
+									log.warn("Pipeline is shutdown, skip deliveryTag==[{}]",
+											envelope.getDeliveryTag());
+								return;
+							}
+							if (dispatching) {
+								dispatch(ackCoalescer, consumerTag, envelope, properties, body);
+								return;
+							}
 							try {
 								log.debug("Message handle start");
 								log.debug(
@@ -320,7 +400,9 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 										e.getMessage(), e);
 								dumpError(e, consumerTag, envelope, properties, body);
 							}
-							if (!autoAck) {
+							if (ackCoalescer != null)
+								ackCoalescer.completed(envelope.getDeliveryTag());
+							else if (!autoAck) {
 								if (ack(envelope.getDeliveryTag()))
 									log.debug("Message handle and ack finished");
 								else {
@@ -336,22 +418,157 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 		}
 	}
 
+	/**
+	 * 每次开始消费使用新的pipeline, 旧pipeline中未处理的消息在新channel上重新投递
+	 * 
+	 * @param ackCoalescer
+	 * @return
+	 */
+	private StagedDecodePipeline<T> startPipeline(AckCoalescer ackCoalescer) {
+		StagedDecodePipeline<T> previous = this.pipeline;
+		if (previous != null)
+			previous.shutdown();
+		StagedDecodePipeline<T> pipeline = new StagedDecodePipeline<>(receiverName, decodeThreads, decodeBufferSize,
+				decodeOrdered, deserializer, (consumerTag, envelope, properties, body, value, decodeError) -> {
+					if (decodeError != null)
+						handleFailure(ackCoalescer, new DecodeException(decodeError), consumerTag, envelope,
+								properties, body);
+					else
+						handleDecoded(ackCoalescer, value, consumerTag, envelope, properties, body);
+				});
+		this.pipeline = pipeline;
+		return pipeline;
+	}
+
+	private void handleDecoded(AckCoalescer ackCoalescer, T value, String consumerTag, Envelope envelope,
+			BasicProperties properties, byte[] body) {
+		try {
+			consumer.accept(value);
+		} catch (Exception e) {
+			handleFailure(ackCoalescer, e, consumerTag, envelope, properties, body);
+			return;
+		}
+		if (ackCoalescer != null)
+			ackCoalescer.completed(envelope.getDeliveryTag());
+	}
+
+	private void handleFailure(AckCoalescer ackCoalescer, Exception cause, String consumerTag, Envelope envelope,
+			BasicProperties properties, byte[] body) {
+		log.error("Consumer accept msg==[{}] throw Exception -> {}", bytesToStr(body), cause.getMessage(), cause);
+		try {
+			dumpError(cause, consumerTag, envelope, properties, body);
+		} catch (Exception dumpException) {
+			// 消息已被拒绝并且receiver已经关闭, 不能再确认
+			log.error("Dump error msg throw Exception -> {}", dumpException.getMessage(), dumpException);
+			return;
+		}
+		if (ackCoalescer != null)
+			ackCoalescer.completed(envelope.getDeliveryTag());
+	}
+
+	/**
+	 * 
+	 * @return messages waiting for deserialization, 0 if decodeThreads is 0
+	 */
+	public long decodeQueueDepth() {
+		StagedDecodePipeline<T> pipeline = this.pipeline;
+		return pipeline == null ? 0 : pipeline.decodeQueueDepth();
+	}
+
+	/**
+	 * 
+	 * @return messages deserialized and waiting for consumer, 0 if decodeThreads
+	 *         is 0
+	 */
+	public long handleQueueDepth() {
+		StagedDecodePipeline<T> pipeline = this.pipeline;
+		return pipeline == null ? 0 : pipeline.handleQueueDepth();
+	}
+
+	private void startDispatcher() {
+		if (dispatcher == null)
+			dispatcher = new OrderedLaneDispatcher(receiverName, dispatchThreads);
+	}
+
+	private AckCoalescer startAckCoalescer(Channel consumeChannel) {
+		AckCoalescer previous = this.ackCoalescer;
+		if (previous != null)
+			previous.close();
+		AckCoalescer ackCoalescer = new AckCoalescer(receiverName, ackBatchSize, ackBatchInterval, qos,
+				deliveryTag -> {
+					synchronized (channelLock) {
+						// channel已经重建, 未确认的消息将被重新投递
+						if (consumeChannel != channel || !consumeChannel.isOpen()) {
+							log.warn("Channel changed, skip ack deliveryTag==[{}]", deliveryTag);
+							return;
+						}
+						consumeChannel.basicAck(deliveryTag, true);
+					}
+				});
+		// 自动恢复时不需要确认恢复前完成的消息: 恢复后的channel忽略恢复前的deliveryTag,
+		// 这些消息已经由broker重新投递. 恢复后的deliveryTag在恢复前的基础上继续递增, 合并确认的状态继续有效
+		this.ackCoalescer = ackCoalescer;
+		return ackCoalescer;
+	}
+
+	/**
+	 * 按顺序键把消息交给lane处理, 投递线程不等待处理结果
+	 */
+	private void dispatch(AckCoalescer ackCoalescer, String consumerTag, Envelope envelope,
+			BasicProperties properties, byte[] body) {
+		Object key = null;
+		try {
+			key = orderingKeyExtractor.extract(envelope, properties, body);
+		} catch (Exception e) {
+			log.error("Extract ordering key deliveryTag==[{}] throw Exception -> {}", envelope.getDeliveryTag(),
+					e.getMessage(), e);
+		}
+		OrderedLaneDispatcher dispatcher = this.dispatcher;
+		// 已经关闭, 未确认的消息将被重新投递
+		if (dispatcher == null)
+			return;
+		try {
+			dispatcher.dispatch(key, () -> handleInLane(ackCoalescer, consumerTag, envelope, properties, body));
+		} catch (RejectedExecutionException e) {
+			log.warn("Dispatcher is shutdown, skip deliveryTag==[{}]", envelope.getDeliveryTag());
+		}
+	}
+
+	private void handleInLane(AckCoalescer ackCoalescer, String consumerTag, Envelope envelope,
+			BasicProperties properties, byte[] body) {
+		T apply;
+		try {
+			apply = deserializer.apply(body);
+		} catch (Exception e) {
+			handleFailure(ackCoalescer, new DecodeException(e), consumerTag, envelope, properties, body);
+			return;
+		}
+		// 只确认连续完成的deliveryTag
+		handleDecoded(ackCoalescer, apply, consumerTag, envelope, properties, body);
+	}
+
 	private void dumpError(Throwable cause, String consumerTag, Envelope envelope, BasicProperties properties,
 			byte[] body) throws IOException {
 		if (hasErrMsgExchange) {
 			// Sent message to error dump exchange.
 			log.error("Exception handling -> Sent to ErrMsgExchange [{}]", errMsgExchangeName);
-			channel.basicPublish(errMsgExchangeName, errMsgRoutingKey, null, body);
+			synchronized (channelLock) {
+				channel.basicPublish(errMsgExchangeName, errMsgRoutingKey, null, body);
+			}
 			log.error("Exception handling -> Sent to ErrMsgExchange [{}] finished", errMsgExchangeName);
 		} else if (hasErrMsgQueue) {
 			// Sent message to error dump queue.
 			log.error("Exception handling -> Sent to ErrMsgQueue [{}]", errMsgQueueName);
-			channel.basicPublish("", errMsgQueueName, null, body);
+			synchronized (channelLock) {
+				channel.basicPublish("", errMsgQueueName, null, body);
+			}
 			log.error("Exception handling -> Sent to ErrMsgQueue finished");
 		} else {
 			// Reject message and close connection.
 			log.error("Exception handling -> Reject Msg [{}]", bytesToStr(body));
-			channel.basicReject(envelope.getDeliveryTag(), true);
+			synchronized (channelLock) {
+				channel.basicReject(envelope.getDeliveryTag(), true);
+			}
 			log.error("Exception handling -> Reject Msg finished");
 			destroy();
 			log.error("RabbitMqReceiver: [{}] already closed", receiverName);
@@ -403,6 +620,22 @@ public class RabbitMqReceiver<T> extends AbstractRabbitMqTransport implements Su
 	@Override
 	public boolean destroy() {
 		log.info("Call method destroy() from Receiver name==[{}]", receiverName);
+		OrderedLaneDispatcher dispatcher = this.dispatcher;
+		if (dispatcher != null) {
+			this.dispatcher = null;
+			dispatcher.shutdown();
+		}
+		StagedDecodePipeline<T> pipeline = this.pipeline;
+		if (pipeline != null) {
+			this.pipeline = null;
+			pipeline.shutdown();
+		}
+		// 关闭前确认已经完成的消息
+		AckCoalescer ackCoalescer = this.ackCoalescer;
+		if (ackCoalescer != null) {
+			this.ackCoalescer = null;
+			ackCoalescer.close();
+		}
 		return super.destroy();
 	}
 
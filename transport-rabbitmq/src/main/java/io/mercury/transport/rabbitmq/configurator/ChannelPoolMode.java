@@ -0,0 +1,20 @@
+package io.mercury.transport.rabbitmq.configurator;
+
+/**
+ * 多线程发布时channel池的使用方式
+ * 
+ * @author yellow013
+ */
+public enum ChannelPoolMode {
+
+	/**
+	 * 每次发布从池中租用一个空闲channel, 发布(及同步确认)完成后归还
+	 */
+	LEASE,
+
+	/**
+	 * 每个线程固定使用一个channel, 线程数多于channel数时多个线程共用一个channel
+	 */
+	PIN_PER_THREAD,
+
+}
@@ -1,5 +1,7 @@
 package io.mercury.transport.rabbitmq.configurator;
 
+import java.util.Objects;
+
 import javax.annotation.Nonnull;
 import javax.net.ssl.SSLContext;
 
@@ -36,6 +38,8 @@ public final class RmqConnection implements TransportConfigurator {
 	private int shutdownTimeout;
 	// 请求心跳超时时间
 	private int requestedHeartbeat;
+	// 相同配置的transport共享连接
+	private boolean sharedConnection;
 	// 停机处理回调函数
 	private transient ShutdownEvent<Exception> shutdownEvent;
 
@@ -55,6 +59,7 @@ public final class RmqConnection implements TransportConfigurator {
 		this.handshakeTimeout = builder.handshakeTimeout;
 		this.shutdownTimeout = builder.shutdownTimeout;
 		this.requestedHeartbeat = builder.requestedHeartbeat;
+		this.sharedConnection = builder.sharedConnection;
 		this.shutdownEvent = builder.shutdownEvent;
 		this.connectionInfo = buildConnectionInfo();
 	}
@@ -166,6 +171,13 @@ public final class RmqConnection implements TransportConfigurator {
 		return requestedHeartbeat;
 	}
 
+	/**
+	 * @return the sharedConnection
+	 */
+	public boolean sharedConnection() {
+		return sharedConnection;
+	}
+
 	/**
 	 * @return the shutdownEvent
 	 */
@@ -173,6 +185,32 @@ public final class RmqConnection implements TransportConfigurator {
 		return shutdownEvent;
 	}
 
+	/**
+	 * 连接参数相同的RmqConnection共享同一个连接
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(host, port, username, password, virtualHost, sslContext, connectionTimeout,
+				automaticRecovery, recoveryInterval, handshakeTimeout, shutdownTimeout, requestedHeartbeat,
+				shutdownEvent);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof RmqConnection))
+			return false;
+		RmqConnection other = (RmqConnection) obj;
+		return port == other.port && connectionTimeout == other.connectionTimeout
+				&& automaticRecovery == other.automaticRecovery && recoveryInterval == other.recoveryInterval
+				&& handshakeTimeout == other.handshakeTimeout && shutdownTimeout == other.shutdownTimeout
+				&& requestedHeartbeat == other.requestedHeartbeat && Objects.equals(host, other.host)
+				&& Objects.equals(username, other.username) && Objects.equals(password, other.password)
+				&& Objects.equals(virtualHost, other.virtualHost) && sslContext == other.sslContext
+				&& shutdownEvent == other.shutdownEvent;
+	}
+
 	private transient String toStringCache;
 
 	@Override
@@ -224,6 +262,8 @@ public final class RmqConnection implements TransportConfigurator {
 		private int shutdownTimeout = 10 * 1000;
 		// 请求心跳超时时间
 		private int requestedHeartbeat = 20;
+		// 相同配置的transport共享连接
+		private boolean sharedConnection = true;
 		// 停机处理回调函数
 		private ShutdownEvent<Exception> shutdownEvent;
 
@@ -303,6 +343,14 @@ public final class RmqConnection implements TransportConfigurator {
 			return this;
 		}
 
+		/**
+		 * @param sharedConnection the sharedConnection to set
+		 */
+		public Builder setSharedConnection(boolean sharedConnection) {
+			this.sharedConnection = sharedConnection;
+			return this;
+		}
+
 		/**
 		 * @param shutdownEvent the shutdownEvent to set
 		 */
@@ -33,6 +33,22 @@ public final class RmqPublisherConfigurator extends RmqConfigurator {
 	private long confirmTimeout;
 	// 发布确认重试次数
 	private int confirmRetry;
+	// 是否使用异步发布确认
+	private boolean asyncConfirm;
+	// 异步发布确认时每个channel最大未确认消息数量
+	private int maxInFlight;
+	// 发布使用的channel数量
+	private int channelPoolSize;
+	// channel池使用方式
+	private ChannelPoolMode channelPoolMode;
+	// 连接断开时保存消息的本地目录, 为null时不使用spool
+	private String spoolDirectory;
+	// 每个spool文件的大小
+	private int spoolSegmentSize;
+	// spool文件总大小上限
+	private long spoolMaxSize;
+	// spool达到上限时的处理方式
+	private SpoolOverflowPolicy spoolOverflowPolicy;
 
 	private RmqPublisherConfigurator(Builder builder) {
 		super(builder.connection);
@@ -43,6 +59,14 @@ public final class RmqPublisherConfigurator extends RmqConfigurator {
 		this.confirm = builder.confirm;
 		this.confirmTimeout = builder.confirmTimeout;
 		this.confirmRetry = builder.confirmRetry;
+		this.asyncConfirm = builder.asyncConfirm;
+		this.maxInFlight = builder.maxInFlight;
+		this.channelPoolSize = builder.channelPoolSize;
+		this.channelPoolMode = builder.channelPoolMode;
+		this.spoolDirectory = builder.spoolDirectory;
+		this.spoolSegmentSize = builder.spoolSegmentSize;
+		this.spoolMaxSize = builder.spoolMaxSize;
+		this.spoolOverflowPolicy = builder.spoolOverflowPolicy;
 	}
 
 	/**
@@ -138,6 +162,62 @@ public final class RmqPublisherConfigurator extends RmqConfigurator {
 		return confirmRetry;
 	}
 
+	/**
+	 * @return the asyncConfirm
+	 */
+	public boolean asyncConfirm() {
+		return asyncConfirm;
+	}
+
+	/**
+	 * @return the maxInFlight
+	 */
+	public int maxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @return the channelPoolSize
+	 */
+	public int channelPoolSize() {
+		return channelPoolSize;
+	}
+
+	/**
+	 * @return the channelPoolMode
+	 */
+	public ChannelPoolMode channelPoolMode() {
+		return channelPoolMode;
+	}
+
+	/**
+	 * @return the spoolDirectory
+	 */
+	public String spoolDirectory() {
+		return spoolDirectory;
+	}
+
+	/**
+	 * @return the spoolSegmentSize
+	 */
+	public int spoolSegmentSize() {
+		return spoolSegmentSize;
+	}
+
+	/**
+	 * @return the spoolMaxSize
+	 */
+	public long spoolMaxSize() {
+		return spoolMaxSize;
+	}
+
+	/**
+	 * @return the spoolOverflowPolicy
+	 */
+	public SpoolOverflowPolicy spoolOverflowPolicy() {
+		return spoolOverflowPolicy;
+	}
+
 	private transient String toStringCache;
 
 	@Override
@@ -161,6 +241,14 @@ public final class RmqPublisherConfigurator extends RmqConfigurator {
 		private boolean confirm = false;
 		private long confirmTimeout = 5000;
 		private int confirmRetry = 3;
+		private boolean asyncConfirm = false;
+		private int maxInFlight = 1024;
+		private int channelPoolSize = 1;
+		private ChannelPoolMode channelPoolMode = ChannelPoolMode.LEASE;
+		private String spoolDirectory = null;
+		private int spoolSegmentSize = 64 * 1024 * 1024;
+		private long spoolMaxSize = 1024L * 1024 * 1024;
+		private SpoolOverflowPolicy spoolOverflowPolicy = SpoolOverflowPolicy.REJECT;
 
 		/**
 		 * 
@@ -236,6 +324,80 @@ public final class RmqPublisherConfigurator extends RmqConfigurator {
 			return this;
 		}
 
+		/**
+		 * Only effective when confirm is true, publish does not wait for the
+		 * confirmation of each message.
+		 * 
+		 * @param asyncConfirm the asyncConfirm to set
+		 */
+		public Builder setAsyncConfirm(boolean asyncConfirm) {
+			this.asyncConfirm = asyncConfirm;
+			return this;
+		}
+
+		/**
+		 * @param maxInFlight the maxInFlight to set
+		 */
+		public Builder setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/**
+		 * Number of channels used for publishing on the connection, each channel
+		 * is used by one publishing thread at a time.
+		 * 
+		 * @param channelPoolSize the channelPoolSize to set
+		 */
+		public Builder setChannelPoolSize(int channelPoolSize) {
+			this.channelPoolSize = channelPoolSize;
+			return this;
+		}
+
+		/**
+		 * @param channelPoolMode the channelPoolMode to set
+		 */
+		public Builder setChannelPoolMode(ChannelPoolMode channelPoolMode) {
+			this.channelPoolMode = channelPoolMode;
+			return this;
+		}
+
+		/**
+		 * When set, messages published while the connection is down are appended
+		 * to memory-mapped files in this directory and replayed in order after
+		 * the connection recovers. Each publisher needs its own directory.
+		 * 
+		 * @param spoolDirectory the spoolDirectory to set
+		 */
+		public Builder setSpoolDirectory(String spoolDirectory) {
+			this.spoolDirectory = spoolDirectory;
+			return this;
+		}
+
+		/**
+		 * @param spoolSegmentSize the spoolSegmentSize to set
+		 */
+		public Builder setSpoolSegmentSize(int spoolSegmentSize) {
+			this.spoolSegmentSize = spoolSegmentSize;
+			return this;
+		}
+
+		/**
+		 * @param spoolMaxSize the spoolMaxSize to set
+		 */
+		public Builder setSpoolMaxSize(long spoolMaxSize) {
+			this.spoolMaxSize = spoolMaxSize;
+			return this;
+		}
+
+		/**
+		 * @param spoolOverflowPolicy the spoolOverflowPolicy to set
+		 */
+		public Builder setSpoolOverflowPolicy(SpoolOverflowPolicy spoolOverflowPolicy) {
+			this.spoolOverflowPolicy = spoolOverflowPolicy;
+			return this;
+		}
+
 	}
 
 	public static void main(String[] args) {
@@ -4,6 +4,7 @@ import javax.annotation.Nonnull;
 
 import io.mercury.common.util.Assertor;
 import io.mercury.common.util.StringUtil;
+import io.mercury.transport.rabbitmq.consumer.OrderingKeyExtractor;
 import io.mercury.transport.rabbitmq.declare.ExchangeRelation;
 import io.mercury.transport.rabbitmq.declare.QueueRelation;
 
@@ -36,6 +37,27 @@ public final class RmqReceiverConfigurator extends RmqConfigurator {
 	// QOS预取
 	private int qos;
 
+	// 合并确认的消息数量阈值, 1为逐条确认
+	private int ackBatchSize;
+
+	// 合并确认的时间阈值(毫秒)
+	private long ackBatchInterval;
+
+	// 并行处理消息的lane数量, 0为在投递线程中处理
+	private int dispatchThreads;
+
+	// 并行处理时提取顺序键
+	private OrderingKeyExtractor orderingKeyExtractor;
+
+	// 反序列化线程数量, 0为在投递线程中反序列化
+	private int decodeThreads;
+
+	// 投递线程与反序列化线程之间环形缓冲区的大小, 0为根据QOS计算
+	private int decodeBufferSize;
+
+	// 是否按投递顺序处理反序列化后的消息
+	private boolean decodeOrdered;
+
 	private RmqReceiverConfigurator(Builder builder) {
 		super(builder.connection);
 		this.receiveQueue = builder.receiveQueue;
@@ -47,6 +69,13 @@ public final class RmqReceiverConfigurator extends RmqConfigurator {
 		this.maxAckTotal = builder.maxAckTotal;
 		this.maxAckReconnection = builder.maxAckReconnection;
 		this.qos = builder.qos;
+		this.ackBatchSize = builder.ackBatchSize;
+		this.ackBatchInterval = builder.ackBatchInterval;
+		this.dispatchThreads = builder.dispatchThreads;
+		this.orderingKeyExtractor = builder.orderingKeyExtractor;
+		this.decodeThreads = builder.decodeThreads;
+		this.decodeBufferSize = builder.decodeBufferSize;
+		this.decodeOrdered = builder.decodeOrdered;
 	}
 
 	/**
@@ -124,6 +153,63 @@ public final class RmqReceiverConfigurator extends RmqConfigurator {
 		return qos;
 	}
 
+	/**
+	 * 大于1时合并确认, 连续完成的消息达到此数量时使用multiple=true确认
+	 * 
+	 * @return the ackBatchSize
+	 */
+	public int ackBatchSize() {
+		return ackBatchSize;
+	}
+
+	/**
+	 * 合并确认时, 距离上次确认超过此时间(毫秒)即确认
+	 * 
+	 * @return the ackBatchInterval
+	 */
+	public long ackBatchInterval() {
+		return ackBatchInterval;
+	}
+
+	/**
+	 * 大于0时消息交给按顺序键划分的lane并行处理
+	 * 
+	 * @return the dispatchThreads
+	 */
+	public int dispatchThreads() {
+		return dispatchThreads;
+	}
+
+	/**
+	 * @return the orderingKeyExtractor
+	 */
+	public OrderingKeyExtractor orderingKeyExtractor() {
+		return orderingKeyExtractor;
+	}
+
+	/**
+	 * 大于0时在独立线程中反序列化, 优先于dispatchThreads
+	 * 
+	 * @return the decodeThreads
+	 */
+	public int decodeThreads() {
+		return decodeThreads;
+	}
+
+	/**
+	 * @return the decodeBufferSize
+	 */
+	public int decodeBufferSize() {
+		return decodeBufferSize;
+	}
+
+	/**
+	 * @return the decodeOrdered
+	 */
+	public boolean decodeOrdered() {
+		return decodeOrdered;
+	}
+
 	private transient String toStringCache;
 
 	@Override
@@ -154,6 +240,20 @@ public final class RmqReceiverConfigurator extends RmqConfigurator {
 		private int maxAckReconnection = 8;
 		// QOS预取
 		private int qos = 256;
+		// 合并确认的消息数量阈值, 1为逐条确认
+		private int ackBatchSize = 1;
+		// 合并确认的时间阈值(毫秒)
+		private long ackBatchInterval = 100;
+		// 并行处理消息的lane数量, 0为在投递线程中处理
+		private int dispatchThreads = 0;
+		// 并行处理时提取顺序键
+		private OrderingKeyExtractor orderingKeyExtractor = OrderingKeyExtractor.byRoutingKey();
+		// 反序列化线程数量, 0为在投递线程中反序列化
+		private int decodeThreads = 0;
+		// 环形缓冲区的大小, 0为根据QOS计算
+		private int decodeBufferSize = 0;
+		// 是否按投递顺序处理反序列化后的消息
+		private boolean decodeOrdered = true;
 
 		private Builder(RmqConnection connection, QueueRelation receiveQueue) {
 			this.connection = connection;
@@ -226,6 +326,66 @@ public final class RmqReceiverConfigurator extends RmqConfigurator {
 			return this;
 		}
 
+		/**
+		 * @param ackBatchSize the ackBatchSize to set
+		 */
+		public Builder setAckBatchSize(int ackBatchSize) {
+			this.ackBatchSize = ackBatchSize;
+			return this;
+		}
+
+		/**
+		 * @param ackBatchInterval the ackBatchInterval to set
+		 */
+		public Builder setAckBatchInterval(long ackBatchInterval) {
+			this.ackBatchInterval = ackBatchInterval;
+			return this;
+		}
+
+		/**
+		 * @param dispatchThreads the dispatchThreads to set
+		 */
+		public Builder setDispatchThreads(int dispatchThreads) {
+			this.dispatchThreads = dispatchThreads;
+			return this;
+		}
+
+		/**
+		 * @param orderingKeyExtractor the orderingKeyExtractor to set
+		 */
+		public Builder setOrderingKeyExtractor(OrderingKeyExtractor orderingKeyExtractor) {
+			this.orderingKeyExtractor = orderingKeyExtractor;
+			return this;
+		}
+
+		/**
+		 * 反序列化线程数量, 投递线程只放入环形缓冲区
+		 * 
+		 * @param decodeThreads the decodeThreads to set
+		 */
+		public Builder setDecodeThreads(int decodeThreads) {
+			this.decodeThreads = decodeThreads;
+			return this;
+		}
+
+		/**
+		 * @param decodeBufferSize the decodeBufferSize to set
+		 */
+		public Builder setDecodeBufferSize(int decodeBufferSize) {
+			this.decodeBufferSize = decodeBufferSize;
+			return this;
+		}
+
+		/**
+		 * true时按投递顺序在一个线程中处理, false时由各反序列化线程直接处理
+		 * 
+		 * @param decodeOrdered the decodeOrdered to set
+		 */
+		public Builder setDecodeOrdered(boolean decodeOrdered) {
+			this.decodeOrdered = decodeOrdered;
+			return this;
+		}
+
 		public RmqReceiverConfigurator build() {
 			return new RmqReceiverConfigurator(this);
 		}
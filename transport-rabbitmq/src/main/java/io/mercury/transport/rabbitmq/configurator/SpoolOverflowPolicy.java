@@ -0,0 +1,25 @@
+package io.mercury.transport.rabbitmq.configurator;
+
+/**
+ * 本地spool达到容量上限时的处理方式
+ * 
+ * @author yellow013
+ */
+public enum SpoolOverflowPolicy {
+
+	/**
+	 * 抛出PublishFailedException
+	 */
+	REJECT,
+
+	/**
+	 * 丢弃新消息并记录日志
+	 */
+	DISCARD,
+
+	/**
+	 * 在发布线程上等待, 直到spool有空间或已经全部重放且连接可用, 不会先于spool中的消息发布
+	 */
+	BLOCK,
+
+}
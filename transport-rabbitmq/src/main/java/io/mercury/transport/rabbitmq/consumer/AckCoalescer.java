@@ -0,0 +1,186 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+import io.mercury.transport.rabbitmq.consumer.TimerWheel.Timeout;
+
+/**
+ * 合并确认<br>
+ *
+ * 连续完成的消息达到batchSize条, 或距离上次确认超过interval时,
+ * 使用一次basicAck(tag, multiple=true)确认连续完成的最大deliveryTag.<br>
+ *
+ * 定时确认由共享时间轮触发, basicAck可能因TCP背压阻塞, 在共享的线程池中执行.
+ *
+ * @author yellow013
+ */
+public final class AckCoalescer implements Closeable {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(AckCoalescer.class);
+
+	/**
+	 * 发送multiple=true的确认
+	 */
+	@FunctionalInterface
+	public static interface AckSender {
+
+		void ack(long deliveryTag) throws IOException;
+
+	}
+
+	private final ContiguousAckTracker tracker;
+
+	private final int batchSize;
+
+	private final AckSender sender;
+
+	private final String name;
+
+	// 定时确认的间隔, batchSize为1时不需要定时确认
+	private final long intervalMillis;
+
+	// 所有AckCoalescer共享的时间轮
+	private final TimerWheel timerWheel = TimerWheel.shared();
+
+	// 执行定时确认, 时间轮线程只负责触发
+	private static final ExecutorService FLUSH_EXECUTOR = Executors.newCachedThreadPool(
+			new BasicThreadFactory.Builder().namingPattern("AckCoalescer-flush-%d").daemon(true).build());
+
+	private volatile Timeout flushTimeout;
+
+	// 可以确认的最大deliveryTag
+	private long pendingUpTo;
+
+	// 已经确认的最大deliveryTag
+	private long sentUpTo;
+
+	// 已发送的确认次数
+	private long ackFrames;
+
+	private volatile boolean closed;
+
+	/**
+	 *
+	 * @param name           日志中使用的名称
+	 * @param batchSize      连续完成的消息数量阈值
+	 * @param intervalMillis 确认间隔阈值
+	 * @param capacity       预计的未确认消息数量, 通常为QOS
+	 * @param sender
+	 */
+	public AckCoalescer(String name, int batchSize, long intervalMillis, int capacity, AckSender sender) {
+		this.tracker = new ContiguousAckTracker(capacity);
+		this.batchSize = Math.max(1, batchSize);
+		this.sender = sender;
+		this.name = name;
+		this.intervalMillis = this.batchSize > 1 ? intervalMillis : 0;
+		scheduleFlush();
+	}
+
+	private void scheduleFlush() {
+		if (intervalMillis <= 0 || closed)
+			return;
+		Timeout timeout = timerWheel.schedule(() -> FLUSH_EXECUTOR.execute(this::intervalFlush), intervalMillis,
+				TimeUnit.MILLISECONDS);
+		this.flushTimeout = timeout;
+		// 与close()并发时不再保留新的定时任务
+		if (closed)
+			timeout.cancel();
+	}
+
+	private void intervalFlush() {
+		try {
+			flush();
+		} finally {
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * 标记消息处理完成, 达到batchSize时立即确认
+	 *
+	 * @param deliveryTag
+	 */
+	public synchronized void completed(long deliveryTag) {
+		long upTo = tracker.complete(deliveryTag);
+		if (upTo < 0)
+			return;
+		pendingUpTo = upTo;
+		if (pendingUpTo - sentUpTo >= batchSize)
+			send();
+	}
+
+	/**
+	 * 立即确认已经连续完成的消息
+	 */
+	public synchronized void flush() {
+		if (pendingUpTo > sentUpTo)
+			send();
+	}
+
+	private void send() {
+		try {
+			sender.ack(pendingUpTo);
+			sentUpTo = pendingUpTo;
+			ackFrames++;
+		} catch (Exception e) {
+			// 保留pendingUpTo, 下次确认时重试
+			log.error("{} ack deliveryTag==[{}] multiple==[true] throw Exception -> {}", name, pendingUpTo,
+					e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * channel关闭后放弃未确认的消息, 这些消息由broker重新投递.<br>
+	 * 自动恢复后的deliveryTag从lastDeliveryTag之后继续递增.
+	 *
+	 * @param lastDeliveryTag 关闭前收到的最大deliveryTag
+	 */
+	public synchronized void reset(long lastDeliveryTag) {
+		tracker.reset(lastDeliveryTag);
+		pendingUpTo = lastDeliveryTag;
+		sentUpTo = lastDeliveryTag;
+	}
+
+	/**
+	 *
+	 * @return the sentUpTo
+	 */
+	public synchronized long sentUpTo() {
+		return sentUpTo;
+	}
+
+	/**
+	 *
+	 * @return the ackFrames
+	 */
+	public synchronized long ackFrames() {
+		return ackFrames;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 确认已经连续完成的消息并停止定时确认
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		Timeout timeout = this.flushTimeout;
+		if (timeout != null)
+			timeout.cancel();
+		flush();
+	}
+
+}
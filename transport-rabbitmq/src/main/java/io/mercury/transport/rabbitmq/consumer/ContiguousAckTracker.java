@@ -0,0 +1,89 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+/**
+ * 跟踪并发处理完成的deliveryTag, 只返回连续完成的最大deliveryTag<br>
+ *
+ * 同一channel的deliveryTag从1开始连续递增, 使用basicAck(tag, multiple=true)
+ * 确认返回值之前的全部消息, 不会确认仍在处理中的消息.
+ *
+ * @author yellow013
+ */
+public final class ContiguousAckTracker {
+
+	// 已经确认的最大deliveryTag
+	private long ackedUpTo;
+
+	// 以ackedUpTo + 1为起点的环形完成标记
+	private boolean[] completed;
+	private int mask;
+
+	public ContiguousAckTracker(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1);
+		this.completed = new boolean[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * 标记deliveryTag处理完成
+	 *
+	 * @param deliveryTag
+	 * @return 新的可确认的最大deliveryTag, 没有推进时返回-1
+	 */
+	public synchronized long complete(long deliveryTag) {
+		if (deliveryTag <= ackedUpTo)
+			return -1;
+		long distance = deliveryTag - ackedUpTo;
+		if (distance > completed.length)
+			grow(distance);
+		completed[(int) (deliveryTag & mask)] = true;
+		if (distance != 1)
+			return -1;
+		long upTo = ackedUpTo;
+		int index;
+		while (completed[index = (int) ((upTo + 1) & mask)]) {
+			completed[index] = false;
+			upTo++;
+		}
+		ackedUpTo = upTo;
+		return upTo;
+	}
+
+	/**
+	 *
+	 * @return the ackedUpTo
+	 */
+	public synchronized long ackedUpTo() {
+		return ackedUpTo;
+	}
+
+	/**
+	 * channel重建后deliveryTag从1重新开始
+	 */
+	public void reset() {
+		reset(0);
+	}
+
+	/**
+	 * 自动恢复后deliveryTag在恢复前的基础上继续递增, 从ackedUpTo之后重新跟踪
+	 *
+	 * @param ackedUpTo
+	 */
+	public synchronized void reset(long ackedUpTo) {
+		this.ackedUpTo = ackedUpTo;
+		for (int i = 0; i < completed.length; i++)
+			completed[i] = false;
+	}
+
+	private void grow(long distance) {
+		if (distance > (1 << 30))
+			throw new IllegalStateException("Too many uncompleted deliveries -> " + distance);
+		int capacity = Integer.highestOneBit((int) distance - 1) << 1;
+		boolean[] newCompleted = new boolean[capacity];
+		int newMask = capacity - 1;
+		for (long tag = ackedUpTo + 1, end = ackedUpTo + completed.length; tag <= end; tag++)
+			newCompleted[(int) (tag & newMask)] = completed[(int) (tag & mask)];
+		this.completed = newCompleted;
+		this.mask = newMask;
+	}
+
+}
@@ -0,0 +1,85 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * 按顺序键把任务分配到单线程lane上执行<br>
+ *
+ * 顺序键相同的任务总在同一lane上按提交顺序执行, 不同的键在多个lane上并行.
+ * 未完成的任务数量由channel的QOS限制, lane的队列不设上限.
+ *
+ * @author yellow013
+ */
+public final class OrderedLaneDispatcher {
+
+	private final ExecutorService[] lanes;
+
+	/**
+	 *
+	 * @param name  线程名称前缀
+	 * @param lanes lane数量
+	 */
+	public OrderedLaneDispatcher(String name, int lanes) {
+		if (lanes < 1)
+			throw new IllegalArgumentException("lanes must be greater than 0");
+		this.lanes = new ExecutorService[lanes];
+		for (int i = 0; i < lanes; i++)
+			this.lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+					new BasicThreadFactory.Builder().namingPattern(name + "-lane-" + i).daemon(true).build());
+	}
+
+	/**
+	 *
+	 * @param key  为null时使用第一个lane
+	 * @param task
+	 */
+	public void dispatch(Object key, Runnable task) {
+		lanes[laneOf(key)].execute(task);
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return lane index of key
+	 */
+	public int laneOf(Object key) {
+		if (key == null)
+			return 0;
+		int h = key.hashCode();
+		// 与HashMap相同的扰动, 避免低位相同的键集中在同一lane
+		return Math.floorMod(h ^ (h >>> 16), lanes.length);
+	}
+
+	public int lanes() {
+		return lanes.length;
+	}
+
+	/**
+	 * 停止接收新任务, 已提交的任务继续执行
+	 */
+	public void shutdown() {
+		for (ExecutorService lane : lanes)
+			lane.shutdown();
+	}
+
+	/**
+	 *
+	 * @param timeout
+	 * @param unit
+	 * @return true if all lanes terminated
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ExecutorService lane : lanes)
+			if (!lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+				return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,48 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * 从消息中提取顺序键, 顺序键相同的消息在同一线程中按投递顺序处理
+ *
+ * @author yellow013
+ */
+@FunctionalInterface
+public interface OrderingKeyExtractor {
+
+	/**
+	 *
+	 * @param envelope
+	 * @param properties
+	 * @param body
+	 * @return ordering key, null时使用第一个线程
+	 */
+	Object extract(Envelope envelope, BasicProperties properties, byte[] body);
+
+	/**
+	 * 按routingKey保证顺序
+	 *
+	 * @return
+	 */
+	static OrderingKeyExtractor byRoutingKey() {
+		return (envelope, properties, body) -> envelope.getRoutingKey();
+	}
+
+	/**
+	 * 按消息header的值保证顺序
+	 *
+	 * @param header
+	 * @return
+	 */
+	static OrderingKeyExtractor byHeader(String header) {
+		return (envelope, properties, body) -> {
+			Map<String, Object> headers = properties == null ? null : properties.getHeaders();
+			// LongString不同实例的hashCode相同, 可以直接作为顺序键
+			return headers == null ? null : headers.get(header);
+		};
+	}
+
+}
@@ -2,13 +2,13 @@ package io.mercury.transport.rabbitmq.consumer;
 
 import java.io.IOException;
 import java.util.Objects;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
@@ -23,8 +23,16 @@ import com.rabbitmq.client.Envelope;
 import io.mercury.common.collections.MutableLists;
 import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.common.util.Assertor;
+import io.mercury.transport.rabbitmq.consumer.TimerWheel.Timeout;
 
 /**
+ * 批量处理消息, 达到数量, 超过等待时间或触发RefreshNowEvent时调用QosBatchHandler,
+ * 处理成功后使用multiple=true一次确认整批消息.<br>
+ *
+ * 投递线程和定时器线程只把事件放入无锁队列, 获得drain权的线程独占批次状态, 投递路径上没有锁.
+ * 共享时间轮线程只标记批次超时, 超时触发的flush在独立的线程池中执行, 耗时的QosBatchHandler不会阻塞其他定时任务.
+ * 被过滤的消息随同批次一起确认.
+ *
  * @author xuejian.sun
  * @date 2018/11/17 13:14
  */
@@ -43,29 +51,45 @@ public class QosBatchProcessConsumer<T> extends DefaultConsumer {
 	 */
 	private int prefetchCount;
 	/**
-	 * seconds: automatic flush check in the specified time
+	 * millisSecond: 批次中第一条消息的最长等待时间
 	 */
 	private long millisSecond = 500L;
-	/**
-	 * 上一次的buffer -> (bufferList) 大小
-	 */
-	private long lastSize;
 
-	private LongAdder cacheSize;
-	/**
-	 * last rabbitmq message sequence
-	 */
-	private volatile long lastDeliveryTag;
+	private Predicate<T> filter;
+
+	private RefreshNowEvent<T> refreshNowEvent;
 
-	private ReentrantLock lock;
+	// 所有批量消费者共享的时间轮
+	private TimerWheel timerWheel = TimerWheel.shared();
 
-	private MutableList<T> bufferList;
+	// 执行超时触发的flush, drain权保证每个消费者最多占用一个线程
+	private static final ExecutorService FLUSH_EXECUTOR = Executors.newCachedThreadPool(
+			new BasicThreadFactory.Builder().namingPattern("QosBatchProcessConsumer-flush-%d").daemon(true).build());
 
-	private Predicate<T> filter;
+	// 投递的消息, 由获得drain权的线程取出
+	private final Queue<Delivery<T>> incoming = new ConcurrentLinkedQueue<>();
 
-	private RefreshNowEvent<T> refreshNowEvent;
+	// drain权, 0为空闲
+	private final AtomicInteger wip = new AtomicInteger();
+
+	// 定时器触发的批次代号
+	private volatile long expiredGeneration = -1;
 
-	private ScheduledExecutorService schedule;
+	private volatile boolean destroyed;
+
+	/**
+	 * 以下字段只由获得drain权的线程访问
+	 */
+	private MutableList<T> bufferList = MutableLists.newFastList();
+	/**
+	 * last rabbitmq message sequence
+	 */
+	private long lastDeliveryTag;
+	// 包括被过滤的消息在内的未确认消息数量
+	private int unacked;
+	// 当前批次代号
+	private long batchGeneration;
+	private Timeout ageTimeout;
 
 	/**
 	 * constructor
@@ -107,106 +131,109 @@ public class QosBatchProcessConsumer<T> extends DefaultConsumer {
 			channel.basicQos(prefetchCount);
 		} catch (IOException e) {
 			log.error("set prefetchCount failure", e);
-			return;
 		}
-		this.cacheSize = new LongAdder();
-		bufferList = MutableLists.newFastList();
-
-		lock = new ReentrantLock();
-		ThreadFactory namedThreadFactory = new BasicThreadFactory.Builder()
-				.namingPattern("BatchHandlerAutoFlush-pool-%d").build();
-		schedule = new ScheduledThreadPoolExecutor(1, namedThreadFactory);
-		automaticFlush();
 	}
 
 	@Override
 	public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
 		// 序列化
 		T t = deserializer.deserialization(body);
-		// 过滤器
-		if (filter != null && !filter.test(t)) {
+		// 过滤器, 被过滤的消息仍然需要确认
+		boolean accepted = filter == null || filter.test(t);
+		incoming.offer(new Delivery<>(t, envelope.getDeliveryTag(), accepted));
+		drain();
+	}
+
+	/**
+	 * 只有一个线程能进入循环, 其他线程增加wip后立即返回, 由循环中的线程处理其放入的事件
+	 */
+	private void drain() {
+		if (wip.getAndIncrement() != 0)
 			return;
-		}
-		lock.lock();
-		try {
-			save(t, envelope.getDeliveryTag());
-		} finally {
-			lock.unlock();
+		int missed = 1;
+		for (;;) {
+			if (destroyed) {
+				incoming.clear();
+			} else {
+				Delivery<T> delivery;
+				while ((delivery = incoming.poll()) != null)
+					save(delivery);
+				if (unacked > 0 && expiredGeneration == batchGeneration) {
+					log.info("automatic flush cache ...{}, deliveryTag[{}]", unacked, lastDeliveryTag);
+					flush();
+				}
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0)
+				break;
 		}
 	}
 
-	private void save(T t, long lastDeliveryTag) {
-		this.lastDeliveryTag = lastDeliveryTag;
-		if (Objects.nonNull(t)) {
-			cacheSize.increment();
-			bufferList.add(t);
-		}
-		if (cacheSize.longValue() >= prefetchCount) {
-			log.info("The message to be stored reaches the threshold[{}] -> {} , local deliveryTag[{}] ",
-					cacheSize.longValue(), prefetchCount, this.lastDeliveryTag);
+	private void save(Delivery<T> delivery) {
+		this.lastDeliveryTag = delivery.deliveryTag;
+		if (++unacked == 1)
+			startBatchTimer();
+		if (delivery.accepted && Objects.nonNull(delivery.value))
+			bufferList.add(delivery.value);
+		if (unacked >= prefetchCount) {
+			log.info("The message to be stored reaches the threshold[{}] -> {} , local deliveryTag[{}] ", unacked,
+					prefetchCount, lastDeliveryTag);
 			flush();
-		} else if (refreshNowEvent != null && refreshNowEvent.flushNow(t)) {
+		} else if (delivery.accepted && refreshNowEvent != null && refreshNowEvent.flushNow(delivery.value)) {
 			log.info("----- 触发立刻刷新事件! tag -> {}-----", lastDeliveryTag);
 			flush();
 		}
+	}
 
+	/**
+	 * 批次中第一条消息到达或处理失败后开始计时
+	 */
+	private void startBatchTimer() {
+		long generation = ++batchGeneration;
+		this.ageTimeout = timerWheel.schedule(() -> {
+			expiredGeneration = generation;
+			// 不在时间轮线程中调用QosBatchHandler
+			FLUSH_EXECUTOR.execute(this::drain);
+		}, millisSecond, TimeUnit.MILLISECONDS);
 	}
 
 	/**
 	 * batch flush queue message
 	 */
 	private void flush() {
-		lock.lock();
+		if (unacked == 0)
+			return;
+		boolean handled;
 		try {
-			if (cacheSize.longValue() != 0) {
-				if (qosBatchHandler.handle(bufferList)) {
-					channel.basicAck(lastDeliveryTag, true);
-					log.info("ack tag -> {}", lastDeliveryTag);
-					bufferList.clear();
-					cacheSize.reset();
-					log.info("cache clear, current size -> {}, cache -> {} , local tag -> {}", bufferList.size(),
-							cacheSize.longValue(), lastDeliveryTag);
-				}
-			}
+			// 只有被过滤的消息时直接确认
+			handled = bufferList.isEmpty() || qosBatchHandler.handle(bufferList);
+		} catch (Exception e) {
+			log.error("batch process failure, deliverTag[{}]", lastDeliveryTag, e);
+			handled = false;
+		}
+		if (!handled) {
+			// 保留批次, 等待下一次触发时重试
+			ageTimeout.cancel();
+			startBatchTimer();
+			return;
+		}
+		try {
+			channel.basicAck(lastDeliveryTag, true);
+			log.info("ack tag -> {}", lastDeliveryTag);
 		} catch (IOException e) {
-			// todo do reconnect and clear cache
+			// 未确认的消息在channel恢复后重新投递
 			log.error("basicAck throw IOException -> message==[{}]", e.getMessage(), e);
-		} catch (Exception e) {
-			log.error("batch process failure, deliverTag[{}]", this.lastDeliveryTag, e);
-		} finally {
-			lock.unlock();
 		}
-	}
-
-	/**
-	 * schedule task : 如果缓存中的数据长期没有变动,触发flush动作 1.
-	 * 当缓存队列中的值等于上一次定时任务触发的值,并且该值大于0,不等于rmq预取值,则认为该缓存数据长期没有变动,立即触发回调.
-	 * <p>
-	 * 缓存值达到预取值的大小交给主线程去触发刷新.减少锁的竞争.
-	 */
-	private void automaticFlush() {
-		schedule.scheduleWithFixedDelay(() -> {
-			try {
-				if (cacheSize.longValue() == lastSize && cacheSize.longValue() > 0
-						&& cacheSize.longValue() != prefetchCount) {
-					log.info("automatic flush cache ...{} -> {} ,deliveryTag[{}]", cacheSize.longValue(), lastSize,
-							this.lastDeliveryTag);
-					flush();
-				} else {
-					lastSize = cacheSize.longValue();
-				}
-			} catch (Exception e) {
-				log.error("automatic flush execute failure,deleveryTag[{}]", e, this.lastDeliveryTag);
-			}
-		}, 0, millisSecond, TimeUnit.MILLISECONDS);
+		bufferList.clear();
+		unacked = 0;
+		ageTimeout.cancel();
+		log.info("cache clear, current size -> {}, local tag -> {}", bufferList.size(), lastDeliveryTag);
 	}
 
 	@SuppressWarnings("unused")
 	private void destroy() {
-		if (!schedule.isShutdown()) {
-			schedule.shutdown();
-			schedule = null;
-		}
+		destroyed = true;
+		drain();
 		if (channel.isOpen()) {
 			try {
 				channel.close();
@@ -218,4 +245,19 @@ public class QosBatchProcessConsumer<T> extends DefaultConsumer {
 		}
 		channel = null;
 	}
+
+	private static final class Delivery<T> {
+
+		private final T value;
+		private final long deliveryTag;
+		private final boolean accepted;
+
+		private Delivery(T value, long deliveryTag, boolean accepted) {
+			this.value = value;
+			this.deliveryTag = deliveryTag;
+			this.accepted = accepted;
+		}
+
+	}
+
 }
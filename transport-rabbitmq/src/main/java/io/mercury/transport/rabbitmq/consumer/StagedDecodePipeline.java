@@ -0,0 +1,255 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+import io.mercury.common.log.CommonLoggerFactory;
+
+/**
+ * 分阶段处理消息: 投递线程 -> 反序列化线程 -> 处理线程<br>
+ *
+ * 投递线程只把消息放入有界环形缓冲区, 缓冲区已满时投递线程等待. 第i个反序列化线程处理序号对线程数取模为i的消息.
+ * ordered为true时由一个处理线程按投递顺序处理, 否则由反序列化线程直接处理.<br>
+ *
+ * 每个阶段的队列深度可以通过decodeQueueDepth()和handleQueueDepth()获取.
+ *
+ * @author yellow013
+ */
+public final class StagedDecodePipeline<T> {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(StagedDecodePipeline.class);
+
+	/**
+	 * 处理反序列化后的消息, decodeError不为null时value为null
+	 */
+	@FunctionalInterface
+	public static interface DecodedHandler<T> {
+
+		void handle(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body, T value,
+				Exception decodeError);
+
+	}
+
+	private static final int EMPTY = 0;
+	private static final int PUBLISHED = 1;
+	private static final int DECODED = 2;
+
+	// 等待时的最长park时间, 避免遗漏唤醒
+	private static final long PARK_NANOS = 1_000_000L;
+
+	private final Slot<T>[] ring;
+
+	private final int mask;
+
+	private final Function<byte[], T> deserializer;
+
+	private final DecodedHandler<T> handler;
+
+	private final Thread[] decodeThreads;
+
+	private final Thread handleThread;
+
+	// 只由投递线程写入
+	private long nextSeq;
+
+	private volatile Thread producerThread;
+
+	private final AtomicLong published = new AtomicLong();
+
+	private final AtomicLong decoded = new AtomicLong();
+
+	private final AtomicLong handled = new AtomicLong();
+
+	private volatile boolean running = true;
+
+	/**
+	 *
+	 * @param name          线程名称前缀
+	 * @param decodeThreads 反序列化线程数量
+	 * @param bufferSize    调整为2的幂
+	 * @param ordered       是否按投递顺序处理
+	 * @param deserializer
+	 * @param handler
+	 */
+	@SuppressWarnings("unchecked")
+	public StagedDecodePipeline(String name, int decodeThreads, int bufferSize, boolean ordered,
+			Function<byte[], T> deserializer, DecodedHandler<T> handler) {
+		if (decodeThreads < 1)
+			throw new IllegalArgumentException("decodeThreads must be greater than 0");
+		int size = Integer.highestOneBit(Math.max(2, bufferSize - 1) << 1);
+		this.ring = new Slot[size];
+		for (int i = 0; i < size; i++)
+			ring[i] = new Slot<>();
+		this.mask = size - 1;
+		this.deserializer = deserializer;
+		this.handler = handler;
+		this.decodeThreads = new Thread[decodeThreads];
+		for (int i = 0; i < decodeThreads; i++) {
+			int stripe = i;
+			this.decodeThreads[i] = newThread(() -> runDecode(stripe, !ordered), name + "-decode-" + i);
+		}
+		this.handleThread = ordered ? newThread(this::runHandle, name + "-handle") : null;
+		for (Thread thread : this.decodeThreads)
+			thread.start();
+		if (handleThread != null)
+			handleThread.start();
+	}
+
+	private static Thread newThread(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * 由投递线程调用, 缓冲区已满时等待
+	 *
+	 * @param consumerTag
+	 * @param envelope
+	 * @param properties
+	 * @param body
+	 * @return false if pipeline is stopped
+	 */
+	public boolean publish(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body) {
+		long seq = nextSeq;
+		Slot<T> slot = ring[(int) (seq & mask)];
+		if (slot.state != EMPTY) {
+			producerThread = Thread.currentThread();
+			while (slot.state != EMPTY) {
+				if (!running)
+					return false;
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+		}
+		slot.consumerTag = consumerTag;
+		slot.envelope = envelope;
+		slot.properties = properties;
+		slot.body = body;
+		slot.state = PUBLISHED;
+		nextSeq = seq + 1;
+		published.lazySet(seq + 1);
+		LockSupport.unpark(decodeThreads[(int) (seq % decodeThreads.length)]);
+		return true;
+	}
+
+	private void runDecode(int stripe, boolean handleInPlace) {
+		int stride = decodeThreads.length;
+		for (long seq = stripe; running; seq += stride) {
+			Slot<T> slot = ring[(int) (seq & mask)];
+			if (!await(slot, seq, PUBLISHED))
+				break;
+			try {
+				slot.value = deserializer.apply(slot.body);
+			} catch (Exception e) {
+				slot.decodeError = e;
+			}
+			decoded.incrementAndGet();
+			if (handleInPlace)
+				handle(slot);
+			else {
+				slot.state = DECODED;
+				LockSupport.unpark(handleThread);
+			}
+		}
+	}
+
+	private void runHandle() {
+		for (long seq = 0; running; seq++) {
+			Slot<T> slot = ring[(int) (seq & mask)];
+			if (!await(slot, seq, DECODED))
+				break;
+			handle(slot);
+		}
+	}
+
+	/**
+	 * 等待序号为seq的消息到达指定状态
+	 */
+	private boolean await(Slot<T> slot, long seq, int state) {
+		while (slot.state != state || published.get() <= seq) {
+			if (!running)
+				return false;
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+		return true;
+	}
+
+	private void handle(Slot<T> slot) {
+		try {
+			handler.handle(slot.consumerTag, slot.envelope, slot.properties, slot.body, slot.value,
+					slot.decodeError);
+		} catch (Exception e) {
+			log.error("DecodedHandler throw exception -> {}", e.getMessage(), e);
+		}
+		slot.clear();
+		handled.incrementAndGet();
+		slot.state = EMPTY;
+		Thread producer = producerThread;
+		if (producer != null)
+			LockSupport.unpark(producer);
+	}
+
+	/**
+	 *
+	 * @return messages waiting for deserialization
+	 */
+	public long decodeQueueDepth() {
+		return published.get() - decoded.get();
+	}
+
+	/**
+	 *
+	 * @return messages deserialized and waiting for handler
+	 */
+	public long handleQueueDepth() {
+		return decoded.get() - handled.get();
+	}
+
+	/**
+	 *
+	 * @return total published message count
+	 */
+	public long published() {
+		return published.get();
+	}
+
+	/**
+	 * 停止所有线程, 未处理的消息被丢弃
+	 */
+	public void shutdown() {
+		running = false;
+		for (Thread thread : decodeThreads)
+			LockSupport.unpark(thread);
+		if (handleThread != null)
+			LockSupport.unpark(handleThread);
+	}
+
+	private static final class Slot<T> {
+
+		private String consumerTag;
+		private Envelope envelope;
+		private BasicProperties properties;
+		private byte[] body;
+		private T value;
+		private Exception decodeError;
+		// 写入其他字段之后写入state, 读取state之后读取其他字段
+		private volatile int state = EMPTY;
+
+		private void clear() {
+			this.consumerTag = null;
+			this.envelope = null;
+			this.properties = null;
+			this.body = null;
+			this.value = null;
+			this.decodeError = null;
+		}
+
+	}
+
+}
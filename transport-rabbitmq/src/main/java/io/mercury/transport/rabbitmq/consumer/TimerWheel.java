@@ -0,0 +1,174 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+
+/**
+ * 哈希时间轮<br>
+ *
+ * 一个线程服务全部定时任务, 添加和取消任务不加锁, 精度为一个tick.<br>
+ * 任务在时间轮线程中执行, 执行时间应尽量短.
+ *
+ * @author yellow013
+ */
+public final class TimerWheel implements Closeable {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(TimerWheel.class);
+
+	private static volatile TimerWheel shared;
+
+	private final String name;
+
+	private final long tickNanos;
+
+	private final ArrayDeque<Timeout>[] wheel;
+
+	private final int mask;
+
+	// 等待时间轮线程放入bucket的任务
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+	private final long startTime;
+
+	private volatile boolean running = true;
+
+	/**
+	 *
+	 * @param name
+	 * @param tickDuration
+	 * @param unit
+	 * @param wheelSize    调整为2的幂
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+		if (tickDuration <= 0)
+			throw new IllegalArgumentException("tickDuration must be greater than 0");
+		this.name = name;
+		this.tickNanos = unit.toNanos(tickDuration);
+		int size = Integer.highestOneBit(Math.max(2, wheelSize - 1) << 1);
+		this.wheel = new ArrayDeque[size];
+		for (int i = 0; i < size; i++)
+			wheel[i] = new ArrayDeque<>();
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+		Thread thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 进程内共享的时间轮, tick为10毫秒
+	 *
+	 * @return
+	 */
+	public static TimerWheel shared() {
+		if (shared == null) {
+			synchronized (TimerWheel.class) {
+				if (shared == null)
+					shared = new TimerWheel("TimerWheel-shared", 10, TimeUnit.MILLISECONDS, 512);
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 *
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		if (!running)
+			throw new IllegalStateException(name + " is closed");
+		Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+		pending.offer(timeout);
+		return timeout;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+	}
+
+	private void run() {
+		long tick = 0;
+		while (running) {
+			long deadline = startTime + (tick + 1) * tickNanos;
+			long sleepNanos;
+			while ((sleepNanos = deadline - System.nanoTime()) > 0)
+				LockSupport.parkNanos(sleepNanos);
+			transferPending(tick);
+			expire(wheel[(int) (tick & mask)]);
+			tick++;
+		}
+		log.info("{} stopped", name);
+	}
+
+	private void transferPending(long tick) {
+		Timeout timeout;
+		while ((timeout = pending.poll()) != null) {
+			if (timeout.cancelled)
+				continue;
+			long calculated = (timeout.deadline - startTime) / tickNanos;
+			// 已经过期的任务在当前tick执行
+			long ticks = Math.max(calculated, tick);
+			timeout.remainingRounds = (ticks - tick) / wheel.length;
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void expire(ArrayDeque<Timeout> bucket) {
+		Iterator<Timeout> it = bucket.iterator();
+		while (it.hasNext()) {
+			Timeout timeout = it.next();
+			if (timeout.cancelled)
+				it.remove();
+			else if (timeout.remainingRounds <= 0) {
+				it.remove();
+				try {
+					timeout.task.run();
+				} catch (Throwable e) {
+					log.error("{} task throw exception -> {}", name, e.getMessage(), e);
+				}
+			} else
+				timeout.remainingRounds--;
+		}
+	}
+
+	/**
+	 * 已添加的定时任务
+	 */
+	public static final class Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		// 只由时间轮线程访问
+		private long remainingRounds;
+		private volatile boolean cancelled;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+	}
+
+}
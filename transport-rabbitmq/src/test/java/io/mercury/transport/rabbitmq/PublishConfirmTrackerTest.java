@@ -0,0 +1,93 @@
+package io.mercury.transport.rabbitmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import io.mercury.transport.rabbitmq.PublishConfirmTracker.PendingPublish;
+
+public class PublishConfirmTrackerTest {
+
+	private final List<Long> acked = new ArrayList<>();
+	private final List<Long> noAcked = new ArrayList<>();
+
+	private PublishConfirmTracker newTracker(int maxInFlight, int confirmRetry) {
+		return new PublishConfirmTracker("TEST", maxInFlight, 1000, confirmRetry, acked::add, noAcked::add);
+	}
+
+	private PendingPublish track(PublishConfirmTracker tracker, long seqNo) throws InterruptedException {
+		assertTrue(tracker.acquire(0));
+		PendingPublish pending = new PendingPublish("K1", new byte[] { 1 }, null, new CompletableFuture<>());
+		tracker.track(seqNo, pending);
+		return pending;
+	}
+
+	@Test
+	public void testMultipleAck() throws InterruptedException {
+		PublishConfirmTracker tracker = newTracker(8, 3);
+		PendingPublish p1 = track(tracker, 1);
+		PendingPublish p2 = track(tracker, 2);
+		PendingPublish p3 = track(tracker, 3);
+		tracker.handleAck(2, true);
+		assertTrue(p1.future.isDone());
+		assertTrue(p2.future.isDone());
+		assertFalse(p3.future.isDone());
+		assertEquals(1, tracker.inFlight());
+		tracker.handleAck(3, false);
+		assertEquals(Long.valueOf(3), p3.future.join());
+		assertEquals(0, tracker.inFlight());
+		assertEquals(3, acked.size());
+	}
+
+	@Test
+	public void testNackResendAndGiveUp() throws InterruptedException {
+		PublishConfirmTracker tracker = newTracker(8, 2);
+		PendingPublish pending = track(tracker, 1);
+		tracker.handleNack(1, false);
+		assertSame(pending, tracker.pollResend());
+		assertNull(tracker.pollResend());
+		// 重发仍然占用窗口
+		assertEquals(1, tracker.inFlight());
+		tracker.track(2, pending);
+		tracker.handleNack(2, true);
+		assertNull(tracker.pollResend());
+		assertTrue(pending.future.isCompletedExceptionally());
+		assertEquals(1, noAcked.size());
+		assertEquals(0, tracker.inFlight());
+	}
+
+	@Test
+	public void testWindow() throws InterruptedException {
+		PublishConfirmTracker tracker = newTracker(2, 3);
+		track(tracker, 1);
+		track(tracker, 2);
+		assertFalse(tracker.acquire(0));
+		tracker.handleAck(1, false);
+		assertTrue(tracker.acquire(0));
+	}
+
+	@Test
+	public void testExpireAndRequeue() throws InterruptedException {
+		PublishConfirmTracker tracker = newTracker(8, 3);
+		PendingPublish p1 = track(tracker, 1);
+		PendingPublish p2 = track(tracker, 2);
+		tracker.expire(p1.publishTime);
+		assertNull(tracker.pollResend());
+		tracker.expire(p2.publishTime + 2_000_000_000L);
+		assertSame(p1, tracker.pollResend());
+		assertSame(p2, tracker.pollResend());
+		PendingPublish p3 = track(tracker, 3);
+		tracker.requeueOutstanding();
+		assertSame(p3, tracker.pollResend());
+		assertEquals(0, p3.attempts);
+	}
+
+}
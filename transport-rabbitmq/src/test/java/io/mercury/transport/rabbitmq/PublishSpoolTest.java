@@ -0,0 +1,251 @@
+package io.mercury.transport.rabbitmq;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.impl.LongStringHelper;
+
+import io.mercury.transport.rabbitmq.PublishSpool.Batch;
+import io.mercury.transport.rabbitmq.PublishSpool.SpooledMessage;
+
+public class PublishSpoolTest {
+
+	// routingKey为"rk", 无properties, 消息体10字节时每条记录占用24字节
+	private static final int RECORD = 24;
+
+	// 可以写入3条记录
+	private static final int SMALL_SEGMENT = 8 + RECORD * 3 + 4;
+
+	private File directory;
+
+	private PublishSpool spool;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("PublishSpoolTest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		if (spool != null)
+			spool.close();
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		directory.delete();
+	}
+
+	private static byte[] msg(int i) {
+		return String.format("message-%02d", i).substring(0, 10).getBytes();
+	}
+
+	private static String text(SpooledMessage message) {
+		return new String(message.msg);
+	}
+
+	private int segmentFiles() {
+		return directory.list((dir, name) -> name.endsWith(".spool")).length;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		spool = new PublishSpool(directory, 1024, 1 << 20);
+		assertFalse(spool.hasPending());
+		assertNull(spool.next(10));
+		Date timestamp = new Date(1600000000000L);
+		BasicProperties props = new BasicProperties.Builder().contentType("text/plain").deliveryMode(2).priority(5)
+				.correlationId("c-1").replyTo("reply").expiration("60000").messageId("m-1").timestamp(timestamp)
+				.type("T").userId("guest").appId("app").build();
+		assertTrue(spool.append("K1", "hello".getBytes(), props));
+		assertTrue(spool.append("K2", "world".getBytes(), null));
+		assertTrue(spool.append(null, new byte[0], null));
+		assertTrue(spool.hasPending());
+
+		Batch batch = spool.next(2);
+		assertEquals(2, batch.messages.size());
+		SpooledMessage first = batch.messages.get(0);
+		assertEquals("K1", first.routingKey);
+		assertEquals("hello", text(first));
+		assertEquals("text/plain", first.props.getContentType());
+		assertEquals(Integer.valueOf(2), first.props.getDeliveryMode());
+		assertEquals(Integer.valueOf(5), first.props.getPriority());
+		assertEquals("c-1", first.props.getCorrelationId());
+		assertEquals("reply", first.props.getReplyTo());
+		assertEquals("60000", first.props.getExpiration());
+		assertEquals("m-1", first.props.getMessageId());
+		assertEquals(timestamp, first.props.getTimestamp());
+		assertEquals("T", first.props.getType());
+		assertEquals("guest", first.props.getUserId());
+		assertEquals("app", first.props.getAppId());
+		SpooledMessage second = batch.messages.get(1);
+		assertEquals("K2", second.routingKey);
+		assertEquals("world", text(second));
+		assertNull(second.props.getContentType());
+		assertNull(second.props.getDeliveryMode());
+
+		// 未确认时再次读取到相同的消息
+		assertEquals("hello", text(spool.next(2).messages.get(0)));
+		spool.commit(batch);
+		assertTrue(spool.hasPending());
+
+		batch = spool.next(10);
+		assertEquals(1, batch.messages.size());
+		assertEquals("", batch.messages.get(0).routingKey);
+		assertEquals(0, batch.messages.get(0).msg.length);
+		spool.commit(batch);
+		assertFalse(spool.hasPending());
+		assertNull(spool.next(10));
+	}
+
+	@Test
+	public void testHeadersRoundTrip() throws IOException {
+		spool = new PublishSpool(directory, 4096, 1 << 20);
+		Map<String, Object> nested = new HashMap<>();
+		nested.put("n", 1);
+		Map<String, Object> headers = new HashMap<>();
+		headers.put("string", "order-1");
+		headers.put("longString", LongStringHelper.asLongString("ls"));
+		headers.put("bytes", new byte[] { 1, 2, 3 });
+		headers.put("boolean", true);
+		headers.put("byte", (byte) 7);
+		headers.put("short", (short) 8);
+		headers.put("int", 9);
+		headers.put("long", 10L);
+		headers.put("float", 1.5f);
+		headers.put("double", 2.5d);
+		headers.put("decimal", new BigDecimal("12.345"));
+		headers.put("date", new Date(1600000000000L));
+		headers.put("void", null);
+		headers.put("table", nested);
+		headers.put("array", Arrays.asList("a", 1));
+		assertTrue(spool.append("K1", "hello".getBytes(), new BasicProperties.Builder().headers(headers).build()));
+		// 重新打开后从文件读取
+		spool.close();
+		spool = new PublishSpool(directory, 4096, 1 << 20);
+
+		Map<String, Object> replayed = spool.next(1).messages.get(0).props.getHeaders();
+		assertEquals(headers.keySet(), replayed.keySet());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) replayed.remove("bytes"));
+		headers.remove("bytes");
+		assertEquals(headers, replayed);
+	}
+
+	@Test
+	public void testUnsupportedHeaderValue() throws IOException {
+		spool = new PublishSpool(directory, 1024, 1 << 20);
+		try {
+			spool.append("K1", msg(1), new BasicProperties.Builder()
+					.headers(Collections.singletonMap("object", new Object())).build());
+			fail();
+		} catch (IOException e) {
+			assertFalse(spool.hasPending());
+		}
+		// 写入失败不影响之后的消息
+		assertTrue(spool.append("K1", msg(2), null));
+		assertEquals("message-02", text(spool.next(10).messages.get(0)));
+	}
+
+	@Test
+	public void testRollAndDeleteAckedSegment() throws IOException {
+		spool = new PublishSpool(directory, SMALL_SEGMENT, 1 << 20);
+		for (int i = 0; i < 5; i++)
+			assertTrue(spool.append("rk", msg(i), null));
+		assertEquals(2, segmentFiles());
+
+		// 一个批次只读取一个segment
+		Batch batch = spool.next(10);
+		assertEquals(3, batch.messages.size());
+		assertEquals(new String(msg(0)), text(batch.messages.get(0)));
+		spool.commit(batch);
+		assertEquals(1, segmentFiles());
+
+		batch = spool.next(10);
+		assertEquals(2, batch.messages.size());
+		assertEquals(new String(msg(3)), text(batch.messages.get(0)));
+		spool.commit(batch);
+		assertFalse(spool.hasPending());
+		// 写入中的segment不删除
+		assertEquals(1, segmentFiles());
+	}
+
+	@Test
+	public void testRewindActiveSegment() throws IOException {
+		spool = new PublishSpool(directory, SMALL_SEGMENT, 1 << 20);
+		for (int i = 0; i < 3; i++)
+			assertTrue(spool.append("rk", msg(i), null));
+		spool.commit(spool.next(10));
+		String[] before = directory.list();
+
+		// segment已满但全部确认, 从头复用而不是创建新文件
+		assertTrue(spool.append("rk", msg(3), null));
+		assertEquals(1, segmentFiles());
+		assertEquals(before[0], directory.list()[0]);
+		Batch batch = spool.next(10);
+		assertEquals(1, batch.messages.size());
+		assertEquals(new String(msg(3)), text(batch.messages.get(0)));
+		spool.commit(batch);
+		assertFalse(spool.hasPending());
+	}
+
+	@Test
+	public void testReopenPartlyAckedSegment() throws IOException {
+		spool = new PublishSpool(directory, SMALL_SEGMENT, 1 << 20);
+		for (int i = 0; i < 5; i++)
+			assertTrue(spool.append("rk", msg(i), null));
+		spool.commit(spool.next(1));
+		spool.close();
+
+		spool = new PublishSpool(directory, SMALL_SEGMENT, 1 << 20);
+		assertTrue(spool.hasPending());
+		Batch batch = spool.next(10);
+		assertEquals(2, batch.messages.size());
+		assertEquals(new String(msg(1)), text(batch.messages.get(0)));
+		assertEquals(new String(msg(2)), text(batch.messages.get(1)));
+		spool.commit(batch);
+		batch = spool.next(10);
+		assertEquals(2, batch.messages.size());
+		assertEquals(new String(msg(3)), text(batch.messages.get(0)));
+		// 恢复的最后一个segment可以继续写入
+		assertTrue(spool.append("rk", msg(5), null));
+		spool.commit(batch);
+		batch = spool.next(10);
+		assertEquals(1, batch.messages.size());
+		assertEquals(new String(msg(5)), text(batch.messages.get(0)));
+	}
+
+	@Test
+	public void testSizeLimit() throws IOException {
+		spool = new PublishSpool(directory, SMALL_SEGMENT, SMALL_SEGMENT);
+		for (int i = 0; i < 3; i++)
+			assertTrue(spool.append("rk", msg(i), null));
+		assertFalse(spool.append("rk", msg(3), null));
+		// 单条记录超过segment大小
+		assertFalse(spool.append("rk", new byte[SMALL_SEGMENT], null));
+		assertEquals(1, segmentFiles());
+
+		// 确认后空间可以复用
+		spool.commit(spool.next(10));
+		assertTrue(spool.append("rk", msg(3), null));
+	}
+
+}
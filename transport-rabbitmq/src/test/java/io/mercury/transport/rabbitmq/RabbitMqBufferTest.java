@@ -0,0 +1,218 @@
+package io.mercury.transport.rabbitmq;
+
+import static io.mercury.transport.rabbitmq.RabbitMqPublisherTest.await;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.mercury.transport.rabbitmq.StubConnectionFactory.StubChannel;
+import io.mercury.transport.rabbitmq.configurator.RmqConnection;
+import io.mercury.transport.rabbitmq.exception.AmqpDeclareException;
+
+public class RabbitMqBufferTest {
+
+	private final StubConnectionFactory factory = new StubConnectionFactory();
+
+	private RabbitMqBuffer<String> buffer;
+
+	@After
+	public void tearDown() throws IOException {
+		if (buffer != null)
+			buffer.close();
+	}
+
+	private RabbitMqBuffer<String> newBuffer(int prefetchCount) throws AmqpDeclareException {
+		RmqConnection connection = RmqConnection.configuration("127.0.0.1", 5672, "guest", "guest")
+				.setSharedConnection(false).build();
+		buffer = new RabbitMqBuffer<>(connection, "buffer", Collections.emptyList(), Collections.emptyList(), e -> {
+			if (e.equals("bad"))
+				throw new IllegalArgumentException(e);
+			return e.getBytes();
+		}, String::new, prefetchCount, factory);
+		return buffer;
+	}
+
+	/**
+	 * 开启发布确认, 由测试控制确认
+	 *
+	 * @param confirmTimeout
+	 * @return
+	 * @throws AmqpDeclareException
+	 * @throws IOException
+	 */
+	private StubChannel newConfirmBuffer(long confirmTimeout) throws AmqpDeclareException, IOException {
+		factory.autoAck = false;
+		newBuffer(0).enableConfirm(confirmTimeout);
+		return factory.channel(0);
+	}
+
+	private CompletableFuture<boolean[]> enqueueAllAsync(String... elements) {
+		return CompletableFuture.supplyAsync(() -> buffer.enqueueAll(Arrays.asList(elements)));
+	}
+
+	/**
+	 * 预取模式下第二个channel用于消费
+	 *
+	 * @return
+	 * @throws AmqpDeclareException
+	 */
+	private StubChannel newPrefetchBuffer() throws AmqpDeclareException {
+		// 每连续完成2条消息确认一次
+		newBuffer(4);
+		return factory.channel(1);
+	}
+
+	private static void deliver(StubChannel channel, long from, long to) throws IOException {
+		for (long tag = from; tag <= to; tag++)
+			channel.deliver(tag, ("m" + tag).getBytes());
+	}
+
+	@Test
+	public void testPrefetchPoll() throws AmqpDeclareException, IOException {
+		StubChannel channel = newPrefetchBuffer();
+		deliver(channel, 1, 3);
+		assertEquals(3, buffer.prefetchedSize());
+		assertEquals("m1", buffer.poll());
+		assertTrue(channel.acks.isEmpty());
+		assertEquals("m2", buffer.poll());
+		assertEquals(Arrays.asList(-2L), channel.acks);
+		assertEquals("m3", buffer.poll());
+		assertNull(buffer.poll());
+		assertEquals(0, buffer.prefetchedSize());
+		// 关闭时确认剩余的消息
+		buffer.close();
+		buffer = null;
+		assertEquals(Arrays.asList(-2L, -3L), channel.acks);
+	}
+
+	@Test
+	public void testPrefetchPollBatch() throws AmqpDeclareException, IOException {
+		StubChannel channel = newPrefetchBuffer();
+		deliver(channel, 1, 5);
+		assertEquals(Arrays.asList("m1", "m2", "m3"), buffer.pollBatch(3));
+		assertEquals(Long.valueOf(-3), channel.acks.get(channel.acks.size() - 1));
+		assertEquals(2, buffer.prefetchedSize());
+		assertEquals(Arrays.asList("m4", "m5"), buffer.pollBatch(10));
+		assertEquals(Long.valueOf(-5), channel.acks.get(channel.acks.size() - 1));
+		assertTrue(buffer.pollBatch(10).isEmpty());
+	}
+
+	@Test
+	public void testPrefetchPollAndApplyFailure() throws AmqpDeclareException, IOException {
+		StubChannel channel = newPrefetchBuffer();
+		deliver(channel, 1, 2);
+		// 处理失败的元素放回队列头部, 不确认
+		assertFalse(buffer.pollAndApply(e -> false));
+		assertEquals(2, buffer.prefetchedSize());
+		assertTrue(channel.acks.isEmpty());
+
+		List<String> applied = new ArrayList<>();
+		assertTrue(buffer.pollAndApply(applied::add));
+		assertTrue(buffer.pollAndApply(applied::add));
+		assertEquals(Arrays.asList("m1", "m2"), applied);
+		assertEquals(Arrays.asList(-2L), channel.acks);
+		assertFalse(buffer.pollAndApply(applied::add));
+	}
+
+	@Test
+	public void testPrefetchClearedOnShutdown() throws AmqpDeclareException, IOException {
+		StubChannel channel = newPrefetchBuffer();
+		deliver(channel, 1, 3);
+		assertEquals("m1", buffer.poll());
+		// 处理期间消费channel关闭, 处理失败的消息不再放回
+		assertFalse(buffer.pollAndApply(e -> {
+			channel.shutdown();
+			return false;
+		}));
+		assertEquals(0, buffer.prefetchedSize());
+		assertNull(buffer.poll());
+
+		// 自动恢复后deliveryTag继续递增, 恢复前的消息由broker重新投递
+		channel.restart();
+		deliver(channel, 4, 5);
+		assertEquals("m4", buffer.poll());
+		assertEquals("m5", buffer.poll());
+		assertEquals(Arrays.asList(-5L), channel.acks);
+	}
+
+	@Test
+	public void testEnqueueAllConfirmed() throws AmqpDeclareException, IOException {
+		StubChannel channel = newConfirmBuffer(5000);
+		channel.autoAck = true;
+		// 序列化失败的元素不发布
+		assertArrayEquals(new boolean[] { true, false, true }, buffer.enqueueAll(Arrays.asList("e1", "bad", "e2")));
+		assertEquals(Arrays.asList("e1", "e2"), channel.texts());
+		assertTrue(buffer.enqueue("e3"));
+		assertEquals(3, channel.published.get(2).seqNo);
+	}
+
+	@Test
+	public void testEnqueueAllNack() throws Exception {
+		StubChannel channel = newConfirmBuffer(5000);
+		CompletableFuture<boolean[]> results = enqueueAllAsync("e1", "e2", "e3");
+		await(() -> channel.published.size() == 3);
+		channel.nack(2, false);
+		channel.ack(3, true);
+		assertArrayEquals(new boolean[] { true, false, true }, results.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testEnqueueAllSharedDeadline() throws Exception {
+		StubChannel channel = newConfirmBuffer(200);
+		long start = System.nanoTime();
+		CompletableFuture<boolean[]> results = enqueueAllAsync("e1", "e2", "e3");
+		await(() -> channel.published.size() == 3);
+		channel.ack(1, false);
+		assertArrayEquals(new boolean[] { true, false, false }, results.get(5, TimeUnit.SECONDS));
+		// 整批共用一个deadline, 不是每个元素各等待confirmTimeout
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+		// 超时后到达的确认被忽略
+		channel.ack(3, true);
+	}
+
+	@Test
+	public void testEnqueueAllFailedOnRecovery()
+			throws AmqpDeclareException, IOException, InterruptedException, ExecutionException, TimeoutException {
+		StubChannel channel = newConfirmBuffer(10000);
+		CompletableFuture<boolean[]> results = enqueueAllAsync("e1", "e2");
+		await(() -> channel.published.size() == 2);
+		// 恢复后旧的sequence number不会再被确认, 不等待confirmTimeout
+		channel.recover();
+		assertArrayEquals(new boolean[] { false, false }, results.get(5, TimeUnit.SECONDS));
+
+		channel.autoAck = true;
+		assertArrayEquals(new boolean[] { true }, buffer.enqueueAll(Arrays.asList("e3")));
+		assertEquals(1, channel.published.get(2).seqNo);
+	}
+
+	@Test
+	public void testEnqueueAllRecoveredBeforeListener()
+			throws AmqpDeclareException, IOException, InterruptedException, ExecutionException, TimeoutException {
+		StubChannel channel = newConfirmBuffer(10000);
+		CompletableFuture<boolean[]> results = enqueueAllAsync("e1", "e2");
+		await(() -> channel.published.size() == 2);
+		// 恢复后RecoveryListener被通知之前已经在新的sequence number上发布
+		channel.restart();
+		channel.autoAck = true;
+		assertArrayEquals(new boolean[] { true }, buffer.enqueueAll(Arrays.asList("e3")));
+		assertArrayEquals(new boolean[] { false, false }, results.get(5, TimeUnit.SECONDS));
+		channel.notifyRecovered();
+		assertEquals(1, channel.published.get(2).seqNo);
+	}
+
+}
@@ -0,0 +1,177 @@
+package io.mercury.transport.rabbitmq;
+
+import static io.mercury.transport.rabbitmq.RabbitMqPublisherTest.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+
+import io.mercury.transport.rabbitmq.RabbitMqPipeline.RpcRequester;
+import io.mercury.transport.rabbitmq.RabbitMqPipeline.RpcResponder;
+import io.mercury.transport.rabbitmq.StubConnectionFactory.Published;
+import io.mercury.transport.rabbitmq.StubConnectionFactory.StubChannel;
+import io.mercury.transport.rabbitmq.configurator.RmqConnection;
+import io.mercury.transport.rabbitmq.declare.QueueRelation;
+
+public class RabbitMqPipelineTest {
+
+	private final StubConnectionFactory factory = new StubConnectionFactory();
+
+	private RpcRequester requester;
+
+	private RpcResponder responder;
+
+	@After
+	public void tearDown() {
+		if (requester != null)
+			requester.destroy();
+		if (responder != null)
+			responder.destroy();
+	}
+
+	private static RmqConnection connection() {
+		return RmqConnection.configuration("127.0.0.1", 5672, "guest", "guest").setSharedConnection(false)
+				.setRecoveryInterval(10).build();
+	}
+
+	private StubChannel newRequester() {
+		requester = new RpcRequester("test", connection(), "rpc", factory);
+		return factory.channel(0);
+	}
+
+	private static void reply(StubChannel channel, int index, String body) throws IOException {
+		String correlationId = channel.published.get(index).props.getCorrelationId();
+		channel.deliver(index + 1, new BasicProperties.Builder().correlationId(correlationId).build(),
+				body.getBytes());
+	}
+
+	private static String text(CompletableFuture<byte[]> future) {
+		return new String(future.join());
+	}
+
+	@Test
+	public void testCorrelationId() throws IOException {
+		StubChannel channel = newRequester();
+		CompletableFuture<byte[]> first = requester.request("q1".getBytes(), 5000);
+		CompletableFuture<byte[]> second = requester.request("q2".getBytes(), 5000);
+		assertEquals(2, requester.pendingCount());
+		Published request = channel.published.get(0);
+		assertEquals("rpc", request.routingKey);
+		assertEquals(RabbitMqPipeline.DIRECT_REPLY_TO, request.props.getReplyTo());
+		assertNotEquals(request.props.getCorrelationId(), channel.published.get(1).props.getCorrelationId());
+
+		// 乱序响应按correlationId匹配
+		reply(channel, 1, "r2");
+		assertFalse(first.isDone());
+		assertEquals("r2", text(second));
+
+		// 不属于此请求方的响应被丢弃
+		channel.deliver(10, new BasicProperties.Builder().correlationId("unknown").build(), "x".getBytes());
+		channel.deliver(11, new BasicProperties(), "x".getBytes());
+		assertFalse(first.isDone());
+
+		reply(channel, 0, "r1");
+		assertEquals("r1", text(first));
+		assertEquals(0, requester.pendingCount());
+	}
+
+	@Test
+	public void testTimeoutOffTimerWheel() throws InterruptedException, ExecutionException, TimeoutException {
+		newRequester();
+		CompletableFuture<byte[]> future = requester.request("q".getBytes(), 50);
+		CompletableFuture<String> completedBy = future.handle((reply, e) -> Thread.currentThread().getName());
+		// 后续处理不在共享时间轮线程中执行
+		assertTrue(completedBy.get(5, TimeUnit.SECONDS).startsWith("RpcRequester-timeout-"));
+		try {
+			future.join();
+			fail();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(0, requester.pendingCount());
+
+		try {
+			requester.call("q".getBytes(), 20);
+			fail();
+		} catch (TimeoutException e) {
+			assertEquals(0, requester.pendingCount());
+		} catch (IOException e) {
+			fail();
+		}
+	}
+
+	@Test
+	public void testLateReplyAfterTimeout() throws IOException, InterruptedException {
+		StubChannel channel = newRequester();
+		CompletableFuture<byte[]> future = requester.request("q".getBytes(), 20);
+		await(future::isDone);
+		// 超时后到达的响应被丢弃, 不改变已经结束的future
+		reply(channel, 0, "late");
+		assertTrue(future.isCompletedExceptionally());
+		assertEquals(0, requester.pendingCount());
+
+		CompletableFuture<byte[]> next = requester.request("q2".getBytes(), 5000);
+		reply(channel, 1, "r2");
+		assertEquals("r2", text(next));
+	}
+
+	@Test
+	public void testDestroyFailsPendingCalls() {
+		newRequester();
+		CompletableFuture<byte[]> future = requester.request("q".getBytes(), 5000);
+		requester.destroy();
+		assertEquals(0, requester.pendingCount());
+		try {
+			future.join();
+			fail();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertTrue(requester.request("q".getBytes(), 5000).isCompletedExceptionally());
+	}
+
+	@Test
+	public void testResponder() throws IOException, InterruptedException {
+		responder = new RpcResponder("test", connection(), QueueRelation.named("rpc"), 2, body -> {
+			String request = new String(body);
+			if (request.equals("fail"))
+				throw new IllegalStateException(request);
+			return request.equals("skip") ? null : ("re:" + request).getBytes();
+		}, factory);
+		responder.receive();
+		StubChannel channel = factory.channel(0);
+
+		channel.deliver(1, new BasicProperties.Builder().correlationId("c1").replyTo("reply-1").build(),
+				"q1".getBytes());
+		await(() -> channel.acks.size() == 1);
+		assertEquals(1, channel.published.size());
+		Published reply = channel.published.get(0);
+		assertEquals("reply-1", reply.routingKey);
+		assertEquals("c1", reply.props.getCorrelationId());
+		assertEquals("re:q1", reply.text());
+		assertEquals(Long.valueOf(-1), channel.acks.get(0));
+
+		// 返回null或抛出异常时不发送响应, 请求同样被确认
+		channel.deliver(2, new BasicProperties.Builder().correlationId("c2").replyTo("reply-1").build(),
+				"skip".getBytes());
+		await(() -> channel.acks.size() == 2);
+		channel.deliver(3, new BasicProperties.Builder().correlationId("c3").replyTo("reply-1").build(),
+				"fail".getBytes());
+		await(() -> channel.acks.size() == 3);
+		assertEquals(1, channel.published.size());
+	}
+
+}
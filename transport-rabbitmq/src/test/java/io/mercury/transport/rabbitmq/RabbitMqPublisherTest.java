@@ -1,15 +1,339 @@
 package io.mercury.transport.rabbitmq;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
 
+import io.mercury.transport.core.exception.PublishFailedException;
+import io.mercury.transport.rabbitmq.StubConnectionFactory.StubChannel;
+import io.mercury.transport.rabbitmq.configurator.ChannelPoolMode;
 import io.mercury.transport.rabbitmq.configurator.RmqConnection;
 import io.mercury.transport.rabbitmq.configurator.RmqPublisherConfigurator;
+import io.mercury.transport.rabbitmq.configurator.SpoolOverflowPolicy;
 import io.mercury.transport.rabbitmq.declare.AmqpQueue;
 import io.mercury.transport.rabbitmq.declare.ExchangeRelation;
 
 public class RabbitMqPublisherTest {
 
+	private final StubConnectionFactory factory = new StubConnectionFactory();
+
+	private RabbitMqPublisher publisher;
+
+	private File spoolDirectory;
+
+	@After
+	public void tearDown() throws IOException {
+		if (publisher != null)
+			publisher.close();
+		if (spoolDirectory != null) {
+			File[] files = spoolDirectory.listFiles();
+			if (files != null)
+				for (File file : files)
+					file.delete();
+			spoolDirectory.delete();
+		}
+	}
+
+	static RmqPublisherConfigurator.Builder stubConfiguration() {
+		return RmqPublisherConfigurator.configuration(
+				RmqConnection.configuration("127.0.0.1", 5672, "guest", "guest").setSharedConnection(false)
+						.setRecoveryInterval(10).build())
+				.setDefaultRoutingKey("K1");
+	}
+
+	static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline)
+			Thread.sleep(5);
+		assertTrue(condition.getAsBoolean());
+	}
+
+	@Test
+	public void testRequeueOnlyPreRecoveryMessages() throws InterruptedException, IOException {
+		factory.autoAck = false;
+		publisher = new RabbitMqPublisher("test", stubConfiguration().setConfirm(true).setAsyncConfirm(true)
+				.setConfirmTimeout(60000).build(), null, null, factory);
+		StubChannel channel = factory.channel(0);
+		CompletableFuture<Long> before = publisher.publishAsync("before".getBytes());
+		// 恢复后新的发布先于RecoveryListener执行
+		channel.restart();
+		CompletableFuture<Long> after = publisher.publishAsync("after".getBytes());
+		channel.notifyRecovered();
+		channel.ack(1, false);
+		assertTrue(after.isDone());
+		assertFalse(before.isDone());
+
+		// 只重发恢复前未确认的消息
+		await(() -> channel.published.size() == 3);
+		assertEquals(Arrays.asList("before", "after", "before"), channel.texts());
+		assertEquals(2, channel.published.get(2).seqNo);
+		channel.ack(2, false);
+		assertEquals(Long.valueOf(2), before.join());
+		Thread.sleep(50);
+		assertEquals(3, channel.published.size());
+	}
+
+	@Test
+	public void testRequeueOnRecoveryListener() throws InterruptedException, IOException {
+		factory.autoAck = false;
+		publisher = new RabbitMqPublisher("test", stubConfiguration().setConfirm(true).setAsyncConfirm(true)
+				.setConfirmTimeout(60000).build(), null, null, factory);
+		StubChannel channel = factory.channel(0);
+		CompletableFuture<Long> future = publisher.publishAsync("m1".getBytes());
+		channel.recover();
+		await(() -> channel.published.size() == 2);
+		List<String> texts = channel.texts();
+		assertEquals(Arrays.asList("m1", "m1"), texts);
+		channel.ack(1, false);
+		assertEquals(Long.valueOf(1), future.join());
+	}
+
+	private static CompletableFuture<Void> async(Runnable task) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		new Thread(() -> {
+			try {
+				task.run();
+				future.complete(null);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}).start();
+		return future;
+	}
+
+	@Test
+	public void testLeaseTimeout() throws InterruptedException {
+		publisher = new RabbitMqPublisher("test",
+				stubConfiguration().setChannelPoolSize(1).setConfirmTimeout(100).build(), null, null, factory);
+		StubChannel channel = factory.channel(0);
+		CountDownLatch gate = new CountDownLatch(1);
+		channel.publishGate = gate;
+		try {
+			// 占用唯一的channel
+			CompletableFuture<Void> blocked = async(() -> publisher.publish("m1".getBytes()));
+			Thread.sleep(50);
+			assertFalse(blocked.isDone());
+			long start = System.nanoTime();
+			try {
+				publisher.publish("m2".getBytes());
+				fail();
+			} catch (PublishFailedException e) {
+				assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+			}
+			gate.countDown();
+			blocked.join();
+		} finally {
+			gate.countDown();
+		}
+		channel.publishGate = null;
+		// channel归还后可以继续发布
+		publisher.publish("m3".getBytes());
+		assertEquals(Arrays.asList("m1", "m3"), channel.texts());
+	}
+
+	@Test
+	public void testPinPerThread() {
+		publisher = new RabbitMqPublisher("test", stubConfiguration().setChannelPoolSize(2)
+				.setChannelPoolMode(ChannelPoolMode.PIN_PER_THREAD).build(), null, null, factory);
+		assertEquals(2, factory.channels.size());
+		publisher.publish("a".getBytes());
+		async(() -> publisher.publish("b".getBytes())).join();
+		// 超过池大小的线程按顺序共享channel
+		async(() -> publisher.publish("c".getBytes())).join();
+		publisher.publish("a".getBytes());
+		assertEquals(Arrays.asList("a", "c", "a"), factory.channel(0).texts());
+		assertEquals(Arrays.asList("b"), factory.channel(1).texts());
+	}
+
+	@Test
+	public void testPinnedThreadsWaitOwnConfirms() throws InterruptedException, IOException {
+		factory.autoAck = false;
+		publisher = new RabbitMqPublisher("test",
+				stubConfiguration().setChannelPoolSize(1).setChannelPoolMode(ChannelPoolMode.PIN_PER_THREAD)
+						.setConfirm(true).setConfirmTimeout(5000).setConfirmRetry(1).build(),
+				null, null, factory);
+		StubChannel channel = factory.channel(0);
+		CompletableFuture<Void> first = async(() -> publisher.publish("a".getBytes()));
+		await(() -> channel.published.size() == 1);
+		CompletableFuture<Void> second = async(() -> publisher.publish("b".getBytes()));
+		await(() -> channel.published.size() == 2);
+
+		// 第二个线程不等待第一个线程的消息
+		channel.ack(2, false);
+		second.join();
+		assertFalse(first.isDone());
+
+		// 第一个线程的nack不影响第二个线程
+		channel.nack(1, false);
+		await(first::isDone);
+		assertTrue(first.isCompletedExceptionally());
+		assertFalse(second.isCompletedExceptionally());
+		assertEquals(2, channel.published.size());
+	}
+
+	@Test
+	public void testBatchResendOnlyUnconfirmed() throws InterruptedException, IOException {
+		factory.autoAck = false;
+		List<Long> acked = new CopyOnWriteArrayList<>();
+		publisher = new RabbitMqPublisher("test",
+				stubConfiguration().setConfirm(true).setConfirmTimeout(5000).setConfirmRetry(2).build(), acked::add,
+				null, factory);
+		StubChannel channel = factory.channel(0);
+		CompletableFuture<Void> batch = async(
+				() -> publisher.publishBatch(Arrays.asList("a".getBytes(), "b".getBytes(), "c".getBytes())));
+		await(() -> channel.published.size() == 3);
+		channel.ack(1, false);
+		channel.nack(2, false);
+		channel.ack(3, false);
+		await(() -> channel.published.size() == 4);
+		assertEquals("b", channel.published.get(3).text());
+		assertEquals(4, channel.published.get(3).seqNo);
+		channel.ack(4, false);
+		batch.join();
+		assertEquals(Arrays.asList(1L, 3L, 4L), acked);
+		assertEquals(Arrays.asList("a", "b", "c", "b"), channel.texts());
+	}
+
+	@Test
+	public void testBatchInterrupted() throws InterruptedException {
+		factory.autoAck = false;
+		publisher = new RabbitMqPublisher("test",
+				stubConfiguration().setConfirm(true).setConfirmTimeout(5000).build(), null, null, factory);
+		StubChannel channel = factory.channel(0);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		AtomicBoolean interrupted = new AtomicBoolean();
+		Thread thread = new Thread(() -> {
+			try {
+				publisher.publishBatch(Arrays.asList("a".getBytes(), "b".getBytes()));
+			} catch (Throwable e) {
+				failure.set(e);
+				interrupted.set(Thread.currentThread().isInterrupted());
+			}
+		});
+		thread.start();
+		await(() -> channel.published.size() == 2);
+		thread.interrupt();
+		thread.join(5000);
+		assertTrue(failure.get() instanceof PublishFailedException);
+		assertTrue(failure.get().getCause() instanceof InterruptedException);
+		assertTrue(interrupted.get());
+		assertEquals(2, channel.published.size());
+	}
+
+	private RmqPublisherConfigurator.Builder spoolConfiguration() throws IOException {
+		spoolDirectory = Files.createTempDirectory("RabbitMqPublisherTest").toFile();
+		return stubConfiguration().setSpoolDirectory(spoolDirectory.getAbsolutePath()).setSpoolSegmentSize(4096)
+				.setSpoolMaxSize(1 << 20);
+	}
+
+	private StubChannel lastChannel() {
+		return factory.channel(factory.channels.size() - 1);
+	}
+
+	@Test
+	public void testSpoolOnPublishFailure() throws IOException, InterruptedException {
+		publisher = new RabbitMqPublisher("test", spoolConfiguration().build(), null, null, factory);
+		StubChannel broken = factory.channel(0);
+		broken.publishFailure = new IOException("connection reset");
+		// 发布时才发现连接断开, 消息写入spool而不是抛出异常
+		publisher.publish("m1".getBytes());
+		assertTrue(broken.published.isEmpty());
+		await(() -> factory.channels.size() > 1 && lastChannel().published.size() == 1);
+		assertEquals(Arrays.asList("m1"), lastChannel().texts());
+	}
+
+	@Test
+	public void testSpoolRestOfBatchOnPublishFailure() throws IOException, InterruptedException {
+		publisher = new RabbitMqPublisher("test", spoolConfiguration().build(), null, null, factory);
+		StubChannel broken = factory.channel(0);
+		broken.publishLimit = 1;
+		publisher.publishBatch(Arrays.asList("a".getBytes(), "b".getBytes(), "c".getBytes()));
+		assertEquals(Arrays.asList("a"), broken.texts());
+		await(() -> factory.channels.size() > 1 && lastChannel().published.size() == 2);
+		assertEquals(Arrays.asList("b", "c"), lastChannel().texts());
+	}
+
+	@Test
+	public void testSpoolUnconfirmedOnConfirmPublishFailure() throws IOException, InterruptedException {
+		factory.autoAck = false;
+		publisher = new RabbitMqPublisher("test", spoolConfiguration().setConfirm(true).build(), null, null,
+				factory);
+		StubChannel broken = factory.channel(0);
+		broken.publishLimit = 1;
+		// 重连后创建的channel立即确认
+		factory.autoAck = true;
+		publisher.publishBatch(Arrays.asList("a".getBytes(), "b".getBytes()));
+		// a已发布但未确认, 与b一起写入spool
+		assertEquals(Arrays.asList("a"), broken.texts());
+		await(() -> factory.channels.size() > 1 && lastChannel().published.size() == 2);
+		assertEquals(Arrays.asList("a", "b"), lastChannel().texts());
+	}
+
+	@Test
+	public void testAsyncConfirmSpoolReplay() throws IOException, InterruptedException {
+		List<Long> acks = new CopyOnWriteArrayList<>();
+		List<Long> noAcks = new CopyOnWriteArrayList<>();
+		// maxInFlight小于SPOOL_REPLAY_BATCH
+		publisher = new RabbitMqPublisher("test", spoolConfiguration().setConfirm(true).setAsyncConfirm(true)
+				.setMaxInFlight(2).setConfirmTimeout(500).build(), acks::add, noAcks::add, factory);
+		factory.channel(0).publishFailure = new IOException("connection reset");
+		for (int i = 1; i <= 5; i++)
+			publisher.publish(("m" + i).getBytes());
+		await(() -> factory.channels.size() > 1 && lastChannel().published.size() == 5);
+		StubChannel channel = lastChannel();
+		assertEquals(Arrays.asList("m1", "m2", "m3", "m4", "m5"), channel.texts());
+		// 重放的消息只由drainer确认, 不经过异步重发和回调
+		Thread.sleep(100);
+		assertEquals(5, channel.published.size());
+		assertTrue(acks.isEmpty());
+		assertTrue(noAcks.isEmpty());
+
+		// 异步确认窗口没有被重放的确认扩大
+		channel.autoAck = false;
+		publisher.publishAsync("a1".getBytes());
+		publisher.publishAsync("a2".getBytes());
+		try {
+			publisher.publishAsync("a3".getBytes());
+			fail();
+		} catch (PublishFailedException e) {
+			assertFalse(channel.texts().contains("a3"));
+		}
+	}
+
+	@Test
+	public void testSpoolOverflowReject() throws IOException {
+		spoolDirectory = Files.createTempDirectory("RabbitMqPublisherTest").toFile();
+		publisher = new RabbitMqPublisher("test",
+				stubConfiguration().setSpoolDirectory(spoolDirectory.getAbsolutePath()).setSpoolSegmentSize(64)
+						.setSpoolMaxSize(64).setSpoolOverflowPolicy(SpoolOverflowPolicy.REJECT).build(),
+				null, null, factory);
+		factory.channel(0).publishFailure = new IOException("connection reset");
+		try {
+			// 超过segment大小的消息不能写入spool
+			publisher.publish(new byte[128]);
+			fail();
+		} catch (PublishFailedException e) {
+			assertEquals(0, factory.channel(0).published.size());
+		}
+	}
+
 	public static void main(String[] args) {
 
 		RmqConnection connectionConfigurator = RmqConnection.configuration("10.0.64.201", 5672, "global", "global2018")
@@ -0,0 +1,321 @@
+package io.mercury.transport.rabbitmq;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * 不连接broker的ConnectionFactory, 创建的Connection和Channel由动态代理实现, 记录发布的消息并由测试控制确认
+ */
+final class StubConnectionFactory extends ConnectionFactory {
+
+	// 按创建顺序记录的全部channel
+	final List<StubChannel> channels = new CopyOnWriteArrayList<>();
+
+	// 之后创建的channel是否在basicPublish中立即ack
+	volatile boolean autoAck = true;
+
+	private int channelNumber;
+
+	@Override
+	public Connection newConnection() {
+		StubConnection connection = new StubConnection();
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				connection);
+	}
+
+	/**
+	 *
+	 * @param index
+	 * @return channel created by index
+	 */
+	StubChannel channel(int index) {
+		return channels.get(index);
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class)
+			return false;
+		if (type == int.class)
+			return 0;
+		if (type == long.class)
+			return 0L;
+		return null;
+	}
+
+	private final class StubConnection implements InvocationHandler {
+
+		private final List<StubChannel> created = new CopyOnWriteArrayList<>();
+
+		private volatile boolean open = true;
+
+		private String id;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "createChannel":
+				StubChannel channel;
+				synchronized (StubConnectionFactory.this) {
+					channel = new StubChannel(++channelNumber);
+				}
+				channels.add(channel);
+				created.add(channel);
+				return channel.proxy;
+			case "isOpen":
+				return open;
+			case "close":
+				open = false;
+				for (StubChannel stub : created)
+					stub.open = false;
+				return null;
+			case "setId":
+				id = (String) args[0];
+				return null;
+			case "getId":
+				return id;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "StubConnection-" + id;
+			default:
+				return defaultValue(method.getReturnType());
+			}
+		}
+
+	}
+
+	/**
+	 * 发布的一条消息
+	 */
+	static final class Published {
+
+		final long seqNo;
+		final String routingKey;
+		final BasicProperties props;
+		final byte[] body;
+
+		private Published(long seqNo, String routingKey, BasicProperties props, byte[] body) {
+			this.seqNo = seqNo;
+			this.routingKey = routingKey;
+			this.props = props;
+			this.body = body;
+		}
+
+		String text() {
+			return new String(body);
+		}
+
+	}
+
+	final class StubChannel implements InvocationHandler {
+
+		final Channel proxy;
+
+		final int number;
+
+		final List<Published> published = new CopyOnWriteArrayList<>();
+
+		final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+
+		final List<RecoveryListener> recoveryListeners = new CopyOnWriteArrayList<>();
+
+		final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+
+		// basicAck(deliveryTag, multiple)的记录, multiple为true时记录为负数
+		final List<Long> acks = new CopyOnWriteArrayList<>();
+
+		// 为true时在basicPublish中立即ack
+		volatile boolean autoAck = StubConnectionFactory.this.autoAck;
+
+		// 不为null时basicPublish抛出此异常
+		volatile IOException publishFailure;
+
+		// 发布的消息数量达到此值后basicPublish抛出IOException
+		volatile int publishLimit = Integer.MAX_VALUE;
+
+		// 不为null时basicPublish等待此latch
+		volatile CountDownLatch publishGate;
+
+		volatile boolean open = true;
+
+		// basicConsume注册的Consumer
+		volatile Consumer consumer;
+
+		// 0为未开启确认模式
+		private long nextSeqNo;
+
+		private StubChannel(int number) {
+			this.number = number;
+			this.proxy = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { Channel.class, Recoverable.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "basicPublish":
+				publish(args);
+				return null;
+			case "confirmSelect":
+				synchronized (this) {
+					if (nextSeqNo == 0)
+						nextSeqNo = 1;
+				}
+				return null;
+			case "getNextPublishSeqNo":
+				synchronized (this) {
+					return nextSeqNo;
+				}
+			case "addConfirmListener":
+				if (args.length == 1)
+					confirmListeners.add((ConfirmListener) args[0]);
+				return null;
+			case "addRecoveryListener":
+				recoveryListeners.add((RecoveryListener) args[0]);
+				return null;
+			case "addShutdownListener":
+				shutdownListeners.add((ShutdownListener) args[0]);
+				return null;
+			case "basicConsume":
+				consumer = (Consumer) args[args.length - 1];
+				return "stub-consumer-" + number;
+			case "basicAck":
+				long deliveryTag = (Long) args[0];
+				acks.add((Boolean) args[1] ? -deliveryTag : deliveryTag);
+				return null;
+			case "isOpen":
+				return open;
+			case "close":
+				open = false;
+				return null;
+			case "getChannelNumber":
+				return number;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "StubChannel-" + number;
+			default:
+				return defaultValue(method.getReturnType());
+			}
+		}
+
+		private void publish(Object[] args) throws IOException {
+			if (!open)
+				throw new IOException("channel " + number + " is closed");
+			IOException failure = publishFailure;
+			if (failure != null)
+				throw failure;
+			CountDownLatch gate = publishGate;
+			if (gate != null)
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			long seqNo;
+			synchronized (this) {
+				if (published.size() >= publishLimit)
+					throw new IOException("channel " + number + " connection reset");
+				seqNo = nextSeqNo;
+				if (nextSeqNo > 0)
+					nextSeqNo++;
+				// 各个重载的第二个参数都是routingKey, 最后两个参数都是props和body
+				published.add(new Published(seqNo, (String) args[1], (BasicProperties) args[args.length - 2],
+						(byte[]) args[args.length - 1]));
+			}
+			if (seqNo > 0 && autoAck)
+				ack(seqNo, false);
+		}
+
+		void ack(long seqNo, boolean multiple) throws IOException {
+			for (ConfirmListener listener : confirmListeners)
+				listener.handleAck(seqNo, multiple);
+		}
+
+		void nack(long seqNo, boolean multiple) throws IOException {
+			for (ConfirmListener listener : confirmListeners)
+				listener.handleNack(seqNo, multiple);
+		}
+
+		/**
+		 * 模拟自动恢复, sequence number从1重新开始
+		 */
+		void recover() {
+			restart();
+			notifyRecovered();
+		}
+
+		/**
+		 * 模拟恢复中替换了底层channel, 尚未通知RecoveryListener
+		 */
+		synchronized void restart() {
+			nextSeqNo = nextSeqNo > 0 ? 1 : 0;
+			open = true;
+		}
+
+		void notifyRecovered() {
+			for (RecoveryListener listener : recoveryListeners)
+				listener.handleRecovery((Recoverable) proxy);
+		}
+
+		/**
+		 * 模拟非正常关闭, 通知ShutdownListener和basicConsume注册的Consumer
+		 */
+		void shutdown() {
+			open = false;
+			ShutdownSignalException signal = new ShutdownSignalException(false, false, null, proxy);
+			for (ShutdownListener listener : shutdownListeners)
+				listener.shutdownCompleted(signal);
+			Consumer consumer = this.consumer;
+			if (consumer != null)
+				consumer.handleShutdownSignal("stub-consumer-" + number, signal);
+		}
+
+		/**
+		 * 通过basicConsume注册的Consumer投递消息
+		 *
+		 * @param deliveryTag
+		 * @param body
+		 * @throws IOException
+		 */
+		void deliver(long deliveryTag, byte[] body) throws IOException {
+			deliver(deliveryTag, new BasicProperties(), body);
+		}
+
+		void deliver(long deliveryTag, BasicProperties props, byte[] body) throws IOException {
+			consumer.handleDelivery("stub-consumer-" + number, new Envelope(deliveryTag, false, "", ""), props,
+					body);
+		}
+
+		List<String> texts() {
+			List<String> texts = new ArrayList<>();
+			for (Published message : published)
+				texts.add(message.text());
+			return texts;
+		}
+
+	}
+
+}
@@ -0,0 +1,71 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AckCoalescerTest {
+
+	private final List<Long> acked = new ArrayList<>();
+
+	@Test
+	public void testBatchSize() {
+		AckCoalescer coalescer = new AckCoalescer("test", 4, 0, 16, acked::add);
+		coalescer.completed(1);
+		coalescer.completed(2);
+		coalescer.completed(3);
+		assertTrue(acked.isEmpty());
+		coalescer.completed(4);
+		assertEquals(1, acked.size());
+		assertEquals(4L, (long) acked.get(0));
+		// 5未完成, 6不能确认
+		coalescer.completed(6);
+		coalescer.flush();
+		assertEquals(1, acked.size());
+		coalescer.completed(5);
+		coalescer.close();
+		assertEquals(2, acked.size());
+		assertEquals(6L, (long) acked.get(1));
+		assertEquals(2, coalescer.ackFrames());
+	}
+
+	@Test
+	public void testInterval() throws InterruptedException {
+		AckCoalescer coalescer = new AckCoalescer("test", 1024, 10, 16, tag -> {
+			synchronized (acked) {
+				acked.add(tag);
+			}
+		});
+		coalescer.completed(1);
+		coalescer.completed(2);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (coalescer.sentUpTo() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(2, coalescer.sentUpTo());
+		coalescer.close();
+	}
+
+	@Test
+	public void testCloseStopsInterval() throws InterruptedException {
+		AckCoalescer coalescer = new AckCoalescer("test", 1024, 10, 16, tag -> {
+			synchronized (acked) {
+				acked.add(tag);
+			}
+		});
+		coalescer.completed(1);
+		coalescer.close();
+		assertEquals(1, coalescer.sentUpTo());
+		// 关闭后完成的消息不再由定时任务确认
+		coalescer.completed(2);
+		Thread.sleep(100);
+		assertEquals(1, coalescer.sentUpTo());
+		synchronized (acked) {
+			assertEquals(1, acked.size());
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ContiguousAckTrackerTest {
+
+	@Test
+	public void testInOrder() {
+		ContiguousAckTracker tracker = new ContiguousAckTracker(16);
+		assertEquals(1, tracker.complete(1));
+		assertEquals(2, tracker.complete(2));
+		assertEquals(2, tracker.ackedUpTo());
+	}
+
+	@Test
+	public void testOutOfOrder() {
+		ContiguousAckTracker tracker = new ContiguousAckTracker(16);
+		assertEquals(-1, tracker.complete(3));
+		assertEquals(-1, tracker.complete(2));
+		assertEquals(3, tracker.complete(1));
+		assertEquals(-1, tracker.complete(5));
+		assertEquals(5, tracker.complete(4));
+		// 重复完成
+		assertEquals(-1, tracker.complete(4));
+	}
+
+	@Test
+	public void testGrow() {
+		ContiguousAckTracker tracker = new ContiguousAckTracker(16);
+		for (long tag = 2; tag <= 100; tag++)
+			assertEquals(-1, tracker.complete(tag));
+		assertEquals(100, tracker.complete(1));
+		assertEquals(-1, tracker.complete(102));
+		assertEquals(102, tracker.complete(101));
+	}
+
+	@Test
+	public void testReset() {
+		ContiguousAckTracker tracker = new ContiguousAckTracker(16);
+		tracker.complete(1);
+		tracker.complete(3);
+		tracker.reset();
+		assertEquals(0, tracker.ackedUpTo());
+		assertEquals(-1, tracker.complete(2));
+		assertEquals(2, tracker.complete(1));
+	}
+
+}
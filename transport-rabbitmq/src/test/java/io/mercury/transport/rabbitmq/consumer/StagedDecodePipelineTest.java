@@ -0,0 +1,194 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.rabbitmq.client.Envelope;
+
+public class StagedDecodePipelineTest {
+
+	private StagedDecodePipeline<Long> pipeline;
+
+	@After
+	public void tearDown() {
+		if (pipeline != null)
+			pipeline.shutdown();
+	}
+
+	private static Envelope envelope(long deliveryTag) {
+		return new Envelope(deliveryTag, false, "", "");
+	}
+
+	private static byte[] body(long deliveryTag) {
+		return Long.toString(deliveryTag).getBytes();
+	}
+
+	private static Long decode(byte[] body) {
+		long value = Long.parseLong(new String(body));
+		// 解码耗时不同, 使各反序列化线程的进度交错
+		if (value % 7 == 0)
+			Thread.yield();
+		if (value % 100 == 99)
+			throw new IllegalArgumentException("bad message " + value);
+		return value;
+	}
+
+	private static void awaitValue(long expected, LongSupplier actual) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (actual.getAsLong() != expected && System.nanoTime() < deadline)
+			Thread.sleep(1);
+		assertEquals(expected, actual.getAsLong());
+	}
+
+	@Test
+	public void testOrderedAcrossRingWrap() throws InterruptedException {
+		int count = 1000;
+		List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+		List<String> errors = Collections.synchronizedList(new ArrayList<>());
+		AtomicBoolean valuesMatch = new AtomicBoolean(true);
+		CountDownLatch latch = new CountDownLatch(count);
+		// 3个反序列化线程, 环形缓冲区为8
+		pipeline = new StagedDecodePipeline<>("ordered", 3, 8, true, StagedDecodePipelineTest::decode,
+				(consumerTag, envelope, properties, body, value, decodeError) -> {
+					handled.add(envelope.getDeliveryTag());
+					if (decodeError != null) {
+						errors.add(decodeError.getMessage());
+						if (value != null)
+							valuesMatch.set(false);
+					} else if (value.longValue() != envelope.getDeliveryTag())
+						valuesMatch.set(false);
+					latch.countDown();
+				});
+		for (long tag = 0; tag < count; tag++)
+			assertTrue(pipeline.publish("tag", envelope(tag), null, body(tag)));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < count; i++)
+			assertEquals(i, handled.get(i).longValue());
+		assertTrue(valuesMatch.get());
+		assertEquals(10, errors.size());
+		assertEquals(count, pipeline.published());
+	}
+
+	@Test
+	public void testUnordered() throws InterruptedException {
+		int count = 1000;
+		Set<Long> handled = Collections.synchronizedSet(new HashSet<>());
+		AtomicBoolean onDecodeThread = new AtomicBoolean(true);
+		CountDownLatch latch = new CountDownLatch(count);
+		pipeline = new StagedDecodePipeline<>("unordered", 3, 8, false, StagedDecodePipelineTest::decode,
+				(consumerTag, envelope, properties, body, value, decodeError) -> {
+					handled.add(envelope.getDeliveryTag());
+					// 没有单独的处理线程, 由反序列化线程直接处理
+					if (!Thread.currentThread().getName().startsWith("unordered-decode-"))
+						onDecodeThread.set(false);
+					latch.countDown();
+				});
+		for (long tag = 0; tag < count; tag++)
+			assertTrue(pipeline.publish("tag", envelope(tag), null, body(tag)));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(count, handled.size());
+		assertTrue(onDecodeThread.get());
+	}
+
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(10);
+		pipeline = new StagedDecodePipeline<>("backpressure", 2, 4, true, StagedDecodePipelineTest::decode,
+				(consumerTag, envelope, properties, body, value, decodeError) -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				});
+		Thread producer = new Thread(() -> {
+			for (long tag = 0; tag < 10; tag++)
+				pipeline.publish("tag", envelope(tag), null, body(tag));
+		});
+		producer.start();
+		// 处理线程阻塞时, 投递线程在写满4个slot后等待
+		awaitValue(4, pipeline::published);
+		Thread.sleep(50);
+		assertEquals(4, pipeline.published());
+		assertTrue(producer.isAlive());
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		producer.join(1000);
+		assertFalse(producer.isAlive());
+		assertEquals(10, pipeline.published());
+	}
+
+	@Test
+	public void testShutdownReleasesBlockedPublisher() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		// 环形缓冲区最小为4
+		pipeline = new StagedDecodePipeline<>("shutdown", 1, 4, true, StagedDecodePipelineTest::decode,
+				(consumerTag, envelope, properties, body, value, decodeError) -> {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+		for (long tag = 0; tag < 4; tag++)
+			assertTrue(pipeline.publish("tag", envelope(tag), null, body(tag)));
+		AtomicBoolean result = new AtomicBoolean(true);
+		Thread producer = new Thread(() -> result.set(pipeline.publish("tag", envelope(4), null, body(4))));
+		producer.start();
+		Thread.sleep(50);
+		pipeline.shutdown();
+		producer.join(1000);
+		assertFalse(producer.isAlive());
+		assertFalse(result.get());
+		release.countDown();
+	}
+
+	@Test
+	public void testQueueDepth() throws InterruptedException {
+		CountDownLatch decodeRelease = new CountDownLatch(1);
+		CountDownLatch handleRelease = new CountDownLatch(1);
+		pipeline = new StagedDecodePipeline<>("depth", 1, 8, true, body -> {
+			try {
+				decodeRelease.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return decode(body);
+		}, (consumerTag, envelope, properties, body, value, decodeError) -> {
+			try {
+				handleRelease.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		for (long tag = 0; tag < 3; tag++)
+			assertTrue(pipeline.publish("tag", envelope(tag), null, body(tag)));
+		// 反序列化阻塞
+		assertEquals(3, pipeline.decodeQueueDepth());
+		assertEquals(0, pipeline.handleQueueDepth());
+		// 反序列化完成, 处理阻塞
+		decodeRelease.countDown();
+		awaitValue(0, pipeline::decodeQueueDepth);
+		assertEquals(3, pipeline.handleQueueDepth());
+		handleRelease.countDown();
+		awaitValue(0, pipeline::handleQueueDepth);
+		assertEquals(0, pipeline.decodeQueueDepth());
+	}
+
+}
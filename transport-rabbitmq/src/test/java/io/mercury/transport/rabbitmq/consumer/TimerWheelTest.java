@@ -0,0 +1,110 @@
+package io.mercury.transport.rabbitmq.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.mercury.transport.rabbitmq.consumer.TimerWheel.Timeout;
+
+public class TimerWheelTest {
+
+	private TimerWheel timerWheel;
+
+	@After
+	public void tearDown() {
+		if (timerWheel != null)
+			timerWheel.close();
+	}
+
+	@Test
+	public void testOrdering() throws InterruptedException {
+		timerWheel = new TimerWheel("TimerWheelTest", 1, TimeUnit.MILLISECONDS, 64);
+		List<Integer> fired = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(4);
+		for (int delay : new int[] { 80, 20, 60, 40 }) {
+			timerWheel.schedule(() -> {
+				fired.add(delay);
+				latch.countDown();
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(20, fired.get(0).intValue());
+		assertEquals(40, fired.get(1).intValue());
+		assertEquals(60, fired.get(2).intValue());
+		assertEquals(80, fired.get(3).intValue());
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		timerWheel = new TimerWheel("TimerWheelTest", 1, TimeUnit.MILLISECONDS, 64);
+		AtomicBoolean cancelledFired = new AtomicBoolean();
+		Timeout timeout = timerWheel.schedule(() -> cancelledFired.set(true), 20, TimeUnit.MILLISECONDS);
+		timeout.cancel();
+		assertTrue(timeout.isCancelled());
+		CountDownLatch latch = new CountDownLatch(1);
+		timerWheel.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertFalse(cancelledFired.get());
+	}
+
+	@Test
+	public void testMultiRoundDelay() throws InterruptedException {
+		// 一圈为4个tick, 20毫秒
+		timerWheel = new TimerWheel("TimerWheelTest", 5, TimeUnit.MILLISECONDS, 4);
+		long[] delays = { 15, 45, 70, 130 };
+		long[] elapsed = new long[delays.length];
+		CountDownLatch latch = new CountDownLatch(delays.length);
+		long start = System.nanoTime();
+		for (int i = 0; i < delays.length; i++) {
+			int index = i;
+			timerWheel.schedule(() -> {
+				elapsed[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				latch.countDown();
+			}, delays[i], TimeUnit.MILLISECONDS);
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < delays.length; i++) {
+			// 不早于延迟时间, 也不会多等若干圈
+			assertTrue("early " + elapsed[i] + " < " + delays[i], elapsed[i] >= delays[i]);
+			assertTrue("late " + elapsed[i] + " > " + delays[i], elapsed[i] < delays[i] + 100);
+		}
+	}
+
+	@Test
+	public void testAlreadyExpired() throws InterruptedException {
+		timerWheel = new TimerWheel("TimerWheelTest", 1, TimeUnit.MILLISECONDS, 64);
+		CountDownLatch latch = new CountDownLatch(2);
+		timerWheel.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+		timerWheel.schedule(latch::countDown, -100, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testTaskException() throws InterruptedException {
+		timerWheel = new TimerWheel("TimerWheelTest", 1, TimeUnit.MILLISECONDS, 64);
+		timerWheel.schedule(() -> {
+			throw new IllegalStateException("test");
+		}, 5, TimeUnit.MILLISECONDS);
+		CountDownLatch latch = new CountDownLatch(1);
+		timerWheel.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testScheduleAfterClose() {
+		timerWheel = new TimerWheel("TimerWheelTest", 1, TimeUnit.MILLISECONDS, 64);
+		timerWheel.close();
+		timerWheel.schedule(() -> {
+		}, 1, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -0,0 +1,34 @@
+package io.mercury.transport.socket;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * 接收数据回调<br>
+ * buffer为接收引擎复用的direct buffer, 可读数据为position到limit之间的部分,
+ * 仅在回调期间有效, 需要保留数据时必须自行复制.
+ */
+@FunctionalInterface
+public interface ByteBufferHandler {
+
+	/**
+	 *
+	 * @param buffer
+	 */
+	void handle(ByteBuffer buffer);
+
+	/**
+	 * 将每次读取的数据复制为byte[]交给callback
+	 *
+	 * @param callback
+	 * @return
+	 */
+	static ByteBufferHandler copyOf(Consumer<byte[]> callback) {
+		return buffer -> {
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			callback.accept(bytes);
+		};
+	}
+
+}
@@ -0,0 +1,301 @@
+package io.mercury.transport.socket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+import io.mercury.transport.socket.frame.CorruptedFrameException;
+
+/**
+ * 基于Selector的接收引擎<br>
+ *
+ * 一个select线程服务多个连接, 数据到达后立即回调, 每个连接使用一个复用的direct buffer.<br>
+ * 发送缓冲区已满时, 写线程可以通过{@link Registration#awaitWritable(long)}等待select线程通知连接可写.
+ *
+ * @author yellow013
+ */
+public final class NioReceiveEngine implements Closeable {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(NioReceiveEngine.class);
+
+	private static volatile NioReceiveEngine shared;
+
+	private final String name;
+
+	private final Selector selector;
+
+	// 等待在select线程中注册的连接
+	private final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+
+	// 等待在select线程中增加OP_WRITE的连接
+	private final Queue<Registration> writeWaiting = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean running = true;
+
+	public NioReceiveEngine(String name) {
+		this.name = name;
+		try {
+			this.selector = Selector.open();
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		Thread selectThread = new Thread(this::selectLoop, name);
+		selectThread.setDaemon(true);
+		selectThread.start();
+	}
+
+	/**
+	 * 进程内共享的默认引擎
+	 *
+	 * @return
+	 */
+	public static NioReceiveEngine shared() {
+		if (shared == null) {
+			synchronized (NioReceiveEngine.class) {
+				if (shared == null)
+					shared = new NioReceiveEngine("NioReceiveEngine-shared");
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * 注册连接, channel将被设置为非阻塞模式
+	 *
+	 * @param channel
+	 * @param bufferSize
+	 * @param handler
+	 * @param onClose    对端关闭, 读取异常或消息格式错误时调用, 可以为null
+	 * @return
+	 */
+	public Registration register(SocketChannel channel, int bufferSize, ByteBufferHandler handler,
+			Runnable onClose) {
+		if (!running)
+			throw new IllegalStateException(name + " is closed");
+		try {
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		Registration registration = new Registration(this, channel, ByteBuffer.allocateDirect(bufferSize), handler,
+				onClose);
+		pending.offer(registration);
+		selector.wakeup();
+		return registration;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	private void selectLoop() {
+		log.info("{} started", name);
+		while (running) {
+			try {
+				selector.select();
+				registerPending();
+				registerWriteWaiting();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Registration registration = (Registration) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable()) {
+							key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+							registration.writable();
+						}
+						if (key.isValid() && key.isReadable())
+							registration.read();
+					} catch (CancelledKeyException e) {
+						// cancel()在调用方线程中执行, isValid()之后仍可能被取消, 只跳过该连接
+						registration.writable();
+					} catch (RuntimeException e) {
+						// 例如onClose抛出异常, 不能因为一个连接停止select线程
+						log.error("{} process key error -> {}", name, e.getMessage(), e);
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (IOException e) {
+				log.error("{} select error -> {}", name, e.getMessage(), e);
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			log.error("{} close selector error -> {}", name, e.getMessage(), e);
+		}
+		log.info("{} stopped", name);
+	}
+
+	private void registerPending() {
+		Registration registration;
+		while ((registration = pending.poll()) != null) {
+			if (registration.cancelled)
+				continue;
+			try {
+				registration.key = registration.channel.register(selector, SelectionKey.OP_READ, registration);
+				// 注册期间被取消时key尚未赋值, 在此补充取消
+				if (registration.cancelled)
+					registration.key.cancel();
+			} catch (IOException e) {
+				log.error("{} register channel error -> {}", name, e.getMessage(), e);
+				registration.closed();
+			}
+		}
+	}
+
+	/**
+	 * interestOps只在select线程中修改, 避免与select()并发时阻塞
+	 */
+	private void registerWriteWaiting() {
+		Registration registration;
+		while ((registration = writeWaiting.poll()) != null) {
+			SelectionKey key = registration.key;
+			try {
+				if (key != null && key.isValid())
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				else
+					// 尚未注册或已经取消, 由写线程重试
+					registration.writable();
+			} catch (CancelledKeyException e) {
+				registration.writable();
+			}
+		}
+	}
+
+	private void requestWritable(Registration registration) {
+		writeWaiting.offer(registration);
+		selector.wakeup();
+	}
+
+	/**
+	 * 已注册的连接
+	 */
+	public static final class Registration {
+
+		private final NioReceiveEngine engine;
+		private final SocketChannel channel;
+		private final ByteBuffer buffer;
+		private final ByteBufferHandler handler;
+		private final Runnable onClose;
+
+		private volatile SelectionKey key;
+		private volatile boolean cancelled;
+
+		// 写线程在此等待select线程通知可写
+		private final Object writeMonitor = new Object();
+		private boolean writable;
+
+		private Registration(NioReceiveEngine engine, SocketChannel channel, ByteBuffer buffer,
+				ByteBufferHandler handler, Runnable onClose) {
+			this.engine = engine;
+			this.channel = channel;
+			this.buffer = buffer;
+			this.handler = handler;
+			this.onClose = onClose;
+		}
+
+		/**
+		 * 停止接收, 不关闭channel
+		 */
+		public void cancel() {
+			cancelled = true;
+			SelectionKey key = this.key;
+			if (key != null)
+				key.cancel();
+			synchronized (writeMonitor) {
+				writeMonitor.notifyAll();
+			}
+		}
+
+		/**
+		 * 非阻塞写入返回0时调用, 等待连接可写, 不占用CPU
+		 *
+		 * @param timeoutMillis
+		 * @return true if writable, false if timeout or cancelled
+		 * @throws InterruptedException
+		 */
+		public boolean awaitWritable(long timeoutMillis) throws InterruptedException {
+			synchronized (writeMonitor) {
+				writable = false;
+				engine.requestWritable(this);
+				long deadline = System.currentTimeMillis() + timeoutMillis;
+				while (!writable && !cancelled) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						return false;
+					writeMonitor.wait(remaining);
+				}
+				return writable && !cancelled;
+			}
+		}
+
+		// 在select线程中调用
+		private void writable() {
+			synchronized (writeMonitor) {
+				writable = true;
+				writeMonitor.notifyAll();
+			}
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		// 在select线程中调用
+		private void read() {
+			buffer.clear();
+			int read;
+			try {
+				read = channel.read(buffer);
+			} catch (IOException e) {
+				log.error("read error -> {}", e.getMessage(), e);
+				closed();
+				return;
+			}
+			if (read < 0) {
+				closed();
+				return;
+			}
+			if (read > 0) {
+				buffer.flip();
+				try {
+					handler.handle(buffer);
+				} catch (CorruptedFrameException e) {
+					// 后续数据无法再对齐到消息边界, 关闭连接
+					log.error("corrupted frame, close connection -> {}", e.getMessage());
+					closed();
+				} catch (Exception e) {
+					log.error("handler throw exception -> {}", e.getMessage(), e);
+				}
+			}
+		}
+
+		private void closed() {
+			cancel();
+			if (onClose != null)
+				onClose.run();
+		}
+
+	}
+
+}
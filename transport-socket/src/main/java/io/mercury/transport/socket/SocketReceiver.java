@@ -1,27 +1,30 @@
 package io.mercury.transport.socket;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 
 import io.mercury.common.log.CommonLoggerFactory;
-import io.mercury.common.thread.ThreadTool;
 import io.mercury.transport.core.api.Receiver;
+import io.mercury.transport.socket.NioReceiveEngine.Registration;
 import io.mercury.transport.socket.configurator.SocketConfigurator;
+import io.mercury.transport.socket.frame.FrameDecoder;
 
 public class SocketReceiver implements Receiver {
 
 	private SocketConfigurator configurator;
-	private Consumer<byte[]> callback;
+	private ByteBufferHandler handler;
 
-	private Socket socket;
+	private NioReceiveEngine engine;
+
+	private SocketChannel socketChannel;
+
+	private volatile Registration registration;
 
-	private AtomicBoolean isReceiving = new AtomicBoolean(false);
 	private AtomicBoolean isRun = new AtomicBoolean(false);
 
 	protected Logger log = CommonLoggerFactory.getLogger(getClass());
@@ -29,20 +32,56 @@ public class SocketReceiver implements Receiver {
 	/**
 	 * @param configurator
 	 * @param callback
-	 * @param serverSocket
 	 */
 	public SocketReceiver(SocketConfigurator configurator, Consumer<byte[]> callback) {
+		this(configurator, callback, NioReceiveEngine.shared());
+	}
+
+	/**
+	 * @param configurator
+	 * @param callback
+	 * @param engine
+	 */
+	public SocketReceiver(SocketConfigurator configurator, Consumer<byte[]> callback, NioReceiveEngine engine) {
+		this(configurator, callback == null ? null : ByteBufferHandler.copyOf(callback), engine);
+	}
+
+	private SocketReceiver(SocketConfigurator configurator, ByteBufferHandler handler, NioReceiveEngine engine) {
 		super();
-		if (configurator == null || callback == null)
+		if (configurator == null || handler == null || engine == null)
 			throw new IllegalArgumentException("configurator or callback is null for init ");
 		this.configurator = configurator;
-		this.callback = callback;
+		// 按配置分帧, 每条完整的消息回调一次
+		this.handler = FrameDecoder.newDecoder(configurator, handler);
+		this.engine = engine;
 		init();
 	}
 
+	/**
+	 * 不复制数据的接收者, handler收到的buffer仅在回调期间有效
+	 *
+	 * @param configurator
+	 * @param handler
+	 * @return
+	 */
+	public static SocketReceiver withByteBufferHandler(SocketConfigurator configurator, ByteBufferHandler handler) {
+		return new SocketReceiver(configurator, handler, NioReceiveEngine.shared());
+	}
+
+	/**
+	 * @param configurator
+	 * @param handler
+	 * @param engine
+	 * @return
+	 */
+	public static SocketReceiver withByteBufferHandler(SocketConfigurator configurator, ByteBufferHandler handler,
+			NioReceiveEngine engine) {
+		return new SocketReceiver(configurator, handler, engine);
+	}
+
 	private void init() {
 		try {
-			this.socket = new Socket(configurator.host(), configurator.port());
+			this.socketChannel = SocketChannel.open(new InetSocketAddress(configurator.host(), configurator.port()));
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new RuntimeException(e.getMessage());
@@ -51,15 +90,18 @@ public class SocketReceiver implements Receiver {
 
 	@Override
 	public boolean isConnected() {
-		return socket == null ? false : socket.isConnected();
+		return socketChannel == null ? false : socketChannel.isConnected();
 	}
 
 	@Override
 	public boolean destroy() {
 		this.isRun.set(false);
+		Registration registration = this.registration;
+		if (registration != null)
+			registration.cancel();
 		try {
-			if (socket != null)
-				socket.close();
+			if (socketChannel != null)
+				socketChannel.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -68,57 +110,16 @@ public class SocketReceiver implements Receiver {
 
 	@Override
 	public String name() {
-		return "SocketReceiver -> " + socket.hashCode();
+		return "SocketReceiver -> " + socketChannel.hashCode();
 	}
 
 	@Override
 	public void receive() {
-		if (!isRun.get())
-			isRun.set(true);
-		if (!isReceiving.get())
-			startReceiveThread();
-	}
-
-	private synchronized void startReceiveThread() {
-		if (isReceiving.get())
-			return;
-		isReceiving.set(true);
-		ThreadTool.startNewThread(() -> {
-			InputStream inputStream = null;
-			try {
-				inputStream = socket.getInputStream();
-			} catch (IOException e) {
-				throw new RuntimeException(e.getMessage());
-			}
-			while (isRun.get()) {
-				try {
-					int available = inputStream.available();
-					if (available == 0) {
-						ThreadTool.sleep(configurator.receiveInterval());
-						continue;
-					}
-					byte[] bytes = new byte[available];
-					IOUtils.read(inputStream, bytes);
-					callback.accept(bytes);
-				} catch (IOException e) {
-					log.error(e.getMessage(), e);
-					try {
-						inputStream.close();
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					}
-
-					destroy();
-				}
-			}
-			if (inputStream != null) {
-				try {
-					inputStream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		});
+		if (isRun.compareAndSet(false, true))
+			this.registration = engine.register(socketChannel, configurator.receiveBufferSize(), handler, () -> {
+				log.warn("{} connection closed", name());
+				destroy();
+			});
 	}
 
 	public static void main(String[] args) {
@@ -1,8 +1,10 @@
 package io.mercury.transport.socket;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -11,12 +13,15 @@ import io.mercury.common.concurrent.queue.MpscArrayBlockingQueue;
 import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.transport.core.api.Sender;
 import io.mercury.transport.socket.configurator.SocketConfigurator;
+import io.mercury.transport.socket.frame.FrameEncoder;
 
 public class SocketSender implements Sender<byte[]> {
 
 	private SocketConfigurator configurator;
 
-	private Socket socket;
+	private FrameEncoder encoder;
+
+	private SocketChannel socketChannel;
 
 	private AtomicBoolean isRun = new AtomicBoolean(true);
 
@@ -27,12 +32,13 @@ public class SocketSender implements Sender<byte[]> {
 		if (configurator == null)
 			throw new IllegalArgumentException("configurator or callback is null for init ");
 		this.configurator = configurator;
+		this.encoder = FrameEncoder.newEncoder(configurator);
 		init();
 	}
 
 	private void init() {
 		try {
-			this.socket = new Socket(configurator.host(), configurator.port());
+			this.socketChannel = SocketChannel.open(new InetSocketAddress(configurator.host(), configurator.port()));
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new RuntimeException(e.getMessage());
@@ -41,16 +47,15 @@ public class SocketSender implements Sender<byte[]> {
 
 	@Override
 	public boolean isConnected() {
-		return socket == null ? false : socket.isConnected();
+		return socketChannel == null ? false : socketChannel.isConnected();
 	}
 
 	@Override
 	public boolean destroy() {
 		this.isRun.set(false);
 		try {
-			outputStream.close();
-			if (socket != null)
-				socket.close();
+			if (socketChannel != null)
+				socketChannel.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -59,22 +64,51 @@ public class SocketSender implements Sender<byte[]> {
 
 	@Override
 	public String name() {
-		return "SocketSender -> " + socket.hashCode();
+		return "SocketSender -> " + socketChannel.hashCode();
 	}
 
 	@Override
 	public void send(byte[] msg) {
-		innerQueue.enqueue(msg);
+		ByteBuffer[] buffers = new ByteBuffer[encoder.buffersPerMessage()];
+		encoder.encode(msg, buffers, 0);
+		innerQueue.enqueue(buffers);
+	}
+
+	/**
+	 * The whole batch, including frame headers, is written with one gathering
+	 * write
+	 */
+	@Override
+	public void sendBatch(List<byte[]> msgs) {
+		int n = encoder.buffersPerMessage();
+		ByteBuffer[] buffers = new ByteBuffer[msgs.size() * n];
+		for (int i = 0; i < msgs.size(); i++)
+			encoder.encode(msgs.get(i), buffers, i * n);
+		innerQueue.enqueue(buffers);
 	}
 
-	private DataOutputStream outputStream;
+	/**
+	 * The whole batch, including frame headers, is written with one gathering
+	 * write
+	 */
+	@Override
+	public void sendBatch(byte[][] msgs, int offset, int length) {
+		int n = encoder.buffersPerMessage();
+		ByteBuffer[] buffers = new ByteBuffer[length * n];
+		for (int i = 0; i < length; i++)
+			encoder.encode(msgs[offset + i], buffers, i * n);
+		innerQueue.enqueue(buffers);
+	}
 
-	private void processSendQueue(byte[] msg) {
+	private void processSendQueue(ByteBuffer[] buffers) {
 		try {
 			if (isRun.get()) {
-				if (outputStream == null)
-					outputStream = new DataOutputStream(socket.getOutputStream());
-				outputStream.write(msg);
+				long remaining = 0L;
+				for (ByteBuffer buffer : buffers)
+					remaining += buffer.remaining();
+				// blocking channel may write partially
+				while (remaining > 0)
+					remaining -= socketChannel.write(buffers);
 			}
 		} catch (IOException e) {
 			log.error(e.getMessage(), e);
@@ -82,8 +116,8 @@ public class SocketSender implements Sender<byte[]> {
 		}
 	}
 
-	private MpscArrayBlockingQueue<byte[]> innerQueue = MpscArrayBlockingQueue.autoStartQueue(1024,
-			bytes -> processSendQueue(bytes));
+	private MpscArrayBlockingQueue<ByteBuffer[]> innerQueue = MpscArrayBlockingQueue.autoStartQueue(1024,
+			buffers -> processSendQueue(buffers));
 
 	public static void main(String[] args) {
 		SocketConfigurator configurator = SocketConfigurator.builder().host("192.168.1.138").port(7901).build();
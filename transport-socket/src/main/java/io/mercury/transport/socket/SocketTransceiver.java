@@ -1,29 +1,34 @@
 package io.mercury.transport.socket;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
-import org.apache.commons.io.IOUtils;
-
+import io.mercury.common.character.Charsets;
 import io.mercury.common.collections.queue.api.SCQueue;
 import io.mercury.common.concurrent.disruptor.BufferSize;
 import io.mercury.common.concurrent.disruptor.SpscQueue;
-import io.mercury.common.thread.ThreadTool;
+import io.mercury.transport.socket.NioReceiveEngine.Registration;
 import io.mercury.transport.socket.configurator.SocketConfigurator;
+import io.mercury.transport.socket.frame.FrameDecoder;
+import io.mercury.transport.socket.frame.FrameEncoder;
 
 public class SocketTransceiver extends BaseTransceiver<String> {
 
 	private SocketConfigurator configurator;
 	private Consumer<byte[]> callback;
 
-	private Socket socket;
+	private FrameEncoder encoder;
+
+	private SocketChannel socketChannel;
+
+	private volatile Registration registration;
 
-	private Writer writer;
+	// 每次等待可写的最长时间, 超时后重新检查运行状态
+	private static final long WRITE_WAIT_MILLIS = 100;
 
 	private AtomicBoolean isReceiving = new AtomicBoolean(false);
 	private AtomicBoolean isRun = new AtomicBoolean(false);
@@ -40,12 +45,13 @@ public class SocketTransceiver extends BaseTransceiver<String> {
 		}
 		this.configurator = configurator;
 		this.callback = callback;
+		this.encoder = FrameEncoder.newEncoder(configurator);
 		init();
 	}
 
 	private void init() {
 		try {
-			this.socket = new Socket(configurator.host(), configurator.port());
+			this.socketChannel = SocketChannel.open(new InetSocketAddress(configurator.host(), configurator.port()));
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new RuntimeException(e.getMessage());
@@ -53,17 +59,18 @@ public class SocketTransceiver extends BaseTransceiver<String> {
 	}
 
 	public boolean isConnected() {
-		return false;
+		return socketChannel == null ? false : socketChannel.isConnected();
 	}
 
 	public boolean destroy() {
+		this.isRun.set(false);
 		this.isReceiving.set(false);
+		Registration registration = this.registration;
+		if (registration != null)
+			registration.cancel();
 		try {
-			if (writer != null) {
-				writer.close();
-			}
-			if (socket != null) {
-				socket.close();
+			if (socketChannel != null) {
+				socketChannel.close();
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -89,42 +96,21 @@ public class SocketTransceiver extends BaseTransceiver<String> {
 	private synchronized void startReceiveThread() {
 		if (isReceiving.get())
 			return;
-		ThreadTool.startNewThread(() -> {
-			InputStream inputStream = null;
-			while (isRun.get()) {
-				try {
-					inputStream = socket.getInputStream();
-					int available = inputStream.available();
-					if (available == 0) {
-						ThreadTool.sleep(configurator.receiveInterval());
-						continue;
-					}
-					byte[] bytes = new byte[available];
-					IOUtils.read(inputStream, bytes);
-					callback.accept(bytes);
-				} catch (IOException e) {
-					e.printStackTrace();
-					destroy();
-				}
-			}
-			if (inputStream != null) {
-				try {
-					inputStream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		});
+		this.registration = NioReceiveEngine.shared().register(socketChannel, configurator.receiveBufferSize(),
+				FrameDecoder.newDecoder(configurator, ByteBufferHandler.copyOf(callback)), this::destroy);
 		isReceiving.set(true);
 	}
 
 	private void processSendQueue(String msg) {
 		try {
 			if (isRun.get()) {
-				if (writer == null)
-					this.writer = new OutputStreamWriter(socket.getOutputStream());
-				writer.write(msg);
-				writer.flush();
+				ByteBuffer[] buffers = new ByteBuffer[encoder.buffersPerMessage()];
+				encoder.encode(msg.getBytes(Charsets.UTF8), buffers, 0);
+				ByteBuffer last = buffers[buffers.length - 1];
+				// channel在注册接收后为非阻塞模式, 发送缓冲区已满时等待select线程通知可写
+				while (last.hasRemaining() && isRun.get())
+					if (socketChannel.write(buffers) == 0)
+						awaitWritable();
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -132,6 +118,20 @@ public class SocketTransceiver extends BaseTransceiver<String> {
 		}
 	}
 
+	private void awaitWritable() throws IOException {
+		Registration registration = this.registration;
+		// 未注册接收时channel为阻塞模式, 不会写入0字节
+		if (registration == null)
+			return;
+		try {
+			if (!registration.awaitWritable(WRITE_WAIT_MILLIS) && registration.isCancelled())
+				throw new IOException("connection closed while waiting for writable");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for writable", e);
+		}
+	}
+
 	@Override
 	protected SCQueue<String> initSendQueue() {
 		return new SpscQueue<>("", BufferSize.POW2_10, true, (msg) -> {
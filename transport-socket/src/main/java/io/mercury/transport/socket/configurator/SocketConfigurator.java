@@ -1,6 +1,7 @@
 package io.mercury.transport.socket.configurator;
 
 import io.mercury.transport.core.configurator.TransportConfigurator;
+import io.mercury.transport.socket.frame.FramingMode;
 
 public class SocketConfigurator implements TransportConfigurator {
 
@@ -8,6 +9,11 @@ public class SocketConfigurator implements TransportConfigurator {
 	private int port;
 	private long receiveInterval;
 	private int sendQueueSize;
+	private int receiveBufferSize;
+	private FramingMode framingMode;
+	private int lengthFieldLength;
+	private byte[] delimiter;
+	private int maxFrameLength;
 
 	private final String fullInfo = "SocketConfigurator";
 	private final String connectionInfo = "";
@@ -17,6 +23,11 @@ public class SocketConfigurator implements TransportConfigurator {
 		this.port = builder.port;
 		this.receiveInterval = builder.receiveInterval;
 		this.sendQueueSize = builder.sendQueueSize;
+		this.receiveBufferSize = builder.receiveBufferSize;
+		this.framingMode = builder.framingMode;
+		this.lengthFieldLength = builder.lengthFieldLength;
+		this.delimiter = builder.delimiter;
+		this.maxFrameLength = builder.maxFrameLength;
 	}
 
 	public static Builder builder() {
@@ -41,6 +52,46 @@ public class SocketConfigurator implements TransportConfigurator {
 		return sendQueueSize;
 	}
 
+	/**
+	 * 
+	 * @return the receiveBufferSize
+	 */
+	public int receiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	/**
+	 * 
+	 * @return the framingMode
+	 */
+	public FramingMode framingMode() {
+		return framingMode;
+	}
+
+	/**
+	 * 
+	 * @return the lengthFieldLength
+	 */
+	public int lengthFieldLength() {
+		return lengthFieldLength;
+	}
+
+	/**
+	 * 
+	 * @return the delimiter
+	 */
+	public byte[] delimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * 
+	 * @return the maxFrameLength
+	 */
+	public int maxFrameLength() {
+		return maxFrameLength;
+	}
+
 	@Override
 	public String fullInfo() {
 		return fullInfo;
@@ -57,6 +108,14 @@ public class SocketConfigurator implements TransportConfigurator {
 		private int port;
 		private long receiveInterval = 100;
 		private int sendQueueSize = 256;
+		// 每个连接复用的接收缓冲区大小
+		private int receiveBufferSize = 64 * 1024;
+		// 分帧方式, 默认不分帧
+		private FramingMode framingMode = FramingMode.NONE;
+		// 长度字段字节数, 1/2/4/8
+		private int lengthFieldLength = 4;
+		private byte[] delimiter = new byte[] { '\n' };
+		private int maxFrameLength = 16 * 1024 * 1024;
 
 		private Builder() {
 		}
@@ -81,6 +140,31 @@ public class SocketConfigurator implements TransportConfigurator {
 			return this;
 		}
 
+		public Builder receiveBufferSize(int receiveBufferSize) {
+			this.receiveBufferSize = receiveBufferSize;
+			return this;
+		}
+
+		public Builder framingMode(FramingMode framingMode) {
+			this.framingMode = framingMode;
+			return this;
+		}
+
+		public Builder lengthFieldLength(int lengthFieldLength) {
+			this.lengthFieldLength = lengthFieldLength;
+			return this;
+		}
+
+		public Builder delimiter(byte[] delimiter) {
+			this.delimiter = delimiter;
+			return this;
+		}
+
+		public Builder maxFrameLength(int maxFrameLength) {
+			this.maxFrameLength = maxFrameLength;
+			return this;
+		}
+
 		public SocketConfigurator build() {
 			return new SocketConfigurator(this);
 		}
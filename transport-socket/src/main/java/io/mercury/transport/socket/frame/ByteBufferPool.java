@@ -0,0 +1,85 @@
+package io.mercury.transport.socket.frame;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 按2的幂次分级缓存的direct buffer池, 用于拼接跨多次读取的帧
+ */
+public final class ByteBufferPool {
+
+	private static final ByteBufferPool shared = new ByteBufferPool(4096, 32 * 1024 * 1024, 16);
+
+	private final int minCapacity;
+	private final int maxCapacity;
+	private final int maxPooledPerClass;
+
+	// 下标为capacity相对minCapacity左移的位数
+	private final Queue<ByteBuffer>[] classes;
+
+	/**
+	 * 
+	 * @param minCapacity       最小分级, 必须是2的幂
+	 * @param maxCapacity       超过此大小的buffer不缓存
+	 * @param maxPooledPerClass 每一级最多缓存的buffer数量
+	 */
+	@SuppressWarnings("unchecked")
+	public ByteBufferPool(int minCapacity, int maxCapacity, int maxPooledPerClass) {
+		if (Integer.bitCount(minCapacity) != 1)
+			throw new IllegalArgumentException("minCapacity must be a power of 2");
+		this.minCapacity = minCapacity;
+		this.maxCapacity = maxCapacity;
+		this.maxPooledPerClass = maxPooledPerClass;
+		this.classes = new Queue[indexOf(maxCapacity) + 1];
+		for (int i = 0; i < classes.length; i++)
+			classes[i] = new ConcurrentLinkedQueue<>();
+	}
+
+	public static ByteBufferPool shared() {
+		return shared;
+	}
+
+	/**
+	 * 
+	 * @param capacity
+	 * @return cleared buffer, capacity not less than required
+	 */
+	public ByteBuffer acquire(int capacity) {
+		int index = indexOf(capacity);
+		if (index < classes.length) {
+			ByteBuffer buffer = classes[index].poll();
+			if (buffer != null) {
+				buffer.clear();
+				return buffer;
+			}
+		}
+		return ByteBuffer.allocateDirect(Math.max(minCapacity, roundUp(capacity)));
+	}
+
+	/**
+	 * 
+	 * @param buffer
+	 */
+	public void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		if (capacity > maxCapacity || Integer.bitCount(capacity) != 1)
+			return;
+		Queue<ByteBuffer> queue = classes[indexOf(capacity)];
+		// 近似限制, 并发时可能略微超出
+		if (queue.size() < maxPooledPerClass)
+			queue.offer(buffer);
+	}
+
+	private int indexOf(int capacity) {
+		if (capacity <= minCapacity)
+			return 0;
+		return Integer.numberOfTrailingZeros(roundUp(capacity)) - Integer.numberOfTrailingZeros(minCapacity);
+	}
+
+	private static int roundUp(int capacity) {
+		int highest = Integer.highestOneBit(capacity);
+		return highest == capacity ? capacity : highest << 1;
+	}
+
+}
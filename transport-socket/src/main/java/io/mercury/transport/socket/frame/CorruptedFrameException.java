@@ -0,0 +1,14 @@
+package io.mercury.transport.socket.frame;
+
+public class CorruptedFrameException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 2650874431386264519L;
+
+	public CorruptedFrameException(String message) {
+		super(message);
+	}
+
+}
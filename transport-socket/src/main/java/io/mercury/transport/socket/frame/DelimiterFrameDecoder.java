@@ -0,0 +1,64 @@
+package io.mercury.transport.socket.frame;
+
+import java.nio.ByteBuffer;
+
+import io.mercury.transport.socket.ByteBufferHandler;
+
+/**
+ * 分隔符分帧, 交给frameHandler的消息不包含分隔符
+ */
+public final class DelimiterFrameDecoder extends FrameDecoder {
+
+	private final byte[] delimiter;
+
+	/**
+	 * 
+	 * @param frameHandler
+	 * @param delimiter
+	 * @param maxFrameLength
+	 * @param pool
+	 */
+	public DelimiterFrameDecoder(ByteBufferHandler frameHandler, byte[] delimiter, int maxFrameLength,
+			ByteBufferPool pool) {
+		super(frameHandler, maxFrameLength, pool);
+		if (delimiter == null || delimiter.length == 0)
+			throw new IllegalArgumentException("delimiter is empty");
+		this.delimiter = delimiter.clone();
+	}
+
+	@Override
+	protected void decodeFrames(ByteBuffer buffer, int scannedTo) {
+		// 分隔符可能跨越已检查和新到达的数据
+		int from = Math.max(buffer.position(), scannedTo - delimiter.length + 1);
+		int index;
+		while ((index = indexOf(buffer, from)) >= 0) {
+			checkFrameLength(index - buffer.position());
+			emit(buffer, buffer.position(), index);
+			buffer.position(index + delimiter.length);
+			from = buffer.position();
+		}
+		checkFrameLength(buffer.remaining());
+	}
+
+	private void checkFrameLength(int frameLength) {
+		if (frameLength > maxFrameLength)
+			throw new CorruptedFrameException(
+					"frame length [" + frameLength + "] exceeds maxFrameLength==[" + maxFrameLength + "]");
+	}
+
+	private int indexOf(ByteBuffer buffer, int from) {
+		int last = buffer.limit() - delimiter.length;
+		byte first = delimiter[0];
+		for (int i = from; i <= last; i++) {
+			if (buffer.get(i) != first)
+				continue;
+			int j = 1;
+			while (j < delimiter.length && buffer.get(i + j) == delimiter[j])
+				j++;
+			if (j == delimiter.length)
+				return i;
+		}
+		return -1;
+	}
+
+}
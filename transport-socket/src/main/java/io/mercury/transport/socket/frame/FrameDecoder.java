@@ -0,0 +1,140 @@
+package io.mercury.transport.socket.frame;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+import io.mercury.transport.socket.ByteBufferHandler;
+import io.mercury.transport.socket.configurator.SocketConfigurator;
+
+/**
+ * 将连续的字节流拆分为消息, 每条完整的消息调用一次frameHandler<br>
+ *
+ * 完整包含在本次读取中的消息直接以原buffer的视图交给frameHandler, 只有跨越多次读取的部分被复制到从
+ * {@link ByteBufferPool} 中取得的拼接buffer中.<br>
+ * 非线程安全, 每个连接使用一个实例.<br>
+ * frameHandler抛出的异常只记录日志, 不影响后续消息的解码. 数据格式错误时抛出{@link CorruptedFrameException},
+ * 此时连接的数据已经无法对齐, 调用方应关闭连接.
+ */
+public abstract class FrameDecoder implements ByteBufferHandler {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(FrameDecoder.class);
+
+	protected final ByteBufferHandler frameHandler;
+
+	protected final int maxFrameLength;
+
+	private final ByteBufferPool pool;
+
+	// 跨读取的未完成数据, 处于写模式, 没有未完成数据时为null
+	private ByteBuffer cumulation;
+
+	protected FrameDecoder(ByteBufferHandler frameHandler, int maxFrameLength, ByteBufferPool pool) {
+		if (frameHandler == null)
+			throw new IllegalArgumentException("frameHandler is null");
+		this.frameHandler = frameHandler;
+		this.maxFrameLength = maxFrameLength;
+		this.pool = pool;
+	}
+
+	/**
+	 * 根据配置创建解码器, FramingMode.NONE时直接返回frameHandler
+	 *
+	 * @param configurator
+	 * @param frameHandler
+	 * @return
+	 */
+	public static ByteBufferHandler newDecoder(SocketConfigurator configurator, ByteBufferHandler frameHandler) {
+		switch (configurator.framingMode()) {
+		case LENGTH_FIELD:
+			return new LengthFieldFrameDecoder(frameHandler, configurator.lengthFieldLength(),
+					configurator.maxFrameLength(), ByteBufferPool.shared());
+		case DELIMITER:
+			return new DelimiterFrameDecoder(frameHandler, configurator.delimiter(), configurator.maxFrameLength(),
+					ByteBufferPool.shared());
+		default:
+			return frameHandler;
+		}
+	}
+
+	@Override
+	public void handle(ByteBuffer in) {
+		try {
+			if (cumulation == null) {
+				decodeFrames(in, in.position());
+				if (in.hasRemaining()) {
+					cumulation = pool.acquire(in.remaining());
+					cumulation.put(in);
+				}
+			} else {
+				// 已拼接的数据都检查过, 没有完整的消息
+				int scanned = cumulation.position();
+				ensureWritable(in.remaining());
+				cumulation.put(in);
+				cumulation.flip();
+				decodeFrames(cumulation, scanned);
+				if (cumulation.hasRemaining()) {
+					cumulation.compact();
+				} else {
+					pool.release(cumulation);
+					cumulation = null;
+				}
+			}
+		} catch (CorruptedFrameException e) {
+			reset();
+			throw e;
+		}
+	}
+
+	/**
+	 * 从buffer.position()开始解码所有完整的消息, 返回时position指向第一条未完成消息的起始位置
+	 *
+	 * @param buffer
+	 * @param scannedTo 此位置之前的数据已经检查过, 不包含完整的消息
+	 */
+	protected abstract void decodeFrames(ByteBuffer buffer, int scannedTo);
+
+	/**
+	 * 将[start, end)作为一条消息交给frameHandler, 之后buffer的position为end<br>
+	 * frameHandler抛出异常时记录日志后继续, 保证未读取的数据和拼接buffer的状态不被破坏
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 */
+	protected final void emit(ByteBuffer buffer, int start, int end) {
+		int limit = buffer.limit();
+		buffer.limit(end);
+		buffer.position(start);
+		try {
+			frameHandler.handle(buffer);
+		} catch (Exception e) {
+			log.error("frameHandler throw exception -> {}", e.getMessage(), e);
+		} finally {
+			buffer.limit(limit);
+			buffer.position(end);
+		}
+	}
+
+	/**
+	 * 丢弃未完成的数据
+	 */
+	public void reset() {
+		if (cumulation != null) {
+			pool.release(cumulation);
+			cumulation = null;
+		}
+	}
+
+	private void ensureWritable(int length) {
+		if (cumulation.remaining() >= length)
+			return;
+		ByteBuffer expanded = pool.acquire(cumulation.position() + length);
+		cumulation.flip();
+		expanded.put(cumulation);
+		pool.release(cumulation);
+		cumulation = expanded;
+	}
+
+}
@@ -0,0 +1,115 @@
+package io.mercury.transport.socket.frame;
+
+import java.nio.ByteBuffer;
+
+import io.mercury.transport.socket.configurator.SocketConfigurator;
+
+/**
+ * 为发送的消息生成与 {@link FrameDecoder} 对应的帧, 消息与帧头/分隔符以多个ByteBuffer表示, 由调用者一次gathering
+ * write写出
+ */
+public abstract class FrameEncoder {
+
+	/**
+	 * 
+	 * @return number of buffers for one message
+	 */
+	public abstract int buffersPerMessage();
+
+	/**
+	 * 将msg的帧写入out[offset, offset + buffersPerMessage())
+	 * 
+	 * @param msg
+	 * @param out
+	 * @param offset
+	 */
+	public abstract void encode(byte[] msg, ByteBuffer[] out, int offset);
+
+	/**
+	 * 
+	 * @param configurator
+	 * @return
+	 */
+	public static FrameEncoder newEncoder(SocketConfigurator configurator) {
+		switch (configurator.framingMode()) {
+		case LENGTH_FIELD:
+			return new LengthFieldEncoder(configurator.lengthFieldLength(), configurator.maxFrameLength());
+		case DELIMITER:
+			return new DelimiterEncoder(configurator.delimiter());
+		default:
+			return RawEncoder.INSTANCE;
+		}
+	}
+
+	private static final class RawEncoder extends FrameEncoder {
+
+		private static final RawEncoder INSTANCE = new RawEncoder();
+
+		@Override
+		public int buffersPerMessage() {
+			return 1;
+		}
+
+		@Override
+		public void encode(byte[] msg, ByteBuffer[] out, int offset) {
+			out[offset] = ByteBuffer.wrap(msg);
+		}
+
+	}
+
+	private static final class LengthFieldEncoder extends FrameEncoder {
+
+		private final int lengthFieldLength;
+		private final long maxLength;
+
+		private LengthFieldEncoder(int lengthFieldLength, int maxFrameLength) {
+			LengthFieldFrameDecoder.checkLengthFieldLength(lengthFieldLength);
+			this.lengthFieldLength = lengthFieldLength;
+			// 长度字段能表示的最大值
+			long fieldMax = lengthFieldLength == 8 ? Long.MAX_VALUE : (1L << (lengthFieldLength * 8)) - 1;
+			this.maxLength = Math.min(fieldMax, maxFrameLength);
+		}
+
+		@Override
+		public int buffersPerMessage() {
+			return 2;
+		}
+
+		@Override
+		public void encode(byte[] msg, ByteBuffer[] out, int offset) {
+			if (msg.length > maxLength)
+				throw new IllegalArgumentException(
+						"message length [" + msg.length + "] exceeds max frame length [" + maxLength + "]");
+			ByteBuffer header = ByteBuffer.allocate(lengthFieldLength);
+			LengthFieldFrameDecoder.putLength(header, msg.length, lengthFieldLength);
+			header.flip();
+			out[offset] = header;
+			out[offset + 1] = ByteBuffer.wrap(msg);
+		}
+
+	}
+
+	private static final class DelimiterEncoder extends FrameEncoder {
+
+		private final byte[] delimiter;
+
+		private DelimiterEncoder(byte[] delimiter) {
+			if (delimiter == null || delimiter.length == 0)
+				throw new IllegalArgumentException("delimiter is empty");
+			this.delimiter = delimiter.clone();
+		}
+
+		@Override
+		public int buffersPerMessage() {
+			return 2;
+		}
+
+		@Override
+		public void encode(byte[] msg, ByteBuffer[] out, int offset) {
+			out[offset] = ByteBuffer.wrap(msg);
+			out[offset + 1] = ByteBuffer.wrap(delimiter);
+		}
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package io.mercury.transport.socket.frame;
+
+/**
+ * 消息分帧方式
+ */
+public enum FramingMode {
+
+	/**
+	 * 不分帧, 每次读取的数据直接交给回调
+	 */
+	NONE,
+
+	/**
+	 * 消息前加长度字段, 长度不包含长度字段本身, big-endian
+	 */
+	LENGTH_FIELD,
+
+	/**
+	 * 消息后加分隔符
+	 */
+	DELIMITER,
+
+}
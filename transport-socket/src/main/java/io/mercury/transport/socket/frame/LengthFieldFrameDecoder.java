@@ -0,0 +1,86 @@
+package io.mercury.transport.socket.frame;
+
+import java.nio.ByteBuffer;
+
+import io.mercury.transport.socket.ByteBufferHandler;
+
+/**
+ * 长度字段分帧, 长度字段为big-endian, 不包含长度字段本身
+ */
+public final class LengthFieldFrameDecoder extends FrameDecoder {
+
+	private final int lengthFieldLength;
+
+	/**
+	 * 
+	 * @param frameHandler
+	 * @param lengthFieldLength 1, 2, 4 or 8
+	 * @param maxFrameLength
+	 * @param pool
+	 */
+	public LengthFieldFrameDecoder(ByteBufferHandler frameHandler, int lengthFieldLength, int maxFrameLength,
+			ByteBufferPool pool) {
+		super(frameHandler, maxFrameLength, pool);
+		checkLengthFieldLength(lengthFieldLength);
+		this.lengthFieldLength = lengthFieldLength;
+	}
+
+	@Override
+	protected void decodeFrames(ByteBuffer buffer, int scannedTo) {
+		while (buffer.remaining() >= lengthFieldLength) {
+			int start = buffer.position();
+			long frameLength = getLength(buffer, start, lengthFieldLength);
+			if (frameLength < 0 || frameLength > maxFrameLength)
+				throw new CorruptedFrameException(
+						"frame length [" + frameLength + "] out of range, maxFrameLength==[" + maxFrameLength + "]");
+			if (buffer.remaining() - lengthFieldLength < frameLength)
+				return;
+			int frameStart = start + lengthFieldLength;
+			emit(buffer, frameStart, frameStart + (int) frameLength);
+		}
+	}
+
+	static void checkLengthFieldLength(int lengthFieldLength) {
+		switch (lengthFieldLength) {
+		case 1:
+		case 2:
+		case 4:
+		case 8:
+			return;
+		default:
+			throw new IllegalArgumentException(
+					"lengthFieldLength must be either 1, 2, 4, or 8: " + lengthFieldLength);
+		}
+	}
+
+	static long getLength(ByteBuffer buffer, int index, int lengthFieldLength) {
+		switch (lengthFieldLength) {
+		case 1:
+			return buffer.get(index) & 0xFF;
+		case 2:
+			return buffer.getShort(index) & 0xFFFF;
+		case 4:
+			return buffer.getInt(index) & 0xFFFFFFFFL;
+		default:
+			return buffer.getLong(index);
+		}
+	}
+
+	static void putLength(ByteBuffer buffer, long length, int lengthFieldLength) {
+		switch (lengthFieldLength) {
+		case 1:
+			buffer.put((byte) length);
+			break;
+		case 2:
+			buffer.putShort((short) length);
+			break;
+		case 4:
+			buffer.putInt((int) length);
+			break;
+		default:
+			buffer.putLong(length);
+			break;
+		}
+	}
+
+}
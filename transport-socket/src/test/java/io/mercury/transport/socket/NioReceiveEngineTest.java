@@ -0,0 +1,180 @@
+package io.mercury.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.mercury.transport.socket.NioReceiveEngine.Registration;
+import io.mercury.transport.socket.frame.ByteBufferPool;
+import io.mercury.transport.socket.frame.LengthFieldFrameDecoder;
+
+public class NioReceiveEngineTest {
+
+	private NioReceiveEngine engine;
+
+	private ServerSocketChannel server;
+
+	private SocketChannel client;
+
+	private SocketChannel accepted;
+
+	@Before
+	public void setUp() throws IOException {
+		engine = new NioReceiveEngine("NioReceiveEngineTest");
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress("127.0.0.1", 0));
+		client = SocketChannel.open(server.getLocalAddress());
+		accepted = server.accept();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		engine.close();
+		client.close();
+		accepted.close();
+		server.close();
+	}
+
+	/**
+	 * 对端不读取, 写满发送缓冲区, channel在注册后为非阻塞模式
+	 */
+	private long fillSendBuffer() throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+		long written = 0;
+		int n;
+		while ((n = accepted.write(out)) > 0) {
+			written += n;
+			out.clear();
+		}
+		return written;
+	}
+
+	@Test
+	public void testCorruptedLengthClosesConnection() throws Exception {
+		List<String> frames = new CopyOnWriteArrayList<>();
+		CountDownLatch closed = new CountDownLatch(1);
+		Registration registration = engine.register(accepted, 64,
+				new LengthFieldFrameDecoder(ByteBufferHandler.copyOf(bytes -> frames.add(new String(bytes))), 4, 8,
+						new ByteBufferPool(16, 64, 2)),
+				closed::countDown);
+		ByteBuffer out = ByteBuffer.allocate(64);
+		out.putInt(2).put("ok".getBytes());
+		// 长度超过maxFrameLength, 之后的数据不再交给handler
+		out.putInt(9).put("garbage..".getBytes());
+		out.putInt(2).put("no".getBytes());
+		out.flip();
+		while (out.hasRemaining())
+			client.write(out);
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertTrue(registration.isCancelled());
+		assertEquals(1, frames.size());
+		assertEquals("ok", frames.get(0));
+	}
+
+	@Test
+	public void testAwaitWritable() throws Exception {
+		Registration registration = engine.register(accepted, 64, buffer -> buffer.position(buffer.limit()), null);
+		long written = fillSendBuffer();
+		assertFalse(registration.awaitWritable(100));
+
+		CountDownLatch writable = new CountDownLatch(1);
+		Thread writer = new Thread(() -> {
+			try {
+				if (registration.awaitWritable(5000))
+					writable.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		writer.start();
+		// 对端读取全部数据后发送缓冲区可写
+		ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+		long read = 0;
+		while (read < written) {
+			in.clear();
+			read += client.read(in);
+		}
+		assertTrue(writable.await(5, TimeUnit.SECONDS));
+		writer.join(1000);
+	}
+
+	@Test
+	public void testCancelReleasesWriter() throws Exception {
+		Registration registration = engine.register(accepted, 64, buffer -> buffer.position(buffer.limit()), null);
+		fillSendBuffer();
+		CountDownLatch released = new CountDownLatch(1);
+		Thread writer = new Thread(() -> {
+			try {
+				if (!registration.awaitWritable(5000))
+					released.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		writer.start();
+		Thread.sleep(50);
+		registration.cancel();
+		assertTrue(released.await(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * 新连接能收到数据说明select线程仍在运行
+	 */
+	private void assertEngineRunning() throws Exception {
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.bind(new InetSocketAddress("127.0.0.1", 0));
+			try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+					SocketChannel accepted = server.accept()) {
+				CountDownLatch received = new CountDownLatch(1);
+				engine.register(accepted, 64, buffer -> {
+					buffer.position(buffer.limit());
+					received.countDown();
+				}, null);
+				client.write(ByteBuffer.wrap("ok".getBytes()));
+				assertTrue(received.await(5, TimeUnit.SECONDS));
+			}
+		}
+	}
+
+	@Test
+	public void testOnCloseExceptionKeepsEngineRunning() throws Exception {
+		CountDownLatch closed = new CountDownLatch(1);
+		engine.register(accepted, 64, buffer -> buffer.position(buffer.limit()), () -> {
+			closed.countDown();
+			throw new IllegalStateException("onClose");
+		});
+		client.close();
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertEngineRunning();
+	}
+
+	@Test
+	public void testConcurrentCancelKeepsEngineRunning() throws Exception {
+		// 调用方线程取消与select线程处理同一个key并发
+		for (int i = 0; i < 100; i++) {
+			try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+					SocketChannel accepted = server.accept()) {
+				Registration registration = engine.register(accepted, 64, buffer -> buffer.position(buffer.limit()),
+						null);
+				client.write(ByteBuffer.wrap("data".getBytes()));
+				registration.cancel();
+			}
+		}
+		assertEngineRunning();
+	}
+
+}
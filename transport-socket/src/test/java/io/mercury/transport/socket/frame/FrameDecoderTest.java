@@ -0,0 +1,105 @@
+package io.mercury.transport.socket.frame;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.mercury.transport.socket.ByteBufferHandler;
+import io.mercury.transport.socket.configurator.SocketConfigurator;
+
+public class FrameDecoderTest {
+
+	private final List<String> frames = new ArrayList<>();
+
+	private final ByteBufferHandler collector = ByteBufferHandler.copyOf(bytes -> frames.add(new String(bytes)));
+
+	private final ByteBufferPool pool = new ByteBufferPool(16, 1024, 4);
+
+	/**
+	 * 将encoder生成的数据按chunkSize切分后交给decoder
+	 */
+	private void feed(ByteBufferHandler decoder, FrameEncoder encoder, int chunkSize, String... msgs) {
+		ByteBuffer stream = ByteBuffer.allocate(1024);
+		ByteBuffer[] buffers = new ByteBuffer[encoder.buffersPerMessage()];
+		for (String msg : msgs) {
+			encoder.encode(msg.getBytes(), buffers, 0);
+			for (ByteBuffer buffer : buffers)
+				stream.put(buffer);
+		}
+		stream.flip();
+		while (stream.hasRemaining()) {
+			ByteBuffer chunk = stream.slice();
+			chunk.limit(Math.min(chunkSize, chunk.remaining()));
+			stream.position(stream.position() + chunk.remaining());
+			decoder.handle(chunk);
+		}
+	}
+
+	@Test
+	public void testLengthField() {
+		for (int width : new int[] { 1, 2, 4, 8 }) {
+			for (int chunkSize : new int[] { 1, 3, 7, 1024 }) {
+				frames.clear();
+				SocketConfigurator configurator = SocketConfigurator.builder().framingMode(FramingMode.LENGTH_FIELD)
+						.lengthFieldLength(width).build();
+				feed(new LengthFieldFrameDecoder(collector, width, 1024, pool), FrameEncoder.newEncoder(configurator),
+						chunkSize, "hello", "", "a longer message over the pool min capacity");
+				assertEquals(3, frames.size());
+				assertEquals("hello", frames.get(0));
+				assertEquals("", frames.get(1));
+				assertEquals("a longer message over the pool min capacity", frames.get(2));
+			}
+		}
+	}
+
+	@Test
+	public void testDelimiter() {
+		byte[] delimiter = "\r\n".getBytes();
+		for (int chunkSize : new int[] { 1, 2, 5, 1024 }) {
+			frames.clear();
+			SocketConfigurator configurator = SocketConfigurator.builder().framingMode(FramingMode.DELIMITER)
+					.delimiter(delimiter).build();
+			feed(new DelimiterFrameDecoder(collector, delimiter, 1024, pool), FrameEncoder.newEncoder(configurator),
+					chunkSize, "hello", "a\rb", "world");
+			assertEquals(3, frames.size());
+			assertEquals("hello", frames.get(0));
+			assertEquals("a\rb", frames.get(1));
+			assertEquals("world", frames.get(2));
+		}
+	}
+
+	@Test
+	public void testHandlerException() {
+		ByteBufferHandler throwing = ByteBufferHandler.copyOf(bytes -> {
+			String frame = new String(bytes);
+			if (frame.startsWith("bad"))
+				throw new IllegalStateException(frame);
+			frames.add(frame);
+		});
+		for (int chunkSize : new int[] { 1, 3, 7, 1024 }) {
+			frames.clear();
+			SocketConfigurator configurator = SocketConfigurator.builder().framingMode(FramingMode.LENGTH_FIELD)
+					.lengthFieldLength(4).build();
+			// 抛出异常的消息之后, 同一次读取和后续读取中的消息都能正常解码
+			feed(new LengthFieldFrameDecoder(throwing, 4, 1024, pool), FrameEncoder.newEncoder(configurator),
+					chunkSize, "first", "bad1", "second", "bad2", "a longer message over the pool min capacity");
+			assertEquals(3, frames.size());
+			assertEquals("first", frames.get(0));
+			assertEquals("second", frames.get(1));
+			assertEquals("a longer message over the pool min capacity", frames.get(2));
+		}
+	}
+
+	@Test(expected = CorruptedFrameException.class)
+	public void testFrameTooLong() {
+		LengthFieldFrameDecoder decoder = new LengthFieldFrameDecoder(collector, 4, 8, pool);
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt(9).flip();
+		decoder.handle(buffer);
+	}
+
+}
@@ -0,0 +1,152 @@
+package io.mercury.transport.zmq;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+
+import io.mercury.common.log.CommonLoggerFactory;
+
+/**
+ * 每个topic只保留最新消息<br>
+ *
+ * 订阅线程调用put()覆盖topic的最新消息, 消费线程调用drain()取出上次drain之后变化过的topic.
+ * 每个topic对应一个slot, 内存占用只与topic数量有关. put()和drain()之间不使用锁.<br>
+ *
+ * 多个消费线程同时drain时, 同一topic的相邻两条消息可能由不同线程处理.
+ *
+ * @author yellow013
+ */
+final class TopicConflater {
+
+	private static final Logger log = CommonLoggerFactory.getLogger(TopicConflater.class);
+
+	// 只由订阅线程访问
+	private final Map<TopicKey, Slot> slots = new HashMap<>();
+
+	// 查找slot时复用的key, 只由订阅线程访问
+	private final TopicKey probe = new TopicKey();
+
+	// 有未取出消息的slot, 每个slot最多出现一次
+	private final Queue<Slot> changed = new ConcurrentLinkedQueue<>();
+
+	private volatile int topicCount;
+
+	private final AtomicLong conflated = new AtomicLong();
+
+	/**
+	 * 由订阅线程调用
+	 *
+	 * @param topic
+	 * @param msg
+	 */
+	void put(byte[] topic, byte[] msg) {
+		Slot slot = slots.get(probe.set(topic));
+		probe.set(null);
+		if (slot == null) {
+			slot = new Slot(topic);
+			slots.put(new TopicKey().set(topic), slot);
+			topicCount = slots.size();
+		}
+		// 消费者还没有取出上一条消息
+		if (slot.latest.getAndSet(msg) != null)
+			conflated.incrementAndGet();
+		if (slot.queued.compareAndSet(false, true))
+			changed.offer(slot);
+	}
+
+	/**
+	 * 处理上次drain之后变化过的topic的最新消息, 可以在任何线程中调用
+	 *
+	 * @param handler topic数组不能修改
+	 * @return drained topic count
+	 */
+	int drain(BiConsumer<byte[], byte[]> handler) {
+		// 处理过程中变化的topic会重新入队, 限制处理数量使drain可以返回
+		int limit = topicCount;
+		int drained = 0;
+		Slot slot;
+		for (int i = 0; i < limit && (slot = changed.poll()) != null; i++) {
+			// 先清除标记再取消息, 之后写入的消息会重新入队
+			slot.queued.set(false);
+			byte[] msg = slot.latest.getAndSet(null);
+			if (msg == null)
+				continue;
+			drained++;
+			try {
+				handler.accept(slot.topic, msg);
+			} catch (Exception e) {
+				log.error("Conflated handler throw exception -> {}", e.getMessage(), e);
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 *
+	 * @return topics with undrained message
+	 */
+	int pending() {
+		return changed.size();
+	}
+
+	int topicCount() {
+		return topicCount;
+	}
+
+	/**
+	 *
+	 * @return messages overwritten before drained
+	 */
+	long conflated() {
+		return conflated.get();
+	}
+
+	/**
+	 * 按内容比较topic, 查找时复用同一个实例避免每条消息分配key
+	 */
+	private static final class TopicKey {
+
+		private byte[] topic;
+		private int hash;
+
+		private TopicKey set(byte[] topic) {
+			this.topic = topic;
+			this.hash = Arrays.hashCode(topic);
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TopicKey && Arrays.equals(topic, ((TopicKey) obj).topic);
+		}
+
+	}
+
+	private static final class Slot {
+
+		private final byte[] topic;
+
+		private final AtomicReference<byte[]> latest = new AtomicReference<>();
+
+		private final AtomicBoolean queued = new AtomicBoolean();
+
+		private Slot(byte[] topic) {
+			this.topic = topic;
+		}
+
+	}
+
+}
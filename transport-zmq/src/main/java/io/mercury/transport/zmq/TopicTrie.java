@@ -0,0 +1,196 @@
+package io.mercury.transport.zmq;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * 按字节前缀匹配topic的字典树<br>
+ *
+ * 与SUB socket的订阅规则相同, topic以某个前缀开头时调用该前缀的所有handler. 匹配时直接比较topic帧的字节,
+ * 不解码为String. 只由订阅线程访问.<br>
+ *
+ * handler可以接收byte[]或只读ByteBuffer, 两种接收方式之间按需转换.
+ *
+ * @author yellow013
+ */
+@NotThreadSafe
+final class TopicTrie {
+
+	private static final FrameHandler[] NO_HANDLERS = new FrameHandler[0];
+
+	/**
+	 * 同时支持按帧分配和复用缓冲区两种接收方式
+	 */
+	static interface FrameHandler {
+
+		void onFrame(byte[] frame);
+
+		/**
+		 * 
+		 * @param view 只在调用期间有效
+		 */
+		void onFrame(ByteBuffer view);
+
+		static FrameHandler ofBytes(Consumer<byte[]> handler) {
+			return new FrameHandler() {
+				@Override
+				public void onFrame(byte[] frame) {
+					handler.accept(frame);
+				}
+
+				@Override
+				public void onFrame(ByteBuffer view) {
+					handler.accept(ZmqFrameBuffer.copyOf(view));
+				}
+			};
+		}
+
+		static FrameHandler ofBuffer(Consumer<ByteBuffer> handler) {
+			return new FrameHandler() {
+				@Override
+				public void onFrame(byte[] frame) {
+					handler.accept(ByteBuffer.wrap(frame).asReadOnlyBuffer());
+				}
+
+				@Override
+				public void onFrame(ByteBuffer view) {
+					// 同一帧依次交给多个handler, 恢复handler可能修改的position和limit
+					int position = view.position();
+					int limit = view.limit();
+					handler.accept(view);
+					view.limit(limit).position(position);
+				}
+			};
+		}
+
+	}
+
+	private final Node root = new Node();
+
+	private int prefixCount;
+
+	/**
+	 *
+	 * @param prefix
+	 * @param handler
+	 * @return true if prefix is newly added
+	 */
+	boolean add(byte[] prefix, FrameHandler handler) {
+		Node node = root;
+		for (byte b : prefix)
+			node = node.childOrCreate(b);
+		boolean added = node.handlers.length == 0;
+		node.handlers = Arrays.copyOf(node.handlers, node.handlers.length + 1);
+		node.handlers[node.handlers.length - 1] = handler;
+		if (added)
+			prefixCount++;
+		return added;
+	}
+
+	/**
+	 * 移除前缀的所有handler
+	 *
+	 * @param prefix
+	 * @return true if prefix existed
+	 */
+	boolean remove(byte[] prefix) {
+		Node node = root;
+		for (byte b : prefix) {
+			node = node.child(b);
+			if (node == null)
+				return false;
+		}
+		if (node.handlers.length == 0)
+			return false;
+		node.handlers = NO_HANDLERS;
+		prefixCount--;
+		return true;
+	}
+
+	/**
+	 * 调用topic匹配的所有前缀的handler, 短前缀先调用
+	 *
+	 * @param topic
+	 * @param msg
+	 * @return matched handler count
+	 */
+	int dispatch(byte[] topic, byte[] msg) {
+		int matched = 0;
+		Node node = root;
+		for (int i = 0;; i++) {
+			for (FrameHandler handler : node.handlers)
+				handler.onFrame(msg);
+			matched += node.handlers.length;
+			if (i == topic.length)
+				break;
+			node = node.child(topic[i]);
+			if (node == null)
+				break;
+		}
+		return matched;
+	}
+
+	/**
+	 * 与dispatch(byte[], byte[])相同, topic和msg都是复用缓冲区的视图
+	 *
+	 * @param topic
+	 * @param msg
+	 * @return matched handler count
+	 */
+	int dispatch(ByteBuffer topic, ByteBuffer msg) {
+		int matched = 0;
+		int start = topic.position();
+		int end = topic.limit();
+		Node node = root;
+		for (int i = start;; i++) {
+			for (FrameHandler handler : node.handlers)
+				handler.onFrame(msg);
+			matched += node.handlers.length;
+			if (i == end)
+				break;
+			node = node.child(topic.get(i));
+			if (node == null)
+				break;
+		}
+		return matched;
+	}
+
+	int prefixCount() {
+		return prefixCount;
+	}
+
+	private static final class Node {
+
+		// 子节点的字节, 与children一一对应
+		private byte[] keys = new byte[0];
+		private Node[] children = new Node[0];
+
+		private FrameHandler[] handlers = NO_HANDLERS;
+
+		private Node child(byte b) {
+			byte[] keys = this.keys;
+			for (int i = 0; i < keys.length; i++)
+				if (keys[i] == b)
+					return children[i];
+			return null;
+		}
+
+		private Node childOrCreate(byte b) {
+			Node child = child(b);
+			if (child != null)
+				return child;
+			child = new Node();
+			int size = keys.length;
+			keys = Arrays.copyOf(keys, size + 1);
+			children = Arrays.copyOf(children, size + 1);
+			keys[size] = b;
+			children[size] = child;
+			return child;
+		}
+
+	}
+
+}
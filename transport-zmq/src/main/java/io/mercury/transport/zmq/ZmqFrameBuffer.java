@@ -0,0 +1,72 @@
+package io.mercury.transport.zmq;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.zeromq.ZMQ;
+
+/**
+ * 复用的消息帧接收缓冲区<br>
+ *
+ * 每个socket线程持有一个实例, 每一帧都接收到同一块直接内存中, 不为每一帧分配byte[].
+ * 交给handler的是只读视图, 只在回调期间有效, 下一帧到达时内容会被覆盖. 需要保留数据的handler调用copyOf()复制.
+ *
+ * @author yellow013
+ */
+@NotThreadSafe
+public final class ZmqFrameBuffer {
+
+	private final ByteBuffer buffer;
+
+	// 与buffer共享内容, 每一帧只重置position和limit
+	private final ByteBuffer view;
+
+	ZmqFrameBuffer(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+		this.view = buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * 接收一帧
+	 *
+	 * @param socket
+	 * @param flags
+	 * @return read-only view of the frame, null if timeout
+	 * @throws BufferOverflowException frame is larger than capacity, the frame
+	 *                                 is discarded
+	 */
+	ByteBuffer recv(ZMQ.Socket socket, int flags) {
+		buffer.clear();
+		int size = socket.recvByteBuffer(buffer, flags);
+		if (size < 0)
+			return null;
+		if (size > buffer.capacity())
+			throw new BufferOverflowException();
+		view.clear();
+		view.limit(size);
+		return view;
+	}
+
+	int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * 复制帧的剩余内容, 不改变frame的position
+	 *
+	 * @param frame
+	 * @return
+	 */
+	public static byte[] copyOf(ByteBuffer frame) {
+		byte[] bytes = new byte[frame.remaining()];
+		int position = frame.position();
+		frame.get(bytes);
+		frame.position(position);
+		return bytes;
+	}
+
+}
@@ -2,59 +2,226 @@ package io.mercury.transport.zmq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 
+import org.slf4j.Logger;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
 
+import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.common.thread.ThreadTool;
 import io.mercury.transport.core.api.Receiver;
 import io.mercury.transport.zmq.configurator.ZmqConfigurator;
 
+/**
+ * ROUTER前端接收请求, 通过inproc DEALER后端分配给N个REP工作线程, 每个工作线程独立执行pipeline函数.<br>
+ * pipeline函数返回null或抛出异常时回复空消息, REP socket始终保持可用.<br>
+ * recvBufferSize大于0时, 每个工作线程把请求接收到复用的直接内存缓冲区中.
+ */
 public class ZmqPipeline implements Receiver, Closeable {
 
+	private static final Logger log = CommonLoggerFactory.getLogger(ZmqPipeline.class);
+
+	private static final byte[] EMPTY = new byte[0];
+
+	// 检查运行状态的间隔(毫秒)
+	private static final int POLL_MILLIS = 100;
+
 	private ZContext zCtx;
-	private ZMQ.Socket zSocket;
+	// 客户端连接的ROUTER
+	private ZMQ.Socket frontend;
+	// 工作线程连接的DEALER
+	private ZMQ.Socket backend;
+
+	private String backendAddr;
 
 	private String receiverName;
 
+	// pipeline和bufferPipeline只有一个不为null
 	private Function<byte[], byte[]> pipeline;
+	private Function<ByteBuffer, byte[]> bufferPipeline;
 	private ZmqConfigurator configurator;
 
+	private Thread[] workers;
+
+	private volatile Thread proxyThread;
+
 	private volatile boolean isRun = true;
 
 	public ZmqPipeline(ZmqConfigurator configurator, Function<byte[], byte[]> pipeline) {
-		if (configurator == null || pipeline == null)
+		this(configurator, pipeline, null, null);
+	}
+
+	/**
+	 * 使用指定的ZContext创建socket, 同一ZContext中的客户端可以通过inproc地址连接.<br>
+	 * destroy时关闭zCtx, 不需要终止共享的context时传入shadow.
+	 * 
+	 * @param configurator
+	 * @param pipeline
+	 * @param zCtx
+	 */
+	ZmqPipeline(ZmqConfigurator configurator, Function<byte[], byte[]> pipeline, ZContext zCtx) {
+		this(configurator, pipeline, null, zCtx);
+	}
+
+	private ZmqPipeline(ZmqConfigurator configurator, Function<byte[], byte[]> pipeline,
+			Function<ByteBuffer, byte[]> bufferPipeline, ZContext zCtx) {
+		if (configurator == null || (pipeline == null && bufferPipeline == null))
 			throw new IllegalArgumentException("configurator is null in JeroMQReceiver init mothed !");
 		this.configurator = configurator;
 		this.pipeline = pipeline;
+		this.bufferPipeline = bufferPipeline;
+		this.zCtx = zCtx;
 		init();
 	}
 
+	/**
+	 * pipeline函数接收请求的只读视图, 只在调用期间有效, 需要保留数据时使用ZmqFrameBuffer.copyOf()复制
+	 * 
+	 * @param configurator
+	 * @param bufferPipeline
+	 * @return
+	 */
+	public static ZmqPipeline ofBuffer(ZmqConfigurator configurator, Function<ByteBuffer, byte[]> bufferPipeline) {
+		return new ZmqPipeline(configurator, null, bufferPipeline, null);
+	}
+
 	private void init() {
-		this.zCtx = new ZContext(configurator.ioThreads());
-		this.zSocket = zCtx.createSocket(SocketType.REP);
-		this.zSocket.bind(configurator.host());
-		this.receiverName = "JeroMQ.REP:" + configurator.host();
+		if (zCtx == null)
+			this.zCtx = new ZContext(configurator.ioThreads());
+		this.frontend = zCtx.createSocket(SocketType.ROUTER);
+		this.frontend.bind(configurator.host());
+		this.backendAddr = "inproc://pipeline-workers-" + System.identityHashCode(this);
+		this.backend = zCtx.createSocket(SocketType.DEALER);
+		this.backend.bind(backendAddr);
+		this.receiverName = "JeroMQ.ROUTER:" + configurator.host();
+		int workerThreads = Math.max(1, configurator.workerThreads());
+		this.workers = new Thread[workerThreads];
+		for (int i = 0; i < workerThreads; i++) {
+			Thread worker = new Thread(this::runWorker, receiverName + "-worker-" + i);
+			worker.setDaemon(true);
+			workers[i] = worker;
+			worker.start();
+		}
 	}
 
+	/**
+	 * 在调用线程中转发前端和后端之间的消息, 直到调用destroy()
+	 */
 	@Override
 	public void receive() {
-		while (isRun) {
-			byte[] recvBytes = zSocket.recv();
-			byte[] sendBytes = pipeline.apply(recvBytes);
-			if (sendBytes != null)
-				zSocket.send(sendBytes);
+		this.proxyThread = Thread.currentThread();
+		ZMQ.Poller poller = zCtx.createPoller(2);
+		poller.register(frontend, ZMQ.Poller.POLLIN);
+		poller.register(backend, ZMQ.Poller.POLLIN);
+		try {
+			while (isRun) {
+				if (poller.poll(POLL_MILLIS) <= 0)
+					continue;
+				if (poller.pollin(0))
+					forward(frontend, backend);
+				if (poller.pollin(1))
+					forward(backend, frontend);
+			}
+		} catch (ZMQException e) {
+			if (isRun)
+				log.error("Pipeline proxy throw ZMQException -> {}", e.getMessage(), e);
+		} finally {
+			poller.close();
+			this.proxyThread = null;
+		}
+	}
+
+	/**
+	 * 转发所有已经到达的多帧消息
+	 */
+	private static void forward(ZMQ.Socket from, ZMQ.Socket to) {
+		byte[] frame;
+		while ((frame = from.recv(ZMQ.DONTWAIT)) != null) {
+			boolean more = from.hasReceiveMore();
+			to.send(frame, more ? ZMQ.SNDMORE : 0);
+			while (more) {
+				frame = from.recv();
+				more = from.hasReceiveMore();
+				to.send(frame, more ? ZMQ.SNDMORE : 0);
+			}
+		}
+	}
+
+	private void runWorker() {
+		ZMQ.Socket worker = zCtx.createSocket(SocketType.REP);
+		worker.setReceiveTimeOut(POLL_MILLIS);
+		worker.connect(backendAddr);
+		ZmqFrameBuffer frameBuffer = configurator.recvBufferSize() > 0
+				? new ZmqFrameBuffer(configurator.recvBufferSize())
+				: null;
+		try {
+			while (isRun) {
+				byte[] sendBytes = null;
+				if (frameBuffer == null) {
+					byte[] recvBytes = worker.recv();
+					// 接收超时
+					if (recvBytes == null)
+						continue;
+					sendBytes = apply(recvBytes);
+				} else {
+					try {
+						ByteBuffer frame = frameBuffer.recv(worker, 0);
+						// 接收超时
+						if (frame == null)
+							continue;
+						sendBytes = apply(frame);
+					} catch (BufferOverflowException e) {
+						log.error("Request larger than recvBufferSize {}, reply empty", frameBuffer.capacity());
+					}
+				}
+				// REP必须回复后才能接收下一个请求
+				worker.send(sendBytes == null ? EMPTY : sendBytes);
+			}
+		} catch (ZMQException e) {
+			if (isRun)
+				log.error("Pipeline worker throw ZMQException -> {}", e.getMessage(), e);
+		} finally {
+			zCtx.destroySocket(worker);
+		}
+	}
+
+	private byte[] apply(byte[] recvBytes) {
+		try {
+			return pipeline != null ? pipeline.apply(recvBytes)
+					: bufferPipeline.apply(ByteBuffer.wrap(recvBytes).asReadOnlyBuffer());
+		} catch (Exception e) {
+			log.error("Pipeline function throw exception -> {}", e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private byte[] apply(ByteBuffer frame) {
+		try {
+			return pipeline != null ? pipeline.apply(ZmqFrameBuffer.copyOf(frame)) : bufferPipeline.apply(frame);
+		} catch (Exception e) {
+			log.error("Pipeline function throw exception -> {}", e.getMessage(), e);
+			return null;
 		}
-		return;
 	}
 
 	@Override
 	public boolean destroy() {
 		this.isRun = false;
-		ThreadTool.sleep(50);
-		zSocket.close();
+		for (Thread worker : workers) {
+			try {
+				worker.join(POLL_MILLIS * 2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// 等待转发线程退出
+		for (int i = 0; i < 4 && proxyThread != null; i++)
+			ThreadTool.sleep(POLL_MILLIS / 2);
 		zCtx.close();
 		return zCtx.isClosed();
 	}
@@ -66,8 +233,8 @@ public class ZmqPipeline implements Receiver, Closeable {
 
 	public static void main(String[] args) {
 
-		try (ZmqPipeline receiver = new ZmqPipeline(
-				ZmqConfigurator.builder().setIoThreads(10).setHost("tcp://*:5551").build(), (byte[] byteMsg) -> {
+		try (ZmqPipeline receiver = new ZmqPipeline(ZmqConfigurator.builder().setIoThreads(10)
+				.setHost("tcp://*:5551").setWorkerThreads(4).build(), (byte[] byteMsg) -> {
 					System.out.println(new String(byteMsg));
 					return null;
 				})) {
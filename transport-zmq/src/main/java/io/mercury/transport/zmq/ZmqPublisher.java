@@ -2,6 +2,7 @@ package io.mercury.transport.zmq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Random;
 
 import org.zeromq.SocketType;
@@ -24,13 +25,31 @@ public class ZmqPublisher implements Publisher<byte[]>, Closeable {
 
 	private ZmqConfigurator configurator;
 
+	// 是否由当前对象创建并负责关闭ZContext
+	private final boolean ownContext;
+
 	public ZmqPublisher(ZmqConfigurator configurator) {
 		this.configurator = Assertor.nonNull(configurator, "configurator");
+		this.zCtx = new ZContext(configurator.ioThreads());
+		this.ownContext = true;
+		init();
+	}
+
+	/**
+	 * Use a shared ZContext, required by inproc transport. The context is not
+	 * closed by destroy().
+	 * 
+	 * @param configurator
+	 * @param zCtx
+	 */
+	public ZmqPublisher(ZmqConfigurator configurator, ZContext zCtx) {
+		this.configurator = Assertor.nonNull(configurator, "configurator");
+		this.zCtx = Assertor.nonNull(zCtx, "zCtx");
+		this.ownContext = false;
 		init();
 	}
 
 	private void init() {
-		this.zCtx = new ZContext(configurator.ioThreads());
 		this.zSocket = zCtx.createSocket(SocketType.PUB);
 		this.zSocket.bind(configurator.host());
 		this.topic = configurator.topic();
@@ -48,11 +67,52 @@ public class ZmqPublisher implements Publisher<byte[]>, Closeable {
 		zSocket.send(msg, ZMQ.NOBLOCK);
 	}
 
+	/**
+	 * Send the whole batch as one multipart message [topic][msg1]...[msgN], the
+	 * io thread is woken up once per batch. ZmqSubscriber delivers every part
+	 * after the topic frame to the callback.
+	 */
+	@Override
+	public void publishBatch(List<byte[]> msgs) {
+		publishBatch(topic, msgs);
+	}
+
+	@Override
+	public void publishBatch(byte[][] msgs, int offset, int length) {
+		publishBatch(topic, msgs, offset, length);
+	}
+
+	@Override
+	public void publishBatch(String target, List<byte[]> msgs) {
+		int size = msgs.size();
+		if (size == 0)
+			return;
+		zSocket.sendMore(target);
+		for (int i = 0; i < size - 1; i++)
+			zSocket.sendMore(msgs.get(i));
+		zSocket.send(msgs.get(size - 1), ZMQ.NOBLOCK);
+	}
+
+	@Override
+	public void publishBatch(String target, byte[][] msgs, int offset, int length) {
+		if (length == 0)
+			return;
+		int last = offset + length - 1;
+		zSocket.sendMore(target);
+		for (int i = offset; i < last; i++)
+			zSocket.sendMore(msgs[i]);
+		zSocket.send(msgs[last], ZMQ.NOBLOCK);
+	}
+
 	@Override
 	public boolean destroy() {
-		zSocket.close();
-		zCtx.close();
-		return zCtx.isClosed();
+		if (ownContext) {
+			zSocket.close();
+			zCtx.close();
+			return zCtx.isClosed();
+		}
+		zCtx.destroySocket(zSocket);
+		return true;
 	}
 
 	@Override
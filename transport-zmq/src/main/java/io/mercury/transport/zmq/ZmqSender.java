@@ -2,19 +2,50 @@ package io.mercury.transport.zmq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
-import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
 
+import org.slf4j.Logger;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
+import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.transport.core.api.Sender;
 import io.mercury.transport.zmq.configurator.ZmqConfigurator;
+import io.mercury.transport.zmq.configurator.ZmqSenderMode;
 
-@NotThreadSafe
+/**
+ * DEALER模式下所有socket操作在一个IO线程中执行, 调用线程只把请求放入队列并通过Pipe唤醒IO线程.
+ * 响应通过请求ID帧与请求匹配, future在IO线程中完成. <br>
+ * REQ模式与原有行为相同, 每次发送后同步等待响应.
+ */
+@ThreadSafe
 public class ZmqSender implements Sender<byte[]>, Closeable {
 
+	private static final Logger log = CommonLoggerFactory.getLogger(ZmqSender.class);
+
+	private static final byte[] EMPTY = new byte[0];
+
+	// 有等待发送或超时的请求时IO线程的最长poll时间
+	private static final long MAX_POLL_MILLIS = 100;
+
 	private ZContext zCtx;
 	private ZMQ.Socket zSocket;
 
@@ -22,28 +53,328 @@ public class ZmqSender implements Sender<byte[]>, Closeable {
 
 	private ZmqConfigurator configurator;
 
+	private final ZmqSenderMode mode;
+
+	private final long requestTimeout;
+
+	private final int maxInFlight;
+
+	// DEALER模式下的未完成请求窗口
+	private Semaphore window;
+
+	// REQ模式下socket当前的接收超时, 由syncRequest在同步块中访问
+	private int reqReceiveTimeout;
+
+	private final AtomicLong requestIdGenerator = new AtomicLong();
+
+	// 调用线程放入, IO线程取出
+	private final Queue<Request> submitted = new ConcurrentLinkedQueue<>();
+
+	// 唤醒IO线程
+	private Pipe wakeupPipe;
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+	private Thread ioThread;
+
+	private volatile boolean running = true;
+
+	/**
+	 * 以下字段只由IO线程访问
+	 */
+	// 因HWM未能发送的请求
+	private final ArrayDeque<Request> unsent = new ArrayDeque<>();
+	// 已发送等待响应的请求
+	private final Map<Long, Request> inFlight = new HashMap<>();
+	// 按超时时间排序
+	private final PriorityQueue<Request> deadlines = new PriorityQueue<>(
+			(r0, r1) -> Long.compare(r0.deadline, r1.deadline));
+
 	public ZmqSender(ZmqConfigurator configurator) {
+		this(configurator, null);
+	}
+
+	/**
+	 * 使用指定的ZContext创建socket, 可以连接同一ZContext中的inproc地址.<br>
+	 * destroy时关闭zCtx, 不需要终止共享的context时传入shadow.
+	 * 
+	 * @param configurator
+	 * @param zCtx         为null时创建新的ZContext
+	 */
+	ZmqSender(ZmqConfigurator configurator, ZContext zCtx) {
 		if (configurator == null)
 			throw new IllegalArgumentException("configurator is null in JeroMQPublisher init mothed !");
 		this.configurator = configurator;
+		this.mode = configurator.senderMode() == null ? ZmqSenderMode.DEALER : configurator.senderMode();
+		this.requestTimeout = configurator.requestTimeout();
+		this.maxInFlight = Math.max(1, configurator.maxInFlight());
+		this.zCtx = zCtx;
 		init();
 	}
 
 	private void init() {
-		this.zCtx = new ZContext(configurator.ioThreads());
-		this.zSocket = zCtx.createSocket(SocketType.REQ);
+		if (zCtx == null)
+			this.zCtx = new ZContext(configurator.ioThreads());
+		if (mode == ZmqSenderMode.REQ) {
+			this.zSocket = zCtx.createSocket(SocketType.REQ);
+			// 响应丢失时可以发送下一个请求, 并丢弃迟到的响应
+			this.zSocket.setReqRelaxed(true);
+			this.zSocket.setReqCorrelate(true);
+			this.reqReceiveTimeout = (int) Math.min(Integer.MAX_VALUE, requestTimeout);
+			this.zSocket.setReceiveTimeOut(reqReceiveTimeout);
+			this.zSocket.connect(configurator.host());
+			this.senderName = "JeroMQ.REQ$" + configurator.host();
+			return;
+		}
+		this.zSocket = zCtx.createSocket(SocketType.DEALER);
+		this.zSocket.setLinger(0);
 		this.zSocket.connect(configurator.host());
-		this.senderName = "JeroMQ.REQ$" + configurator.host();
+		this.senderName = "JeroMQ.DEALER$" + configurator.host();
+		this.window = new Semaphore(maxInFlight);
+		try {
+			this.wakeupPipe = Pipe.open();
+			wakeupPipe.source().configureBlocking(false);
+			wakeupPipe.sink().configureBlocking(false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Open wakeup pipe failure", e);
+		}
+		this.ioThread = new Thread(this::runIoLoop, senderName + "-io");
+		ioThread.setDaemon(true);
+		ioThread.start();
 	}
 
+	/**
+	 * DEALER模式下只放入发送队列, 不等待响应; REQ模式下等待并丢弃响应.<br>
+	 * DEALER模式下未完成请求窗口在requestTimeout内没有空位或已经销毁时抛出IllegalStateException,
+	 * 发送后超时或失败只记录日志, 需要得到结果时使用request().
+	 */
 	@Override
 	public void send(byte[] msg) {
+		if (mode == ZmqSenderMode.REQ) {
+			syncRequest(msg, requestTimeout);
+			return;
+		}
+		CompletableFuture<byte[]> future = request(msg);
+		if (future.isCompletedExceptionally()) {
+			try {
+				future.join();
+			} catch (CompletionException e) {
+				throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+			}
+		}
+		future.whenComplete((reply, throwable) -> {
+			if (throwable != null)
+				log.error("Send failure, senderName==[{}] -> {}", senderName, throwable.getMessage());
+		});
+	}
+
+	/**
+	 *
+	 * @param msg
+	 * @return
+	 */
+	public CompletableFuture<byte[]> request(byte[] msg) {
+		return request(msg, requestTimeout);
+	}
+
+	/**
+	 *
+	 * @param msg
+	 * @param timeoutMillis
+	 * @param callback      在IO线程中执行
+	 */
+	public void request(byte[] msg, long timeoutMillis, BiConsumer<byte[], Throwable> callback) {
+		request(msg, timeoutMillis).whenComplete(callback);
+	}
+
+	/**
+	 * 返回的future在收到响应时完成, 超过timeoutMillis未收到响应时以TimeoutException完成.<br>
+	 * 未完成请求达到maxInFlight时最多等待timeoutMillis. REQ模式下同步执行, 最多等待timeoutMillis.
+	 *
+	 * @param msg
+	 * @param timeoutMillis
+	 * @return
+	 */
+	public CompletableFuture<byte[]> request(byte[] msg, long timeoutMillis) {
+		if (mode == ZmqSenderMode.REQ) {
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			byte[] reply = syncRequest(msg, timeoutMillis);
+			if (reply != null)
+				future.complete(reply);
+			else
+				future.completeExceptionally(new TimeoutException("Receive reply timeout " + timeoutMillis + "ms"));
+			return future;
+		}
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		if (!running) {
+			future.completeExceptionally(new IllegalStateException(senderName + " is destroyed"));
+			return future;
+		}
+		try {
+			if (!window.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				future.completeExceptionally(
+						new TimeoutException("In flight window is full, maxInFlight==[" + maxInFlight
+								+ "], senderName==[" + senderName + "]"));
+				return future;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(e);
+			return future;
+		}
+		// 无论以何种方式完成(包括调用者取消)都归还窗口位置
+		future.whenComplete((reply, throwable) -> window.release());
+		submitted.offer(new Request(requestIdGenerator.incrementAndGet(), msg,
+				System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), future));
+		wakeup();
+		return future;
+	}
+
+	private synchronized byte[] syncRequest(byte[] msg, long timeoutMillis) {
+		int timeout = (int) Math.min(Integer.MAX_VALUE, timeoutMillis);
+		if (timeout != reqReceiveTimeout) {
+			zSocket.setReceiveTimeOut(timeout);
+			this.reqReceiveTimeout = timeout;
+		}
 		zSocket.send(msg);
-		zSocket.recv();
+		return zSocket.recv();
+	}
+
+	private void wakeup() {
+		if (wakeupPending.compareAndSet(false, true)) {
+			try {
+				wakeupPipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+			} catch (IOException e) {
+				log.error("Write wakeup pipe throw IOException -> {}", e.getMessage(), e);
+			}
+		}
+	}
+
+	private void runIoLoop() {
+		ZMQ.Poller poller = zCtx.createPoller(2);
+		poller.register(zSocket, ZMQ.Poller.POLLIN);
+		poller.register(wakeupPipe.source(), ZMQ.Poller.POLLIN);
+		ByteBuffer drain = ByteBuffer.allocate(64);
+		try {
+			while (running) {
+				poller.poll(pollTimeout());
+				if (poller.pollin(1)) {
+					// 先清除标记再读取队列, 之后放入的请求会再次唤醒
+					wakeupPending.set(false);
+					while (wakeupPipe.source().read(drain) > 0)
+						drain.clear();
+				}
+				sendSubmitted();
+				if (poller.pollin(0))
+					receiveReplies();
+				expire(System.nanoTime());
+			}
+		} catch (Exception e) {
+			log.error("ZmqSender io thread throw exception -> {}", e.getMessage(), e);
+		} finally {
+			poller.close();
+			failAll(new IllegalStateException(senderName + " is destroyed"));
+		}
+	}
+
+	private long pollTimeout() {
+		if (!unsent.isEmpty())
+			return 1;
+		Request first = deadlines.peek();
+		if (first == null)
+			return MAX_POLL_MILLIS;
+		long millis = TimeUnit.NANOSECONDS.toMillis(first.deadline - System.nanoTime()) + 1;
+		return Math.max(1, Math.min(MAX_POLL_MILLIS, millis));
+	}
+
+	private void sendSubmitted() {
+		Request request;
+		while ((request = submitted.poll()) != null) {
+			deadlines.offer(request);
+			unsent.offer(request);
+		}
+		while ((request = unsent.peek()) != null) {
+			if (request.future.isDone()) {
+				unsent.poll();
+				continue;
+			}
+			// 达到HWM或没有连接的对端时不阻塞IO线程, 等待下次重试
+			if (!zSocket.send(request.idFrame(), ZMQ.SNDMORE | ZMQ.DONTWAIT))
+				return;
+			// 多帧消息的第一帧发送成功后其余帧一定能够发送
+			zSocket.sendMore(EMPTY);
+			zSocket.send(request.msg, 0);
+			unsent.poll();
+			inFlight.put(request.id, request);
+		}
+	}
+
+	private void receiveReplies() {
+		byte[] idFrame;
+		while ((idFrame = zSocket.recv(ZMQ.DONTWAIT)) != null) {
+			byte[] reply = EMPTY;
+			// [requestId][empty][reply]
+			while (zSocket.hasReceiveMore())
+				reply = zSocket.recv();
+			if (idFrame.length != Long.BYTES) {
+				log.warn("Discard reply with invalid request id frame, length==[{}]", idFrame.length);
+				continue;
+			}
+			Request request = inFlight.remove(ByteBuffer.wrap(idFrame).getLong());
+			// 已经超时的请求的响应被丢弃
+			if (request != null)
+				request.future.complete(reply);
+		}
+	}
+
+	private void expire(long now) {
+		// 已经完成的请求只在到达队首时移除, 数量过多时集中清理
+		if (deadlines.size() > maxInFlight * 2)
+			deadlines.removeIf(pending -> pending.future.isDone());
+		Request request;
+		while ((request = deadlines.peek()) != null && (request.future.isDone() || request.deadline <= now)) {
+			deadlines.poll();
+			inFlight.remove(request.id);
+			request.future.completeExceptionally(
+					new TimeoutException("Request id==[" + request.id + "] timeout, senderName==[" + senderName + "]"));
+		}
+	}
+
+	private void failAll(Throwable cause) {
+		Request request;
+		while ((request = submitted.poll()) != null)
+			request.future.completeExceptionally(cause);
+		for (Request pending : deadlines)
+			pending.future.completeExceptionally(cause);
+		deadlines.clear();
+		unsent.clear();
+		inFlight.clear();
+	}
+
+	/**
+	 *
+	 * @return current waiting request count
+	 */
+	public int inFlight() {
+		return window == null ? 0 : maxInFlight - window.availablePermits();
 	}
 
 	@Override
 	public boolean destroy() {
+		if (ioThread != null) {
+			running = false;
+			wakeup();
+			try {
+				ioThread.join(MAX_POLL_MILLIS * 10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				wakeupPipe.sink().close();
+				wakeupPipe.source().close();
+			} catch (IOException e) {
+				log.error("Close wakeup pipe throw IOException -> {}", e.getMessage(), e);
+			}
+		}
 		zSocket.close();
 		zCtx.close();
 		return zCtx.isClosed();
@@ -54,6 +385,26 @@ public class ZmqSender implements Sender<byte[]>, Closeable {
 		return senderName;
 	}
 
+	private static final class Request {
+
+		private final long id;
+		private final byte[] msg;
+		private final long deadline;
+		private final CompletableFuture<byte[]> future;
+
+		private Request(long id, byte[] msg, long deadline, CompletableFuture<byte[]> future) {
+			this.id = id;
+			this.msg = msg;
+			this.deadline = deadline;
+			this.future = future;
+		}
+
+		private byte[] idFrame() {
+			return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+		}
+
+	}
+
 	public static void main(String[] args) {
 
 		ZmqConfigurator configurator = ZmqConfigurator.builder().setIoThreads(1).setHost("tcp://localhost:5551")
@@ -61,7 +412,7 @@ public class ZmqSender implements Sender<byte[]>, Closeable {
 
 		try (ZmqSender sender = new ZmqSender(configurator)) {
 
-			sender.send("TEST MSG".getBytes());
+			log.info("Receive reply -> {}", new String(sender.request("TEST MSG".getBytes()).join()));
 
 			sender.destroy();
 
@@ -2,42 +2,105 @@ package io.mercury.transport.zmq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import org.slf4j.Logger;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
 import io.mercury.common.character.Charsets;
+import io.mercury.common.log.CommonLoggerFactory;
 import io.mercury.transport.core.api.Subscriber;
+import io.mercury.transport.zmq.TopicTrie.FrameHandler;
 import io.mercury.transport.zmq.configurator.ZmqConfigurator;
 
+/**
+ * 可以在运行时增加和取消订阅, 每个topic前缀对应独立的handler.<br>
+ * 订阅变更在订阅线程中执行, topic帧通过字节前缀树分发, 不解码为String.<br>
+ *
+ * recvBufferSize大于0时, 所有帧接收到复用的直接内存缓冲区中, ByteBuffer handler不产生按帧分配,
+ * byte[] handler收到复制的数组.<br>
+ *
+ * conflate为true时订阅线程不调用handler, 只保存每个topic的最新消息, 消费线程调用drain()处理上次drain之后变化过的topic,
+ * 处理速度慢的消费者只会跳过过期消息. 此时handler只用于确定订阅的topic前缀, recvBufferSize不生效.
+ */
 public class ZmqSubscriber implements Subscriber, Closeable {
 
+	private static final Logger log = CommonLoggerFactory.getLogger(ZmqSubscriber.class);
+
+	// 检查订阅变更的间隔(毫秒)
+	private static final int POLL_MILLIS = 100;
+
 	private ZContext zCtx;
 	private ZMQ.Socket zSocket;
 
 	private String subscriberName;
 
-	private Consumer<byte[]> callback;
 	private ZmqConfigurator configurator;
 
+	// 只由订阅线程访问
+	private final TopicTrie topicTrie = new TopicTrie();
+
+	// 其他线程提交的订阅变更, 由订阅线程执行
+	private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+	// 复用缓冲区接收模式下分别接收topic帧和消息帧, 未启用时为null
+	private ZmqFrameBuffer topicBuffer;
+	private ZmqFrameBuffer msgBuffer;
+
+	// conflate模式下保存每个topic的最新消息, 未启用时为null
+	private TopicConflater conflater;
+
 	private AtomicBoolean isRun = new AtomicBoolean(true);
 
+	// 是否由当前对象创建并负责关闭ZContext
+	private final boolean ownContext;
+
 	public ZmqSubscriber(ZmqConfigurator configurator, Consumer<byte[]> callback) {
 		if (configurator == null || callback == null)
 			throw new IllegalArgumentException("configurator is null in JeroMQSubscriber init mothed !");
 		this.configurator = configurator;
-		this.callback = callback;
-		init();
+		this.zCtx = new ZContext(configurator.ioThreads());
+		this.ownContext = true;
+		init(callback);
 	}
 
-	private void init() {
-		this.zCtx = new ZContext(configurator.ioThreads());
+	/**
+	 * Use a shared ZContext, required by inproc transport. The context is not
+	 * closed by destroy().
+	 * 
+	 * @param configurator
+	 * @param zCtx
+	 * @param callback
+	 */
+	public ZmqSubscriber(ZmqConfigurator configurator, ZContext zCtx, Consumer<byte[]> callback) {
+		if (configurator == null || zCtx == null || callback == null)
+			throw new IllegalArgumentException("configurator is null in JeroMQSubscriber init mothed !");
+		this.configurator = configurator;
+		this.zCtx = zCtx;
+		this.ownContext = false;
+		init(callback);
+	}
+
+	private void init(Consumer<byte[]> callback) {
 		this.zSocket = zCtx.createSocket(SocketType.SUB);
 		this.zSocket.connect(configurator.host());
-		this.zSocket.subscribe(configurator.topic().getBytes());
+		if (configurator.topic() != null)
+			addSubscription(configurator.topic().getBytes(), FrameHandler.ofBytes(callback));
+		if (configurator.conflate())
+			this.conflater = new TopicConflater();
+		else if (configurator.recvBufferSize() > 0) {
+			this.topicBuffer = new ZmqFrameBuffer(configurator.recvBufferSize());
+			this.msgBuffer = new ZmqFrameBuffer(configurator.recvBufferSize());
+		}
+		this.zSocket.setReceiveTimeOut(POLL_MILLIS);
 		this.zSocket.setTCPKeepAlive(1);
 		this.zSocket.setTCPKeepAliveCount(10);
 		this.zSocket.setTCPKeepAliveIdle(15);
@@ -45,21 +108,181 @@ public class ZmqSubscriber implements Subscriber, Closeable {
 		this.subscriberName = "JeroMQ.SUB$" + configurator.host() + "::" + configurator.topic();
 	}
 
+	/**
+	 * 增加topic前缀的handler, 可以在任何线程中调用
+	 * 
+	 * @param topicPrefix
+	 * @param handler
+	 */
+	public void subscribe(byte[] topicPrefix, Consumer<byte[]> handler) {
+		addSubscriptionLater(topicPrefix, FrameHandler.ofBytes(handler));
+	}
+
+	/**
+	 * 
+	 * @param topicPrefix
+	 * @param handler
+	 */
+	public void subscribe(String topicPrefix, Consumer<byte[]> handler) {
+		subscribe(topicPrefix.getBytes(), handler);
+	}
+
+	/**
+	 * 增加接收ByteBuffer的handler, 可以在任何线程中调用<br>
+	 * handler收到的是只读视图, 只在回调期间有效, 需要保留数据时使用ZmqFrameBuffer.copyOf()复制
+	 * 
+	 * @param topicPrefix
+	 * @param handler
+	 */
+	public void subscribeBuffer(byte[] topicPrefix, Consumer<ByteBuffer> handler) {
+		addSubscriptionLater(topicPrefix, FrameHandler.ofBuffer(handler));
+	}
+
+	/**
+	 * 
+	 * @param topicPrefix
+	 * @param handler
+	 */
+	public void subscribeBuffer(String topicPrefix, Consumer<ByteBuffer> handler) {
+		subscribeBuffer(topicPrefix.getBytes(), handler);
+	}
+
+	private void addSubscriptionLater(byte[] topicPrefix, FrameHandler handler) {
+		byte[] prefix = topicPrefix.clone();
+		commands.offer(() -> addSubscription(prefix, handler));
+	}
+
+	/**
+	 * 取消topic前缀的所有handler, 可以在任何线程中调用
+	 * 
+	 * @param topicPrefix
+	 */
+	public void unsubscribe(byte[] topicPrefix) {
+		byte[] prefix = topicPrefix.clone();
+		commands.offer(() -> {
+			if (topicTrie.remove(prefix))
+				zSocket.unsubscribe(prefix);
+		});
+	}
+
+	/**
+	 * 
+	 * @param topicPrefix
+	 */
+	public void unsubscribe(String topicPrefix) {
+		unsubscribe(topicPrefix.getBytes());
+	}
+
+	private void addSubscription(byte[] prefix, FrameHandler handler) {
+		// 同一前缀只向SUB socket订阅一次
+		if (topicTrie.add(prefix, handler))
+			zSocket.subscribe(prefix);
+	}
+
 	@Override
 	public void subscribe() {
 		while (isRun.get()) {
-			zSocket.recv();
-			byte[] msgBytes = zSocket.recv();
-			callback.accept(msgBytes);
+			Runnable command;
+			while ((command = commands.poll()) != null)
+				command.run();
+			if (conflater != null)
+				recvConflated();
+			else if (topicBuffer == null)
+				recvFrames();
+			else
+				recvFramesInBuffer();
+		}
+	}
+
+	private void recvFrames() {
+		// topic frame, 接收超时时返回null
+		byte[] topic = zSocket.recv();
+		if (topic == null)
+			return;
+		// batch published by ZmqPublisher has more than one part
+		while (zSocket.hasReceiveMore())
+			topicTrie.dispatch(topic, zSocket.recv());
+	}
+
+	private void recvConflated() {
+		byte[] topic = zSocket.recv();
+		if (topic == null)
+			return;
+		// 同一批次的消息只保留最后一条
+		byte[] latest = null;
+		while (zSocket.hasReceiveMore())
+			latest = zSocket.recv();
+		if (latest != null)
+			conflater.put(topic, latest);
+	}
+
+	/**
+	 * 处理上次drain之后变化过的topic的最新消息, 可以在任何线程中调用<br>
+	 * 只在conflate模式下可用
+	 * 
+	 * @param handler 参数为topic和消息, topic数组不能修改
+	 * @return drained topic count
+	 */
+	public int drain(BiConsumer<byte[], byte[]> handler) {
+		if (conflater == null)
+			throw new IllegalStateException("conflate is not enabled in " + subscriberName);
+		return conflater.drain(handler);
+	}
+
+	/**
+	 * 
+	 * @return topics with undrained message, 0 if conflate is not enabled
+	 */
+	public int pendingTopics() {
+		return conflater == null ? 0 : conflater.pending();
+	}
+
+	/**
+	 * 
+	 * @return messages overwritten before drained, 0 if conflate is not enabled
+	 */
+	public long conflatedCount() {
+		return conflater == null ? 0 : conflater.conflated();
+	}
+
+	private void recvFramesInBuffer() {
+		ByteBuffer topic;
+		try {
+			topic = topicBuffer.recv(zSocket, 0);
+		} catch (BufferOverflowException e) {
+			log.error("Topic frame larger than recvBufferSize {}, discard message", topicBuffer.capacity());
+			// 丢弃同一消息的剩余帧
+			while (zSocket.hasReceiveMore())
+				zSocket.recv();
+			return;
+		}
+		if (topic == null)
+			return;
+		while (zSocket.hasReceiveMore()) {
+			ByteBuffer msg;
+			try {
+				msg = msgBuffer.recv(zSocket, 0);
+			} catch (BufferOverflowException e) {
+				log.error("Frame larger than recvBufferSize {}, discard frame", msgBuffer.capacity());
+				continue;
+			}
+			// 多帧消息的各帧同时到达, 不会超时
+			if (msg == null)
+				break;
+			topicTrie.dispatch(topic, msg);
 		}
 	}
 
 	@Override
 	public boolean destroy() {
 		this.isRun.set(false);
-		zSocket.close();
-		zCtx.close();
-		return zCtx.isClosed();
+		if (ownContext) {
+			zSocket.close();
+			zCtx.close();
+			return zCtx.isClosed();
+		}
+		zCtx.destroySocket(zSocket);
+		return true;
 	}
 
 	@Override
@@ -8,6 +8,18 @@ public class ZmqConfigurator implements TransportConfigurator {
 	private int port;
 	private String topic;
 	private int ioThreads;
+	// ZmqPipeline处理请求的线程数量
+	private int workerThreads;
+	// ZmqSender使用的socket类型
+	private ZmqSenderMode senderMode;
+	// DEALER模式下最多同时等待响应的请求数量
+	private int maxInFlight;
+	// 默认请求超时时间(毫秒)
+	private long requestTimeout;
+	// 大于0时使用复用的直接内存缓冲区接收消息帧, 帧长度不能超过该值
+	private int recvBufferSize;
+	// ZmqSubscriber是否只保留每个topic的最新消息
+	private boolean conflate;
 
 	private final String fullInfo = "JeroMqConfigurator";
 	private final String connectionInfo = "";
@@ -17,6 +29,12 @@ public class ZmqConfigurator implements TransportConfigurator {
 		this.port = builder.port;
 		this.topic = builder.topic;
 		this.ioThreads = builder.ioThreads;
+		this.workerThreads = builder.workerThreads;
+		this.senderMode = builder.senderMode;
+		this.maxInFlight = builder.maxInFlight;
+		this.requestTimeout = builder.requestTimeout;
+		this.recvBufferSize = builder.recvBufferSize;
+		this.conflate = builder.conflate;
 	}
 
 	public static Builder builder() {
@@ -41,6 +59,30 @@ public class ZmqConfigurator implements TransportConfigurator {
 		return ioThreads;
 	}
 
+	public int workerThreads() {
+		return workerThreads;
+	}
+
+	public ZmqSenderMode senderMode() {
+		return senderMode;
+	}
+
+	public int maxInFlight() {
+		return maxInFlight;
+	}
+
+	public long requestTimeout() {
+		return requestTimeout;
+	}
+
+	public int recvBufferSize() {
+		return recvBufferSize;
+	}
+
+	public boolean conflate() {
+		return conflate;
+	}
+
 	@Override
 	public String fullInfo() {
 		return fullInfo;
@@ -57,6 +99,12 @@ public class ZmqConfigurator implements TransportConfigurator {
 		private int port;
 		private String topic;
 		private int ioThreads;
+		private int workerThreads = 1;
+		private ZmqSenderMode senderMode = ZmqSenderMode.DEALER;
+		private int maxInFlight = 1024;
+		private long requestTimeout = 5000;
+		private int recvBufferSize;
+		private boolean conflate;
 
 		private Builder() {
 		}
@@ -81,6 +129,36 @@ public class ZmqConfigurator implements TransportConfigurator {
 			return this;
 		}
 
+		public Builder setWorkerThreads(int workerThreads) {
+			this.workerThreads = workerThreads;
+			return this;
+		}
+
+		public Builder setSenderMode(ZmqSenderMode senderMode) {
+			this.senderMode = senderMode;
+			return this;
+		}
+
+		public Builder setMaxInFlight(int maxInFlight) {
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		public Builder setRequestTimeout(long requestTimeout) {
+			this.requestTimeout = requestTimeout;
+			return this;
+		}
+
+		public Builder setRecvBufferSize(int recvBufferSize) {
+			this.recvBufferSize = recvBufferSize;
+			return this;
+		}
+
+		public Builder setConflate(boolean conflate) {
+			this.conflate = conflate;
+			return this;
+		}
+
 		public ZmqConfigurator build() {
 			return new ZmqConfigurator(this);
 		}
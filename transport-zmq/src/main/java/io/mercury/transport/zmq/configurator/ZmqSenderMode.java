@@ -0,0 +1,21 @@
+package io.mercury.transport.zmq.configurator;
+
+/**
+ * ZmqSender使用的socket类型
+ * 
+ * @author yellow013
+ */
+public enum ZmqSenderMode {
+
+	/**
+	 * DEALER socket, 多个请求同时等待响应, 通过请求ID帧匹配响应.<br>
+	 * 请求格式为[requestId][empty][msg], REP对端原样返回[requestId][empty]
+	 */
+	DEALER,
+
+	/**
+	 * REQ socket, 每次发送后同步等待响应
+	 */
+	REQ,
+
+}
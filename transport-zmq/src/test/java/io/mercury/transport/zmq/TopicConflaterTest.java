@@ -0,0 +1,90 @@
+package io.mercury.transport.zmq;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TopicConflaterTest {
+
+	private final TopicConflater conflater = new TopicConflater();
+
+	private final List<String> drained = new ArrayList<>();
+
+	private void put(String topic, String msg) {
+		// 与recv()相同, 每条消息使用新的数组
+		conflater.put(topic.getBytes(), msg.getBytes());
+	}
+
+	private int drain() {
+		return conflater.drain((topic, msg) -> drained.add(new String(topic) + "=" + new String(msg)));
+	}
+
+	@Test
+	public void testLastValueWins() {
+		put("a", "1");
+		put("b", "1");
+		put("a", "2");
+		put("a", "3");
+		assertEquals(2, conflater.pending());
+		assertEquals(2, conflater.topicCount());
+		assertEquals(2, drain());
+		assertEquals(2, drained.size());
+		assertEquals("a=3", drained.get(0));
+		assertEquals("b=1", drained.get(1));
+		assertEquals(2, conflater.conflated());
+		assertEquals(0, conflater.pending());
+		// 没有变化时不处理
+		assertEquals(0, drain());
+	}
+
+	@Test
+	public void testRequeueAfterDrain() {
+		put("a", "1");
+		assertEquals(1, drain());
+		put("a", "2");
+		put("b", "1");
+		assertEquals(2, conflater.pending());
+		assertEquals(2, drain());
+		assertEquals("a=1", drained.get(0));
+		assertEquals("a=2", drained.get(1));
+		assertEquals("b=1", drained.get(2));
+		// 已经取出的消息不计入conflated
+		assertEquals(0, conflater.conflated());
+		assertEquals(2, conflater.topicCount());
+	}
+
+	@Test
+	public void testDrainLimit() {
+		put("a", "1");
+		put("b", "1");
+		// 处理过程中写入的新消息重新入队, 由下一次drain处理
+		int count = conflater.drain((topic, msg) -> {
+			drained.add(new String(topic) + "=" + new String(msg));
+			put(new String(topic), "2");
+		});
+		assertEquals(2, count);
+		assertEquals(2, drained.size());
+		assertEquals(2, conflater.pending());
+		assertEquals(2, drain());
+		assertEquals("a=2", drained.get(2));
+		assertEquals("b=2", drained.get(3));
+	}
+
+	@Test
+	public void testHandlerException() {
+		put("a", "1");
+		put("b", "1");
+		assertEquals(2, conflater.drain((topic, msg) -> {
+			if (topic[0] == 'a')
+				throw new IllegalStateException("test");
+			drained.add(new String(topic));
+		}));
+		assertEquals(1, drained.size());
+		assertEquals("b", drained.get(0));
+		assertEquals(0, conflater.pending());
+	}
+
+}
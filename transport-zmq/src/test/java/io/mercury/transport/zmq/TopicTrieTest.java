@@ -0,0 +1,116 @@
+package io.mercury.transport.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.mercury.transport.zmq.TopicTrie.FrameHandler;
+
+public class TopicTrieTest {
+
+	private final TopicTrie trie = new TopicTrie();
+
+	private final List<String> received = new ArrayList<>();
+
+	private FrameHandler handler(String name) {
+		return FrameHandler.ofBytes(msg -> received.add(name + ":" + new String(msg)));
+	}
+
+	@Test
+	public void testOverlappingPrefixShortestFirst() {
+		trie.add("IF".getBytes(), handler("IF"));
+		trie.add("IF2101".getBytes(), handler("IF2101"));
+		trie.add("I".getBytes(), handler("I"));
+		trie.add("IC".getBytes(), handler("IC"));
+		assertEquals(3, trie.dispatch("IF2101.tick".getBytes(), "m".getBytes()));
+		assertEquals(3, received.size());
+		assertEquals("I:m", received.get(0));
+		assertEquals("IF:m", received.get(1));
+		assertEquals("IF2101:m", received.get(2));
+
+		received.clear();
+		// topic比前缀短时不匹配该前缀
+		assertEquals(2, trie.dispatch("IF21".getBytes(), "n".getBytes()));
+		assertEquals("I:n", received.get(0));
+		assertEquals("IF:n", received.get(1));
+	}
+
+	@Test
+	public void testEmptyPrefix() {
+		trie.add(new byte[0], handler("all"));
+		trie.add("md".getBytes(), handler("md"));
+		assertEquals(2, trie.dispatch("md.rb".getBytes(), "m".getBytes()));
+		assertEquals(1, trie.dispatch("order".getBytes(), "o".getBytes()));
+		assertEquals(1, trie.dispatch(new byte[0], "e".getBytes()));
+		assertEquals("all:m", received.get(0));
+		assertEquals("md:m", received.get(1));
+		assertEquals("all:o", received.get(2));
+		assertEquals("all:e", received.get(3));
+	}
+
+	@Test
+	public void testAddRemoveReturnValues() {
+		// 只有新增的前缀需要向SUB socket订阅
+		assertTrue(trie.add("md".getBytes(), handler("a")));
+		assertFalse(trie.add("md".getBytes(), handler("b")));
+		assertTrue(trie.add("mdx".getBytes(), handler("c")));
+		assertEquals(2, trie.prefixCount());
+		assertEquals(3, trie.dispatch("mdx".getBytes(), "m".getBytes()));
+
+		// 只有存在的前缀需要取消订阅
+		assertTrue(trie.remove("md".getBytes()));
+		assertFalse(trie.remove("md".getBytes()));
+		assertFalse(trie.remove("m".getBytes()));
+		assertFalse(trie.remove("nothing".getBytes()));
+		assertEquals(1, trie.prefixCount());
+		received.clear();
+		assertEquals(1, trie.dispatch("mdx".getBytes(), "m".getBytes()));
+		assertEquals("c:m", received.get(0));
+
+		// 移除后可以重新添加
+		assertTrue(trie.add("md".getBytes(), handler("d")));
+		assertEquals(2, trie.prefixCount());
+	}
+
+	@Test
+	public void testNoMatch() {
+		trie.add("md".getBytes(), handler("md"));
+		assertEquals(0, trie.dispatch("order".getBytes(), "m".getBytes()));
+		assertEquals(0, trie.dispatch("m".getBytes(), "m".getBytes()));
+		assertEquals(0, new TopicTrie().dispatch("md".getBytes(), "m".getBytes()));
+		assertTrue(received.isEmpty());
+	}
+
+	@Test
+	public void testBinaryPrefix() {
+		trie.add(new byte[] { (byte) 0xff, 0, (byte) 0x80 }, handler("bin"));
+		assertEquals(1, trie.dispatch(new byte[] { (byte) 0xff, 0, (byte) 0x80, 1 }, "m".getBytes()));
+		assertEquals(0, trie.dispatch(new byte[] { (byte) 0xff, 1 }, "m".getBytes()));
+	}
+
+	@Test
+	public void testDispatchBufferView() {
+		List<String> views = new ArrayList<>();
+		trie.add("md".getBytes(), handler("md"));
+		trie.add("md".getBytes(), FrameHandler.ofBuffer(view -> {
+			views.add(new String(ZmqFrameBuffer.copyOf(view)));
+			// 移动position不影响后续handler
+			view.position(view.limit());
+		}));
+		trie.add("md.rb".getBytes(), FrameHandler.ofBuffer(view -> views.add(view.remaining() + ":" + view.isReadOnly())));
+		ByteBuffer topic = ByteBuffer.wrap("xxmd.rb2101".getBytes());
+		topic.position(2);
+		ByteBuffer msg = ByteBuffer.wrap("tick".getBytes()).asReadOnlyBuffer();
+		assertEquals(3, trie.dispatch(topic, msg));
+		assertEquals("md:tick", received.get(0));
+		assertEquals("tick", views.get(0));
+		assertEquals("4:true", views.get(1));
+	}
+
+}
@@ -0,0 +1,149 @@
+package io.mercury.transport.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import io.mercury.transport.zmq.configurator.ZmqConfigurator;
+
+public class ZmqPipelineTest {
+
+	private static final String ADDR = "inproc://zmq-pipeline-test";
+
+	private static final int WORKERS = 4;
+
+	private static final int CLIENTS = 4;
+
+	private static final int REQUESTS = 8;
+
+	// 客户端与pipeline使用同一个context才能通过inproc连接
+	private final ZContext context = new ZContext(1);
+
+	// 处理过请求的工作线程
+	private final Set<String> workerNames = ConcurrentHashMap.newKeySet();
+
+	private final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+
+	private ZmqPipeline pipeline;
+
+	private Thread proxy;
+
+	@Before
+	public void setUp() {
+		ZmqConfigurator configurator = ZmqConfigurator.builder().setHost(ADDR).setWorkerThreads(WORKERS).build();
+		pipeline = new ZmqPipeline(configurator, request -> {
+			workerNames.add(Thread.currentThread().getName());
+			String msg = new String(request);
+			if (msg.endsWith("fail"))
+				throw new IllegalStateException(msg);
+			if (msg.endsWith("null"))
+				return null;
+			try {
+				// 同一时间只有一个工作线程处理时, 全部请求的处理时间会明显变长
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return ("a:" + msg).getBytes();
+		}, context.shadow());
+		proxy = new Thread(pipeline::receive, "zmq-pipeline-test-proxy");
+		proxy.setDaemon(true);
+		proxy.start();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		clients.shutdownNow();
+		pipeline.destroy();
+		proxy.join(1000);
+		context.close();
+	}
+
+	/**
+	 * DEALER客户端发送全部请求后接收全部响应, 与REQ相同使用 [empty][msg] 格式
+	 *
+	 * @param requests
+	 * @return 按到达顺序的响应
+	 */
+	private List<String> call(List<String> requests) {
+		ZMQ.Socket dealer = context.createSocket(SocketType.DEALER);
+		try {
+			dealer.setReceiveTimeOut(5000);
+			dealer.connect(ADDR);
+			for (String request : requests) {
+				dealer.sendMore(new byte[0]);
+				dealer.send(request);
+			}
+			List<String> replies = new ArrayList<>();
+			for (int i = 0; i < requests.size(); i++) {
+				byte[] empty = dealer.recv();
+				assertNotNull("receive reply timeout", empty);
+				assertEquals(0, empty.length);
+				replies.add(new String(dealer.recv()));
+				assertFalse(dealer.hasReceiveMore());
+			}
+			return replies;
+		} finally {
+			context.destroySocket(dealer);
+		}
+	}
+
+	@Test
+	public void testConcurrentClients() throws Exception {
+		List<Future<List<String>>> futures = new ArrayList<>();
+		List<Set<String>> expected = new ArrayList<>();
+		for (int c = 0; c < CLIENTS; c++) {
+			List<String> requests = new ArrayList<>();
+			Set<String> replies = new HashSet<>();
+			for (int i = 0; i < REQUESTS; i++) {
+				requests.add("c" + c + "-" + i);
+				replies.add("a:c" + c + "-" + i);
+			}
+			expected.add(replies);
+			futures.add(clients.submit(() -> call(requests)));
+		}
+		for (int c = 0; c < CLIENTS; c++) {
+			List<String> replies = futures.get(c).get(10, TimeUnit.SECONDS);
+			// 每个客户端只收到自己的响应, 不同工作线程完成的顺序可以不同
+			assertEquals(REQUESTS, replies.size());
+			assertEquals(expected.get(c), new HashSet<>(replies));
+		}
+		// 请求被分配给多个工作线程
+		assertTrue("workers -> " + workerNames, workerNames.size() > 1);
+	}
+
+	@Test
+	public void testEmptyReplyOnNullOrException() throws Exception {
+		List<String> replies = clients.submit(() -> call(Arrays.asList("r-null", "r-fail", "r-ok"))).get(10,
+				TimeUnit.SECONDS);
+		Collections.sort(replies);
+		// 返回null或抛出异常时回复空消息, 工作线程继续处理之后的请求
+		assertEquals(Arrays.asList("", "", "a:r-ok"), replies);
+		// 每个工作线程都仍然可用
+		List<String> requests = new ArrayList<>();
+		for (int i = 0; i < WORKERS * 2; i++)
+			requests.add("r-" + i);
+		assertEquals(WORKERS * 2, clients.submit(() -> call(requests)).get(10, TimeUnit.SECONDS).size());
+	}
+
+}
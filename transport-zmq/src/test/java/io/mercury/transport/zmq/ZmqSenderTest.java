@@ -0,0 +1,214 @@
+package io.mercury.transport.zmq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import io.mercury.transport.zmq.configurator.ZmqConfigurator;
+import io.mercury.transport.zmq.configurator.ZmqSenderMode;
+
+public class ZmqSenderTest {
+
+	private static final String ADDR = "inproc://zmq-sender-test";
+
+	// 对端与sender使用同一个context才能通过inproc连接
+	private final ZContext context = new ZContext(1);
+
+	private ZmqSender sender;
+
+	@After
+	public void tearDown() {
+		if (sender != null)
+			sender.destroy();
+		context.close();
+	}
+
+	private ZmqSender newSender(ZmqSenderMode mode, int maxInFlight, long requestTimeout) {
+		ZmqConfigurator configurator = ZmqConfigurator.builder().setHost(ADDR).setSenderMode(mode)
+				.setMaxInFlight(maxInFlight).setRequestTimeout(requestTimeout).build();
+		sender = new ZmqSender(configurator, context.shadow());
+		return sender;
+	}
+
+	private ZMQ.Socket bindRouter() {
+		ZMQ.Socket router = context.createSocket(SocketType.ROUTER);
+		router.setReceiveTimeOut(5000);
+		router.bind(ADDR);
+		return router;
+	}
+
+	/**
+	 * ROUTER收到的请求 [identity][requestId][empty][msg]
+	 */
+	private static final class Received {
+
+		private final byte[] identity;
+		private final byte[] requestId;
+		private final String msg;
+
+		private Received(ZMQ.Socket router) {
+			this.identity = router.recv();
+			assertNotNull("receive request timeout", identity);
+			this.requestId = router.recv();
+			assertEquals(0, router.recv().length);
+			this.msg = new String(router.recv());
+			assertFalse(router.hasReceiveMore());
+		}
+
+		private void reply(ZMQ.Socket router, String reply) {
+			router.sendMore(identity);
+			router.sendMore(requestId);
+			router.sendMore(new byte[0]);
+			router.send(reply);
+		}
+
+	}
+
+	private static String join(CompletableFuture<byte[]> future) throws Exception {
+		return new String(future.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * future完成后窗口位置在IO线程中归还
+	 */
+	private void assertInFlight(int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (sender.inFlight() != expected && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(expected, sender.inFlight());
+	}
+
+	private static void assertTimeout(CompletableFuture<byte[]> future) throws InterruptedException {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		} catch (TimeoutException e) {
+			fail("future not completed");
+		}
+	}
+
+	@Test
+	public void testOutOfOrderReplies() throws Exception {
+		ZMQ.Socket router = bindRouter();
+		newSender(ZmqSenderMode.DEALER, 16, 5000);
+		CompletableFuture<byte[]> f1 = sender.request("q1".getBytes());
+		CompletableFuture<byte[]> f2 = sender.request("q2".getBytes());
+		CompletableFuture<byte[]> f3 = sender.request("q3".getBytes());
+		Received r1 = new Received(router);
+		Received r2 = new Received(router);
+		Received r3 = new Received(router);
+		assertEquals("q1", r1.msg);
+		assertEquals("q2", r2.msg);
+		assertEquals("q3", r3.msg);
+		assertInFlight(3);
+
+		// 按请求ID匹配乱序到达的响应
+		r3.reply(router, "a3");
+		assertEquals("a3", join(f3));
+		assertFalse(f1.isDone());
+		r1.reply(router, "a1");
+		r2.reply(router, "a2");
+		assertEquals("a1", join(f1));
+		assertEquals("a2", join(f2));
+		assertInFlight(0);
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		ZMQ.Socket router = bindRouter();
+		newSender(ZmqSenderMode.DEALER, 16, 5000);
+		CompletableFuture<byte[]> timeout = sender.request("q1".getBytes(), 50);
+		Received late = new Received(router);
+		assertTimeout(timeout);
+		assertInFlight(0);
+
+		// 超时后到达的响应被丢弃, 不影响之后的请求
+		late.reply(router, "late");
+		CompletableFuture<byte[]> next = sender.request("q2".getBytes());
+		Received received = new Received(router);
+		assertEquals("q2", received.msg);
+		received.reply(router, "a2");
+		assertEquals("a2", join(next));
+	}
+
+	@Test
+	public void testWindowLimit() throws Exception {
+		ZMQ.Socket router = bindRouter();
+		newSender(ZmqSenderMode.DEALER, 2, 5000);
+		CompletableFuture<byte[]> f1 = sender.request("q1".getBytes());
+		CompletableFuture<byte[]> f2 = sender.request("q2".getBytes());
+		assertInFlight(2);
+		// 窗口已满, 等待timeoutMillis后失败, 请求不会被发送
+		CompletableFuture<byte[]> rejected = sender.request("q3".getBytes(), 50);
+		assertTimeout(rejected);
+		assertInFlight(2);
+
+		Received r1 = new Received(router);
+		Received r2 = new Received(router);
+		r1.reply(router, "a1");
+		assertEquals("a1", join(f1));
+		// 收到响应后窗口空出位置
+		CompletableFuture<byte[]> f4 = sender.request("q4".getBytes(), 5000);
+		Received r4 = new Received(router);
+		assertEquals("q4", r4.msg);
+		r4.reply(router, "a4");
+		r2.reply(router, "a2");
+		assertEquals("a4", join(f4));
+		assertEquals("a2", join(f2));
+		assertInFlight(0);
+	}
+
+	@Test
+	public void testReqMode() throws Exception {
+		CompletableFuture<Void> responder = new CompletableFuture<>();
+		// REP socket只能在创建它的线程中使用, 回复3个请求后关闭
+		Thread thread = new Thread(() -> {
+			ZMQ.Socket rep = context.createSocket(SocketType.REP);
+			rep.setReceiveTimeOut(5000);
+			rep.bind(ADDR);
+			responder.complete(null);
+			try {
+				byte[] request;
+				for (int i = 0; i < 3 && (request = rep.recv()) != null; i++) {
+					String msg = new String(request);
+					// 超过请求方的等待时间后才回复
+					if (msg.equals("slow"))
+						Thread.sleep(200);
+					rep.send("a:" + msg);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				context.destroySocket(rep);
+			}
+		}, "zmq-sender-test-rep");
+		thread.setDaemon(true);
+		thread.start();
+		responder.get(5, TimeUnit.SECONDS);
+
+		newSender(ZmqSenderMode.REQ, 16, 5000);
+		assertEquals("a:q1", join(sender.request("q1".getBytes())));
+		assertTimeout(sender.request("slow".getBytes(), 50));
+		// relaxed模式下可以继续发送, 迟到的响应按correlation丢弃
+		assertEquals("a:q2", join(sender.request("q2".getBytes())));
+		assertInFlight(0);
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+	}
+
+}